@@ -64,4 +64,60 @@ CREATE TABLE `sys_setting`  (
 -- ----------------------------
 INSERT INTO `sys_setting` VALUES (1, 'storage', '存储桶配置', '用于配置对象存储服务商', 'oss', 0);
 
+-- ----------------------------
+-- Table structure for object_meta
+-- ----------------------------
+DROP TABLE IF EXISTS `object_meta`;
+CREATE TABLE `object_meta`  (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `storage` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL COMMENT '对象所在的存储服务商编码（默认的本地存储为local）',
+  `object_key` varchar(700) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL COMMENT '对象名（包含文件路径，按字节排序）',
+  `size` bigint NOT NULL DEFAULT 0 COMMENT '对象大小（字节）',
+  `content_type` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL COMMENT '文件类型',
+  `checksum` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL COMMENT '对象校验值（存储服务返回的ETag）',
+  `thumb_key` varchar(700) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NULL DEFAULT NULL COMMENT '缩略图的对象名',
+  `last_modified` datetime(3) NULL DEFAULT NULL COMMENT '对象在存储服务中的最后修改时间',
+  `create_time` datetime(3) NOT NULL COMMENT '记录创建时间',
+  `update_time` datetime(3) NOT NULL COMMENT '记录更新时间',
+  `sync_time` datetime(3) NOT NULL COMMENT '最近一次与存储服务核对的时间',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_storage_key`(`storage` ASC, `object_key` ASC) USING BTREE
+) ENGINE = InnoDB AUTO_INCREMENT = 1 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci COMMENT = '对象元数据表' ROW_FORMAT = Dynamic;
+
+-- ----------------------------
+-- Table structure for object_blob
+-- ----------------------------
+DROP TABLE IF EXISTS `object_blob`;
+CREATE TABLE `object_blob`  (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `storage` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL COMMENT '文件所在的存储服务商编码（默认的本地存储为local）',
+  `sha256` char(64) CHARACTER SET ascii COLLATE ascii_bin NOT NULL COMMENT '文件内容的SHA-256（十六进制小写）',
+  `blob_key` varchar(700) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL COMMENT '文件在存储服务中的对象名',
+  `url` varchar(1024) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL COMMENT '文件的资源链接',
+  `size` bigint NOT NULL DEFAULT 0 COMMENT '文件大小（字节）',
+  `content_type` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL COMMENT '文件类型',
+  `ref_count` int NOT NULL DEFAULT 0 COMMENT '引用该文件的对象名数量 为0时等待清理',
+  `create_time` datetime(3) NOT NULL COMMENT '记录创建时间',
+  `update_time` datetime(3) NOT NULL COMMENT '记录更新时间（引用数变化时更新）',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_storage_sha256`(`storage` ASC, `sha256` ASC) USING BTREE,
+  INDEX `idx_ref_count_update_time`(`ref_count` ASC, `update_time` ASC) USING BTREE
+) ENGINE = InnoDB AUTO_INCREMENT = 1 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci COMMENT = '按内容去重保存的文件表' ROW_FORMAT = Dynamic;
+
+-- ----------------------------
+-- Table structure for object_blob_ref
+-- ----------------------------
+DROP TABLE IF EXISTS `object_blob_ref`;
+CREATE TABLE `object_blob_ref`  (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `storage` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL COMMENT '对象所在的存储服务商编码（默认的本地存储为local）',
+  `object_key` varchar(700) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL COMMENT '上传时的对象名（包含文件路径）',
+  `blob_id` bigint NOT NULL COMMENT '引用的文件编号',
+  `create_time` datetime(3) NOT NULL COMMENT '记录创建时间',
+  `update_time` datetime(3) NOT NULL COMMENT '记录更新时间',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_storage_key`(`storage` ASC, `object_key` ASC) USING BTREE,
+  INDEX `idx_blob_id`(`blob_id` ASC) USING BTREE
+) ENGINE = InnoDB AUTO_INCREMENT = 1 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci COMMENT = '对象名与去重文件的对应关系表' ROW_FORMAT = Dynamic;
+
 SET FOREIGN_KEY_CHECKS = 1;
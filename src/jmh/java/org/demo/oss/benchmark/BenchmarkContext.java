@@ -0,0 +1,97 @@
+package org.demo.oss.benchmark;
+
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.model.Storage;
+import org.demo.oss.storage.StorageClientRegistry;
+import org.demo.oss.utils.SpringUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 基准测试使用的最小Spring容器
+ * 存储方式通过{@link SpringUtils}获取配置、客户端注册表和列举线程池，这里只注册这几个bean，不连接数据库。
+ * @author moxiaoli
+ */
+public class BenchmarkContext implements AutoCloseable {
+
+    private final AnnotationConfigApplicationContext context;
+
+    private final Path uploadDir;
+
+    private BenchmarkContext(AnnotationConfigApplicationContext context, Path uploadDir) {
+        this.context = context;
+        this.uploadDir = uploadDir;
+    }
+
+    /**
+     * 创建容器 本地存储的上传目录为新建的临时目录
+     * @return 已启动的容器
+     */
+    public static BenchmarkContext start() throws IOException {
+        Path uploadDir = Files.createTempDirectory("oss-bench");
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("web.resource-path", uploadDir.toAbsolutePath() + "/");
+        properties.put("server.port", "8000");
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+        context.register(SpringUtils.class, OssProperties.class, StorageClientRegistry.class);
+        context.registerBean("localListPool", ForkJoinPool.class,
+                () -> new ForkJoinPool(Runtime.getRuntime().availableProcessors()));
+        context.refresh();
+        return new BenchmarkContext(context, uploadDir);
+    }
+
+    /**
+     * 获取本地存储的上传目录
+     */
+    public Path getUploadDir() {
+        return uploadDir;
+    }
+
+    /**
+     * 创建指向存根存储服务的存储服务商配置
+     * @param stub 存根存储服务
+     * @param type 存储类型 1为minio 2为阿里OSS
+     * @param bucket 存储桶
+     * @return 存储服务商配置
+     */
+    public static Storage stubStorage(S3StubServer stub, int type, String bucket) {
+        Storage storage = new Storage();
+        storage.setStorage(type == 1 ? "minio" : "oss");
+        storage.setStorageType(type);
+        storage.setEndpoint(stub.getEndpoint());
+        storage.setHost(stub.getEndpoint());
+        storage.setAccessKey("benchmark");
+        storage.setSecretKey("benchmark-secret");
+        storage.setBucketName(bucket);
+        return storage;
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        Files.walkFileTree(uploadDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
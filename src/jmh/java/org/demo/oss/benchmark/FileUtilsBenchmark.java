@@ -0,0 +1,39 @@
+package org.demo.oss.benchmark;
+
+import org.demo.oss.utils.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文件大小格式化的基准测试 每个上传和列举结果都会调用
+ * @author moxiaoli
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileUtilsBenchmark {
+
+    /**
+     * 文件大小 分别落在B、KB、MB和GB区间
+     */
+    @Param({"512", "153600", "73400320", "5368709120"})
+    public long bytes;
+
+    @Benchmark
+    public String convertFileSize() {
+        return FileUtils.convertFileSize(bytes);
+    }
+}
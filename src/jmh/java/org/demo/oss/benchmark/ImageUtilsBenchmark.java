@@ -0,0 +1,87 @@
+package org.demo.oss.benchmark;
+
+import org.demo.oss.model.ImageTransform;
+import org.demo.oss.utils.ImageUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 图片压缩的基准测试
+ * 原图为带噪点的渐变JPEG，压缩率接近照片；分别测量上传时生成压缩图和后台生成缩略图的路径。
+ * @author moxiaoli
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageUtilsBenchmark {
+
+    /**
+     * 原图尺寸 宽x高
+     */
+    @Param({"640x480", "1920x1080", "4000x3000"})
+    public String resolution;
+
+    private BytesMultipartFile source;
+
+    private ImageTransform thumbnail;
+
+    @Setup
+    public void setup() throws IOException {
+        String[] parts = resolution.split("x");
+        int width = Integer.parseInt(parts[0]);
+        int height = Integer.parseInt(parts[1]);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = x * 255 / width;
+                int g = y * 255 / height;
+                int b = random.nextInt(64);
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        source = new BytesMultipartFile("bench.jpg", "image/jpeg", out.toByteArray());
+        thumbnail = new ImageTransform();
+        thumbnail.setWidth(200);
+        thumbnail.setHeight(200);
+        thumbnail.setQuality(80);
+        thumbnail.setFormat("jpg");
+    }
+
+    @Benchmark
+    public void compressImageToInputStream(Blackhole blackhole) throws IOException {
+        try (InputStream compressed = ImageUtils.compressImageToInputStream(source, 800, 800)) {
+            blackhole.consume(compressed.available());
+        }
+    }
+
+    @Benchmark
+    public byte[] thumbnail() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageUtils.transform(source.getInputStream(), thumbnail, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,177 @@
+package org.demo.oss.benchmark;
+
+import org.demo.oss.model.ObjectInfo;
+import org.demo.oss.model.ObjectPage;
+import org.demo.oss.storage.LocalMode;
+import org.demo.oss.utils.FileUtils;
+import org.demo.oss.utils.SpringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 本地存储的基准测试
+ * 临时目录下按每个子目录100个文件准备数据，测量上传、下载、一次性列举和分页列举。
+ * 另外在一个目录下平铺同样数量的文件，对比原来每个文件生成一个Map的列举方式（legacyListObjectsFlat）
+ * 和现在的ObjectInfo（listObjectsFlat）。使用-prof gc运行时gc.alloc.rate.norm除以fileCount即为列举每个对象的内存分配。
+ * @author moxiaoli
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocalModeBenchmark {
+
+    private static final String LIST_DIR = "bench";
+
+    private static final String FLAT_DIR = "flat";
+
+    private static final int FILES_PER_DIR = 100;
+
+    /**
+     * 列举目录下的文件数
+     */
+    @Param({"1000", "10000"})
+    public int fileCount;
+
+    /**
+     * 上传和下载的文件大小
+     */
+    @Param({"65536"})
+    public int payloadSize;
+
+    private BenchmarkContext context;
+
+    private LocalMode localMode;
+
+    private byte[] payload;
+
+    private final AtomicInteger uploads = new AtomicInteger();
+
+    /**
+     * 原来的列举方式使用的日期格式 与原实现一样每个存储方式共用一个
+     */
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+
+    private String host;
+
+    private String uploadPath;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        context = BenchmarkContext.start();
+        localMode = new LocalMode();
+        host = SpringUtils.getHost();
+        uploadPath = SpringUtils.getProperty("web.resource-path");
+        payload = new byte[payloadSize];
+        new Random(42).nextBytes(payload);
+        byte[] small = new byte[1024];
+        Path root = context.getUploadDir().resolve(LIST_DIR);
+        for (int i = 0; i < fileCount; i++) {
+            Path dir = root.resolve(String.format("d%04d", i / FILES_PER_DIR));
+            Files.createDirectories(dir);
+            Files.write(dir.resolve(String.format("f%06d.bin", i)), small);
+        }
+        Path flat = context.getUploadDir().resolve(FLAT_DIR);
+        Files.createDirectories(flat);
+        for (int i = 0; i < fileCount; i++) {
+            Files.write(flat.resolve(String.format("f%06d.bin", i)), small);
+        }
+        Path downloadDir = context.getUploadDir().resolve("download");
+        Files.createDirectories(downloadDir);
+        Files.write(downloadDir.resolve("object.bin"), payload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+    }
+
+    @Benchmark
+    public String upload() {
+        // 循环覆盖固定数量的文件 避免测试期间目录不断变大
+        String objectName = "object-" + (uploads.incrementAndGet() & 1023) + ".bin";
+        return localMode.upload(new ByteArrayInputStream(payload), "upload", objectName);
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        long total = 0;
+        byte[] buffer = new byte[8192];
+        try (InputStream in = localMode.download("download/object.bin")) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                total += n;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public List<ObjectInfo> listObjects() {
+        return localMode.listObjects(LIST_DIR, true);
+    }
+
+    @Benchmark
+    public List<ObjectInfo> listObjectsFlat() {
+        return localMode.listObjects(FLAT_DIR, false);
+    }
+
+    /**
+     * 原来的列举方式 作为对比的基线
+     * 每个文件生成一个包含名称、外链、格式化的大小和修改日期的HashMap，大小和修改时间分别读取一次文件属性。
+     */
+    @Benchmark
+    public List<Map<String, String>> legacyListObjectsFlat() {
+        File dir = new File(uploadPath + FLAT_DIR);
+        return Arrays.stream(Objects.requireNonNull(dir.list())).map(fileName -> {
+            Map<String, String> map = new HashMap<>();
+            map.put("name", FLAT_DIR + "/" + fileName);
+            map.put("url", host + "/" + FLAT_DIR + "/" + fileName);
+            map.put("size", FileUtils.convertFileSize(new File(uploadPath + FLAT_DIR + "/" + fileName).length()));
+            map.put("lastModified", dateFormat.format(new Date(new File(uploadPath + FLAT_DIR + "/" + fileName).lastModified())));
+            return map;
+        }).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public void listPage(Blackhole blackhole) {
+        String token = null;
+        do {
+            ObjectPage page = localMode.listPage(LIST_DIR + "/", null, 1000, token);
+            blackhole.consume(page.getObjects());
+            token = page.getNextToken();
+        } while (token != null);
+    }
+}
@@ -0,0 +1,123 @@
+package org.demo.oss.benchmark;
+
+import org.demo.oss.model.ObjectInfo;
+import org.demo.oss.model.ObjectPage;
+import org.demo.oss.model.Storage;
+import org.demo.oss.storage.MinioMode;
+import org.demo.oss.storage.OssMode;
+import org.demo.oss.storage.StorageMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * minio和阿里OSS存储方式的基准测试
+ * 两种存储方式都连接进程内的S3兼容存根服务，测量的是SDK、签名、XML解析和存储方式本身的开销，不包含真实网络和磁盘。
+ * @author moxiaoli
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RemoteModeBenchmark {
+
+    private static final String BUCKET = "bench";
+
+    private static final String LIST_PREFIX = "list/";
+
+    private static final int LIST_OBJECTS = 2000;
+
+    @Param({"minio", "oss"})
+    public String backend;
+
+    /**
+     * 上传和下载的文件大小
+     */
+    @Param({"4096", "1048576"})
+    public int payloadSize;
+
+    private S3StubServer stub;
+
+    private BenchmarkContext context;
+
+    private StorageMode storageMode;
+
+    private byte[] payload;
+
+    private final AtomicInteger uploads = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        stub = S3StubServer.start(Runtime.getRuntime().availableProcessors() * 2);
+        context = BenchmarkContext.start();
+        Storage storage = BenchmarkContext.stubStorage(stub, "minio".equals(backend) ? 1 : 2, BUCKET);
+        storageMode = "minio".equals(backend) ? new MinioMode(storage) : new OssMode(storage);
+        payload = new byte[payloadSize];
+        new Random(42).nextBytes(payload);
+        stub.put(BUCKET, "download/object.bin", payload);
+        byte[] small = new byte[1024];
+        for (int i = 0; i < LIST_OBJECTS; i++) {
+            stub.put(BUCKET, LIST_PREFIX + String.format("f%06d.bin", i), small);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        stub.close();
+    }
+
+    @Benchmark
+    public String upload() {
+        String objectName = "object-" + (uploads.incrementAndGet() & 1023) + ".bin";
+        return storageMode.upload(new ByteArrayInputStream(payload), "upload", objectName);
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        long total = 0;
+        byte[] buffer = new byte[8192];
+        try (InputStream in = storageMode.download("download/object.bin")) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                total += n;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public ObjectInfo statObject() {
+        return storageMode.statObject("download/object.bin");
+    }
+
+    @Benchmark
+    public void listPage(Blackhole blackhole) {
+        String token = null;
+        do {
+            ObjectPage page = storageMode.listPage(LIST_PREFIX, null, 1000, token);
+            blackhole.consume(page.getObjects());
+            token = page.getNextToken();
+        } while (token != null);
+    }
+}
@@ -0,0 +1,504 @@
+package org.demo.oss.benchmark;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 进程内的S3兼容存储服务
+ * 只实现minio和阿里OSS客户端在上传、下载、查看元数据、列举、删除和分片上传时用到的接口，数据保存在内存中，不校验签名。
+ * 请求使用路径形式的地址（/存储桶/对象名），endpoint使用IP地址时两种客户端都不会把存储桶放进域名。
+ * 阿里OSS签名的请求返回不带命名空间的XML，其余请求按S3返回。
+ * @author moxiaoli
+ */
+public class S3StubServer implements AutoCloseable {
+
+    private static final String XMLNS = "http://s3.amazonaws.com/doc/2006-03-01/";
+
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter
+            .ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    private static final DateTimeFormatter ISO_DATE = DateTimeFormatter
+            .ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US).withZone(ZoneOffset.UTC);
+
+    private static final int DEFAULT_MAX_KEYS = 1000;
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    /**
+     * 存储桶/对象名 -> 对象
+     */
+    private final ConcurrentSkipListMap<String, StubObject> objects = new ConcurrentSkipListMap<>();
+
+    /**
+     * 分片上传编号 -> 分片号 -> 分片数据
+     */
+    private final Map<String, NavigableMap<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+
+    private S3StubServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * 在本机的随机端口启动
+     * @param threads 处理请求的线程数
+     * @return 已启动的存储服务
+     */
+    public static S3StubServer start(int threads) throws IOException {
+        // 响应头和响应体分两次写出 不关闭Nagle算法时每个请求都要等待延迟确认
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "s3-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        S3StubServer stub = new S3StubServer(server, executor);
+        server.createContext("/", stub::handle);
+        server.setExecutor(executor);
+        server.start();
+        return stub;
+    }
+
+    /**
+     * 获取访问地址
+     * @return 形如http://127.0.0.1:端口 的地址
+     */
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * 直接写入一个对象 用于准备测试数据
+     * @param bucket 存储桶
+     * @param key 对象名
+     * @param data 对象内容
+     */
+    public void put(String bucket, String key, byte[] data) {
+        objects.put(bucket + "/" + key, new StubObject(data, "application/octet-stream"));
+    }
+
+    /**
+     * 获取保存的对象数
+     */
+    public int size() {
+        return objects.size();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getRawPath();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String trimmed = path.startsWith("/") ? path.substring(1) : path;
+            int slash = trimmed.indexOf('/');
+            String bucket = decode(slash < 0 ? trimmed : trimmed.substring(0, slash));
+            String key = slash < 0 ? "" : decode(trimmed.substring(slash + 1));
+            String method = exchange.getRequestMethod();
+            if (!"PUT".equals(method) && !"POST".equals(method)) {
+                // 请求流没有读到结尾时HttpServer会在响应后关闭连接 客户端复用该连接时请求失败
+                drain(exchange.getRequestBody());
+            }
+            if (key.isEmpty()) {
+                handleBucket(exchange, method, bucket, query);
+            } else {
+                handleObject(exchange, method, bucket, key, query);
+            }
+        } catch (RuntimeException e) {
+            sendError(exchange, 500, "InternalError", String.valueOf(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleBucket(HttpExchange exchange, String method, String bucket, Map<String, String> query) throws IOException {
+        if ("GET".equals(method) && query.containsKey("location")) {
+            sendXml(exchange, 200, "<LocationConstraint xmlns=\"" + XMLNS + "\"></LocationConstraint>");
+        } else if ("GET".equals(method)) {
+            list(exchange, bucket, query);
+        } else if ("HEAD".equals(method) || "PUT".equals(method)) {
+            send(exchange, 200, null, new byte[0]);
+        } else if ("POST".equals(method) && query.containsKey("delete")) {
+            deleteObjects(exchange, bucket);
+        } else {
+            sendError(exchange, 405, "MethodNotAllowed", method);
+        }
+    }
+
+    private void handleObject(HttpExchange exchange, String method, String bucket, String key,
+                              Map<String, String> query) throws IOException {
+        String fullKey = bucket + "/" + key;
+        switch (method) {
+            case "PUT":
+                if (query.containsKey("uploadId")) {
+                    byte[] data = readBody(exchange);
+                    uploads.get(query.get("uploadId")).put(Integer.parseInt(query.get("partNumber")), data);
+                    exchange.getResponseHeaders().set("ETag", quote(md5(data)));
+                    send(exchange, 200, null, new byte[0]);
+                } else {
+                    String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+                    StubObject object = new StubObject(readBody(exchange),
+                            contentType == null ? "application/octet-stream" : contentType);
+                    objects.put(fullKey, object);
+                    exchange.getResponseHeaders().set("ETag", quote(object.etag));
+                    send(exchange, 200, null, new byte[0]);
+                }
+                break;
+            case "POST":
+                if (query.containsKey("uploads")) {
+                    String uploadId = UUID.randomUUID().toString();
+                    uploads.put(uploadId, new ConcurrentSkipListMap<>());
+                    sendXml(exchange, 200, "<InitiateMultipartUploadResult xmlns=\"" + XMLNS + "\"><Bucket>"
+                            + escape(bucket) + "</Bucket><Key>" + escape(key) + "</Key><UploadId>" + uploadId
+                            + "</UploadId></InitiateMultipartUploadResult>");
+                } else if (query.containsKey("uploadId")) {
+                    readBody(exchange);
+                    NavigableMap<Integer, byte[]> parts = uploads.remove(query.get("uploadId"));
+                    if (parts == null) {
+                        sendError(exchange, 404, "NoSuchUpload", key);
+                        return;
+                    }
+                    ByteArrayOutputStream data = new ByteArrayOutputStream();
+                    for (byte[] part : parts.values()) {
+                        data.write(part, 0, part.length);
+                    }
+                    StubObject object = new StubObject(data.toByteArray(), "application/octet-stream");
+                    objects.put(fullKey, object);
+                    sendXml(exchange, 200, "<CompleteMultipartUploadResult xmlns=\"" + XMLNS + "\"><Location>/"
+                            + escape(fullKey) + "</Location><Bucket>" + escape(bucket) + "</Bucket><Key>"
+                            + escape(key) + "</Key><ETag>" + escape(quote(object.etag))
+                            + "</ETag></CompleteMultipartUploadResult>");
+                } else {
+                    sendError(exchange, 405, "MethodNotAllowed", method);
+                }
+                break;
+            case "DELETE":
+                if (query.containsKey("uploadId")) {
+                    uploads.remove(query.get("uploadId"));
+                } else {
+                    objects.remove(fullKey);
+                }
+                send(exchange, 204, null, null);
+                break;
+            case "HEAD":
+            case "GET":
+                StubObject object = objects.get(fullKey);
+                if (object == null) {
+                    sendError(exchange, 404, "NoSuchKey", key);
+                    return;
+                }
+                writeMetadata(exchange.getResponseHeaders(), object);
+                if ("HEAD".equals(method) || query.containsKey("objectMeta")) {
+                    exchange.getResponseHeaders().set("Content-Length", String.valueOf(object.data.length));
+                    exchange.getResponseHeaders().set("x-amz-request-id", "stub");
+                    exchange.getResponseHeaders().set("x-oss-request-id", "stub");
+                    exchange.sendResponseHeaders(200, -1);
+                    return;
+                }
+                long[] range = parseRange(exchange.getRequestHeaders().getFirst("Range"), object.data.length);
+                if (range == null) {
+                    send(exchange, 200, null, object.data);
+                } else {
+                    int from = (int) range[0];
+                    int length = (int) (range[1] - range[0] + 1);
+                    exchange.getResponseHeaders().set("Content-Range",
+                            "bytes " + range[0] + "-" + range[1] + "/" + object.data.length);
+                    exchange.sendResponseHeaders(206, length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(object.data, from, length);
+                    }
+                }
+                break;
+            default:
+                sendError(exchange, 405, "MethodNotAllowed", method);
+        }
+    }
+
+    /**
+     * 列举对象 同时支持ListObjects和ListObjectsV2
+     */
+    private void list(HttpExchange exchange, String bucket, Map<String, String> query) throws IOException {
+        boolean v2 = "2".equals(query.get("list-type"));
+        String prefix = query.getOrDefault("prefix", "");
+        String delimiter = query.get("delimiter");
+        int maxKeys = query.containsKey("max-keys") ? Integer.parseInt(query.get("max-keys")) : DEFAULT_MAX_KEYS;
+        String after = v2 ? query.getOrDefault("continuation-token", query.get("start-after")) : query.get("marker");
+        String base = bucket + "/";
+        String from = base + prefix;
+        NavigableMap<String, StubObject> range = after == null || after.isEmpty()
+                ? objects.tailMap(from, true)
+                : objects.tailMap(base + after, false);
+        StringBuilder contents = new StringBuilder();
+        Map<String, Boolean> commonPrefixes = new LinkedHashMap<>();
+        int count = 0;
+        String last = null;
+        boolean truncated = false;
+        for (Map.Entry<String, StubObject> entry : range.entrySet()) {
+            if (!entry.getKey().startsWith(from)) {
+                break;
+            }
+            if (count >= maxKeys) {
+                truncated = true;
+                break;
+            }
+            String key = entry.getKey().substring(base.length());
+            if (delimiter != null && !delimiter.isEmpty()) {
+                int index = key.indexOf(delimiter, prefix.length());
+                if (index >= 0) {
+                    String commonPrefix = key.substring(0, index + delimiter.length());
+                    if (commonPrefixes.put(commonPrefix, Boolean.TRUE) == null) {
+                        count++;
+                    }
+                    last = key;
+                    continue;
+                }
+            }
+            StubObject object = entry.getValue();
+            contents.append("<Contents><Key>").append(escape(key)).append("</Key><LastModified>")
+                    .append(ISO_DATE.format(object.lastModified)).append("</LastModified><ETag>")
+                    .append(escape(quote(object.etag))).append("</ETag><Size>").append(object.data.length)
+                    .append("</Size><StorageClass>STANDARD</StorageClass>")
+                    .append("<Owner><ID>stub</ID><DisplayName>stub</DisplayName></Owner></Contents>");
+            count++;
+            last = key;
+        }
+        StringBuilder xml = new StringBuilder("<ListBucketResult xmlns=\"").append(XMLNS).append("\"><Name>")
+                .append(escape(bucket)).append("</Name><Prefix>").append(escape(prefix)).append("</Prefix><MaxKeys>")
+                .append(maxKeys).append("</MaxKeys>");
+        if (delimiter != null) {
+            xml.append("<Delimiter>").append(escape(delimiter)).append("</Delimiter>");
+        }
+        xml.append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+        if (v2) {
+            xml.append("<KeyCount>").append(count).append("</KeyCount>");
+            if (truncated) {
+                xml.append("<NextContinuationToken>").append(escape(last)).append("</NextContinuationToken>");
+            }
+        } else {
+            xml.append("<Marker>").append(escape(after == null ? "" : after)).append("</Marker>");
+            if (truncated) {
+                xml.append("<NextMarker>").append(escape(last)).append("</NextMarker>");
+            }
+        }
+        xml.append(contents);
+        for (String commonPrefix : commonPrefixes.keySet()) {
+            xml.append("<CommonPrefixes><Prefix>").append(escape(commonPrefix)).append("</Prefix></CommonPrefixes>");
+        }
+        xml.append("</ListBucketResult>");
+        sendXml(exchange, 200, xml.toString());
+    }
+
+    /**
+     * 批量删除 请求体中的每个Key都删除 不返回逐个的结果
+     */
+    private void deleteObjects(HttpExchange exchange, String bucket) throws IOException {
+        String body = new String(readBody(exchange), StandardCharsets.UTF_8);
+        for (int start = body.indexOf("<Key>"); start >= 0; start = body.indexOf("<Key>", start + 1)) {
+            int end = body.indexOf("</Key>", start);
+            objects.remove(bucket + "/" + unescape(body.substring(start + 5, end)));
+        }
+        sendXml(exchange, 200, "<DeleteResult xmlns=\"" + XMLNS + "\"></DeleteResult>");
+    }
+
+    private static void writeMetadata(Headers headers, StubObject object) {
+        headers.set("ETag", quote(object.etag));
+        headers.set("Last-Modified", HTTP_DATE.format(object.lastModified));
+        headers.set("Content-Type", object.contentType);
+        headers.set("Accept-Ranges", "bytes");
+    }
+
+    private static long[] parseRange(String header, long size) {
+        if (header == null || !header.startsWith("bytes=") || size == 0) {
+            return null;
+        }
+        String spec = header.substring("bytes=".length());
+        int dash = spec.indexOf('-');
+        long from;
+        long to;
+        if (dash == 0) {
+            from = Math.max(0, size - Long.parseLong(spec.substring(1)));
+            to = size - 1;
+        } else {
+            from = Long.parseLong(spec.substring(0, dash));
+            to = dash == spec.length() - 1 ? size - 1 : Math.min(size - 1, Long.parseLong(spec.substring(dash + 1)));
+        }
+        return from > to ? null : new long[]{from, to};
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[512];
+        while (in.read(buffer) > 0) {
+            // 丢弃
+        }
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            byte[] body = out.toByteArray();
+            String encoding = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+            return encoding != null && encoding.startsWith("STREAMING-") ? decodeAwsChunked(body) : body;
+        }
+    }
+
+    /**
+     * 解析aws-chunked编码的请求体 去掉每个数据块的长度和签名
+     */
+    private static byte[] decodeAwsChunked(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int pos = 0;
+        while (pos < body.length) {
+            int lineEnd = pos;
+            while (lineEnd + 1 < body.length && !(body[lineEnd] == '\r' && body[lineEnd + 1] == '\n')) {
+                lineEnd++;
+            }
+            String header = new String(body, pos, lineEnd - pos, StandardCharsets.US_ASCII);
+            int semicolon = header.indexOf(';');
+            int length = Integer.parseInt(semicolon < 0 ? header : header.substring(0, semicolon), 16);
+            if (length == 0) {
+                break;
+            }
+            out.write(body, lineEnd + 2, length);
+            pos = lineEnd + 2 + length + 2;
+        }
+        return out.toByteArray();
+    }
+
+    private static void sendXml(HttpExchange exchange, int status, String xml) throws IOException {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization != null && authorization.startsWith("OSS")) {
+            // 阿里OSS的响应不带命名空间 SDK按无命名空间的元素名解析
+            xml = xml.replace(" xmlns=\"" + XMLNS + "\"", "");
+        }
+        send(exchange, status, "application/xml", ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + xml)
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String code, String message) throws IOException {
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        sendXml(exchange, status, "<Error><Code>" + code + "</Code><Message>" + escape(message)
+                + "</Message><RequestId>stub</RequestId><HostId>stub</HostId></Error>");
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        if (contentType != null) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+        }
+        exchange.getResponseHeaders().set("x-amz-request-id", "stub");
+        exchange.getResponseHeaders().set("x-oss-request-id", "stub");
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new TreeMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            query.put(decode(eq < 0 ? pair : pair.substring(0, eq)), eq < 0 ? "" : decode(pair.substring(eq + 1)));
+        }
+        return query;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value.replace("+", "%2B"), "UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String quote(String etag) {
+        return "\"" + etag + "\"";
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static String unescape(String value) {
+        return value.replace("&quot;", "\"").replace("&gt;", ">").replace("&lt;", "<").replace("&amp;", "&");
+    }
+
+    private static String md5(byte[] data) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("MD5").digest(data)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 保存在内存中的对象
+     */
+    private static final class StubObject {
+
+        private final byte[] data;
+
+        private final String contentType;
+
+        private final String etag;
+
+        private final Instant lastModified = Instant.now();
+
+        private StubObject(byte[] data, String contentType) {
+            this.data = data;
+            this.contentType = contentType;
+            this.etag = md5(data);
+        }
+    }
+}
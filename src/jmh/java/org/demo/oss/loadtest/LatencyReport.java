@@ -0,0 +1,207 @@
+package org.demo.oss.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 压测结果统计
+ * 每种请求类型的耗时记录在HdrHistogram中，精度为3位有效数字，单位微秒；同时统计成功次数、失败次数和传输字节数。
+ * 预热结束前的请求只计入进度输出，不计入最终报告。
+ * @author moxiaoli
+ */
+public class LatencyReport {
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+
+    /**
+     * 进度输出使用 包括预热期间的请求
+     */
+    private final LongAdder intervalRequests = new LongAdder();
+
+    private final LongAdder intervalErrors = new LongAdder();
+
+    private volatile boolean recording;
+
+    private long recordStart;
+
+    private long recordEnd;
+
+    public LatencyReport() {
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new Stats());
+        }
+    }
+
+    /**
+     * 预热结束 开始计入报告
+     */
+    public void startRecording() {
+        recordStart = System.nanoTime();
+        recording = true;
+    }
+
+    /**
+     * 压测结束 之后完成的请求不再计入报告
+     */
+    public void stopRecording() {
+        recording = false;
+        recordEnd = System.nanoTime();
+    }
+
+    /**
+     * 记录一次成功的请求
+     * @param operation 请求类型
+     * @param nanos 耗时 纳秒
+     * @param bytes 上传或下载的字节数
+     */
+    public void success(Operation operation, long nanos, long bytes) {
+        intervalRequests.increment();
+        if (!recording) {
+            return;
+        }
+        Stats s = stats.get(operation);
+        s.latency.recordValue(Math.min(MAX_LATENCY_MICROS, Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos))));
+        s.bytes.add(bytes);
+    }
+
+    /**
+     * 记录一次失败的请求 失败的请求不计入耗时分布
+     * @param operation 请求类型
+     */
+    public void error(Operation operation) {
+        intervalRequests.increment();
+        intervalErrors.increment();
+        if (recording) {
+            stats.get(operation).errors.increment();
+        }
+    }
+
+    /**
+     * 获取并清零上次调用以来的请求数和失败数 用于进度输出
+     * @return 请求数和失败数
+     */
+    public long[] drainInterval() {
+        return new long[]{intervalRequests.sumThenReset(), intervalErrors.sumThenReset()};
+    }
+
+    /**
+     * 计入报告的失败请求总数
+     */
+    public long totalErrors() {
+        long errors = 0;
+        for (Stats s : stats.values()) {
+            errors += s.errors.sum();
+        }
+        return errors;
+    }
+
+    /**
+     * 输出报告
+     * @param out 输出流
+     */
+    public void print(PrintStream out) {
+        double seconds = elapsedSeconds();
+        out.printf(Locale.ROOT, "%-14s %9s %7s %10s %9s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "errors", "ops/s", "MB/s", "p50(ms)", "p90(ms)", "p99(ms)", "p99.9(ms)", "max(ms)");
+        Histogram total = new Histogram(MAX_LATENCY_MICROS, 3);
+        long totalErrors = 0;
+        long totalBytes = 0;
+        for (Map.Entry<Operation, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+            Histogram latency = s.latency.copy();
+            if (latency.getTotalCount() == 0 && s.errors.sum() == 0) {
+                continue;
+            }
+            total.add(latency);
+            totalErrors += s.errors.sum();
+            totalBytes += s.bytes.sum();
+            printRow(out, entry.getKey().getCode(), latency, s.errors.sum(), s.bytes.sum(), seconds);
+        }
+        printRow(out, "total", total, totalErrors, totalBytes, seconds);
+        out.printf(Locale.ROOT, "统计时长%.1fs%n", seconds);
+    }
+
+    /**
+     * 写入报告文件 以.csv结尾时写入CSV格式 否则与控制台输出相同
+     * @param file 文件路径
+     */
+    public void write(String file) throws IOException {
+        Path path = Paths.get(file);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        if (!file.toLowerCase(Locale.ROOT).endsWith(".csv")) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(path), true, "UTF-8")) {
+                print(out);
+            }
+            return;
+        }
+        double seconds = elapsedSeconds();
+        List<String> lines = new ArrayList<>();
+        lines.add("operation,count,errors,ops_per_sec,mb_per_sec,p50_ms,p90_ms,p99_ms,p999_ms,max_ms");
+        for (Map.Entry<Operation, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+            Histogram latency = s.latency.copy();
+            StringBuilder line = new StringBuilder(entry.getKey().getCode())
+                    .append(',').append(latency.getTotalCount())
+                    .append(',').append(s.errors.sum())
+                    .append(',').append(format(latency.getTotalCount() / seconds))
+                    .append(',').append(format(s.bytes.sum() / 1048576.0 / seconds));
+            for (double percentile : PERCENTILES) {
+                line.append(',').append(format(latency.getValueAtPercentile(percentile) / 1000.0));
+            }
+            line.append(',').append(format(latency.getMaxValue() / 1000.0));
+            lines.add(line.toString());
+        }
+        Files.write(path, lines, StandardCharsets.UTF_8);
+    }
+
+    private static void printRow(PrintStream out, String name, Histogram latency, long errors, long bytes, double seconds) {
+        out.printf(Locale.ROOT, "%-14s %9d %7d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                name, latency.getTotalCount(), errors, latency.getTotalCount() / seconds, bytes / 1048576.0 / seconds,
+                latency.getValueAtPercentile(PERCENTILES[0]) / 1000.0,
+                latency.getValueAtPercentile(PERCENTILES[1]) / 1000.0,
+                latency.getValueAtPercentile(PERCENTILES[2]) / 1000.0,
+                latency.getValueAtPercentile(PERCENTILES[3]) / 1000.0,
+                latency.getMaxValue() / 1000.0);
+    }
+
+    private double elapsedSeconds() {
+        long end = recording ? System.nanoTime() : recordEnd;
+        return Math.max(1e-3, (end - recordStart) / 1e9);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * 一种请求类型的统计
+     */
+    private static final class Stats {
+
+        private final ConcurrentHistogram latency = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+
+        private final LongAdder errors = new LongAdder();
+
+        private final LongAdder bytes = new LongAdder();
+    }
+}
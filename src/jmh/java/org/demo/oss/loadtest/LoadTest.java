@@ -0,0 +1,353 @@
+package org.demo.oss.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.ConnectionPool;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 端到端压测
+ * 启动{@link LoadTestEnvironment}后先通过上传接口准备文件和图片，再由多个客户端并发调用上传、外链、下载、
+ * 图片下载和列举接口。每个客户端收到响应后立即发出下一个请求（闭环压测），请求类型和上传文件大小按权重随机选择。
+ * 结束后输出每种请求的吞吐量和耗时分位数。
+ * <p>
+ * 运行方式：mvn -Pjmh test-compile exec:exec@loadtest -Dloadtest.args="backend=oss concurrency=32 duration=2m"
+ * @author moxiaoli
+ */
+public class LoadTest {
+
+    /**
+     * 压测文件的路径前缀 用于从返回的地址中取出文件名
+     */
+    private static final String PATH_PREFIX = "lt";
+
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+    private static final MediaType JPEG = MediaType.parse("image/jpeg");
+
+    /**
+     * 输出请求失败原因的最大次数
+     */
+    private static final int MAX_LOGGED_ERRORS = 20;
+
+    private final LoadTestOptions options;
+
+    private final OkHttpClient client;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final String baseUrl;
+
+    private final WeightedChoice<DataSize> sizes;
+
+    private final WeightedChoice<Operation> mix;
+
+    /**
+     * 每种上传大小的文件内容 所有客户端共用
+     */
+    private final List<byte[]> payloads = new ArrayList<>();
+
+    private final List<String> seedKeys = new ArrayList<>();
+
+    private final List<String> imageKeys = new ArrayList<>();
+
+    private final LatencyReport report = new LatencyReport();
+
+    private final AtomicInteger loggedErrors = new AtomicInteger();
+
+    private volatile boolean running = true;
+
+    public LoadTest(LoadTestOptions options, String baseUrl) {
+        this.options = options;
+        this.baseUrl = baseUrl;
+        this.sizes = options.sizeChoice();
+        this.mix = options.mixChoice();
+        this.client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(options.getConcurrency() + 4, 5, TimeUnit.MINUTES))
+                .connectTimeout(5, TimeUnit.SECONDS)
+                .readTimeout(2, TimeUnit.MINUTES)
+                .writeTimeout(2, TimeUnit.MINUTES)
+                .retryOnConnectionFailure(false)
+                .build();
+        Random random = new Random(42);
+        for (DataSize size : sizes.values()) {
+            byte[] payload = new byte[(int) size.toBytes()];
+            random.nextBytes(payload);
+            payloads.add(payload);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        System.out.println("压测参数：" + options);
+        try (LoadTestEnvironment environment = LoadTestEnvironment.start(options)) {
+            System.out.println("应用已启动：" + environment.getBaseUrl() + "，存储服务商：" + environment.getStorageCode());
+            LoadTest loadTest = new LoadTest(options, environment.getBaseUrl());
+            try {
+                loadTest.seed();
+                loadTest.run();
+            } finally {
+                loadTest.shutdown();
+            }
+            loadTest.report.print(System.out);
+            if (options.getReport() != null && !options.getReport().isEmpty()) {
+                loadTest.report.write(options.getReport());
+                System.out.println("报告已写入：" + options.getReport());
+            }
+            System.out.println("存根存储服务中的对象数：" + environment.getStoredObjects());
+        }
+    }
+
+    /**
+     * 通过上传接口准备下载和图片下载使用的文件
+     */
+    private void seed() throws IOException {
+        Random random = new Random(7);
+        for (int i = 0; i < options.getSeedObjects(); i++) {
+            byte[] payload = payloads.get(sizes.values().indexOf(sizes.next(random)));
+            seedKeys.add(upload(PATH_PREFIX + "/seed", "seed-" + i + ".bin", payload, OCTET_STREAM));
+        }
+        for (int i = 0; i < options.getSeedImages(); i++) {
+            imageKeys.add(upload(PATH_PREFIX + "/images", "image-" + i + ".jpg", image(random), JPEG));
+        }
+        System.out.println("已准备" + seedKeys.size() + "个文件和" + imageKeys.size() + "张图片");
+    }
+
+    /**
+     * 启动客户端 预热后统计指定时长
+     */
+    private void run() throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(options.getConcurrency(), runnable -> {
+            Thread thread = new Thread(runnable, "loadtest-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < options.getConcurrency(); i++) {
+            int worker = i;
+            workers.execute(() -> work(worker));
+        }
+        System.out.println("预热" + options.getWarmup().getSeconds() + "s");
+        progress(options.getWarmup().toNanos(), "预热");
+        report.startRecording();
+        System.out.println("开始统计 " + options.getDuration().getSeconds() + "s");
+        progress(options.getDuration().toNanos(), "压测");
+        report.stopRecording();
+        running = false;
+        workers.shutdown();
+        if (!workers.awaitTermination(2, TimeUnit.MINUTES)) {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * 等待指定时长 按间隔输出吞吐量
+     */
+    private void progress(long nanos, String phase) throws InterruptedException {
+        long intervalNanos = options.getInterval().toNanos();
+        long end = System.nanoTime() + nanos;
+        long last = System.nanoTime();
+        report.drainInterval();
+        while (true) {
+            long remaining = end - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            TimeUnit.NANOSECONDS.sleep(intervalNanos > 0 ? Math.min(remaining, intervalNanos) : remaining);
+            if (intervalNanos > 0) {
+                long now = System.nanoTime();
+                long[] interval = report.drainInterval();
+                System.out.printf("[%s] %.1f req/s，失败%d%n", phase, interval[0] * 1e9 / (now - last), interval[1]);
+                last = now;
+            }
+        }
+    }
+
+    /**
+     * 一个客户端的请求循环
+     * @param worker 客户端序号
+     */
+    private void work(int worker) {
+        Random random = ThreadLocalRandom.current();
+        int sequence = 0;
+        while (running) {
+            Operation operation = mix.next(random);
+            long start = System.nanoTime();
+            try {
+                long bytes = execute(operation, random, worker, sequence++);
+                report.success(operation, System.nanoTime() - start, bytes);
+            } catch (IOException | RuntimeException e) {
+                report.error(operation);
+                if (loggedErrors.incrementAndGet() <= MAX_LOGGED_ERRORS) {
+                    System.err.println(operation.getCode() + "请求失败：" + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 发出一个请求
+     * @return 上传或下载的字节数
+     */
+    private long execute(Operation operation, Random random, int worker, int sequence) throws IOException {
+        switch (operation) {
+            case UPLOAD: {
+                byte[] payload = payloads.get(sizes.values().indexOf(sizes.next(random)));
+                // 每个客户端循环覆盖写入固定数量的文件 存根存储服务占用的内存不随压测时长增长
+                String name = "w" + worker + "-" + (sequence % options.getUploadKeys()) + ".bin";
+                upload(PATH_PREFIX + "/upload", name, payload, OCTET_STREAM);
+                return payload.length;
+            }
+            case DOWNLOAD: {
+                HttpUrl url = url("/files/download").addQueryParameter("fileName", pick(seedKeys, random)).build();
+                ajax(new Request.Builder().url(url).build());
+                return 0;
+            }
+            case SERVE: {
+                HttpUrl url = url("/files/serve").addQueryParameter("fileName", pick(seedKeys, random)).build();
+                return read(new Request.Builder().url(url).build());
+            }
+            case DOWNLOAD_IMAGE: {
+                HttpUrl.Builder url = url("/files/downloadImage").addQueryParameter("fileName", pick(imageKeys, random));
+                if (options.getImageWidth() > 0) {
+                    url.addQueryParameter("width", String.valueOf(options.getImageWidth()));
+                }
+                return read(new Request.Builder().url(url.build()).build());
+            }
+            case LIST: {
+                HttpUrl url = url("/files/list")
+                        .addQueryParameter("prefix", PATH_PREFIX + "/seed/")
+                        .addQueryParameter("pageSize", String.valueOf(options.getListPageSize()))
+                        .build();
+                ajax(new Request.Builder().url(url).build());
+                return 0;
+            }
+            default:
+                throw new IllegalStateException("不支持的请求类型：" + operation);
+        }
+    }
+
+    /**
+     * 调用上传接口
+     * @return 上传后的文件名
+     */
+    private String upload(String pathName, String fileName, byte[] data, MediaType mediaType) throws IOException {
+        RequestBody body = new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("file", fileName, RequestBody.create(data, mediaType))
+                .addFormDataPart("pathName", pathName)
+                .build();
+        JsonNode result = ajax(new Request.Builder().url(url("/files/upload").build()).post(body).build());
+        String url = result.path("url").asText();
+        int index = url.indexOf("/" + pathName + "/");
+        if (index < 0) {
+            throw new IOException("无法从返回的地址中取出文件名：" + url);
+        }
+        return url.substring(index + 1);
+    }
+
+    /**
+     * 调用返回AjaxResult的接口
+     * @return 返回数据
+     */
+    private JsonNode ajax(Request request) throws IOException {
+        try (Response response = client.newCall(request).execute()) {
+            ResponseBody body = response.body();
+            String text = body == null ? "" : body.string();
+            if (!response.isSuccessful()) {
+                throw new IOException("HTTP " + response.code() + " " + request.url().encodedPath());
+            }
+            JsonNode result = objectMapper.readTree(text);
+            if (result.path("code").asInt() != 200) {
+                throw new IOException(request.url().encodedPath() + "返回错误：" + result.path("msg").asText());
+            }
+            return result.path("data");
+        }
+    }
+
+    /**
+     * 调用返回文件内容的接口 读完全部内容
+     * @return 读取的字节数
+     */
+    private long read(Request request) throws IOException {
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("HTTP " + response.code() + " " + request.url().encodedPath());
+            }
+            ResponseBody body = response.body();
+            if (body == null) {
+                return 0;
+            }
+            BufferedSource source = body.source();
+            long total = 0;
+            while (!source.exhausted()) {
+                long size = source.getBuffer().size();
+                total += size;
+                source.skip(size);
+            }
+            return total;
+        }
+    }
+
+    private HttpUrl.Builder url(String path) {
+        return HttpUrl.get(baseUrl + path).newBuilder();
+    }
+
+    private static String pick(List<String> keys, Random random) {
+        if (keys.isEmpty()) {
+            throw new IllegalStateException("没有可下载的文件");
+        }
+        return keys.get(random.nextInt(keys.size()));
+    }
+
+    /**
+     * 生成一张1920x1080的JPEG图片 渐变背景加随机色块 压缩后的大小接近普通照片
+     */
+    private static byte[] image(Random random) throws IOException {
+        BufferedImage image = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setPaint(new GradientPaint(0, 0, new Color(random.nextInt()), 1920, 1080, new Color(random.nextInt())));
+            graphics.fillRect(0, 0, 1920, 1080);
+            for (int i = 0; i < 400; i++) {
+                graphics.setColor(new Color(random.nextInt()));
+                graphics.fillOval(random.nextInt(1920), random.nextInt(1080), 20 + random.nextInt(120), 20 + random.nextInt(120));
+            }
+        } finally {
+            graphics.dispose();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    private void shutdown() {
+        running = false;
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+}
@@ -0,0 +1,176 @@
+package org.demo.oss.loadtest;
+
+import org.demo.oss.OssApplication;
+import org.demo.oss.benchmark.S3StubServer;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 压测的被测环境
+ * 在同一个进程中启动S3兼容的存根存储服务、H2内存数据库（MySQL兼容模式）和完整的应用，应用监听随机端口。
+ * 数据库中只有一个存储服务商，指向存根存储服务，并设置为当前启用的存储服务商。
+ * @author moxiaoli
+ */
+public class LoadTestEnvironment implements AutoCloseable {
+
+    private static final String BUCKET = "loadtest";
+
+    /**
+     * 关闭最后一个连接后保留内存数据库 应用的连接池和初始化连接使用同一个数据库
+     */
+    private static final String JDBC_URL =
+            "jdbc:h2:mem:oss-loadtest;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE;DB_CLOSE_DELAY=-1";
+
+    private final S3StubServer stub;
+
+    private final Path uploadDir;
+
+    private final ConfigurableApplicationContext context;
+
+    private final String storageCode;
+
+    private LoadTestEnvironment(S3StubServer stub, Path uploadDir, ConfigurableApplicationContext context,
+                                String storageCode) {
+        this.stub = stub;
+        this.uploadDir = uploadDir;
+        this.context = context;
+        this.storageCode = storageCode;
+    }
+
+    /**
+     * 启动被测环境
+     * @param options 压测参数
+     * @return 已启动的环境
+     */
+    public static LoadTestEnvironment start(LoadTestOptions options) throws IOException, SQLException {
+        S3StubServer stub = S3StubServer.start(Math.max(8, options.getConcurrency() * 2));
+        Path uploadDir = null;
+        try {
+            String storageCode = "loadtest-" + options.getBackend();
+            initDatabase(stub, options.getBackend(), storageCode);
+            uploadDir = Files.createTempDirectory("oss-loadtest");
+            List<String> args = new ArrayList<>();
+            args.add("--server.port=0");
+            args.add("--spring.main.banner-mode=off");
+            args.add("--spring.datasource.driver-class-name=org.h2.Driver");
+            args.add("--spring.datasource.url=" + JDBC_URL);
+            args.add("--spring.datasource.username=sa");
+            args.add("--spring.datasource.password=");
+            args.add("--web.resource-path=" + uploadDir.toAbsolutePath() + "/");
+            // 压测期间不与存储服务核对 避免后台任务干扰结果
+            args.add("--oss.catalog.reconcile-initial-delay=86400000");
+            args.add("--oss.dedup.gc-initial-delay=86400000");
+            args.add("--mybatis-plus.global-config.banner=false");
+            args.add("--logging.level.root=WARN");
+            // 关闭应用时存储客户端和线程池的线程由后续的清理结束 不输出线程泄漏告警
+            args.add("--logging.level.org.apache.catalina.loader=ERROR");
+            args.addAll(options.getApplicationArgs());
+            ConfigurableApplicationContext context = SpringApplication.run(OssApplication.class,
+                    args.toArray(new String[0]));
+            return new LoadTestEnvironment(stub, uploadDir, context, storageCode);
+        } catch (IOException | SQLException | RuntimeException e) {
+            stub.close();
+            if (uploadDir != null) {
+                deleteDirectory(uploadDir);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 建表并写入指向存根存储服务的存储服务商配置
+     */
+    private static void initDatabase(S3StubServer stub, String backend, String storageCode) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(JDBC_URL, "sa", "")) {
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource("loadtest/schema-h2.sql"));
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO `storage` "
+                    + "(`storage`, storage_type, storage_name, host, endpoint, access_key, secret_key, bucket_name) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+                statement.setString(1, storageCode);
+                statement.setInt(2, "minio".equals(backend) ? 1 : 2);
+                statement.setString(3, "压测存根存储");
+                statement.setString(4, stub.getEndpoint());
+                statement.setString(5, stub.getEndpoint());
+                statement.setString(6, "loadtest");
+                statement.setString(7, "loadtest-secret");
+                statement.setString(8, BUCKET);
+                statement.executeUpdate();
+            }
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO sys_setting "
+                    + "(code, `name`, description, `value`, `status`) VALUES ('storage', ?, ?, ?, 0)")) {
+                statement.setString(1, "存储桶配置");
+                statement.setString(2, "用于配置对象存储服务商");
+                statement.setString(3, storageCode);
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * 获取应用的访问地址
+     * @return 形如http://127.0.0.1:端口 的地址
+     */
+    public String getBaseUrl() {
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        return "http://127.0.0.1:" + port;
+    }
+
+    /**
+     * 获取存储服务商编码
+     */
+    public String getStorageCode() {
+        return storageCode;
+    }
+
+    /**
+     * 获取存根存储服务保存的对象数
+     */
+    public int getStoredObjects() {
+        return stub.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            context.close();
+        } finally {
+            stub.close();
+            deleteDirectory(uploadDir);
+        }
+    }
+
+    private static void deleteDirectory(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException exc) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,243 @@
+package org.demo.oss.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 压测参数
+ * 命令行中 key=value 形式的参数为压测参数，--开头的参数原样传给被测应用，可以覆盖应用的任意配置，
+ * 如 --oss.disk-cache.enabled=true。
+ * @author moxiaoli
+ */
+public class LoadTestOptions {
+
+    /**
+     * 被测的存储类型 minio或oss
+     */
+    private String backend = "minio";
+
+    /**
+     * 并发的客户端数 每个客户端收到响应后立即发出下一个请求
+     */
+    private int concurrency = 16;
+
+    /**
+     * 预热时长 预热期间的请求不计入报告
+     */
+    private Duration warmup = Duration.ofSeconds(10);
+
+    /**
+     * 计入报告的压测时长
+     */
+    private Duration duration = Duration.ofSeconds(60);
+
+    /**
+     * 上传文件大小的分布
+     */
+    private String sizes = "4KB:60,64KB:25,1MB:12,8MB:3";
+
+    /**
+     * 请求类型的分布 可选upload、download、serve、downloadImage、list
+     */
+    private String mix = "upload:30,serve:30,download:15,downloadImage:15,list:10";
+
+    /**
+     * 压测前上传的文件数 供下载请求随机读取
+     */
+    private int seedObjects = 100;
+
+    /**
+     * 压测前上传的图片数 供图片下载请求随机读取
+     */
+    private int seedImages = 10;
+
+    /**
+     * 图片下载请求的缩放宽度 为0时原样下载
+     */
+    private int imageWidth = 320;
+
+    /**
+     * 列举请求每页的对象数
+     */
+    private int listPageSize = 100;
+
+    /**
+     * 每个客户端循环覆盖写入的文件数 控制存根存储服务占用的内存
+     */
+    private int uploadKeys = 32;
+
+    /**
+     * 进度输出间隔 为0时不输出
+     */
+    private Duration interval = Duration.ofSeconds(10);
+
+    /**
+     * 报告文件 为空时只输出到控制台 以.csv结尾时输出CSV格式
+     */
+    private String report;
+
+    /**
+     * 传给被测应用的参数
+     */
+    private final List<String> applicationArgs = new ArrayList<>();
+
+    /**
+     * 解析命令行参数
+     * @param args 命令行参数
+     * @return 压测参数
+     */
+    public static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                options.applicationArgs.add(arg);
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("参数格式应为key=value：" + arg);
+            }
+            values.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            options.set(entry.getKey(), entry.getValue());
+        }
+        if (!"minio".equals(options.backend) && !"oss".equals(options.backend)) {
+            throw new IllegalArgumentException("不支持的存储类型：" + options.backend);
+        }
+        if (options.concurrency <= 0 || options.seedObjects <= 0 || options.uploadKeys <= 0) {
+            throw new IllegalArgumentException("concurrency、seedObjects和uploadKeys必须大于0");
+        }
+        return options;
+    }
+
+    private void set(String key, String value) {
+        switch (key) {
+            case "backend":
+                backend = value;
+                break;
+            case "concurrency":
+                concurrency = Integer.parseInt(value);
+                break;
+            case "warmup":
+                warmup = DurationStyle.detectAndParse(value);
+                break;
+            case "duration":
+                duration = DurationStyle.detectAndParse(value);
+                break;
+            case "sizes":
+                sizes = value;
+                break;
+            case "mix":
+                mix = value;
+                break;
+            case "seedObjects":
+                seedObjects = Integer.parseInt(value);
+                break;
+            case "seedImages":
+                seedImages = Integer.parseInt(value);
+                break;
+            case "imageWidth":
+                imageWidth = Integer.parseInt(value);
+                break;
+            case "listPageSize":
+                listPageSize = Integer.parseInt(value);
+                break;
+            case "uploadKeys":
+                uploadKeys = Integer.parseInt(value);
+                break;
+            case "interval":
+                interval = DurationStyle.detectAndParse(value);
+                break;
+            case "report":
+                report = value;
+                break;
+            default:
+                throw new IllegalArgumentException("不支持的参数：" + key);
+        }
+    }
+
+    /**
+     * 解析文件大小的分布
+     */
+    public WeightedChoice<DataSize> sizeChoice() {
+        return WeightedChoice.parse(sizes, DataSize::parse);
+    }
+
+    /**
+     * 解析请求类型的分布
+     */
+    public WeightedChoice<Operation> mixChoice() {
+        return WeightedChoice.parse(mix, Operation::of);
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public Duration getWarmup() {
+        return warmup;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public String getSizes() {
+        return sizes;
+    }
+
+    public String getMix() {
+        return mix;
+    }
+
+    public int getSeedObjects() {
+        return seedObjects;
+    }
+
+    public int getSeedImages() {
+        return seedImages;
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public int getListPageSize() {
+        return listPageSize;
+    }
+
+    public int getUploadKeys() {
+        return uploadKeys;
+    }
+
+    public Duration getInterval() {
+        return interval;
+    }
+
+    public String getReport() {
+        return report;
+    }
+
+    public List<String> getApplicationArgs() {
+        return applicationArgs;
+    }
+
+    @Override
+    public String toString() {
+        return "backend=" + backend + " concurrency=" + concurrency + " warmup=" + warmup + " duration=" + duration
+                + " sizes=" + sizes + " mix=" + mix + " seedObjects=" + seedObjects + " seedImages=" + seedImages
+                + " imageWidth=" + imageWidth;
+    }
+}
@@ -0,0 +1,57 @@
+package org.demo.oss.loadtest;
+
+/**
+ * 压测的请求类型 与文件接口一一对应
+ * @author moxiaoli
+ */
+public enum Operation {
+
+    /**
+     * 上传文件 POST /files/upload
+     */
+    UPLOAD("upload"),
+
+    /**
+     * 获取文件外链 GET /files/download
+     */
+    DOWNLOAD("download"),
+
+    /**
+     * 下载文件内容 GET /files/serve
+     */
+    SERVE("serve"),
+
+    /**
+     * 下载缩放后的图片 GET /files/downloadImage
+     */
+    DOWNLOAD_IMAGE("downloadImage"),
+
+    /**
+     * 分页列举文件 GET /files/list
+     */
+    LIST("list");
+
+    private final String code;
+
+    Operation(String code) {
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * 按名称获取请求类型
+     * @param code 名称 如downloadImage
+     * @return 请求类型
+     */
+    public static Operation of(String code) {
+        for (Operation operation : values()) {
+            if (operation.code.equalsIgnoreCase(code)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("不支持的请求类型：" + code);
+    }
+}
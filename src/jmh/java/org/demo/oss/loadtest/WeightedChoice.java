@@ -0,0 +1,91 @@
+package org.demo.oss.loadtest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * 按权重随机选择
+ * 配置格式为逗号分隔的 值:权重，如 4KB:50,64KB:30,1MB:20，权重省略时为1。
+ * @author moxiaoli
+ */
+public class WeightedChoice<T> {
+
+    private final List<T> values = new ArrayList<>();
+
+    /**
+     * 累计权重 与values一一对应
+     */
+    private final List<Integer> cumulative = new ArrayList<>();
+
+    private int total;
+
+    /**
+     * 解析配置
+     * @param spec 配置
+     * @param parser 值的解析方法
+     * @return 按权重随机选择
+     */
+    public static <T> WeightedChoice<T> parse(String spec, Function<String, T> parser) {
+        WeightedChoice<T> choice = new WeightedChoice<>();
+        for (String item : spec.split(",")) {
+            String trimmed = item.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int colon = trimmed.lastIndexOf(':');
+            String value = colon < 0 ? trimmed : trimmed.substring(0, colon).trim();
+            int weight = colon < 0 ? 1 : Integer.parseInt(trimmed.substring(colon + 1).trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("权重不能为负数：" + trimmed);
+            }
+            if (weight > 0) {
+                choice.add(parser.apply(value), weight);
+            }
+        }
+        if (choice.total == 0) {
+            throw new IllegalArgumentException("至少需要一个权重大于0的值：" + spec);
+        }
+        return choice;
+    }
+
+    private void add(T value, int weight) {
+        total += weight;
+        values.add(value);
+        cumulative.add(total);
+    }
+
+    /**
+     * 随机选择一个值
+     * @param random 随机数
+     * @return 选中的值
+     */
+    public T next(Random random) {
+        int point = random.nextInt(total);
+        for (int i = 0; i < values.size(); i++) {
+            if (point < cumulative.get(i)) {
+                return values.get(i);
+            }
+        }
+        return values.get(values.size() - 1);
+    }
+
+    /**
+     * 获取全部值
+     */
+    public List<T> values() {
+        return Collections.unmodifiableList(values);
+    }
+
+    /**
+     * 获取值的权重占比
+     * @param index 值的下标
+     * @return 0到1之间的占比
+     */
+    public double share(int index) {
+        int weight = cumulative.get(index) - (index == 0 ? 0 : cumulative.get(index - 1));
+        return (double) weight / total;
+    }
+}
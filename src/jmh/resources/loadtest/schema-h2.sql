@@ -0,0 +1,71 @@
+-- 压测使用的H2数据表 与sql/oss.sql的表结构一致 去掉了H2不支持的字符集、排序规则和存储引擎
+-- H2的约束名在整个库中唯一 object_blob_ref的唯一键改名为uk_blob_ref_storage_key
+-- 数据库连接使用MySQL兼容模式：MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE
+
+CREATE TABLE `storage` (
+  `id` int NOT NULL AUTO_INCREMENT,
+  `storage` varchar(255) NULL DEFAULT NULL,
+  `storage_type` int NULL DEFAULT NULL,
+  `storage_name` varchar(255) NULL DEFAULT NULL,
+  `host` varchar(255) NULL DEFAULT NULL,
+  `endpoint` varchar(255) NULL DEFAULT NULL,
+  `access_key` varchar(255) NULL DEFAULT NULL,
+  `secret_key` varchar(255) NULL DEFAULT NULL,
+  `bucket_name` varchar(255) NULL DEFAULT NULL,
+  `icon` varchar(255) NULL DEFAULT NULL,
+  PRIMARY KEY (`id`)
+);
+
+CREATE TABLE `sys_setting` (
+  `id` int NOT NULL AUTO_INCREMENT,
+  `code` varchar(255) NULL DEFAULT NULL,
+  `name` varchar(255) NULL DEFAULT NULL,
+  `description` varchar(255) NULL DEFAULT NULL,
+  `value` varchar(255) NULL DEFAULT NULL,
+  `status` int NULL DEFAULT NULL,
+  PRIMARY KEY (`id`)
+);
+
+CREATE TABLE `object_meta` (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `storage` varchar(64) NOT NULL,
+  `object_key` varchar(700) NOT NULL,
+  `size` bigint NOT NULL DEFAULT 0,
+  `content_type` varchar(255) NULL DEFAULT NULL,
+  `checksum` varchar(64) NULL DEFAULT NULL,
+  `thumb_key` varchar(700) NULL DEFAULT NULL,
+  `last_modified` datetime(3) NULL DEFAULT NULL,
+  `create_time` datetime(3) NOT NULL,
+  `update_time` datetime(3) NOT NULL,
+  `sync_time` datetime(3) NOT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_storage_key` (`storage`, `object_key`)
+);
+
+CREATE TABLE `object_blob` (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `storage` varchar(64) NOT NULL,
+  `sha256` char(64) NOT NULL,
+  `blob_key` varchar(700) NOT NULL,
+  `url` varchar(1024) NOT NULL,
+  `size` bigint NOT NULL DEFAULT 0,
+  `content_type` varchar(255) NULL DEFAULT NULL,
+  `ref_count` int NOT NULL DEFAULT 0,
+  `create_time` datetime(3) NOT NULL,
+  `update_time` datetime(3) NOT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_storage_sha256` (`storage`, `sha256`),
+  KEY `idx_ref_count_update_time` (`ref_count`, `update_time`)
+);
+
+CREATE TABLE `object_blob_ref` (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `storage` varchar(64) NOT NULL,
+  `object_key` varchar(700) NOT NULL,
+  `blob_id` bigint NOT NULL,
+  `create_time` datetime(3) NOT NULL,
+  `update_time` datetime(3) NOT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_blob_ref_storage_key` (`storage`, `object_key`),
+  KEY `idx_blob_id` (`blob_id`)
+);
@@ -2,11 +2,13 @@ package org.demo.oss;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * 博客启动类
  */
 @SpringBootApplication
+@EnableScheduling
 public class OssApplication {
     public static void main(String[] args) {
         SpringApplication.run(OssApplication.class, args);
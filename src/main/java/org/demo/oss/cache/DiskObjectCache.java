@@ -0,0 +1,504 @@
+package org.demo.oss.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.model.ObjectInfo;
+import org.demo.oss.storage.StorageModeRegistry;
+import org.demo.oss.storage.enums.StorageType;
+import org.demo.oss.utils.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * minio和阿里OSS的本地磁盘缓存
+ * 下载过的对象保存在本地目录中，再次下载时查询对象的ETag和大小，一致时直接读取本地文件，不再从存储服务传输文件内容。
+ * 缓存按键的哈希分为多个分段，每段有独立的子目录、按访问顺序排列的索引和容量，超过容量时删除最久未访问的文件。
+ * 缓存文件以键的摘要、ETag和下载编号命名，启动时按文件名和修改时间重建索引，不需要单独保存索引文件。
+ * 每次下载都写入新的文件，被淘汰或者替换的文件在最后一个读取的请求关闭后才删除，不会删除或覆盖正在读取的文件。
+ * 同一个对象同时未命中时只有一个请求从存储服务下载，其他请求等待下载完成后读取本地文件。
+ * @author moxiaoli
+ */
+@Slf4j
+@Component
+public class DiskObjectCache {
+
+    /**
+     * 下载中的临时文件目录
+     */
+    private static final String TEMP_DIR = "tmp";
+
+    /**
+     * 可以直接用于文件名的ETag 其他ETag使用摘要
+     */
+    private static final Pattern SAFE_ETAG = Pattern.compile("[A-Za-z0-9-]{1,64}");
+
+    @Autowired
+    private OssProperties ossProperties;
+
+    private Path root;
+
+    private Shard[] shards;
+
+    /**
+     * 正在下载的对象 键的摘要和ETag -> 下载结果
+     */
+    private final Map<String, CompletableFuture<Void>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+    private final LongAdder bytesFetched = new LongAdder();
+
+    @PostConstruct
+    public void init() throws IOException {
+        OssProperties.DiskCache properties = ossProperties.getDiskCache();
+        if (!properties.isEnabled()) {
+            return;
+        }
+        root = StringUtils.isBlank(properties.getPath())
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "oss-cache")
+                : Paths.get(properties.getPath());
+        Path tempDir = root.resolve(TEMP_DIR);
+        Files.createDirectories(tempDir);
+        // 上次退出时未下载完成的临时文件
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(tempDir)) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+        }
+        int count = Math.max(1, properties.getShards());
+        long capacity = Math.max(1, properties.getMaxSize().toBytes() / count);
+        shards = new Shard[count];
+        long entries = 0;
+        long bytes = 0;
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(root.resolve(String.format("%02x", i)), capacity);
+            Files.createDirectories(shards[i].dir);
+            shards[i].load();
+            entries += shards[i].entries.size();
+            bytes += shards[i].bytes;
+        }
+        log.info("磁盘缓存已加载，目录：{}，文件数：{}，大小：{}", root, entries, bytes);
+    }
+
+    /**
+     * 判断对象是否可以缓存
+     * @param lease 存储方式的租约
+     * @param objectInfo 对象信息
+     * @return 是否可以缓存 本地存储、没有ETag或者超过单个对象大小限制的对象不缓存
+     */
+    public boolean isCacheable(StorageModeRegistry.Lease lease, ObjectInfo objectInfo) {
+        return shards != null
+                && lease.getStorageType() != StorageType.local
+                && !StringUtils.isBlank(objectInfo.getEtag())
+                && objectInfo.getSize() <= ossProperties.getDiskCache().getMaxObjectSize().toBytes();
+    }
+
+    /**
+     * 打开对象的本地缓存文件 未命中时先从存储服务下载
+     * 返回的缓存文件关闭前不会被删除 缓存淘汰或者替换该文件后仍然可以读取
+     * @param lease 存储方式的租约
+     * @param objectInfo 对象信息 用于校验缓存的ETag和大小
+     * @return 缓存文件 对象不可以缓存时返回null
+     * @throws IOException 本地文件读写失败
+     */
+    public CachedFile open(StorageModeRegistry.Lease lease, ObjectInfo objectInfo) throws IOException {
+        if (!isCacheable(lease, objectInfo)) {
+            return null;
+        }
+        String key = hashKey(lease, objectInfo.getName());
+        String etag = etagToken(objectInfo.getEtag());
+        String loadingKey = key + "_" + etag;
+        Shard shard = shardOf(key);
+        boolean waited = false;
+        while (true) {
+            CachedFile file = shard.open(key, etag, objectInfo.getSize());
+            if (file != null) {
+                // 等待其他请求下载完成的已经记为合并的未命中
+                if (!waited) {
+                    hits.increment();
+                }
+                bytesSaved.add(objectInfo.getSize());
+                return file;
+            }
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            CompletableFuture<Void> existing = loading.putIfAbsent(loadingKey, future);
+            if (existing != null) {
+                // 其他请求正在下载同一个对象 下载完成后重新查找
+                if (!waited) {
+                    coalesced.increment();
+                    waited = true;
+                }
+                try {
+                    existing.join();
+                } catch (CompletionException e) {
+                    throw e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause()
+                            : new RuntimeException("文件下载失败");
+                }
+                continue;
+            }
+            misses.increment();
+            try {
+                file = fetch(lease, objectInfo, shard, key, etag);
+                // 先移除再通知 等待的请求重新查找时不会再等到同一个结果
+                loading.remove(loadingKey, future);
+                future.complete(null);
+                return file;
+            } catch (IOException | RuntimeException e) {
+                loading.remove(loadingKey, future);
+                future.completeExceptionally(e instanceof IOException ? new UncheckedIOException((IOException) e) : e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 只打开已经缓存的文件 未命中时不下载 用于只读取一部分内容的区间请求
+     * @param lease 存储方式的租约
+     * @param objectInfo 对象信息 用于校验缓存的ETag和大小
+     * @return 缓存文件 未命中或者对象不可以缓存时返回null
+     * @throws IOException 本地文件读写失败
+     */
+    public CachedFile openIfCached(StorageModeRegistry.Lease lease, ObjectInfo objectInfo) throws IOException {
+        if (!isCacheable(lease, objectInfo)) {
+            return null;
+        }
+        String key = hashKey(lease, objectInfo.getName());
+        CachedFile file = shardOf(key).open(key, etagToken(objectInfo.getEtag()), objectInfo.getSize());
+        if (file != null) {
+            hits.increment();
+            bytesSaved.add(objectInfo.getSize());
+        }
+        return file;
+    }
+
+    /**
+     * 读取对象的内容 可以缓存的对象读取本地缓存文件
+     * @param lease 存储方式的租约
+     * @param objectInfo 对象信息
+     * @return 输入流
+     * @throws IOException 本地文件读写失败
+     */
+    public InputStream download(StorageModeRegistry.Lease lease, ObjectInfo objectInfo) throws IOException {
+        CachedFile file = open(lease, objectInfo);
+        if (file == null) {
+            return lease.getMode().download(objectInfo.getName());
+        }
+        return new FilterInputStream(Channels.newInputStream(file.getChannel())) {
+            @Override
+            public void close() throws IOException {
+                file.close();
+            }
+        };
+    }
+
+    /**
+     * 获取磁盘缓存的统计
+     * @return 命中次数hits、未命中次数misses、合并的并发未命中次数coalesced、命中率百分比hitRatio、淘汰次数evictions、
+     * 命中节省的下载字节数bytesSaved、从存储服务下载的字节数bytesFetched、缓存文件数entries和缓存大小size
+     */
+    public Map<String, Long> getMetrics() {
+        long entries = 0;
+        long size = 0;
+        if (shards != null) {
+            for (Shard shard : shards) {
+                synchronized (shard) {
+                    entries += shard.entries.size();
+                    size += shard.bytes;
+                }
+            }
+        }
+        long hitCount = hits.sum();
+        long requests = hitCount + misses.sum() + coalesced.sum();
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("hits", hitCount);
+        metrics.put("misses", misses.sum());
+        metrics.put("coalesced", coalesced.sum());
+        metrics.put("hitRatio", requests == 0 ? 0 : hitCount * 100 / requests);
+        metrics.put("evictions", evictions.sum());
+        metrics.put("bytesSaved", bytesSaved.sum());
+        metrics.put("bytesFetched", bytesFetched.sum());
+        metrics.put("entries", entries);
+        metrics.put("size", size);
+        return metrics;
+    }
+
+    /**
+     * 从存储服务下载到临时文件 校验大小后移动到分段目录并加入索引
+     */
+    private CachedFile fetch(StorageModeRegistry.Lease lease, ObjectInfo objectInfo, Shard shard, String key,
+                             String etag) throws IOException {
+        String id = UUID.randomUUID().toString();
+        Path tempFile = root.resolve(TEMP_DIR).resolve(id);
+        try {
+            long size;
+            try (InputStream inputStream = lease.getMode().download(objectInfo.getName())) {
+                size = Files.copy(inputStream, tempFile);
+            }
+            bytesFetched.add(size);
+            if (size != objectInfo.getSize()) {
+                // 下载期间对象被覆盖 不缓存本次的内容
+                log.warn("对象{}下载的大小{}与查询的大小{}不一致", objectInfo.getName(), size, objectInfo.getSize());
+                throw new RuntimeException("文件下载失败");
+            }
+            // 每次下载使用新的文件名 不覆盖可能正在被读取的旧文件
+            String fileName = key + "_" + etag + "_" + id;
+            Files.move(tempFile, shard.dir.resolve(fileName), StandardCopyOption.ATOMIC_MOVE);
+            return shard.add(key, new Entry(fileName, etag, size));
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private Shard shardOf(String key) {
+        return shards[Integer.parseInt(key.substring(0, 2), 16) % shards.length];
+    }
+
+    private String hashKey(StorageModeRegistry.Lease lease, String objectName) {
+        return DigestUtils.md5DigestAsHex((StorageModeRegistry.recordCode(lease.getStorageCode()) + "\n" + objectName)
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String etagToken(String etag) {
+        String unquoted = StringUtils.unquote(etag);
+        return SAFE_ETAG.matcher(unquoted).matches()
+                ? unquoted
+                : DigestUtils.md5DigestAsHex(unquoted.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 打开的缓存文件 关闭后才允许删除已经被淘汰或者替换的文件
+     */
+    public static final class CachedFile implements Closeable {
+
+        private final Shard shard;
+
+        private final Entry entry;
+
+        private final FileChannel channel;
+
+        private boolean closed;
+
+        private CachedFile(Shard shard, Entry entry, FileChannel channel) {
+            this.shard = shard;
+            this.entry = entry;
+            this.channel = channel;
+        }
+
+        public FileChannel getChannel() {
+            return channel;
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (shard) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            try {
+                channel.close();
+            } finally {
+                shard.release(entry);
+            }
+        }
+    }
+
+    /**
+     * 缓存的文件 读取数和删除标记由所在分段的锁保护
+     */
+    private static final class Entry {
+
+        private final String fileName;
+
+        private final String etag;
+
+        private final long size;
+
+        /**
+         * 正在读取该文件的请求数
+         */
+        private int readers;
+
+        /**
+         * 已经从索引中移除 最后一个读取的请求关闭后删除文件
+         */
+        private boolean discarded;
+
+        private Entry(String fileName, String etag, long size) {
+            this.fileName = fileName;
+            this.etag = etag;
+            this.size = size;
+        }
+    }
+
+    /**
+     * 缓存分段 索引、文件和容量都独立 查找、加入和淘汰都在分段内加锁
+     */
+    private final class Shard {
+
+        private final Path dir;
+
+        private final long capacity;
+
+        /**
+         * 键的摘要 -> 缓存的文件 按访问顺序排列
+         */
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        private long bytes;
+
+        private Shard(Path dir, long capacity) {
+            this.dir = dir;
+            this.capacity = capacity;
+        }
+
+        /**
+         * 按修改时间从旧到新重建索引 同一个键只保留最新的文件
+         */
+        private synchronized void load() throws IOException {
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                stream.forEach(files::add);
+            }
+            Map<Path, BasicFileAttributes> attributes = new LinkedHashMap<>();
+            for (Path file : files) {
+                attributes.put(file, Files.readAttributes(file, BasicFileAttributes.class));
+            }
+            files.sort(Comparator.comparing(file -> attributes.get(file).lastModifiedTime()));
+            for (Path file : files) {
+                // 文件名为 键的摘要_ETag_下载编号 ETag和下载编号中不含下划线
+                String fileName = file.getFileName().toString();
+                int index = fileName.indexOf('_');
+                if (index <= 0 || !attributes.get(file).isRegularFile()) {
+                    continue;
+                }
+                int end = fileName.indexOf('_', index + 1);
+                String etag = end < 0 ? fileName.substring(index + 1) : fileName.substring(index + 1, end);
+                put(fileName.substring(0, index), new Entry(fileName, etag, attributes.get(file).size()));
+            }
+            evict();
+        }
+
+        /**
+         * 打开命中的缓存文件 ETag或大小不一致的旧文件从索引中移除
+         * @return 缓存文件 未命中时返回null
+         */
+        private synchronized CachedFile open(String key, String etag, long size) throws IOException {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (!entry.etag.equals(etag) || entry.size != size) {
+                discard(entries.remove(key));
+                return null;
+            }
+            FileChannel channel;
+            try {
+                channel = FileChannel.open(dir.resolve(entry.fileName), StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                // 缓存文件被外部删除
+                entries.remove(key);
+                bytes -= entry.size;
+                return null;
+            }
+            entry.readers++;
+            return new CachedFile(this, entry, channel);
+        }
+
+        /**
+         * 加入下载完成的文件并打开 超过容量时淘汰最久未访问的文件
+         */
+        private synchronized CachedFile add(String key, Entry entry) throws IOException {
+            put(key, entry);
+            // 先打开再淘汰 刚加入的文件超过容量被淘汰时仍然可以读取
+            FileChannel channel = FileChannel.open(dir.resolve(entry.fileName), StandardOpenOption.READ);
+            entry.readers++;
+            evict();
+            return new CachedFile(this, entry, channel);
+        }
+
+        /**
+         * 读取的请求关闭缓存文件 已经移除的文件在最后一个请求关闭后删除
+         */
+        private synchronized void release(Entry entry) {
+            if (--entry.readers == 0 && entry.discarded) {
+                delete(entry);
+            }
+        }
+
+        private void put(String key, Entry entry) {
+            Entry previous = entries.put(key, entry);
+            bytes += entry.size;
+            discard(previous);
+        }
+
+        private void evict() {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (bytes > capacity && iterator.hasNext()) {
+                Entry entry = iterator.next();
+                iterator.remove();
+                evictions.increment();
+                discard(entry);
+            }
+        }
+
+        /**
+         * 从索引中移除的文件 没有请求正在读取时直接删除 否则等最后一个请求关闭后删除
+         * 已删除的文件不再计入缓存大小 正在读取的文件占用的磁盘空间在关闭后释放
+         */
+        private void discard(Entry entry) {
+            if (entry == null) {
+                return;
+            }
+            bytes -= entry.size;
+            entry.discarded = true;
+            if (entry.readers == 0) {
+                delete(entry);
+            }
+        }
+
+        private void delete(Entry entry) {
+            try {
+                Files.deleteIfExists(dir.resolve(entry.fileName));
+            } catch (IOException e) {
+                log.warn("缓存文件{}删除失败：{}", entry.fileName, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.demo.oss.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.storage.StorageMode;
+import org.demo.oss.storage.StorageModeRegistry;
+import org.demo.oss.storage.enums.StorageType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 文件外链缓存
+ * minio和阿里OSS的文件外链是带签名的临时链接，每次获取都要重新计算签名。同一个文件在同一个有效时长下的链接被缓存，
+ * 剩余有效时长不少于配置的比例时直接返回，页面多次加载得到相同的链接，浏览器和CDN的缓存也能命中。
+ * 缓存按键的哈希分段，每段是一个按访问顺序淘汰的LinkedHashMap，只在段内加锁。
+ * 本地存储的外链不需要签名，不缓存。
+ * @author moxiaoli
+ */
+@Slf4j
+@Component
+public class PresignedUrlCache {
+
+    /**
+     * 缓存的分段数
+     */
+    private static final int SEGMENTS = 16;
+
+    /**
+     * 外链的默认有效时长 与存储方式获取外链的默认有效时长一致
+     */
+    private static final int DEFAULT_DURATION = 7;
+    private static final TimeUnit DEFAULT_UNIT = TimeUnit.DAYS;
+
+    @Autowired
+    private OssProperties ossProperties;
+
+    private Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        int capacity = Math.max(1, ossProperties.getCache().getPresignMaxEntries() / SEGMENTS);
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    /**
+     * 获取默认有效时长的文件外链
+     * @param lease 存储方式的租约
+     * @param objectName 文件名
+     * @return 文件外链
+     */
+    public String getObjectUrl(StorageModeRegistry.Lease lease, String objectName) {
+        return getObjectUrl(lease, objectName, DEFAULT_DURATION, DEFAULT_UNIT);
+    }
+
+    /**
+     * 获取文件外链 缓存的外链剩余有效时长足够时直接返回
+     * @param lease 存储方式的租约
+     * @param objectName 文件名
+     * @param duration 有效时长
+     * @param unit 有效时长单位
+     * @return 文件外链
+     */
+    public String getObjectUrl(StorageModeRegistry.Lease lease, String objectName, int duration, TimeUnit unit) {
+        StorageMode storageMode = lease.getMode();
+        if (lease.getStorageType() == StorageType.local || ossProperties.getCache().getPresignMaxEntries() <= 0) {
+            return storageMode.getObjectUrl(objectName, duration, unit);
+        }
+        long durationMillis = unit.toMillis(duration);
+        String key = StorageModeRegistry.recordCode(lease.getStorageCode()) + "\n" + durationMillis + "\n" + objectName;
+        Segment segment = segments[(key.hashCode() & Integer.MAX_VALUE) % SEGMENTS];
+        long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+        }
+        // 存储服务商配置修改后存储方式会重建 之前的签名不再使用
+        if (entry != null && entry.storageMode == storageMode
+                && entry.expiresAt - now >= durationMillis * ossProperties.getCache().getPresignMinRemaining()) {
+            hits.increment();
+            return entry.url;
+        }
+        misses.increment();
+        // 以签名之前的时间计算过期时间 剩余有效时长只会偏少
+        String url = storageMode.getObjectUrl(objectName, duration, unit);
+        synchronized (segment) {
+            segment.put(key, new Entry(url, storageMode, now + durationMillis));
+        }
+        return url;
+    }
+
+    /**
+     * 获取外链缓存的统计
+     * @return 命中次数hits、未命中次数misses、淘汰次数evictions和当前缓存数size
+     */
+    public Map<String, Long> getMetrics() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("hits", hits.sum());
+        metrics.put("misses", misses.sum());
+        metrics.put("evictions", evictions.sum());
+        metrics.put("size", size);
+        return metrics;
+    }
+
+    /**
+     * 缓存的外链
+     */
+    private static final class Entry {
+
+        private final String url;
+
+        /**
+         * 签名时使用的存储方式
+         */
+        private final StorageMode storageMode;
+
+        /**
+         * 外链的过期时间 毫秒时间戳
+         */
+        private final long expiresAt;
+
+        private Entry(String url, StorageMode storageMode, long expiresAt) {
+            this.url = url;
+            this.storageMode = storageMode;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * 缓存分段 超过容量时淘汰最久未访问的外链
+     */
+    private final class Segment extends LinkedHashMap<String, Entry> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        private Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
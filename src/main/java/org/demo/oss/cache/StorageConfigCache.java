@@ -0,0 +1,163 @@
+package org.demo.oss.cache;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.mapper.StorageMapper;
+import org.demo.oss.mapper.SysSettingMapper;
+import org.demo.oss.model.Storage;
+import org.demo.oss.model.SysSetting;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 存储服务商配置缓存
+ * 将系统设置中的存储服务商编码和所有存储服务商配置加载为一个不可变的快照，
+ * 存储操作的热点路径只读取快照，不再访问数据库。
+ * 快照在配置修改时主动刷新，或者超过有效时长后由下一次读取触发刷新。
+ * @author moxiaoli
+ */
+@Slf4j
+@Component
+public class StorageConfigCache {
+
+    /**
+     * 系统设置中存储服务商的配置编号
+     */
+    private static final String STORAGE_SETTING_CODE = "storage";
+
+    @Autowired
+    private StorageMapper storageMapper;
+    @Autowired
+    private SysSettingMapper sysSettingMapper;
+    @Autowired
+    private OssProperties ossProperties;
+
+    private final ReentrantLock loadLock = new ReentrantLock();
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * 获取当前的配置快照
+     * 快照过期时由一个线程负责重新加载，其他线程继续使用旧快照
+     * @return 配置快照
+     */
+    public Snapshot get() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return refresh();
+        }
+        if (current.isExpired(ossProperties.getCache().getConfigTtl().toMillis()) && loadLock.tryLock()) {
+            try {
+                if (current == snapshot) {
+                    snapshot = load(current.getVersion() + 1);
+                }
+            } catch (Exception e) {
+                log.error("刷新存储服务商配置失败，继续使用旧配置：{}", e.getMessage());
+            } finally {
+                loadLock.unlock();
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 立即从数据库重新加载配置 用于配置修改之后
+     * @return 新的配置快照
+     */
+    public Snapshot refresh() {
+        loadLock.lock();
+        try {
+            Snapshot current = snapshot;
+            snapshot = load(current == null ? 1 : current.getVersion() + 1);
+            log.info("存储服务商配置已加载，版本：{}，当前存储服务商：{}", snapshot.getVersion(), snapshot.getStorageCode());
+            return snapshot;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    private Snapshot load(long version) {
+        SysSetting setting = sysSettingMapper.selectOne(new LambdaQueryWrapper<SysSetting>()
+                .eq(SysSetting::getCode, STORAGE_SETTING_CODE)
+                .eq(SysSetting::getStatus, 0)
+        );
+        Map<String, Storage> storages = new LinkedHashMap<>();
+        for (Storage storage : storageMapper.selectList(null)) {
+            storages.put(storage.getStorage(), storage);
+        }
+        return new Snapshot(version, setting == null ? null : setting.getValue(), storages);
+    }
+
+    /**
+     * 存储服务商配置快照 创建后不再修改
+     */
+    public static final class Snapshot {
+
+        /**
+         * 快照版本号 每次加载递增
+         */
+        private final long version;
+
+        /**
+         * 快照的加载时间
+         */
+        private final long loadedAt;
+
+        /**
+         * 当前启用的存储服务商编码
+         */
+        private final String storageCode;
+
+        /**
+         * 存储服务商编码 -> 存储服务商配置
+         */
+        private final Map<String, Storage> storages;
+
+        private Snapshot(long version, String storageCode, Map<String, Storage> storages) {
+            this.version = version;
+            this.loadedAt = System.currentTimeMillis();
+            this.storageCode = storageCode;
+            this.storages = Collections.unmodifiableMap(storages);
+        }
+
+        private boolean isExpired(long ttlMillis) {
+            return System.currentTimeMillis() - loadedAt > ttlMillis;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public String getStorageCode() {
+            return storageCode;
+        }
+
+        /**
+         * 获取当前启用的存储服务商配置
+         * @return 存储服务商配置 未配置时返回null
+         */
+        public Storage getStorage() {
+            return storageCode == null ? null : storages.get(storageCode);
+        }
+
+        /**
+         * 根据存储服务商编码获取存储服务商配置
+         * @param storageCode 存储服务商编码
+         * @return 存储服务商配置 不存在时返回null
+         */
+        public Storage getStorage(String storageCode) {
+            return storageCode == null ? null : storages.get(storageCode);
+        }
+
+        public Collection<Storage> getStorages() {
+            return storages.values();
+        }
+    }
+}
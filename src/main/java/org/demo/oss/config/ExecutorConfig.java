@@ -0,0 +1,102 @@
+package org.demo.oss.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 线程池配置类
+ * @author moxiaoli
+ */
+@Configuration
+public class ExecutorConfig {
+
+    @Autowired
+    private OssProperties ossProperties;
+
+    /**
+     * 分片上传线程池
+     * 队列满时由提交分片的线程自己上传，从而减慢读取请求体的速度
+     * @return 分片上传线程池
+     */
+    @Bean
+    public ThreadPoolTaskExecutor uploadPartExecutor() {
+        OssProperties.Upload upload = ossProperties.getUpload();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(upload.getThreads());
+        executor.setMaxPoolSize(upload.getThreads());
+        executor.setQueueCapacity(upload.getQueueCapacity());
+        executor.setThreadNamePrefix("upload-part-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+
+    /**
+     * 批量上传线程池
+     * 队列满时由上传请求的线程自己上传，从而减慢接收新文件的速度
+     * @return 批量上传线程池
+     */
+    @Bean
+    public ThreadPoolTaskExecutor batchUploadExecutor() {
+        OssProperties.Upload upload = ossProperties.getUpload();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(upload.getBatchThreads());
+        executor.setMaxPoolSize(upload.getBatchThreads());
+        executor.setQueueCapacity(upload.getBatchQueueCapacity());
+        executor.setThreadNamePrefix("batch-upload-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+
+    /**
+     * 缩略图线程池
+     * 队列满时由上传请求的线程自己生成缩略图，从而减慢上传速度
+     * @return 缩略图线程池
+     */
+    @Bean
+    public ThreadPoolTaskExecutor thumbnailExecutor() {
+        OssProperties.Thumbnail thumbnail = ossProperties.getThumbnail();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(thumbnail.getThreads());
+        executor.setMaxPoolSize(thumbnail.getThreads());
+        executor.setQueueCapacity(thumbnail.getQueueCapacity());
+        executor.setThreadNamePrefix("thumbnail-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+
+    /**
+     * 异步存储调用线程池
+     * 阿里OSS和本地存储的异步调用在这里执行阻塞的存储操作，队列满时直接拒绝，不占用请求线程
+     * @return 异步存储调用线程池
+     */
+    @Bean
+    public ThreadPoolTaskExecutor storageIoExecutor() {
+        OssProperties.Async async = ossProperties.getAsync();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(async.getThreads());
+        executor.setMaxPoolSize(async.getThreads());
+        executor.setQueueCapacity(async.getQueueCapacity());
+        executor.setThreadNamePrefix("storage-io-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+
+    /**
+     * 本地存储列举目录的线程池
+     * 递归列举时每个子目录和每批目录项都是一个子任务，由ForkJoin线程池并行读取文件属性
+     * @return 列举目录线程池
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool localListPool() {
+        return new ForkJoinPool(Math.max(1, ossProperties.getLocal().getListParallelism()));
+    }
+}
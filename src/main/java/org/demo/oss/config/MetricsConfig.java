@@ -0,0 +1,55 @@
+package org.demo.oss.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.demo.oss.cache.DiskObjectCache;
+import org.demo.oss.cache.PresignedUrlCache;
+import org.demo.oss.utils.ImageUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 监控指标配置类
+ * 存储操作的耗时等指标由{@link org.demo.oss.storage.StorageMetrics}记录，这里把缓存和图片处理已有的统计注册为指标，
+ * 统计中的每一项对应一个带name标签的指标，采集时读取最新的值。
+ * @author moxiaoli
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Autowired
+    private PresignedUrlCache presignedUrlCache;
+    @Autowired
+    private DiskObjectCache diskObjectCache;
+
+    /**
+     * 外链缓存、磁盘缓存和图片像素统计的指标
+     * @return 指标注册器
+     */
+    @Bean
+    public MeterBinder statisticsMeterBinder() {
+        return registry -> {
+            bind(registry, "oss.cache.presign", "文件外链缓存的统计", presignedUrlCache::getMetrics);
+            bind(registry, "oss.cache.disk", "本地磁盘缓存的统计", diskObjectCache::getMetrics);
+            bind(registry, "oss.image.pixels", "图片处理的像素统计", ImageUtils::getPixelMetrics);
+        };
+    }
+
+    private static void bind(MeterRegistry registry, String name, String description, Supplier<Map<String, Long>> metrics) {
+        for (String key : metrics.get().keySet()) {
+            Gauge.builder(name, metrics, supplier -> {
+                        Long value = supplier.get().get(key);
+                        return value == null ? Double.NaN : value;
+                    })
+                    .description(description)
+                    .tag("name", key)
+                    .strongReference(true)
+                    .register(registry);
+        }
+    }
+}
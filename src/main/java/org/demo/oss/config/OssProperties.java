@@ -0,0 +1,450 @@
+package org.demo.oss.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * OSS服务配置类 对应配置文件中以oss开头的配置项
+ * @author moxiaoli
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "oss")
+public class OssProperties {
+
+    /**
+     * 存储服务客户端配置
+     */
+    private Client client = new Client();
+
+    /**
+     * 缓存配置
+     */
+    private Cache cache = new Cache();
+
+    /**
+     * 分片上传配置
+     */
+    private Upload upload = new Upload();
+
+    /**
+     * 缩略图配置
+     */
+    private Thumbnail thumbnail = new Thumbnail();
+
+    /**
+     * 图片转换配置
+     */
+    private Image image = new Image();
+
+    /**
+     * 本地存储配置
+     */
+    private Local local = new Local();
+
+    /**
+     * 对象元数据表配置
+     */
+    private Catalog catalog = new Catalog();
+
+    /**
+     * 按内容去重保存配置
+     */
+    private Dedup dedup = new Dedup();
+
+    /**
+     * 磁盘缓存配置
+     */
+    private DiskCache diskCache = new DiskCache();
+
+    /**
+     * 异步存储调用配置
+     */
+    private Async async = new Async();
+
+    /**
+     * 存储服务调用的容错配置
+     */
+    private Resilience resilience = new Resilience();
+
+    /**
+     * 存储服务客户端配置 每个存储服务商共用一个客户端
+     */
+    @Data
+    public static class Client {
+
+        /**
+         * 每个客户端的最大连接数
+         */
+        private int maxConnections = 64;
+
+        /**
+         * 每个客户端保留的最大空闲连接数
+         */
+        private int maxIdleConnections = 16;
+
+        /**
+         * 空闲连接的存活时间 超过后连接会被回收
+         */
+        private Duration idleTimeout = Duration.ofMinutes(1);
+
+        /**
+         * 建立连接的超时时间
+         */
+        private Duration connectTimeout = Duration.ofSeconds(5);
+
+        /**
+         * 读取响应的超时时间 两次读到数据之间的最长间隔
+         */
+        private Duration readTimeout = Duration.ofSeconds(30);
+
+        /**
+         * 发送请求的超时时间 两次写出数据之间的最长间隔
+         */
+        private Duration writeTimeout = Duration.ofSeconds(30);
+    }
+
+    /**
+     * 缓存配置
+     */
+    @Data
+    public static class Cache {
+
+        /**
+         * 存储服务商配置缓存的有效时长 超过后从数据库重新加载
+         */
+        private Duration configTtl = Duration.ofMinutes(5);
+
+        /**
+         * 文件外链缓存的最大数量 为0时不缓存
+         */
+        private int presignMaxEntries = 10000;
+
+        /**
+         * 缓存的文件外链剩余有效时长不少于该比例时直接返回 否则重新签名
+         */
+        private double presignMinRemaining = 0.5;
+    }
+
+    /**
+     * 分片上传配置
+     */
+    @Data
+    public static class Upload {
+
+        /**
+         * 分片大小 S3协议要求除最后一个分片外不小于5MB
+         */
+        private DataSize partSize = DataSize.ofMegabytes(8);
+
+        /**
+         * 单个文件同时上传的最大分片数 同时决定了单个文件占用的缓冲内存
+         */
+        private int parallelism = 4;
+
+        /**
+         * 分片上传线程池的线程数
+         */
+        private int threads = Runtime.getRuntime().availableProcessors() * 2;
+
+        /**
+         * 分片上传线程池的队列长度 队列满时由提交分片的线程自己上传
+         */
+        private int queueCapacity = 64;
+
+        /**
+         * 分片上传失败后的最大重试次数
+         */
+        private int maxRetries = 3;
+
+        /**
+         * 客户端指定分片大小时允许的最大值 minio需要把整个分片读入内存
+         */
+        private DataSize maxPartSize = DataSize.ofMegabytes(64);
+
+        /**
+         * 分片上传会话的有效时长 每次上传分片后顺延 过期未完成的会话会被取消
+         */
+        private Duration sessionTtl = Duration.ofHours(24);
+
+        /**
+         * 批量上传线程池的线程数
+         */
+        private int batchThreads = Runtime.getRuntime().availableProcessors() * 2;
+
+        /**
+         * 批量上传线程池的队列长度 队列满时由上传请求的线程自己上传
+         */
+        private int batchQueueCapacity = 32;
+
+        /**
+         * 单次批量上传允许的最大文件数
+         */
+        private int maxBatchFiles = 100;
+
+        /**
+         * 全部批量上传请求同时写入存储服务的文件总大小 超过后等待其他文件上传完成
+         */
+        private DataSize batchMemoryBudget = DataSize.ofMegabytes(256);
+
+        /**
+         * 等待批量上传内存预算的最长时间 超时的文件上传失败
+         */
+        private Duration batchAcquireTimeout = Duration.ofSeconds(30);
+
+        /**
+         * 全部流式上传请求同时缓冲的分片总大小 超过后等待其他分片上传完成
+         */
+        private DataSize streamMemoryBudget = DataSize.ofMegabytes(256);
+
+        /**
+         * 等待流式上传内存预算的最长时间 超时的文件上传失败
+         */
+        private Duration streamAcquireTimeout = Duration.ofSeconds(30);
+
+        /**
+         * 客户端直传签名的有效时长 过期未完成的直传不再登记
+         */
+        private Duration presignExpiry = Duration.ofMinutes(15);
+
+        /**
+         * 客户端直传允许的最大文件大小
+         */
+        private DataSize presignMaxSize = DataSize.ofGigabytes(5);
+    }
+
+    /**
+     * 缩略图配置
+     */
+    @Data
+    public static class Thumbnail {
+
+        /**
+         * 缩略图的最大宽度
+         */
+        private int width = 200;
+
+        /**
+         * 缩略图的最大高度
+         */
+        private int height = 200;
+
+        /**
+         * 缩略图线程池的线程数
+         */
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * 缩略图线程池的队列长度 队列满时由上传请求的线程自己生成
+         */
+        private int queueCapacity = 256;
+
+        /**
+         * 缩略图上传失败后的最大重试次数
+         */
+        private int maxRetries = 3;
+
+        /**
+         * 已结束的缩略图任务保留的时长 超过后不能再查询状态
+         */
+        private Duration retention = Duration.ofHours(1);
+    }
+
+    /**
+     * 图片转换配置
+     */
+    @Data
+    public static class Image {
+
+        /**
+         * 转换后图片允许的最大宽度和高度
+         */
+        private int maxDimension = 4096;
+
+        /**
+         * 未指定输出质量时的默认值 1-100
+         */
+        private int defaultQuality = 80;
+
+        /**
+         * 内存中缓存的衍生图片的总大小 超过后淘汰最久未使用的图片
+         */
+        private DataSize cacheSize = DataSize.ofMegabytes(64);
+
+        /**
+         * 内存中缓存的衍生图片的有效时长 超过后重新校验原图是否变化
+         */
+        private Duration cacheTtl = Duration.ofMinutes(10);
+
+        /**
+         * 同时解码和缩放的图片占用的总像素数 超过后等待其他图片处理完成 按每像素4字节估算内存
+         */
+        private long pixelBudget = 64L * 1024 * 1024;
+    }
+
+    /**
+     * 本地存储配置
+     */
+    @Data
+    public static class Local {
+
+        /**
+         * 列举目录的线程数 读取文件属性以IO为主 默认为CPU核数的2倍
+         */
+        private int listParallelism = Runtime.getRuntime().availableProcessors() * 2;
+
+        /**
+         * 每个列举子任务读取文件属性的目录项数 超过后拆分为多个子任务并行读取
+         */
+        private int listBatchSize = 1024;
+    }
+
+    /**
+     * 对象元数据表配置
+     */
+    @Data
+    public static class Catalog {
+
+        /**
+         * 是否在上传和删除时维护对象元数据表
+         */
+        private boolean enabled = true;
+
+        /**
+         * 与存储服务核对时每批写入的对象数
+         */
+        private int batchSize = 500;
+    }
+
+    /**
+     * 按内容去重保存配置
+     */
+    @Data
+    public static class Dedup {
+
+        /**
+         * 是否按文件内容的SHA-256去重保存 相同内容的文件只上传一次
+         */
+        private boolean enabled = false;
+
+        /**
+         * 去重保存的文件所在的路径
+         */
+        private String path = "blob";
+
+        /**
+         * 不再被引用的文件保留的时间 超过后由定时任务删除 期间再次上传相同内容时直接复用
+         */
+        private Duration gcGrace = Duration.ofHours(1);
+    }
+
+    /**
+     * minio和阿里OSS的本地磁盘缓存配置
+     */
+    @Data
+    public static class DiskCache {
+
+        /**
+         * 是否把下载过的对象缓存到本地磁盘
+         */
+        private boolean enabled = false;
+
+        /**
+         * 缓存目录 为空时使用系统临时目录下的oss-cache
+         */
+        private String path;
+
+        /**
+         * 缓存的最大总大小 平均分配给每个分段
+         */
+        private DataSize maxSize = DataSize.ofGigabytes(10);
+
+        /**
+         * 可以缓存的单个对象的最大大小 更大的对象直接从存储服务读取
+         */
+        private DataSize maxObjectSize = DataSize.ofMegabytes(64);
+
+        /**
+         * 分段数 每个分段有独立的目录、索引和锁
+         */
+        private int shards = 16;
+    }
+
+    /**
+     * 异步存储调用配置 阿里OSS和本地存储没有异步接口 由有界线程池执行阻塞调用
+     */
+    @Data
+    public static class Async {
+
+        /**
+         * 异步存储调用线程池的线程数
+         */
+        private int threads = Runtime.getRuntime().availableProcessors() * 4;
+
+        /**
+         * 异步存储调用线程池的队列长度 队列满时调用失败 不占用请求线程
+         */
+        private int queueCapacity = 1024;
+    }
+
+    /**
+     * 存储服务调用的容错配置 每个minio和阿里OSS存储服务商有独立的并发限制和熔断器
+     */
+    @Data
+    public static class Resilience {
+
+        /**
+         * 每个存储服务商同时进行的最大调用数
+         */
+        private int maxConcurrentCalls = 64;
+
+        /**
+         * 同步调用等待并发许可的最长时间 超时的调用直接失败
+         */
+        private Duration maxWait = Duration.ofSeconds(1);
+
+        /**
+         * 幂等操作失败后的最大重试次数 为0时不重试
+         */
+        private int maxRetries = 2;
+
+        /**
+         * 第一次重试前的退避时间 之后每次翻倍 实际等待时间在0到退避时间之间随机
+         */
+        private Duration retryBaseDelay = Duration.ofMillis(100);
+
+        /**
+         * 重试前退避时间的上限
+         */
+        private Duration retryMaxDelay = Duration.ofSeconds(2);
+
+        /**
+         * 熔断器统计最近多少次调用的结果
+         */
+        private int slidingWindowSize = 50;
+
+        /**
+         * 统计的调用数达到该值后才计算失败率
+         */
+        private int minimumCalls = 20;
+
+        /**
+         * 打开熔断器的失败率 百分比
+         */
+        private int failureRateThreshold = 50;
+
+        /**
+         * 熔断器打开后快速失败的时长 之后放行少量调用探测存储服务是否恢复
+         */
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        /**
+         * 熔断器半开时放行的探测调用数 全部成功后关闭熔断器
+         */
+        private int halfOpenCalls = 5;
+    }
+}
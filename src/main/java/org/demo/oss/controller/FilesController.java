@@ -1,17 +1,44 @@
 package org.demo.oss.controller;
 
+import org.demo.oss.cache.DiskObjectCache;
+import org.demo.oss.cache.PresignedUrlCache;
 import org.demo.oss.model.AjaxResult;
+import org.demo.oss.model.BatchDeleteResult;
+import org.demo.oss.model.BatchUploadResult;
+import org.demo.oss.model.ImageTransform;
+import org.demo.oss.model.ImageVariant;
+import org.demo.oss.model.ObjectMetaPage;
+import org.demo.oss.model.ObjectPage;
+import org.demo.oss.model.PrefixStats;
+import org.demo.oss.model.PresignedUpload;
+import org.demo.oss.model.ThumbnailTask;
+import org.demo.oss.model.UploadPart;
+import org.demo.oss.model.UploadResult;
+import org.demo.oss.model.UploadSession;
+import org.demo.oss.service.DirectUploadService;
+import org.demo.oss.service.DownloadService;
+import org.demo.oss.service.ImageService;
+import org.demo.oss.service.MultipartUploadService;
+import org.demo.oss.service.ObjectMetaService;
+import org.demo.oss.service.StreamUploadService;
+import org.demo.oss.service.ThumbnailService;
 import org.demo.oss.service.UploadService;
+import org.demo.oss.storage.StorageGuard;
 import org.demo.oss.utils.StringUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 文件接口
@@ -23,79 +50,466 @@ public class FilesController {
 
     @Autowired
     private UploadService uploadService;
+    @Autowired
+    private StreamUploadService streamUploadService;
+    @Autowired
+    private MultipartUploadService multipartUploadService;
+    @Autowired
+    private DirectUploadService directUploadService;
+    @Autowired
+    private DownloadService downloadService;
+    @Autowired
+    private ThumbnailService thumbnailService;
+    @Autowired
+    private ImageService imageService;
+    @Autowired
+    private ObjectMetaService objectMetaService;
+    @Autowired
+    private PresignedUrlCache presignedUrlCache;
+    @Autowired
+    private DiskObjectCache diskObjectCache;
 
     /**
-     * 上传文件
+     * 上传文件 写入存储服务期间释放请求线程
      * @param file 文件
      * @param pathName 文件路径
+     * @param storage 存储服务商编码 为空时使用当前启用的存储服务商
      * @return 文件路径
      */
     @PostMapping("/upload")
-    public AjaxResult<Map<String,String>> upload(@RequestPart("file") MultipartFile file, String pathName){
+    public CompletableFuture<AjaxResult<Map<String,String>>> upload(@RequestPart("file") MultipartFile file, String pathName, String storage){
         // 如果文件为空，则返回错误信息
         if (file.isEmpty()){
-            return AjaxResult.error("文件不能为空");
+            return CompletableFuture.completedFuture(AjaxResult.error("文件不能为空"));
         }
         // 如果文件路径为空，则使用默认路径
-        if (StringUtils.isBlank(pathName)){
-            return AjaxResult.data(uploadService.upload(file));
+        return uploadService.uploadAsync(file,pathName,storage).thenApply(AjaxResult::data);
+    }
+
+    /**
+     * 批量上传文件 多个文件并行写入存储服务
+     * @param files 文件列表
+     * @param pathName 文件路径
+     * @param storage 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 每个文件的上传结果
+     */
+    @PostMapping("/uploadBatch")
+    public AjaxResult<BatchUploadResult> uploadBatch(@RequestPart("files") List<MultipartFile> files, String pathName, String storage){
+        return AjaxResult.data(uploadService.uploadBatch(files,pathName,storage));
+    }
+
+    /**
+     * 查询缩略图的生成状态
+     * @param thumbName 上传接口返回的缩略图对象名
+     * @return 缩略图任务 包括状态和生成后的资源链接
+     */
+    @GetMapping("/thumbnail/status")
+    public AjaxResult<ThumbnailTask> thumbnailStatus(String thumbName){
+        ThumbnailTask task = thumbnailService.getTask(thumbName);
+        if (task == null){
+            return AjaxResult.error("缩略图任务不存在或已过期");
         }
-        return AjaxResult.data(uploadService.upload(file,pathName));
+        return AjaxResult.data(task);
     }
 
     /**
-     * 删除文件
+     * 流式上传大文件 直接读取请求体并分片并行上传 请求体为文件的二进制内容
      * @param fileName 文件名
+     * @param pathName 文件路径
+     * @param storage 存储服务商编码
+     * @return 上传结果 包括文件资源链接和上传速度
+     */
+    @PostMapping("/uploadStream")
+    public AjaxResult<UploadResult> uploadStream(String fileName, String pathName, String storage, HttpServletRequest request){
+        if (StringUtils.isBlank(fileName)){
+            return AjaxResult.error("文件名不能为空");
+        }
+        try {
+            return AjaxResult.data(streamUploadService.upload(request.getInputStream(), pathName, fileName,
+                    request.getContentType(), request.getContentLengthLong(), storage));
+        }catch (IOException e){
+            log.error("文件上传失败",e);
+            return AjaxResult.error("文件上传失败");
+        }
+    }
+
+    /**
+     * 创建分片上传会话
+     * @param fileName 文件名
+     * @param pathName 文件路径
+     * @param contentType 文件类型
+     * @param fileSize 文件大小 单位字节
+     * @param partSize 分片大小 单位字节 为空时使用默认分片大小
+     * @param storage 存储服务商编码
+     * @return 上传会话 包括会话编号和分片划分
+     */
+    @PostMapping("/multipart/initiate")
+    public AjaxResult<UploadSession> initiateMultipart(String fileName, String pathName, String contentType,
+                                                       Long fileSize, Long partSize, String storage){
+        return AjaxResult.data(multipartUploadService.initiate(fileName, pathName, contentType, fileSize, partSize, storage));
+    }
+
+    /**
+     * 上传分片 请求体为分片的二进制内容 失败后可以重复上传同一分片
+     * @param uploadId 上传会话编号
+     * @param partNumber 分片编号 从1开始
+     * @param md5 分片的MD5 十六进制 为空时不校验
+     * @return 已确认的分片信息
+     */
+    @PutMapping("/multipart/part")
+    public AjaxResult<UploadPart> uploadPart(String uploadId, Integer partNumber, String md5, HttpServletRequest request){
+        try {
+            return AjaxResult.data(multipartUploadService.uploadPart(uploadId, partNumber, request.getInputStream(), md5));
+        }catch (IOException e){
+            log.error("分片上传失败",e);
+            return AjaxResult.error("分片上传失败");
+        }
+    }
+
+    /**
+     * 查询分片上传会话 断线后根据已确认的分片继续上传
+     * @param uploadId 上传会话编号
+     * @return 上传会话
+     */
+    @GetMapping("/multipart/status")
+    public AjaxResult<UploadSession> multipartStatus(String uploadId){
+        return AjaxResult.data(multipartUploadService.getSession(uploadId));
+    }
+
+    /**
+     * 合并分片 完成上传
+     * @param uploadId 上传会话编号
+     * @return 上传结果 包括文件资源链接
+     */
+    @PostMapping("/multipart/complete")
+    public AjaxResult<UploadResult> completeMultipart(String uploadId){
+        return AjaxResult.data(multipartUploadService.complete(uploadId));
+    }
+
+    /**
+     * 取消分片上传 删除已上传的分片
+     * @param uploadId 上传会话编号
+     * @return 取消成功的标志
+     */
+    @DeleteMapping("/multipart/abort")
+    public AjaxResult<Boolean> abortMultipart(String uploadId){
+        return AjaxResult.status(multipartUploadService.abort(uploadId),"取消上传成功","上传会话不存在");
+    }
+
+    /**
+     * 获取直传签名 客户端使用PUT链接或者POST表单直接上传到存储服务
+     * @param fileName 文件名
+     * @param pathName 文件路径
+     * @param contentType 文件类型
+     * @param fileSize 文件大小 单位字节 为空时按允许的最大文件大小限制
+     * @param storage 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 直传签名
+     */
+    @PostMapping("/presign")
+    public AjaxResult<PresignedUpload> presign(String fileName, String pathName, String contentType, Long fileSize,
+                                              String storage){
+        return AjaxResult.data(directUploadService.presign(fileName, pathName, contentType, fileSize, storage));
+    }
+
+    /**
+     * 完成直传 登记文件并生成缩略图
+     * @param uploadToken 上传凭证
+     * @return 文件资源链接和缩略图
+     */
+    @PostMapping("/presign/complete")
+    public AjaxResult<Map<String,String>> completePresign(String uploadToken){
+        return AjaxResult.data(directUploadService.complete(uploadToken));
+    }
+
+    /**
+     * 删除文件 删除期间释放请求线程
+     * @param fileName 文件名
+     * @param storage 存储服务商编码
      * @return 删除成功的标志
      */
     @DeleteMapping("/delete")
-    public AjaxResult<Boolean> delete(String fileName){
-        return AjaxResult.status(uploadService.delete(fileName),"文件删除成功","文件删除失败");
+    public CompletableFuture<AjaxResult<Boolean>> delete(String fileName, String storage){
+        return uploadService.deleteAsync(fileName,storage)
+                .thenApply(deleted -> AjaxResult.status(deleted,"文件删除成功","文件删除失败"));
+    }
+
+    /**
+     * 批量删除文件 图片的缩略图一并删除
+     * @param fileNames 文件名列表
+     * @param storage 存储服务商编码
+     * @return 每个文件的删除结果和删除速度
+     */
+    @PostMapping("/deleteBatch")
+    public AjaxResult<BatchDeleteResult> deleteBatch(@RequestBody List<String> fileNames, String storage){
+        return AjaxResult.data(uploadService.deleteBatch(fileNames,storage));
+    }
+
+    /**
+     * 删除前缀下的全部文件 包括子目录
+     * @param prefix 对象名前缀
+     * @param storage 存储服务商编码
+     * @return 删除失败的文件和删除速度
+     */
+    @DeleteMapping("/deletePrefix")
+    public AjaxResult<BatchDeleteResult> deletePrefix(String prefix, String storage){
+        return AjaxResult.data(uploadService.deletePrefix(prefix,storage));
     }
 
     /**
      * 下载文件
      * @param fileName 文件名
+     * @param storage 存储服务商编码
      * @return 文件资源链接
      */
     @GetMapping("/download")
-    public AjaxResult<String> download(String fileName){
-        return AjaxResult.data(uploadService.download(fileName));
+    public AjaxResult<String> download(String fileName, String storage){
+        return AjaxResult.data(uploadService.download(fileName,storage));
+    }
+
+    /**
+     * 查询文件外链缓存的统计
+     * @return 命中次数、未命中次数、淘汰次数和当前缓存数
+     */
+    @GetMapping("/download/cacheMetrics")
+    public AjaxResult<Map<String,Long>> downloadCacheMetrics(){
+        return AjaxResult.data(presignedUrlCache.getMetrics());
+    }
+
+    /**
+     * 查询磁盘缓存的统计
+     * @return 命中率、节省的下载字节数、缓存文件数和缓存大小等
+     */
+    @GetMapping("/download/diskCacheMetrics")
+    public AjaxResult<Map<String,Long>> diskCacheMetrics(){
+        return AjaxResult.data(diskObjectCache.getMetrics());
+    }
+
+    /**
+     * 直接输出文件内容 支持Range断点续传和条件请求 本地存储支持sendfile时零拷贝发送
+     * @param fileName 文件名
+     * @param storage 存储服务商编码
+     */
+    @GetMapping("/serve")
+    public void serve(String fileName, String storage, HttpServletRequest request, HttpServletResponse response){
+        try {
+            downloadService.serve(fileName,storage,request,response);
+        }catch (RuntimeException e){
+            log.error("文件下载失败：{}",e.getMessage());
+            if (!response.isCommitted()){
+                response.setStatus(errorStatus(e));
+            }
+        }catch (IOException e){
+            // 客户端中断下载
+            log.debug("文件下载中断：{}",e.getMessage());
+        }
     }
 
     /**
-     * 图片下载二进制流
+     * 图片下载二进制流 未请求转换时原样输出存储的字节 支持Range断点续传和条件请求
      * @param fileName 文件名
+     * @param storage 存储服务商编码
+     * @param width 缩放后的最大宽度
+     * @param height 缩放后的最大高度
+     * @param format 转换后的图片格式 如jpg、png
      */
     @GetMapping("/downloadImage")
-    public void downloadImage(String fileName, HttpServletResponse response){
+    public void downloadImage(String fileName, String storage, Integer width, Integer height, String format,
+                              HttpServletRequest request, HttpServletResponse response){
         try {
             if (StringUtils.isBlank(fileName)){
-                throw new RuntimeException("文件名不能为空");
+                throw new IllegalArgumentException("文件名不能为空");
+            }
+            if (width == null && height == null && StringUtils.isBlank(format)){
+                downloadService.serve(fileName,storage,request,response);
+                return;
+            }
+            // 请求了转换时使用缓存的衍生图片
+            ImageTransform transform = new ImageTransform();
+            transform.setWidth(width);
+            transform.setHeight(height);
+            transform.setFormat(format);
+            ImageVariant variant = imageService.transform(fileName,transform,storage);
+            response.setContentType(variant.getContentType());
+            response.setContentLength(variant.getData().length);
+            response.getOutputStream().write(variant.getData());
+        }catch (RuntimeException e){
+            log.error("文件下载失败：{}",e.getMessage());
+            if (!response.isCommitted()){
+                response.setStatus(errorStatus(e));
             }
-            uploadService.downloadImage(fileName,response.getOutputStream());
-        }catch (RuntimeException | IOException e){
-            log.error("文件下载失败",e);
+        }catch (IOException e){
+            log.debug("文件下载中断：{}",e.getMessage());
         }
     }
 
+    /**
+     * 图片转换 按指定的尺寸、缩放方式、质量和格式输出 转换结果会被缓存
+     * @param fileName 文件名
+     * @param width 目标宽度
+     * @param height 目标高度
+     * @param fit 缩放方式 contain等比缩放、cover居中裁剪、fill拉伸 默认contain
+     * @param quality 输出质量 1-100
+     * @param format 输出格式 默认与原图相同
+     * @param storage 存储服务商编码
+     */
+    @GetMapping("/image")
+    public void image(String fileName, Integer width, Integer height, String fit, Integer quality, String format,
+                      String storage, HttpServletRequest request, HttpServletResponse response){
+        try {
+            ImageTransform transform = new ImageTransform();
+            transform.setWidth(width);
+            transform.setHeight(height);
+            if (!StringUtils.isBlank(fit)){
+                try {
+                    transform.setFit(ImageTransform.Fit.valueOf(fit.toUpperCase()));
+                }catch (IllegalArgumentException e){
+                    throw new IllegalArgumentException("不支持的缩放方式");
+                }
+            }
+            transform.setQuality(quality);
+            transform.setFormat(format);
+            ImageVariant variant = imageService.transform(fileName,transform,storage);
+            if (new ServletWebRequest(request,response).checkNotModified("\"" + variant.getEtag() + "\"")){
+                return;
+            }
+            response.setContentType(variant.getContentType());
+            response.setContentLength(variant.getData().length);
+            response.setHeader(HttpHeaders.CACHE_CONTROL,"public, max-age=86400");
+            response.getOutputStream().write(variant.getData());
+        }catch (RuntimeException e){
+            log.error("图片转换失败：{}",e.getMessage());
+            if (!response.isCommitted()){
+                response.setStatus(errorStatus(e));
+            }
+        }catch (IOException e){
+            log.debug("图片下载中断：{}",e.getMessage());
+        }
+    }
+
+    /**
+     * 直接输出文件内容的接口失败时的响应状态
+     * 参数错误400，文件不存在404，存储服务繁忙、熔断或者不可用503，其他错误500
+     */
+    private static int errorStatus(RuntimeException e){
+        if (e instanceof IllegalArgumentException){
+            return HttpServletResponse.SC_BAD_REQUEST;
+        }
+        if (StorageGuard.isNotFound(e)){
+            return HttpServletResponse.SC_NOT_FOUND;
+        }
+        if (e instanceof RejectedExecutionException || StorageGuard.isBackendFailure(e)){
+            return HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+        }
+        return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+    }
+
     /**
      * 获取路径下的文件列表 不包含子文件夹
      * @param path 文件目录
+     * @param storage 存储服务商编码
+     * @param readable 是否附带外链和可读格式的大小、修改时间
      * @return 文件列表
      */
     @GetMapping("/listNotSubDir")
-    public AjaxResult<List<Map<String,String>>> listNotSubDir(String path){
-        return AjaxResult.data(uploadService.listObjects(path,false));
+    public AjaxResult<List<?>> listNotSubDir(String path, String storage, boolean readable){
+        if (readable) {
+            return AjaxResult.data(uploadService.listReadableObjects(path,false,storage));
+        }
+        return AjaxResult.data(uploadService.listObjects(path,false,storage));
     }
 
     /**
      * 获取路径下的文件列表 包含子文件夹
      * @param path 文件目录
+     * @param storage 存储服务商编码
+     * @param readable 是否附带外链和可读格式的大小、修改时间
      * @return 文件列表
      */
     @GetMapping("/listAndSubDir")
-    public AjaxResult<List<Map<String,String>>> listAndSubDir(String path){
-        return AjaxResult.data(uploadService.listObjects(path,true));
+    public AjaxResult<List<?>> listAndSubDir(String path, String storage, boolean readable){
+        if (readable) {
+            return AjaxResult.data(uploadService.listReadableObjects(path,true,storage));
+        }
+        return AjaxResult.data(uploadService.listObjects(path,true,storage));
+    }
+
+    /**
+     * 分页获取对象列表 列举期间释放请求线程
+     * @param prefix 对象名前缀
+     * @param delimiter 分隔符 通常为/，为空时包含全部子目录
+     * @param pageSize 每页的最大数量 默认100 最大1000
+     * @param token 上一页返回的继续标记
+     * @param storage 存储服务商编码
+     * @return 一页对象 包括公共前缀和下一页的继续标记
+     */
+    @GetMapping("/list")
+    public CompletableFuture<AjaxResult<ObjectPage>> list(String prefix, String delimiter, Integer pageSize, String token, String storage){
+        return uploadService.listPageAsync(prefix,delimiter,pageSize,token,storage).thenApply(AjaxResult::data);
+    }
+
+    /**
+     * 以NDJSON格式流式输出对象列表 每行一个对象
+     * @param prefix 对象名前缀
+     * @param delimiter 分隔符 为空时包含全部子目录
+     * @param storage 存储服务商编码
+     */
+    @GetMapping("/list/stream")
+    public void listStream(String prefix, String delimiter, String storage, HttpServletResponse response){
+        response.setContentType("application/x-ndjson;charset=UTF-8");
+        try {
+            uploadService.streamObjects(prefix,delimiter,storage,response.getOutputStream());
+        }catch (RuntimeException e){
+            log.error("获取存储对象列表失败：{}",e.getMessage());
+            if (!response.isCommitted()){
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        }catch (IOException e){
+            log.debug("对象列表输出中断：{}",e.getMessage());
+        }
+    }
+
+    /**
+     * 从对象元数据表分页获取对象列表 不访问存储服务
+     * @param prefix 对象名前缀
+     * @param pageSize 每页的最大数量 默认100 最大1000
+     * @param token 上一页返回的继续标记
+     * @param storage 存储服务商编码
+     * @return 一页对象元数据
+     */
+    @GetMapping("/catalog/list")
+    public AjaxResult<ObjectMetaPage> catalogList(String prefix, Integer pageSize, String token, String storage){
+        return AjaxResult.data(objectMetaService.listPage(prefix,pageSize,token,storage));
+    }
+
+    /**
+     * 从对象元数据表按子目录汇总对象数量和大小
+     * @param prefix 对象名前缀
+     * @param storage 存储服务商编码
+     * @return 每个子目录的统计
+     */
+    @GetMapping("/catalog/stats")
+    public AjaxResult<List<PrefixStats>> catalogStats(String prefix, String storage){
+        return AjaxResult.data(objectMetaService.statsByPrefix(prefix,storage));
+    }
+
+    /**
+     * 根据对象元数据表判断文件是否存在
+     * @param fileName 文件名
+     * @param storage 存储服务商编码
+     * @return 文件是否存在
+     */
+    @GetMapping("/catalog/exists")
+    public AjaxResult<Boolean> catalogExists(String fileName, String storage){
+        return AjaxResult.data(objectMetaService.exists(fileName,storage));
+    }
+
+    /**
+     * 立即与存储服务核对对象元数据表
+     * @param storage 存储服务商编码
+     * @return 核对的对象数
+     */
+    @PostMapping("/catalog/reconcile")
+    public AjaxResult<Long> catalogReconcile(String storage){
+        return AjaxResult.data(objectMetaService.reconcile(storage));
     }
 }
@@ -6,12 +6,14 @@ import org.demo.oss.model.Storage;
 import org.demo.oss.model.SysSetting;
 import org.demo.oss.service.impl.StorageServiceImpl;
 import org.demo.oss.service.impl.SysSettingServiceImpl;
+import org.demo.oss.storage.StorageModeRegistry;
 import org.demo.oss.utils.StringUtils;
 import org.springframework.web.bind.annotation.*;
 
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.List;
+import java.util.Map;
 
 /**
 * 存储桶表(storage)表控制层
@@ -24,6 +26,8 @@ public class StorageController {
     private StorageServiceImpl storageServiceImpl;
     @Autowired
     private SysSettingServiceImpl sysSettingServiceImpl;
+    @Autowired
+    private StorageModeRegistry storageModeRegistry;
 
     /**
      * 获取存储服务商
@@ -71,10 +75,23 @@ public class StorageController {
             flag = sysSettingServiceImpl.update(wrapper);
         }
         if (flag){
-            return AjaxResult.status(storageServiceImpl.update(storage,new LambdaUpdateWrapper<Storage>().eq(Storage::getStorage,storage.getStorage())),"存储服务商修改成功","存储服务商修改失败");
+            flag = storageServiceImpl.update(storage,new LambdaUpdateWrapper<Storage>().eq(Storage::getStorage,storage.getStorage()));
+            // 存储服务商配置已变更 刷新配置缓存并切换存储方式 旧的存储方式在调用结束后释放
+            storageServiceImpl.refreshStorage();
+            storageModeRegistry.refresh();
+            return AjaxResult.status(flag,"存储服务商修改成功","存储服务商修改失败");
         }else {
             return AjaxResult.error("存储服务商修改失败");
         }
     }
 
+    /**
+     * 查询各存储服务商的容错统计
+     * @return 存储服务商编码 -> 熔断器状态、调用次数、失败次数、重试次数和拒绝次数等
+     */
+    @GetMapping("/resilienceMetrics")
+    public AjaxResult<Map<String,Map<String,Long>>> resilienceMetrics(){
+        return AjaxResult.data(storageModeRegistry.getResilienceMetrics());
+    }
+
 }
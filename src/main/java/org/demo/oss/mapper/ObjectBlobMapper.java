@@ -0,0 +1,24 @@
+package org.demo.oss.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.demo.oss.model.ObjectBlob;
+
+@Mapper
+public interface ObjectBlobMapper extends BaseMapper<ObjectBlob> {
+
+    /**
+     * 文件的引用数加一 并刷新更新时间 等待清理的文件也会重新被引用
+     * @param id 文件编号
+     * @return 影响的行数 为0时表示文件已被清理
+     */
+    int incrementRef(@Param("id") Long id);
+
+    /**
+     * 文件的引用数减一 并刷新更新时间 引用数减到0的文件保留一段时间后清理
+     * @param id 文件编号
+     * @return 影响的行数
+     */
+    int decrementRef(@Param("id") Long id);
+}
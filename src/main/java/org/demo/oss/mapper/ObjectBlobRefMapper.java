@@ -0,0 +1,9 @@
+package org.demo.oss.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+import org.demo.oss.model.ObjectBlobRef;
+
+@Mapper
+public interface ObjectBlobRefMapper extends BaseMapper<ObjectBlobRef> {
+}
@@ -0,0 +1,50 @@
+package org.demo.oss.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.demo.oss.model.ObjectMeta;
+import org.demo.oss.model.PrefixStats;
+
+import java.util.Date;
+import java.util.List;
+
+@Mapper
+public interface ObjectMetaMapper extends BaseMapper<ObjectMeta> {
+
+    /**
+     * 按对象名顺序列举前缀下的对象 从上一页最后一个对象名之后开始
+     * @param storage 存储服务商编码
+     * @param likePrefix 已转义LIKE通配符的前缀 为空时列举全部对象
+     * @param afterKey 上一页最后一个对象名 为空时从头开始
+     * @param limit 最大数量
+     * @return 对象列表
+     */
+    List<ObjectMeta> listByPrefix(@Param("storage") String storage, @Param("likePrefix") String likePrefix,
+                                  @Param("afterKey") String afterKey, @Param("limit") int limit);
+
+    /**
+     * 按前缀下的第一级子目录汇总对象数量和大小
+     * @param storage 存储服务商编码
+     * @param prefix 前缀
+     * @param likePrefix 已转义LIKE通配符的前缀
+     * @return 每个子目录的统计 直接位于前缀下的对象汇总到前缀本身
+     */
+    List<PrefixStats> sumByPrefix(@Param("storage") String storage, @Param("prefix") String prefix,
+                                  @Param("likePrefix") String likePrefix);
+
+    /**
+     * 批量写入对象元数据 已存在的对象更新大小、校验值和核对时间
+     * @param list 对象元数据
+     * @return 影响的行数
+     */
+    int upsertBatch(@Param("list") List<ObjectMeta> list);
+
+    /**
+     * 删除核对时未再出现的对象记录 按内容去重保存的对象除外
+     * @param storage 存储服务商编码
+     * @param syncTime 本次核对的开始时间
+     * @return 删除的行数
+     */
+    int deleteStale(@Param("storage") String storage, @Param("syncTime") Date syncTime);
+}
@@ -0,0 +1,56 @@
+package org.demo.oss.model;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量删除结果
+ */
+@Data
+public class BatchDeleteResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 请求删除的对象数 不包括缩略图
+     */
+    private Long total = 0L;
+
+    /**
+     * 删除成功的对象数
+     */
+    private Long deleted = 0L;
+
+    /**
+     * 删除失败的对象数
+     */
+    private Long failed = 0L;
+
+    /**
+     * 一并删除的缩略图数
+     */
+    private Long thumbnails = 0L;
+
+    /**
+     * 一并删除的衍生图片数
+     */
+    private Long variants = 0L;
+
+    /**
+     * 耗时 单位毫秒
+     */
+    private Long elapsedMillis;
+
+    /**
+     * 删除速度 单位个/秒 包括缩略图
+     */
+    private Long throughput;
+
+    /**
+     * 每个对象的删除结果 按前缀删除时只包含失败的对象
+     */
+    private List<DeleteResult> results = new ArrayList<>();
+}
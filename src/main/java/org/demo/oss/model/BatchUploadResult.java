@@ -0,0 +1,51 @@
+package org.demo.oss.model;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量上传结果
+ */
+@Data
+public class BatchUploadResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 上传的文件数
+     */
+    private Integer total;
+
+    /**
+     * 上传成功的文件数
+     */
+    private Integer succeeded;
+
+    /**
+     * 上传失败的文件数
+     */
+    private Integer failed;
+
+    /**
+     * 上传成功的文件总大小 单位字节
+     */
+    private Long size;
+
+    /**
+     * 耗时 单位毫秒
+     */
+    private Long elapsedMillis;
+
+    /**
+     * 上传速度 单位字节/秒
+     */
+    private Long throughput;
+
+    /**
+     * 每个文件的上传结果 与请求中的文件顺序一致
+     */
+    private List<UploadItemResult> results = new ArrayList<>();
+}
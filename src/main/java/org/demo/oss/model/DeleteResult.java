@@ -0,0 +1,33 @@
+package org.demo.oss.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 单个对象的删除结果
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeleteResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 对象名 包含文件路径
+     */
+    private String objectName;
+
+    /**
+     * 是否删除成功 对象本来就不存在时也视为成功
+     */
+    private Boolean deleted;
+
+    /**
+     * 删除失败的原因 成功时为null
+     */
+    private String error;
+}
@@ -0,0 +1,60 @@
+package org.demo.oss.model;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 图片转换参数
+ */
+@Data
+public class ImageTransform implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 目标宽度 为空时按高度等比缩放
+     */
+    private Integer width;
+
+    /**
+     * 目标高度 为空时按宽度等比缩放
+     */
+    private Integer height;
+
+    /**
+     * 缩放方式 同时指定宽度和高度时生效
+     */
+    private Fit fit = Fit.CONTAIN;
+
+    /**
+     * 输出质量 1-100
+     */
+    private Integer quality;
+
+    /**
+     * 输出格式 如jpg、png
+     */
+    private String format;
+
+    /**
+     * 生成转换参数的唯一标识 用于缓存和衍生图片的命名
+     * @return 唯一标识 例如200x200_cover_q80.jpg
+     */
+    public String key() {
+        return (width == null ? "" : width) + "x" + (height == null ? "" : height)
+                + "_" + fit.name().toLowerCase() + "_q" + quality + "." + format;
+    }
+
+    /**
+     * 缩放方式
+     */
+    public enum Fit {
+        // 等比缩放到目标尺寸以内
+        CONTAIN,
+        // 等比缩放后居中裁剪 填满目标尺寸
+        COVER,
+        // 拉伸到目标尺寸 不保持比例
+        FILL
+    }
+}
@@ -0,0 +1,32 @@
+package org.demo.oss.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 转换后的衍生图片 不可变
+ */
+@Getter
+@AllArgsConstructor
+public class ImageVariant {
+
+    /**
+     * 衍生图片的对象名 包含文件路径
+     */
+    private final String name;
+
+    /**
+     * 图片内容
+     */
+    private final byte[] data;
+
+    /**
+     * 文件类型
+     */
+    private final String contentType;
+
+    /**
+     * 衍生图片的ETag 不包含引号
+     */
+    private final String etag;
+}
@@ -0,0 +1,76 @@
+package org.demo.oss.model;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 按内容去重保存的文件表 相同内容的文件在每个存储服务商中只保存一份
+ */
+@Data
+@TableName(value = "object_blob")
+public class ObjectBlob implements Serializable {
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 文件所在的存储服务商编码（默认的本地存储为local）
+     */
+    @TableField(value = "`storage`")
+    private String storage;
+
+    /**
+     * 文件内容的SHA-256（十六进制小写）
+     */
+    @TableField(value = "sha256")
+    private String sha256;
+
+    /**
+     * 文件在存储服务中的对象名
+     */
+    @TableField(value = "blob_key")
+    private String blobKey;
+
+    /**
+     * 文件的资源链接
+     */
+    @TableField(value = "url")
+    private String url;
+
+    /**
+     * 文件大小（字节）
+     */
+    @TableField(value = "`size`")
+    private Long size;
+
+    /**
+     * 文件类型
+     */
+    @TableField(value = "content_type")
+    private String contentType;
+
+    /**
+     * 引用该文件的对象名数量 为0时等待清理
+     */
+    @TableField(value = "ref_count")
+    private Integer refCount;
+
+    /**
+     * 记录创建时间
+     */
+    @TableField(value = "create_time")
+    private Date createTime;
+
+    /**
+     * 记录更新时间（引用数变化时更新）
+     */
+    @TableField(value = "update_time")
+    private Date updateTime;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,52 @@
+package org.demo.oss.model;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 对象名与去重文件的对应关系表 每条记录占用文件的一个引用数
+ */
+@Data
+@TableName(value = "object_blob_ref")
+public class ObjectBlobRef implements Serializable {
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 对象所在的存储服务商编码（默认的本地存储为local）
+     */
+    @TableField(value = "`storage`")
+    private String storage;
+
+    /**
+     * 上传时的对象名（包含文件路径）
+     */
+    @TableField(value = "object_key")
+    private String objectKey;
+
+    /**
+     * 引用的文件编号
+     */
+    @TableField(value = "blob_id")
+    private Long blobId;
+
+    /**
+     * 记录创建时间
+     */
+    @TableField(value = "create_time")
+    private Date createTime;
+
+    /**
+     * 记录更新时间
+     */
+    @TableField(value = "update_time")
+    private Date updateTime;
+
+    private static final long serialVersionUID = 1L;
+}
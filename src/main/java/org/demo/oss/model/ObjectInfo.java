@@ -0,0 +1,43 @@
+package org.demo.oss.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.io.Serializable;
+
+/**
+ * 对象元数据 不可变
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ObjectInfo implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 对象名 包含文件路径
+     */
+    private final String name;
+
+    /**
+     * 对象大小 单位字节
+     */
+    private final long size;
+
+    /**
+     * 最后修改时间 毫秒时间戳
+     */
+    private final long lastModified;
+
+    /**
+     * 对象的ETag 不包含引号
+     */
+    private final String etag;
+
+    /**
+     * 文件类型 未知时为null
+     */
+    private final String contentType;
+}
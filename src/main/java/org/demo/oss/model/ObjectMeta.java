@@ -0,0 +1,82 @@
+package org.demo.oss.model;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 对象元数据表 记录各存储服务商中的对象 列举和统计时不需要访问存储服务
+ */
+@Data
+@TableName(value = "object_meta")
+public class ObjectMeta implements Serializable {
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 对象所在的存储服务商编码（默认的本地存储为local）
+     */
+    @TableField(value = "`storage`")
+    private String storage;
+
+    /**
+     * 对象名（包含文件路径）
+     */
+    @TableField(value = "object_key")
+    private String objectKey;
+
+    /**
+     * 对象大小（字节）
+     */
+    @TableField(value = "`size`")
+    private Long size;
+
+    /**
+     * 文件类型
+     */
+    @TableField(value = "content_type")
+    private String contentType;
+
+    /**
+     * 对象校验值（存储服务返回的ETag）
+     */
+    @TableField(value = "checksum")
+    private String checksum;
+
+    /**
+     * 缩略图的对象名
+     */
+    @TableField(value = "thumb_key")
+    private String thumbKey;
+
+    /**
+     * 对象在存储服务中的最后修改时间
+     */
+    @TableField(value = "last_modified")
+    private Date lastModified;
+
+    /**
+     * 记录创建时间
+     */
+    @TableField(value = "create_time")
+    private Date createTime;
+
+    /**
+     * 记录更新时间
+     */
+    @TableField(value = "update_time")
+    private Date updateTime;
+
+    /**
+     * 最近一次与存储服务核对的时间
+     */
+    @TableField(value = "sync_time")
+    private Date syncTime;
+
+    private static final long serialVersionUID = 1L;
+}
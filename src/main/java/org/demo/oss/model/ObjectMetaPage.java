@@ -0,0 +1,34 @@
+package org.demo.oss.model;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 对象元数据表的一页 按对象名排序
+ */
+@Data
+public class ObjectMetaPage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 本页的对象
+     */
+    private List<ObjectMeta> objects = new ArrayList<>();
+
+    /**
+     * 获取下一页的继续标记 最后一页为null
+     */
+    private String nextToken;
+
+    /**
+     * 是否还有下一页
+     * @return 是否还有下一页
+     */
+    public boolean isTruncated() {
+        return nextToken != null;
+    }
+}
@@ -0,0 +1,69 @@
+package org.demo.oss.model;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 对象列表的一页
+ */
+@Data
+public class ObjectPage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 本页的对象
+     */
+    private List<ObjectInfo> objects = new ArrayList<>();
+
+    /**
+     * 本页的公共前缀 指定分隔符时子目录合并为公共前缀
+     */
+    private List<String> commonPrefixes = new ArrayList<>();
+
+    /**
+     * 获取下一页的继续标记 最后一页为null
+     */
+    private String nextToken;
+
+    /**
+     * 是否还有下一页
+     * @return 是否还有下一页
+     */
+    public boolean isTruncated() {
+        return nextToken != null;
+    }
+
+    /**
+     * 把存储服务的分页标记编码为不透明的继续标记
+     * @param marker 存储服务的分页标记
+     * @return 继续标记 分页标记为空时返回null
+     */
+    public static String encodeToken(String marker) {
+        if (marker == null || marker.isEmpty()) {
+            return null;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(marker.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 把继续标记解码为存储服务的分页标记
+     * @param token 继续标记
+     * @return 存储服务的分页标记 继续标记为空时返回null
+     */
+    public static String decodeToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("继续标记不正确");
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.demo.oss.model;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 按前缀汇总的对象统计
+ */
+@Data
+public class PrefixStats implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 前缀 子目录以/结尾 直接位于查询前缀下的对象汇总到查询前缀本身
+     */
+    private String prefix;
+
+    /**
+     * 对象数量
+     */
+    private Long objectCount;
+
+    /**
+     * 对象总大小 单位字节
+     */
+    private Long totalSize;
+}
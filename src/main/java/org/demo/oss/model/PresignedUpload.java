@@ -0,0 +1,73 @@
+package org.demo.oss.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 客户端直传签名 客户端使用PUT链接或者POST表单直接上传到存储服务，上传结束后凭上传凭证登记文件
+ */
+@Data
+public class PresignedUpload implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 上传凭证 完成直传时使用
+     */
+    private String uploadToken;
+
+    /**
+     * 存储服务商编码 为空时表示默认的存储方式
+     */
+    @JsonIgnore
+    private String storageCode;
+
+    /**
+     * 对象名 包含文件路径
+     */
+    private String objectName;
+
+    /**
+     * 文件类型 上传时必须一致
+     */
+    private String contentType;
+
+    /**
+     * 允许上传的最大文件大小 单位字节
+     */
+    private Long maxSize;
+
+    /**
+     * PUT上传链接
+     */
+    private String putUrl;
+
+    /**
+     * 使用PUT上传链接时需要携带的请求头
+     */
+    private Map<String, String> putHeaders = new LinkedHashMap<>();
+
+    /**
+     * POST表单的提交地址
+     */
+    private String postUrl;
+
+    /**
+     * POST表单的字段 文件作为最后一个字段file提交
+     */
+    private Map<String, String> formData = new LinkedHashMap<>();
+
+    /**
+     * 上传后的文件资源链接
+     */
+    private String url;
+
+    /**
+     * 签名的过期时间 毫秒时间戳
+     */
+    private Long expiresAt;
+}
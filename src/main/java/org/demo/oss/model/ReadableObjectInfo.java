@@ -0,0 +1,62 @@
+package org.demo.oss.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import lombok.Getter;
+import org.demo.oss.utils.FileUtils;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 带可读格式的对象元数据 只在请求需要可读格式时创建
+ * 序列化时在对象元数据的字段之外增加外链、格式化后的大小和修改时间
+ */
+@Getter
+public class ReadableObjectInfo {
+
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
+    /**
+     * 对象元数据
+     */
+    @JsonUnwrapped
+    private final ObjectInfo object;
+
+    /**
+     * 存储方式的外链前缀 同一次列举的对象共用
+     */
+    @JsonIgnore
+    private final String urlPrefix;
+
+    public ReadableObjectInfo(ObjectInfo object, String urlPrefix) {
+        this.object = object;
+        this.urlPrefix = urlPrefix;
+    }
+
+    /**
+     * 对象的外链 例如：http://127.0.0.1:8000/a/b.jpg
+     * @return 对象的外链
+     */
+    public String getUrl() {
+        return urlPrefix + object.getName();
+    }
+
+    /**
+     * 格式化后的对象大小 例如：1.50MB
+     * @return 对象大小
+     */
+    public String getSizeText() {
+        return FileUtils.convertFileSize(object.getSize());
+    }
+
+    /**
+     * 格式化后的最后修改时间 例如：2023-08-01 12:00:00
+     * @return 最后修改时间
+     */
+    public String getLastModifiedText() {
+        return DATE_TIME_FORMATTER.format(Instant.ofEpochMilli(object.getLastModified()));
+    }
+}
@@ -0,0 +1,89 @@
+package org.demo.oss.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.nio.file.Path;
+
+/**
+ * 缩略图任务 记录后台生成缩略图的状态
+ */
+@Data
+public class ThumbnailTask implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 原图的文件名 不包含路径
+     */
+    private String fileName;
+
+    /**
+     * 缩略图的对象名 包含文件路径
+     */
+    private String thumbName;
+
+    /**
+     * 存储服务商编码 为空时表示默认的存储方式
+     */
+    private String storageCode;
+
+    /**
+     * 任务状态
+     */
+    private volatile Status status;
+
+    /**
+     * 已尝试的次数
+     */
+    private volatile int attempts;
+
+    /**
+     * 缩略图资源链接 生成成功后才有值
+     */
+    private volatile String thumbUrl;
+
+    /**
+     * 失败原因
+     */
+    private volatile String error;
+
+    /**
+     * 任务创建时间 毫秒时间戳
+     */
+    private Long createdAt;
+
+    /**
+     * 任务结束时间 毫秒时间戳
+     */
+    private volatile Long finishedAt;
+
+    /**
+     * 原图的临时副本 任务结束后删除
+     */
+    @JsonIgnore
+    private transient Path sourceFile;
+
+    /**
+     * 原图在存储服务中的对象名 客户端直传的图片没有临时副本 由后台线程下载
+     */
+    @JsonIgnore
+    private String sourceKey;
+
+    /**
+     * 缩略图任务状态
+     */
+    public enum Status {
+        // 排队中
+        PENDING,
+        // 生成中
+        RUNNING,
+        // 已生成
+        DONE,
+        // 生成失败
+        FAILED,
+        // 不是图片 不生成缩略图
+        SKIPPED
+    }
+}
@@ -0,0 +1,49 @@
+package org.demo.oss.model;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 批量上传中单个文件的上传结果
+ */
+@Data
+public class UploadItemResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 上传的原始文件名
+     */
+    private String fileName;
+
+    /**
+     * 文件大小 单位字节
+     */
+    private Long size;
+
+    /**
+     * 是否上传成功
+     */
+    private Boolean success;
+
+    /**
+     * 文件资源链接 失败时为null
+     */
+    private String url;
+
+    /**
+     * 缩略图的对象名 不是图片时为null
+     */
+    private String thumbName;
+
+    /**
+     * 缩略图的生成状态
+     */
+    private String thumbStatus;
+
+    /**
+     * 上传失败的原因 成功时为null
+     */
+    private String error;
+}
@@ -0,0 +1,43 @@
+package org.demo.oss.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 分片上传的分片信息
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadPart implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 分片编号 从1开始
+     */
+    private Integer partNumber;
+
+    /**
+     * 分片在文件中的起始位置
+     */
+    private Long offset;
+
+    /**
+     * 分片大小 单位字节
+     */
+    private Long size;
+
+    /**
+     * 存储服务返回的分片ETag
+     */
+    private String etag;
+
+    /**
+     * 分片数据的MD5 十六进制小写
+     */
+    private String checksum;
+}
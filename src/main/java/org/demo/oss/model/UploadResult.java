@@ -0,0 +1,49 @@
+package org.demo.oss.model;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 流式上传结果
+ */
+@Data
+public class UploadResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 文件资源链接
+     */
+    private String url;
+
+    /**
+     * 对象名 包含文件路径
+     */
+    private String objectName;
+
+    /**
+     * 文件大小 单位字节
+     */
+    private Long size;
+
+    /**
+     * 分片数量
+     */
+    private Integer parts;
+
+    /**
+     * 重试过的分片次数
+     */
+    private Integer retries;
+
+    /**
+     * 上传耗时 单位毫秒
+     */
+    private Long elapsedMillis;
+
+    /**
+     * 上传速度 单位字节/秒
+     */
+    private Long throughput;
+}
@@ -0,0 +1,91 @@
+package org.demo.oss.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 分片上传会话 记录已确认的分片，客户端断线后可以从缺少的分片继续上传
+ */
+@Data
+public class UploadSession implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 上传会话编号
+     */
+    private String uploadId;
+
+    /**
+     * 存储服务商编码 为空时表示默认的存储方式
+     */
+    private String storageCode;
+
+    /**
+     * 对象名 包含文件路径
+     */
+    private String objectName;
+
+    /**
+     * 文件类型
+     */
+    private String contentType;
+
+    /**
+     * 文件大小 单位字节
+     */
+    private Long fileSize;
+
+    /**
+     * 分片大小 单位字节 最后一个分片可以小于该值
+     */
+    private Long partSize;
+
+    /**
+     * 分片总数
+     */
+    private Integer totalParts;
+
+    /**
+     * 存储服务返回的分片上传编号
+     */
+    @JsonIgnore
+    private String backendUploadId;
+
+    /**
+     * 已确认的分片 分片编号 -> 分片信息
+     */
+    private Map<Integer, UploadPart> parts = new ConcurrentSkipListMap<>();
+
+    /**
+     * 会话创建时间 毫秒时间戳
+     */
+    private Long createdAt;
+
+    /**
+     * 会话过期时间 毫秒时间戳 每次上传分片后顺延
+     */
+    private volatile Long expiresAt;
+
+    /**
+     * 计算分片在文件中的起始位置
+     * @param partNumber 分片编号
+     * @return 起始位置
+     */
+    public long offsetOf(int partNumber) {
+        return (partNumber - 1) * partSize;
+    }
+
+    /**
+     * 计算分片的大小 最后一个分片为剩余的长度
+     * @param partNumber 分片编号
+     * @return 分片大小
+     */
+    public long sizeOf(int partNumber) {
+        return Math.min(partSize, fileSize - offsetOf(partNumber));
+    }
+}
@@ -0,0 +1,48 @@
+package org.demo.oss.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import org.demo.oss.model.ObjectBlob;
+import org.demo.oss.storage.StorageModeRegistry;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按内容去重保存 服务类
+ * 文件按内容的SHA-256保存在去重路径下，每个存储服务商中相同内容只保存一份，上传时的对象名记录为对文件的引用。
+ * 引用数减到0的文件保留一段时间后由定时任务删除，期间再次上传相同内容时直接复用。
+ */
+public interface DedupService extends IService<ObjectBlob> {
+
+    /**
+     * 是否开启按内容去重保存
+     * @return 是否开启
+     */
+    boolean isEnabled();
+
+    /**
+     * 判断对象名是否是去重保存的文件 去重保存的文件只能通过上传时的对象名删除
+     * @param objectName 对象名 包含文件路径
+     * @return 是否是去重保存的文件
+     */
+    boolean isBlobKey(String objectName);
+
+    /**
+     * 按内容去重保存上传的文件 相同内容的文件已存在时不再上传 只增加引用
+     * @param multipartFile 上传的文件
+     * @param objectKey 上传时的对象名 包含文件路径
+     * @param lease 存储方式的租约
+     * @return 文件的资源链接、缩略图、内容摘要和是否复用了已有的文件
+     */
+    Map<String, String> upload(MultipartFile multipartFile, String objectKey, StorageModeRegistry.Lease lease);
+
+    /**
+     * 释放对象名对文件的引用
+     * @param objectKeys 上传时的对象名
+     * @param lease 存储方式的租约
+     * @return 已释放引用的对象名 不是按内容去重保存的对象名不包含在内
+     */
+    Set<String> release(Collection<String> objectKeys, StorageModeRegistry.Lease lease);
+}
@@ -0,0 +1,31 @@
+package org.demo.oss.service;
+
+import org.demo.oss.model.PresignedUpload;
+
+import java.util.Map;
+
+/**
+ * 客户端直传服务接口
+ * 客户端使用签名直接上传到存储服务，文件内容不经过应用服务器；上传结束后凭上传凭证登记文件并生成缩略图。
+ * @author moxiaoli
+ */
+public interface DirectUploadService {
+
+    /**
+     * 生成直传签名
+     * @param fileName 文件名
+     * @param pathName 文件路径 为空时根据文件类型选择
+     * @param contentType 文件类型
+     * @param fileSize 文件大小 单位字节 为空时按允许的最大文件大小限制
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 直传签名 包括上传凭证、PUT上传链接和POST表单
+     */
+    PresignedUpload presign(String fileName, String pathName, String contentType, Long fileSize, String storageCode);
+
+    /**
+     * 完成直传 校验文件已上传后登记文件并提交缩略图任务
+     * @param uploadToken 上传凭证
+     * @return 文件资源链接和缩略图
+     */
+    Map<String, String> complete(String uploadToken);
+}
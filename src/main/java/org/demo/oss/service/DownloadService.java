@@ -0,0 +1,24 @@
+package org.demo.oss.service;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 文件下载服务接口 直接输出文件内容，支持断点续传和条件请求
+ * @author moxiaoli
+ */
+public interface DownloadService {
+
+    /**
+     * 原样输出文件内容 本地存储支持sendfile时零拷贝发送，其他存储服务商按区间读取后转发
+     * 支持Range和If-Range请求头的单个区间下载，响应包含Content-Length、ETag和Last-Modified，
+     * 条件请求命中时返回304
+     * @param fileName 文件名
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @param request 请求
+     * @param response 响应
+     * @throws IOException 输出失败
+     */
+    void serve(String fileName, String storageCode, HttpServletRequest request, HttpServletResponse response) throws IOException;
+}
@@ -0,0 +1,33 @@
+package org.demo.oss.service;
+
+import org.demo.oss.model.ImageTransform;
+import org.demo.oss.model.ImageVariant;
+import org.demo.oss.storage.StorageModeRegistry;
+
+import java.util.Collection;
+
+/**
+ * 图片转换服务接口
+ * 转换后的衍生图片保存到存储服务商，并在内存中缓存最近使用的图片，同一张衍生图片只生成一次。
+ * @author moxiaoli
+ */
+public interface ImageService {
+
+    /**
+     * 获取转换后的衍生图片
+     * @param fileName 原图的文件名 包含文件路径
+     * @param transform 转换参数 未指定的输出质量和格式使用默认值
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 衍生图片
+     * @throws IllegalArgumentException 文件名为空或者转换参数错误
+     */
+    ImageVariant transform(String fileName, ImageTransform transform, String storageCode);
+
+    /**
+     * 删除原图的全部衍生图片 用于删除原图时一并删除
+     * @param fileNames 原图的文件名 包含文件路径
+     * @param lease 原图所在存储方式的租约
+     * @return 删除的衍生图片数
+     */
+    long deleteVariants(Collection<String> fileNames, StorageModeRegistry.Lease lease);
+}
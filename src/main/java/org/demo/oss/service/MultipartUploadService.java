@@ -0,0 +1,58 @@
+package org.demo.oss.service;
+
+import org.demo.oss.model.UploadPart;
+import org.demo.oss.model.UploadResult;
+import org.demo.oss.model.UploadSession;
+
+import java.io.InputStream;
+
+/**
+ * 可续传的分片上传服务接口
+ * 客户端先创建上传会话，再并发上传各个分片，全部分片确认后合并；断线后查询会话状态，从缺少的分片继续上传。
+ * @author moxiaoli
+ */
+public interface MultipartUploadService {
+
+    /**
+     * 创建分片上传会话
+     * @param fileName 文件名
+     * @param pathName 文件路径 为空时按文件类型选择路径
+     * @param contentType 文件类型
+     * @param fileSize 文件大小 单位字节
+     * @param partSize 分片大小 单位字节 为空时使用默认分片大小
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 上传会话
+     */
+    UploadSession initiate(String fileName, String pathName, String contentType, Long fileSize, Long partSize, String storageCode);
+
+    /**
+     * 上传分片 重复上传同一分片会覆盖之前的内容
+     * @param uploadId 上传会话编号
+     * @param partNumber 分片编号 从1开始
+     * @param inputStream 分片数据
+     * @param checksum 客户端计算的分片MD5 十六进制 为空时不校验
+     * @return 已确认的分片信息
+     */
+    UploadPart uploadPart(String uploadId, Integer partNumber, InputStream inputStream, String checksum);
+
+    /**
+     * 查询上传会话 包括已确认的分片
+     * @param uploadId 上传会话编号
+     * @return 上传会话
+     */
+    UploadSession getSession(String uploadId);
+
+    /**
+     * 合并分片 完成上传
+     * @param uploadId 上传会话编号
+     * @return 上传结果
+     */
+    UploadResult complete(String uploadId);
+
+    /**
+     * 取消上传 删除已上传的分片
+     * @param uploadId 上传会话编号
+     * @return 是否取消成功
+     */
+    Boolean abort(String uploadId);
+}
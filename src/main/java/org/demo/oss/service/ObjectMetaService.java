@@ -0,0 +1,73 @@
+package org.demo.oss.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import org.demo.oss.model.ObjectMeta;
+import org.demo.oss.model.ObjectMetaPage;
+import org.demo.oss.model.PrefixStats;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 对象元数据 服务类
+ * 对象元数据表由上传和删除维护，并定时与存储服务核对，列举、统计和判断对象是否存在时不访问存储服务
+ */
+public interface ObjectMetaService extends IService<ObjectMeta> {
+
+    /**
+     * 记录上传的对象 对象已存在时更新
+     * @param storageCode 存储服务商编码 默认的存储方式为null
+     * @param objectKey 对象名 包含文件路径
+     * @param size 对象大小 单位字节
+     * @param contentType 文件类型
+     * @param thumbKey 缩略图的对象名 没有缩略图时为null
+     */
+    void record(String storageCode, String objectKey, long size, String contentType, String thumbKey);
+
+    /**
+     * 删除对象的记录
+     * @param storageCode 存储服务商编码 默认的存储方式为null
+     * @param objectKey 对象名 包含文件路径
+     */
+    void remove(String storageCode, String objectKey);
+
+    /**
+     * 批量删除对象的记录
+     * @param storageCode 存储服务商编码 默认的存储方式为null
+     * @param objectKeys 对象名列表
+     */
+    void remove(String storageCode, Collection<String> objectKeys);
+
+    /**
+     * 根据对象元数据表判断对象是否存在
+     * @param objectKey 对象名 包含文件路径
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 对象是否存在
+     */
+    boolean exists(String objectKey, String storageCode);
+
+    /**
+     * 按对象名顺序分页列举前缀下的对象
+     * @param prefix 对象名前缀
+     * @param pageSize 每页数量
+     * @param token 上一页返回的继续标记 第一页为空
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 一页对象
+     */
+    ObjectMetaPage listPage(String prefix, Integer pageSize, String token, String storageCode);
+
+    /**
+     * 按前缀下的第一级子目录汇总对象数量和大小
+     * @param prefix 对象名前缀
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 每个子目录的统计
+     */
+    List<PrefixStats> statsByPrefix(String prefix, String storageCode);
+
+    /**
+     * 与存储服务核对对象元数据表 写入存储服务中的对象并删除已不存在的记录
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 核对的对象数
+     */
+    long reconcile(String storageCode);
+}
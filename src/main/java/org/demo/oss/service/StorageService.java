@@ -14,6 +14,13 @@ public interface StorageService extends IService<Storage>{
      */
     Storage getStorage();
 
+    /**
+     * 根据存储服务编码获取存储服务
+     * @param storageCode 存储服务编码
+     * @return 存储服务
+     */
+    Storage getStorage(String storageCode);
+
     /**
      * 根据存储服务编码获取对应的存储类型名称
      * @param storageCode 存储服务编码
@@ -21,4 +28,9 @@ public interface StorageService extends IService<Storage>{
      */
     String getStorageType(String storageCode);
 
+    /**
+     * 刷新存储服务配置缓存 存储服务配置修改后调用
+     */
+    void refreshStorage();
+
 }
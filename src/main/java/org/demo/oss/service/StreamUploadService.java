@@ -0,0 +1,25 @@
+package org.demo.oss.service;
+
+import org.demo.oss.model.UploadResult;
+
+import java.io.InputStream;
+
+/**
+ * 大文件流式上传服务接口
+ * @author moxiaoli
+ */
+public interface StreamUploadService {
+
+    /**
+     * 从输入流中按分片读取文件并行上传 不在本地缓存整个文件
+     * @param inputStream 文件流 通常为请求体
+     * @param pathName 文件路径 为空时按文件类型选择路径
+     * @param fileName 文件名
+     * @param contentType 文件类型
+     * @param contentLength 文件大小 未知时为-1
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 上传结果 包括文件资源链接和上传速度
+     */
+    UploadResult upload(InputStream inputStream, String pathName, String fileName, String contentType,
+                        long contentLength, String storageCode);
+}
@@ -0,0 +1,55 @@
+package org.demo.oss.service;
+
+import org.demo.oss.model.ThumbnailTask;
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * 缩略图服务接口
+ * 上传请求只负责保存原图，缩略图由后台线程池生成并上传，调用方通过任务状态查询结果。
+ * @author moxiaoli
+ */
+public interface ThumbnailService {
+
+    /**
+     * 创建缩略图任务 图片会复制为临时文件，上传请求结束后仍然可以读取；不是图片时任务状态为SKIPPED
+     * @param multipartFile 原图
+     * @param objectName 原图保存的对象名 包含文件路径 缩略图保存在thumb下相同的路径中 命名为thumb_加原图文件名
+     * @param storageCode 存储服务商编码 为空时表示默认的存储方式
+     * @return 缩略图任务
+     */
+    ThumbnailTask prepare(MultipartFile multipartFile, String objectName, String storageCode);
+
+    /**
+     * 提交缩略图任务到后台线程池 原图保存成功后调用
+     * @param task 缩略图任务
+     */
+    void submit(ThumbnailTask task);
+
+    /**
+     * 为已经保存在存储服务中的原图创建缩略图任务并提交到后台线程池 原图由后台线程下载 用于客户端直传的文件
+     * @param objectName 原图的对象名 包含文件路径
+     * @param storageCode 存储服务商编码 为空时表示默认的存储方式
+     * @return 缩略图任务 不是图片时任务状态为SKIPPED
+     */
+    ThumbnailTask submit(String objectName, String storageCode);
+
+    /**
+     * 取消还未提交的缩略图任务 删除临时文件 原图保存失败时调用
+     * @param task 缩略图任务
+     */
+    void cancel(ThumbnailTask task);
+
+    /**
+     * 查询缩略图任务
+     * @param thumbName 缩略图的对象名
+     * @return 缩略图任务 不存在或已过期时返回null
+     */
+    ThumbnailTask getTask(String thumbName);
+
+    /**
+     * 获取原图对应的缩略图对象名 用于删除原图时一并删除缩略图
+     * @param objectName 原图的对象名 包含文件路径
+     * @return 缩略图的对象名 不是图片或者本身就是缩略图时返回null
+     */
+    String getThumbName(String objectName);
+}
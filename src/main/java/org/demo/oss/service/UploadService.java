@@ -1,10 +1,17 @@
 package org.demo.oss.service;
 
+import org.demo.oss.model.BatchDeleteResult;
+import org.demo.oss.model.BatchUploadResult;
+import org.demo.oss.model.ObjectInfo;
+import org.demo.oss.model.ObjectPage;
+import org.demo.oss.model.ReadableObjectInfo;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 文件服务接口
@@ -27,6 +34,34 @@ public interface UploadService {
      */
     Map<String,String> upload(MultipartFile multipartFile,String pathName);
 
+    /**
+     * 文件上传到指定的存储服务商
+     * @param multipartFile 文件流
+     * @param pathName 文件路径 为空时按文件类型选择路径
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 文件资源链接url 以及后台生成的缩略图对象名thumbName和任务状态thumbStatus
+     */
+    Map<String,String> upload(MultipartFile multipartFile,String pathName,String storageCode);
+
+    /**
+     * 异步文件上传 写入存储服务期间不占用调用线程
+     * @param multipartFile 文件流
+     * @param pathName 文件路径
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 文件资源链接和缩略图
+     */
+    CompletableFuture<Map<String,String>> uploadAsync(MultipartFile multipartFile,String pathName,String storageCode);
+
+    /**
+     * 批量上传文件 多个文件并行写入同一个存储服务商
+     * 写入中的文件总大小超过内存预算或者线程池已满时，后面的文件等待或者由请求线程自己上传
+     * @param multipartFiles 文件列表
+     * @param pathName 文件路径 为空时按文件类型选择路径
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 每个文件的上传结果和上传速度
+     */
+    BatchUploadResult uploadBatch(List<MultipartFile> multipartFiles, String pathName, String storageCode);
+
     /**
      * 文件下载 外链
      * @param fileName 文件名
@@ -34,6 +69,14 @@ public interface UploadService {
      */
     String download(String fileName);
 
+    /**
+     * 文件下载 外链
+     * @param fileName 文件名
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 文件资源链接
+     */
+    String download(String fileName,String storageCode);
+
     /**
      * 文件删除 外链
      * @param fileName 文件名
@@ -42,24 +85,99 @@ public interface UploadService {
     Boolean delete(String fileName);
 
     /**
-     * 图片下载二进制流
+     * 文件删除 外链
      * @param fileName 文件名
-     * @param outputStream 输出流
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return flag 删除成功的标志
      */
-    void downloadImage(String fileName, OutputStream outputStream);
+    Boolean delete(String fileName,String storageCode);
+
+    /**
+     * 异步文件删除 删除期间不占用调用线程
+     * @param fileName 文件名
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return flag 删除成功的标志
+     */
+    CompletableFuture<Boolean> deleteAsync(String fileName,String storageCode);
+
+    /**
+     * 批量删除文件 图片的缩略图一并删除
+     * @param fileNames 文件名列表
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 每个文件的删除结果和删除速度
+     */
+    BatchDeleteResult deleteBatch(List<String> fileNames, String storageCode);
+
+    /**
+     * 删除前缀下的全部文件 包括子目录 图片的缩略图一并删除
+     * @param prefix 对象名前缀 不能为空
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 删除失败的文件和删除速度
+     */
+    BatchDeleteResult deletePrefix(String prefix, String storageCode);
+
+    /**
+     * 获取该前缀的对象列表信息 包括子目录下的对象
+     * @param objectNamePrefix 对象名前缀
+     * @param isSubDir 是否包含子目录
+     * @return 对象列表信息
+     */
+    List<ObjectInfo> listObjects(String objectNamePrefix, Boolean isSubDir);
 
     /**
      * 获取该前缀的对象列表信息 包括子目录下的对象
      * @param objectNamePrefix 对象名前缀
      * @param isSubDir 是否包含子目录
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
      * @return 对象列表信息
      */
-    List<Map<String,String>> listObjects(String objectNamePrefix, Boolean isSubDir);
+    List<ObjectInfo> listObjects(String objectNamePrefix, Boolean isSubDir, String storageCode);
+
+    /**
+     * 获取该前缀的对象列表信息 每个对象附带外链和可读格式的大小、修改时间
+     * @param objectNamePrefix 对象名前缀
+     * @param isSubDir 是否包含子目录
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 对象列表信息
+     */
+    List<ReadableObjectInfo> listReadableObjects(String objectNamePrefix, Boolean isSubDir, String storageCode);
 
     /**
      * 获取该前缀的对象列表信息
      * @param objectNamePrefix 对象名前缀
      * @return 对象列表信息
      */
-    List<Map<String,String>> list(String objectNamePrefix);
+    List<ObjectInfo> list(String objectNamePrefix);
+
+    /**
+     * 分页获取对象列表
+     * @param prefix 对象名前缀
+     * @param delimiter 分隔符 通常为/，为空时包含全部子目录
+     * @param pageSize 每页的最大数量 为空时默认100 最大1000
+     * @param token 上一页返回的继续标记 为空时从第一页开始
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 一页对象
+     */
+    ObjectPage listPage(String prefix, String delimiter, Integer pageSize, String token, String storageCode);
+
+    /**
+     * 异步分页获取对象列表 列举期间不占用调用线程
+     * @param prefix 对象名前缀
+     * @param delimiter 分隔符 通常为/，为空时包含全部子目录
+     * @param pageSize 每页的最大数量 为空时默认100 最大1000
+     * @param token 上一页返回的继续标记 为空时从第一页开始
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 一页对象
+     */
+    CompletableFuture<ObjectPage> listPageAsync(String prefix, String delimiter, Integer pageSize, String token, String storageCode);
+
+    /**
+     * 以NDJSON格式输出该前缀下的全部对象 每行一个对象，公共前缀输出为{"prefix":"..."} 内存占用不随对象数量增长
+     * @param prefix 对象名前缀
+     * @param delimiter 分隔符 为空时包含全部子目录
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @param outputStream 输出流
+     * @throws IOException 输出失败
+     */
+    void streamObjects(String prefix, String delimiter, String storageCode, OutputStream outputStream) throws IOException;
 }
@@ -0,0 +1,352 @@
+package org.demo.oss.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.google.common.collect.Lists;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.oss.cache.StorageConfigCache;
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.mapper.ObjectBlobMapper;
+import org.demo.oss.mapper.ObjectBlobRefMapper;
+import org.demo.oss.model.ObjectBlob;
+import org.demo.oss.model.ObjectBlobRef;
+import org.demo.oss.model.Storage;
+import org.demo.oss.model.ThumbnailTask;
+import org.demo.oss.service.DedupService;
+import org.demo.oss.service.ObjectMetaService;
+import org.demo.oss.service.ThumbnailService;
+import org.demo.oss.storage.StorageMode;
+import org.demo.oss.storage.StorageModeRegistry;
+import org.demo.oss.utils.StreamUtils;
+import org.demo.oss.utils.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 按内容去重保存实现类
+ * 上传的文件已经由请求解析保存在内存或临时文件中，先读取一遍计算SHA-256，相同内容的文件已存在时跳过上传只增加引用数，
+ * 否则以摘要加随机后缀作为文件名上传到去重路径下，同一内容每次重新上传的文件名都不同。引用数在数据库中原子地增减，文件和缩略图由定时任务在引用数为0且超过保留时间后删除。
+ * @author moxiaoli
+ */
+@Slf4j
+@Service
+public class DedupServiceImpl extends ServiceImpl<ObjectBlobMapper, ObjectBlob> implements DedupService {
+
+    /**
+     * 文件扩展名的最大长度 超过时不保留扩展名
+     */
+    private static final int MAX_EXTENSION_LENGTH = 10;
+
+    @Autowired
+    private OssProperties ossProperties;
+    @Autowired
+    private ObjectBlobRefMapper objectBlobRefMapper;
+    @Autowired
+    private ThumbnailService thumbnailService;
+    @Autowired
+    private ObjectMetaService objectMetaService;
+    @Autowired
+    private StorageModeRegistry storageModeRegistry;
+    @Autowired
+    private StorageConfigCache storageConfigCache;
+
+    @Override
+    public boolean isEnabled() {
+        return ossProperties.getDedup().isEnabled();
+    }
+
+    @Override
+    public boolean isBlobKey(String objectName) {
+        return isEnabled() && objectName != null && objectName.startsWith(ossProperties.getDedup().getPath() + "/");
+    }
+
+    @Override
+    public Map<String, String> upload(MultipartFile multipartFile, String objectKey, StorageModeRegistry.Lease lease) {
+        if (null == multipartFile || multipartFile.isEmpty()) {
+            throw new RuntimeException("文件不能为空");
+        }
+        String code = StorageModeRegistry.recordCode(lease.getStorageCode());
+        String sha256 = sha256(multipartFile);
+        ObjectBlob blob = findBlob(code, sha256);
+        // 等待清理的文件引用数为0 仍然可以复用 已被清理时重新上传
+        boolean deduplicated = blob != null && baseMapper.incrementRef(blob.getId()) > 0;
+        String thumbName = null;
+        ThumbnailTask.Status thumbStatus = null;
+        if (!deduplicated) {
+            String pathName = ossProperties.getDedup().getPath() + "/" + sha256.substring(0, 2);
+            // 每次上传使用新的文件名 清理任务删除已无引用的旧文件时不会删掉相同内容重新上传的文件
+            String fileName = sha256 + "-" + UUID.randomUUID().toString().replace("-", "").substring(0, 12)
+                    + extension(multipartFile.getOriginalFilename());
+            String blobKey = pathName + "/" + fileName;
+            ThumbnailTask thumbnailTask = thumbnailService.prepare(multipartFile, blobKey, lease.getStorageCode());
+            String url;
+            try {
+                url = lease.getMode().upload(multipartFile, pathName, fileName);
+            } catch (RuntimeException e) {
+                thumbnailService.cancel(thumbnailTask);
+                throw e;
+            }
+            try {
+                blob = saveBlob(code, sha256, blobKey, url, multipartFile);
+            } catch (RuntimeException e) {
+                thumbnailService.cancel(thumbnailTask);
+                discard(lease, blobKey);
+                throw e;
+            }
+            if (blobKey.equals(blob.getBlobKey())) {
+                thumbnailService.submit(thumbnailTask);
+                thumbName = thumbnailTask.getThumbName();
+                thumbStatus = thumbnailTask.getStatus();
+            } else {
+                // 相同内容的文件同时上传 使用先保存的文件 删除本次上传的文件
+                thumbnailService.cancel(thumbnailTask);
+                discard(lease, blobKey);
+                deduplicated = true;
+            }
+        }
+        if (deduplicated) {
+            thumbName = thumbnailService.getThumbName(blob.getBlobKey());
+            ThumbnailTask thumbnailTask = thumbName == null ? null : thumbnailService.getTask(thumbName);
+            thumbStatus = thumbName == null ? ThumbnailTask.Status.SKIPPED
+                    : thumbnailTask == null ? ThumbnailTask.Status.DONE : thumbnailTask.getStatus();
+        }
+        link(code, objectKey, blob);
+        boolean hasThumbnail = thumbStatus != ThumbnailTask.Status.SKIPPED && thumbStatus != ThumbnailTask.Status.FAILED;
+        objectMetaService.record(lease.getStorageCode(), objectKey, multipartFile.getSize(),
+                multipartFile.getContentType(), hasThumbnail ? thumbName : null);
+        if (deduplicated) {
+            log.info("文件{}与{}内容相同，跳过上传", objectKey, blob.getBlobKey());
+        }
+        Map<String, String> result = new HashMap<>();
+        result.put("url", blob.getUrl());
+        result.put("objectName", objectKey);
+        result.put("thumbName", thumbName);
+        result.put("thumbStatus", thumbStatus.name());
+        result.put("sha256", sha256);
+        result.put("deduplicated", String.valueOf(deduplicated));
+        return result;
+    }
+
+    @Override
+    public Set<String> release(Collection<String> objectKeys, StorageModeRegistry.Lease lease) {
+        if (!isEnabled() || objectKeys.isEmpty()) {
+            return Collections.emptySet();
+        }
+        String code = StorageModeRegistry.recordCode(lease.getStorageCode());
+        Set<String> released = new HashSet<>();
+        for (List<String> batch : Lists.partition(new ArrayList<>(objectKeys), StorageMode.DELETE_BATCH_SIZE)) {
+            List<ObjectBlobRef> refs = objectBlobRefMapper.selectList(new LambdaQueryWrapper<ObjectBlobRef>()
+                    .eq(ObjectBlobRef::getStorage, code)
+                    .in(ObjectBlobRef::getObjectKey, batch));
+            for (ObjectBlobRef ref : refs) {
+                // 并发删除同一个对象名时只有一个请求释放引用
+                if (objectBlobRefMapper.deleteById(ref.getId()) > 0) {
+                    baseMapper.decrementRef(ref.getBlobId());
+                    released.add(ref.getObjectKey());
+                }
+            }
+        }
+        return released;
+    }
+
+    /**
+     * 定时删除不再被引用的文件 单个存储服务商失败不影响其他存储服务商
+     */
+    @Scheduled(initialDelayString = "${oss.dedup.gc-initial-delay:600000}",
+            fixedDelayString = "${oss.dedup.gc-interval:3600000}")
+    public void collectGarbage() {
+        if (!isEnabled()) {
+            return;
+        }
+        StorageConfigCache.Snapshot snapshot = storageConfigCache.get();
+        List<String> codes = new ArrayList<>();
+        for (Storage storage : snapshot.getStorages()) {
+            codes.add(storage.getStorage());
+        }
+        if (StringUtils.isBlank(snapshot.getStorageCode())) {
+            // 未配置存储服务商时使用默认的本地存储
+            codes.add(null);
+        }
+        for (String code : codes) {
+            try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(code)) {
+                collectGarbage(lease);
+            } catch (RuntimeException e) {
+                log.error("存储服务商{}的去重文件清理失败：{}", code, e.getMessage());
+            }
+        }
+    }
+
+    private void collectGarbage(StorageModeRegistry.Lease lease) {
+        String code = StorageModeRegistry.recordCode(lease.getStorageCode());
+        Date before = new Date(System.currentTimeMillis() - ossProperties.getDedup().getGcGrace().toMillis());
+        long count = 0;
+        while (true) {
+            List<ObjectBlob> blobs = list(new LambdaQueryWrapper<ObjectBlob>()
+                    .eq(ObjectBlob::getStorage, code)
+                    .eq(ObjectBlob::getRefCount, 0)
+                    .lt(ObjectBlob::getUpdateTime, before)
+                    .last("LIMIT " + StorageMode.DELETE_BATCH_SIZE));
+            if (blobs.isEmpty()) {
+                break;
+            }
+            List<String> keys = new ArrayList<>(blobs.size() * 2);
+            for (ObjectBlob blob : blobs) {
+                // 先删除记录再删除文件 查询之后又被引用的文件不会被删除
+                // 删除记录后上传的相同内容找不到记录 会以新的文件名重新上传 删除旧文件不影响新文件
+                boolean removed = remove(new LambdaQueryWrapper<ObjectBlob>()
+                        .eq(ObjectBlob::getId, blob.getId())
+                        .eq(ObjectBlob::getRefCount, 0)
+                        .lt(ObjectBlob::getUpdateTime, before));
+                if (removed) {
+                    keys.add(blob.getBlobKey());
+                    String thumbName = thumbnailService.getThumbName(blob.getBlobKey());
+                    if (thumbName != null) {
+                        keys.add(thumbName);
+                    }
+                    count++;
+                }
+            }
+            if (!keys.isEmpty()) {
+                lease.getMode().deleteObjects(keys).forEach((key, error) ->
+                        log.error("去重文件{}删除失败：{}", key, error));
+            }
+            if (blobs.size() < StorageMode.DELETE_BATCH_SIZE) {
+                break;
+            }
+        }
+        if (count > 0) {
+            log.info("存储服务商{}已清理不再被引用的去重文件：{}", code, count);
+        }
+    }
+
+    /**
+     * 删除上传后没有保存记录的文件
+     */
+    private void discard(StorageModeRegistry.Lease lease, String blobKey) {
+        try {
+            lease.getMode().deleteObjects(Collections.singletonList(blobKey)).forEach((key, error) ->
+                    log.error("去重文件{}删除失败：{}", key, error));
+        } catch (RuntimeException e) {
+            log.error("去重文件{}删除失败：{}", blobKey, e.getMessage());
+        }
+    }
+
+    private ObjectBlob findBlob(String code, String sha256) {
+        return getOne(new LambdaQueryWrapper<ObjectBlob>()
+                .eq(ObjectBlob::getStorage, code)
+                .eq(ObjectBlob::getSha256, sha256));
+    }
+
+    /**
+     * 记录新上传的文件 并发上传相同内容时只有一条记录 后写入的请求改为增加引用数
+     */
+    private ObjectBlob saveBlob(String code, String sha256, String blobKey, String url, MultipartFile multipartFile) {
+        Date now = new Date();
+        ObjectBlob blob = new ObjectBlob();
+        blob.setStorage(code);
+        blob.setSha256(sha256);
+        blob.setBlobKey(blobKey);
+        blob.setUrl(url);
+        blob.setSize(multipartFile.getSize());
+        blob.setContentType(multipartFile.getContentType());
+        blob.setRefCount(1);
+        blob.setCreateTime(now);
+        blob.setUpdateTime(now);
+        try {
+            save(blob);
+            return blob;
+        } catch (DuplicateKeyException e) {
+            ObjectBlob existing = findBlob(code, sha256);
+            if (existing != null && baseMapper.incrementRef(existing.getId()) > 0) {
+                return existing;
+            }
+            throw new RuntimeException("文件上传失败，请重试");
+        }
+    }
+
+    /**
+     * 记录对象名引用的文件 对象名已存在时改为引用新的文件并释放原来的引用
+     */
+    private void link(String code, String objectKey, ObjectBlob blob) {
+        Date now = new Date();
+        ObjectBlobRef ref = objectBlobRefMapper.selectOne(new LambdaQueryWrapper<ObjectBlobRef>()
+                .eq(ObjectBlobRef::getStorage, code)
+                .eq(ObjectBlobRef::getObjectKey, objectKey));
+        if (ref == null) {
+            ref = new ObjectBlobRef();
+            ref.setStorage(code);
+            ref.setObjectKey(objectKey);
+            ref.setBlobId(blob.getId());
+            ref.setCreateTime(now);
+            ref.setUpdateTime(now);
+            try {
+                objectBlobRefMapper.insert(ref);
+                return;
+            } catch (DuplicateKeyException e) {
+                // 同名文件同时上传 按覆盖处理
+                ref = objectBlobRefMapper.selectOne(new LambdaQueryWrapper<ObjectBlobRef>()
+                        .eq(ObjectBlobRef::getStorage, code)
+                        .eq(ObjectBlobRef::getObjectKey, objectKey));
+            }
+        }
+        if (ref.getBlobId().equals(blob.getId())) {
+            // 同名文件重复上传相同内容 引用数不变
+            baseMapper.decrementRef(blob.getId());
+            return;
+        }
+        objectBlobRefMapper.update(null, new LambdaUpdateWrapper<ObjectBlobRef>()
+                .set(ObjectBlobRef::getBlobId, blob.getId())
+                .set(ObjectBlobRef::getUpdateTime, now)
+                .eq(ObjectBlobRef::getId, ref.getId()));
+        baseMapper.decrementRef(ref.getBlobId());
+    }
+
+    private String sha256(MultipartFile multipartFile) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("不支持SHA-256摘要");
+        }
+        try (InputStream inputStream = multipartFile.getInputStream()) {
+            return StringUtils.toHex(StreamUtils.digest(inputStream, digest));
+        } catch (IOException e) {
+            log.error("文件{}读取失败：{}", multipartFile.getOriginalFilename(), e.getMessage());
+            throw new RuntimeException("文件上传失败");
+        }
+    }
+
+    /**
+     * 保留原文件名的扩展名 图片处理和浏览器按扩展名识别文件类型
+     */
+    private String extension(String fileName) {
+        if (StringUtils.isBlank(fileName)) {
+            return "";
+        }
+        int index = fileName.lastIndexOf('.');
+        String extension = index < 0 ? "" : fileName.substring(index).toLowerCase();
+        if (extension.length() > MAX_EXTENSION_LENGTH || !extension.matches("\\.[a-z0-9]+")) {
+            return "";
+        }
+        return extension;
+    }
+}
@@ -0,0 +1,141 @@
+package org.demo.oss.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.model.ObjectInfo;
+import org.demo.oss.model.PresignedUpload;
+import org.demo.oss.model.ThumbnailTask;
+import org.demo.oss.service.DirectUploadService;
+import org.demo.oss.service.ObjectMetaService;
+import org.demo.oss.service.ThumbnailService;
+import org.demo.oss.storage.StorageModeRegistry;
+import org.demo.oss.storage.enums.UploadFileType;
+import org.demo.oss.utils.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 客户端直传实现类
+ * 签名的对象名与上传接口的命名规则一致，未完成的直传保存在内存中，完成时通过查询对象确认文件已上传并校验大小，
+ * PUT上传链接无法限制文件大小，超过限制的文件在完成时删除。签名过期后未完成的直传由定时任务清理。
+ * @author moxiaoli
+ */
+@Slf4j
+@Service
+public class DirectUploadServiceImpl implements DirectUploadService {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    @Autowired
+    private OssProperties ossProperties;
+    @Autowired
+    private StorageModeRegistry storageModeRegistry;
+    @Autowired
+    private ThumbnailService thumbnailService;
+    @Autowired
+    private ObjectMetaService objectMetaService;
+
+    /**
+     * 上传凭证 -> 未完成的直传
+     */
+    private final Map<String, PresignedUpload> pending = new ConcurrentHashMap<>();
+
+    @Override
+    public PresignedUpload presign(String fileName, String pathName, String contentType, Long fileSize, String storageCode) {
+        if (StringUtils.isBlank(fileName)) {
+            throw new RuntimeException("文件名不能为空");
+        }
+        long maxSize = ossProperties.getUpload().getPresignMaxSize().toBytes();
+        if (fileSize != null) {
+            if (fileSize <= 0) {
+                throw new RuntimeException("文件不能为空");
+            }
+            if (fileSize > maxSize) {
+                throw new RuntimeException("文件大小超过限制");
+            }
+            maxSize = fileSize;
+        }
+        if (StringUtils.isBlank(contentType)) {
+            contentType = DEFAULT_CONTENT_TYPE;
+        }
+        if (StringUtils.isBlank(pathName)) {
+            pathName = UploadFileType.of(contentType).getPath();
+        }
+        String objectName = pathName + "/" + LocalDate.now().format(DATE_FORMATTER) + "_" + fileName;
+        long expiresAt = System.currentTimeMillis() + ossProperties.getUpload().getPresignExpiry().toMillis();
+        PresignedUpload presignedUpload;
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(storageCode)) {
+            presignedUpload = lease.getMode().presignUpload(objectName, contentType, maxSize, expiresAt);
+            // 记录实际使用的存储服务商 完成时到同一个存储服务商查询
+            presignedUpload.setStorageCode(lease.getStorageCode());
+        }
+        presignedUpload.setUploadToken(UUID.randomUUID().toString().replace("-", ""));
+        pending.put(presignedUpload.getUploadToken(), presignedUpload);
+        log.info("生成直传签名{}，文件：{}", presignedUpload.getUploadToken(), objectName);
+        return presignedUpload;
+    }
+
+    @Override
+    public Map<String, String> complete(String uploadToken) {
+        PresignedUpload presignedUpload = StringUtils.isBlank(uploadToken) ? null : pending.get(uploadToken);
+        if (presignedUpload == null) {
+            throw new RuntimeException("上传凭证不存在或已过期");
+        }
+        String objectName = presignedUpload.getObjectName();
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(presignedUpload.getStorageCode())) {
+            // 文件还未上传时保留上传凭证 客户端可以上传后再次完成
+            ObjectInfo objectInfo = lease.getMode().statObject(objectName);
+            // 同一个上传凭证只登记一次
+            if (!pending.remove(uploadToken, presignedUpload)) {
+                throw new RuntimeException("上传凭证不存在或已过期");
+            }
+            if (objectInfo.getSize() > presignedUpload.getMaxSize()) {
+                try {
+                    lease.getMode().delete(objectName);
+                } catch (RuntimeException e) {
+                    log.error("删除超过大小限制的直传文件{}失败：{}", objectName, e.getMessage());
+                }
+                log.warn("直传的文件{}大小为{}，超过限制{}，已删除", objectName, objectInfo.getSize(), presignedUpload.getMaxSize());
+                throw new RuntimeException("文件大小超过限制");
+            }
+            String contentType = StringUtils.isBlank(objectInfo.getContentType())
+                    ? presignedUpload.getContentType() : objectInfo.getContentType();
+            // 原图已经在存储服务中 由后台线程下载后生成缩略图
+            ThumbnailTask thumbnailTask = thumbnailService.submit(objectName, lease.getStorageCode());
+            objectMetaService.record(lease.getStorageCode(), objectName, objectInfo.getSize(), contentType,
+                    thumbnailTask.getStatus() == ThumbnailTask.Status.SKIPPED ? null : thumbnailTask.getThumbName());
+            log.info("直传{}已完成，文件：{}，大小：{}", uploadToken, objectName, objectInfo.getSize());
+            Map<String, String> result = new HashMap<>();
+            result.put("url", presignedUpload.getUrl());
+            result.put("objectName", objectName);
+            result.put("thumbName", thumbnailTask.getThumbName());
+            result.put("thumbStatus", thumbnailTask.getStatus().name());
+            return result;
+        }
+    }
+
+    /**
+     * 清理签名已过期的直传 过期后再保留一个有效时长 签名过期前开始上传的大文件仍然可以完成
+     */
+    @Scheduled(fixedDelayString = "${oss.upload.session-clean-interval:600000}")
+    public void cleanExpired() {
+        long expiredBefore = System.currentTimeMillis() - ossProperties.getUpload().getPresignExpiry().toMillis();
+        pending.values().removeIf(presignedUpload -> {
+            if (presignedUpload.getExpiresAt() < expiredBefore) {
+                log.info("直传{}的签名已过期，文件：{}", presignedUpload.getUploadToken(), presignedUpload.getObjectName());
+                return true;
+            }
+            return false;
+        });
+    }
+}
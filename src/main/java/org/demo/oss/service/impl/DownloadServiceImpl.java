@@ -0,0 +1,186 @@
+package org.demo.oss.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.demo.oss.cache.DiskObjectCache;
+import org.demo.oss.model.ObjectInfo;
+import org.demo.oss.service.DownloadService;
+import org.demo.oss.storage.DelegatingStorageMode;
+import org.demo.oss.storage.LocalMode;
+import org.demo.oss.storage.StorageMode;
+import org.demo.oss.storage.StorageModeRegistry;
+import org.demo.oss.utils.StreamUtils;
+import org.demo.oss.utils.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 文件下载实现类
+ * 本地存储的文件优先交给Tomcat的sendfile直接从页缓存发送到套接字，文件内容不经过堆内存；不支持sendfile时
+ * 按区间读取文件，通过复用的缓冲区写入响应。其他存储服务商开启磁盘缓存时从本地缓存文件输出，区间请求只在命中时使用缓存，
+ * 否则按请求的区间读取对象，通过复用的缓冲区原样转发。
+ * 多区间请求按整个文件返回。
+ * @author moxiaoli
+ */
+@Slf4j
+@Service
+public class DownloadServiceImpl implements DownloadService {
+
+    /**
+     * Tomcat的sendfile请求属性
+     */
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    @Autowired
+    private StorageModeRegistry storageModeRegistry;
+    @Autowired
+    private DiskObjectCache diskObjectCache;
+
+    @Override
+    public void serve(String fileName, String storageCode, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(storageCode)) {
+            StorageMode storageMode = lease.getMode();
+            ObjectInfo objectInfo = storageMode.statObject(fileName);
+            long[] range = prepare(objectInfo, request, response);
+            if (range == null) {
+                return;
+            }
+            StorageMode actualMode = DelegatingStorageMode.unwrap(storageMode);
+            if (actualMode instanceof LocalMode) {
+                serveFile(((LocalMode) actualMode).getLocalFile(fileName), range[0], range[1], request, response);
+                return;
+            }
+            // 命中磁盘缓存时从本地文件输出 区间请求未命中时只读取该区间 不为了一部分内容下载整个对象
+            long count = range[1] - range[0] + 1;
+            DiskObjectCache.CachedFile cached = count == objectInfo.getSize()
+                    ? diskObjectCache.open(lease, objectInfo)
+                    : diskObjectCache.openIfCached(lease, objectInfo);
+            if (cached != null) {
+                try (DiskObjectCache.CachedFile file = cached) {
+                    transfer(file.getChannel(), range[0], range[1], response);
+                }
+                return;
+            }
+            try (InputStream inputStream = count == objectInfo.getSize()
+                    ? storageMode.download(fileName)
+                    : storageMode.download(fileName, range[0], count)) {
+                StreamUtils.copy(inputStream, response.getOutputStream());
+            }
+        }
+    }
+
+    /**
+     * 处理条件请求和区间请求并设置响应头
+     * @return 需要输出的区间[起始位置, 结束位置] 不需要输出内容时返回null
+     */
+    private long[] prepare(ObjectInfo objectInfo, HttpServletRequest request, HttpServletResponse response) {
+        long length = objectInfo.getSize();
+        long lastModified = objectInfo.getLastModified();
+        String etag = StringUtils.isBlank(objectInfo.getEtag()) ? null : "\"" + objectInfo.getEtag() + "\"";
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        // 命中If-None-Match或If-Modified-Since时已设置304
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return null;
+        }
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (!StringUtils.isBlank(range) && matchesIfRange(request, etag, lastModified)) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(range);
+            } catch (IllegalArgumentException e) {
+                // 格式不正确的Range请求头忽略
+                ranges = Collections.emptyList();
+            }
+            if (ranges.size() == 1) {
+                try {
+                    start = ranges.get(0).getRangeStart(length);
+                    end = ranges.get(0).getRangeEnd(length);
+                } catch (IllegalArgumentException e) {
+                    start = length;
+                }
+                if (start > end) {
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    return null;
+                }
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+        String contentType = objectInfo.getContentType();
+        if (StringUtils.isBlank(contentType)) {
+            contentType = MediaTypeFactory.getMediaType(objectInfo.getName())
+                    .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                    .toString();
+        }
+        response.setContentType(contentType);
+        response.setContentLengthLong(end - start + 1);
+        if (end < start || "HEAD".equals(request.getMethod())) {
+            return null;
+        }
+        return new long[]{start, end};
+    }
+
+    /**
+     * 输出本地文件的区间 支持sendfile时不经过堆内存
+     */
+    private void serveFile(Path file, long start, long end, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // 请求处理结束后由Tomcat通过sendfile发送 结束位置不包含
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            transfer(channel, start, end, response);
+        }
+    }
+
+    /**
+     * 通过复用的缓冲区输出文件的区间
+     * 响应只提供OutputStream 这里需要经过堆内存复制 不是零拷贝
+     */
+    private void transfer(FileChannel channel, long start, long end, HttpServletResponse response) throws IOException {
+        StreamUtils.copy(channel, start, end - start + 1, response.getOutputStream());
+    }
+
+    /**
+     * 校验If-Range请求头 不匹配时忽略Range返回整个文件
+     */
+    private boolean matchesIfRange(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (StringUtils.isBlank(ifRange)) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // 弱ETag不能用于If-Range
+            return ifRange.equals(etag);
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package org.demo.oss.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.demo.oss.cache.DiskObjectCache;
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.model.ImageTransform;
+import org.demo.oss.model.ImageVariant;
+import org.demo.oss.model.ObjectInfo;
+import org.demo.oss.service.ImageService;
+import org.demo.oss.storage.StorageMode;
+import org.demo.oss.storage.StorageModeRegistry;
+import org.demo.oss.utils.ImageUtils;
+import org.demo.oss.utils.StreamUtils;
+import org.demo.oss.utils.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 图片转换实现类
+ * 查找顺序为内存缓存、存储服务商中保存的衍生图片、读取原图重新生成。同一张原图的衍生图片保存在以原图文件名摘要命名的目录中，
+ * 文件名和缓存键包含原图ETag的摘要，原图被覆盖后会生成新的衍生图片并删除旧版本的衍生图片，删除原图时一并删除整个目录。
+ * 同一张衍生图片的并发请求只有一个去加载，其他请求等待其结果。
+ * @author moxiaoli
+ */
+@Slf4j
+@Service
+public class ImageServiceImpl implements ImageService {
+
+    /**
+     * 衍生图片的存放路径
+     */
+    private static final String VARIANT_PATH = "variant";
+
+    /**
+     * 支持的输出格式
+     */
+    private static final List<String> FORMATS = Arrays.asList("jpg", "png", "bmp", "gif");
+
+    @Autowired
+    private OssProperties ossProperties;
+    @Autowired
+    private StorageModeRegistry storageModeRegistry;
+    @Autowired
+    private DiskObjectCache diskObjectCache;
+
+    private final VariantCache cache = new VariantCache();
+
+    /**
+     * 正在加载的衍生图片 缓存键 -> 加载结果
+     */
+    private final Map<String, CompletableFuture<ImageVariant>> loading = new ConcurrentHashMap<>();
+
+    @Override
+    public ImageVariant transform(String fileName, ImageTransform transform, String storageCode) {
+        if (StringUtils.isBlank(fileName)) {
+            throw new IllegalArgumentException("文件名不能为空");
+        }
+        normalize(fileName, transform);
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(storageCode)) {
+            // 每次请求都核对原图的版本 原图被覆盖后不会返回旧的衍生图片
+            ObjectInfo original = lease.getMode().statObject(fileName);
+            String variantName = variantPrefix(fileName) + version(original) + "_" + transform.key();
+            String cacheKey = lease.getStorageCode() + ":" + variantName;
+            ImageVariant cached = cache.get(cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+            CompletableFuture<ImageVariant> future = new CompletableFuture<>();
+            CompletableFuture<ImageVariant> existing = loading.putIfAbsent(cacheKey, future);
+            if (existing != null) {
+                // 其他请求正在加载同一张衍生图片
+                try {
+                    return existing.join();
+                } catch (CompletionException e) {
+                    throw e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause()
+                            : new RuntimeException("图片转换失败");
+                }
+            }
+            try {
+                ImageVariant variant = load(lease, original, variantName, transform);
+                cache.put(cacheKey, variant);
+                future.complete(variant);
+                return variant;
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                loading.remove(cacheKey, future);
+            }
+        }
+    }
+
+    /**
+     * 校验转换参数并填充默认值 参数错误时抛出IllegalArgumentException
+     */
+    private void normalize(String fileName, ImageTransform transform) {
+        int maxDimension = ossProperties.getImage().getMaxDimension();
+        if ((transform.getWidth() != null && (transform.getWidth() < 1 || transform.getWidth() > maxDimension))
+                || (transform.getHeight() != null && (transform.getHeight() < 1 || transform.getHeight() > maxDimension))) {
+            throw new IllegalArgumentException("图片尺寸超出范围");
+        }
+        if (transform.getQuality() == null) {
+            transform.setQuality(ossProperties.getImage().getDefaultQuality());
+        } else if (transform.getQuality() < 1 || transform.getQuality() > 100) {
+            throw new IllegalArgumentException("图片质量超出范围");
+        }
+        if (transform.getFit() == null) {
+            transform.setFit(ImageTransform.Fit.CONTAIN);
+        }
+        String format = StringUtils.isBlank(transform.getFormat())
+                ? fileName.substring(fileName.lastIndexOf(".") + 1)
+                : transform.getFormat();
+        format = format.toLowerCase();
+        if ("jpeg".equals(format)) {
+            format = "jpg";
+        }
+        if (!FORMATS.contains(format)) {
+            throw new IllegalArgumentException("不支持的图片格式");
+        }
+        transform.setFormat(format);
+    }
+
+    @Override
+    public long deleteVariants(Collection<String> fileNames, StorageModeRegistry.Lease lease) {
+        long deleted = 0;
+        for (String fileName : fileNames) {
+            if (StringUtils.isBlank(fileName) || fileName.startsWith(VARIANT_PATH + "/") || !ImageUtils.hasImageSuffix(fileName)) {
+                continue;
+            }
+            try {
+                deleted += deleteVariants(lease.getMode(), variantPrefix(fileName), null);
+            } catch (RuntimeException e) {
+                // 不影响原图的删除结果
+                log.warn("图片{}的衍生图片删除失败：{}", fileName, e.getMessage());
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * 原图的衍生图片目录 以原图完整文件名的摘要命名 不同路径的同名图片不会冲突
+     * 例如：variant/0cc175b9c0f1b6a831c399e269772661/
+     */
+    private static String variantPrefix(String fileName) {
+        return VARIANT_PATH + "/" + DigestUtils.md5DigestAsHex(fileName.getBytes(StandardCharsets.UTF_8)) + "/";
+    }
+
+    /**
+     * 原图的版本 原图被覆盖后ETag或修改时间会变化
+     */
+    private static String version(ObjectInfo original) {
+        return DigestUtils.md5DigestAsHex((original.getEtag() + ":" + original.getLastModified())
+                .getBytes(StandardCharsets.UTF_8)).substring(0, 8);
+    }
+
+    /**
+     * 逐页删除目录中的衍生图片
+     * @param keepPrefix 需要保留的衍生图片的名称前缀 为空时全部删除
+     * @return 删除的衍生图片数
+     */
+    private long deleteVariants(StorageMode storageMode, String prefix, String keepPrefix) {
+        long[] deleted = {0};
+        storageMode.forEachPage(prefix, null, StorageMode.DELETE_BATCH_SIZE, page -> {
+            List<String> names = new ArrayList<>();
+            for (ObjectInfo object : page.getObjects()) {
+                if (keepPrefix == null || !object.getName().startsWith(keepPrefix)) {
+                    names.add(object.getName());
+                }
+            }
+            if (!names.isEmpty()) {
+                Map<String, String> failures = storageMode.deleteObjects(names);
+                failures.forEach((name, error) -> log.warn("衍生图片{}删除失败：{}", name, error));
+                deleted[0] += names.size() - failures.size();
+            }
+        });
+        return deleted[0];
+    }
+
+    /**
+     * 读取保存的衍生图片 不存在时读取原图生成并保存
+     */
+    private ImageVariant load(StorageModeRegistry.Lease lease, ObjectInfo original, String variantName,
+                              ImageTransform transform) {
+        StorageMode storageMode = lease.getMode();
+        String fileName = original.getName();
+        int index = variantName.lastIndexOf('/');
+        String variantFile = variantName.substring(index + 1);
+        String contentType = MediaTypeFactory.getMediaType(variantFile)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                .toString();
+        byte[] data = readVariant(storageMode, variantName);
+        if (data == null) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            try (InputStream inputStream = diskObjectCache.download(lease, original)) {
+                ImageUtils.transform(inputStream, transform, outputStream);
+            } catch (IOException e) {
+                log.error("图片{}转换失败：{}", fileName, e.getMessage());
+                throw new RuntimeException("图片转换失败");
+            }
+            data = outputStream.toByteArray();
+            try {
+                storageMode.upload(new ByteArrayInputStream(data), variantName.substring(0, index), variantFile);
+                // 原图被覆盖后第一次生成新版本的衍生图片 删除旧版本的衍生图片
+                String versionPrefix = variantName.substring(0, variantName.indexOf('_', index) + 1);
+                deleteVariants(storageMode, variantName.substring(0, index + 1), versionPrefix);
+            } catch (RuntimeException e) {
+                // 保存失败不影响本次返回 下次请求重新生成
+                log.warn("衍生图片{}保存失败：{}", variantName, e.getMessage());
+            }
+        }
+        return new ImageVariant(variantName, data, contentType, DigestUtils.md5DigestAsHex(data));
+    }
+
+    private byte[] readVariant(StorageMode storageMode, String variantName) {
+        try (InputStream inputStream = storageMode.download(variantName)) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            StreamUtils.copy(inputStream, outputStream);
+            return outputStream.toByteArray();
+        } catch (RuntimeException | IOException e) {
+            // 衍生图片还未生成
+            return null;
+        }
+    }
+
+    /**
+     * 按总字节数限制大小的LRU缓存
+     */
+    private final class VariantCache {
+
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        private long totalBytes;
+
+        private synchronized ImageVariant get(String key) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() - entry.loadedAt > ossProperties.getImage().getCacheTtl().toMillis()) {
+                // 过期后重新校验原图
+                remove(key);
+                return null;
+            }
+            return entry.variant;
+        }
+
+        private synchronized void put(String key, ImageVariant variant) {
+            long maxBytes = ossProperties.getImage().getCacheSize().toBytes();
+            if (variant.getData().length > maxBytes) {
+                return;
+            }
+            remove(key);
+            entries.put(key, new Entry(variant, System.currentTimeMillis()));
+            totalBytes += variant.getData().length;
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (totalBytes > maxBytes && iterator.hasNext()) {
+                totalBytes -= iterator.next().variant.getData().length;
+                iterator.remove();
+            }
+        }
+
+        private void remove(String key) {
+            Entry removed = entries.remove(key);
+            if (removed != null) {
+                totalBytes -= removed.variant.getData().length;
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final ImageVariant variant;
+
+        private final long loadedAt;
+
+        private Entry(ImageVariant variant, long loadedAt) {
+            this.variant = variant;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
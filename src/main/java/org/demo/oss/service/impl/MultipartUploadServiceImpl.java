@@ -0,0 +1,213 @@
+package org.demo.oss.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.model.UploadPart;
+import org.demo.oss.model.UploadResult;
+import org.demo.oss.model.UploadSession;
+import org.demo.oss.service.MultipartUploadService;
+import org.demo.oss.service.ObjectMetaService;
+import org.demo.oss.storage.StorageModeRegistry;
+import org.demo.oss.storage.enums.UploadFileType;
+import org.demo.oss.utils.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * 可续传的分片上传实现类
+ * 上传会话保存在内存中，分片直接写入存储服务：minio和阿里OSS对应S3协议的分片上传，本地存储写入预分配文件的对应位置。
+ * 会话在每次上传分片后顺延有效期，超过有效期未完成的会话由定时任务取消并删除已上传的分片。
+ * @author moxiaoli
+ */
+@Slf4j
+@Service
+public class MultipartUploadServiceImpl implements MultipartUploadService {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    /**
+     * S3协议要求除最后一个分片外的最小分片大小
+     */
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+    /**
+     * S3协议允许的最大分片数
+     */
+    private static final int MAX_PARTS = 10000;
+
+    @Autowired
+    private OssProperties ossProperties;
+    @Autowired
+    private StorageModeRegistry storageModeRegistry;
+    @Autowired
+    private ObjectMetaService objectMetaService;
+
+    /**
+     * 上传会话编号 -> 上传会话
+     */
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    @Override
+    public UploadSession initiate(String fileName, String pathName, String contentType, Long fileSize, Long partSize, String storageCode) {
+        if (StringUtils.isBlank(fileName)) {
+            throw new RuntimeException("文件名不能为空");
+        }
+        if (fileSize == null || fileSize <= 0) {
+            throw new RuntimeException("文件不能为空");
+        }
+        if (partSize == null) {
+            partSize = ossProperties.getUpload().getPartSize().toBytes();
+        }
+        if (partSize < MIN_PART_SIZE && partSize < fileSize) {
+            throw new RuntimeException("分片大小不能小于5MB");
+        }
+        if (partSize > ossProperties.getUpload().getMaxPartSize().toBytes()) {
+            throw new RuntimeException("分片大小超过限制");
+        }
+        long totalParts = (fileSize + partSize - 1) / partSize;
+        if (totalParts > MAX_PARTS) {
+            throw new RuntimeException("分片数量不能超过" + MAX_PARTS);
+        }
+        if (StringUtils.isBlank(pathName)) {
+            pathName = UploadFileType.of(contentType).getPath();
+        }
+        UploadSession session = new UploadSession();
+        session.setUploadId(UUID.randomUUID().toString().replace("-", ""));
+        session.setObjectName(pathName + "/" + LocalDate.now().format(DATE_FORMATTER) + "_" + fileName);
+        session.setContentType(contentType);
+        session.setFileSize(fileSize);
+        session.setPartSize(partSize);
+        session.setTotalParts((int) totalParts);
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(storageCode)) {
+            // 记录实际使用的存储服务商 之后的分片都写入同一个存储服务商
+            session.setStorageCode(lease.getStorageCode());
+            session.setBackendUploadId(lease.getMode().initiateMultipartUpload(session.getObjectName(), contentType, fileSize));
+        }
+        long now = System.currentTimeMillis();
+        session.setCreatedAt(now);
+        session.setExpiresAt(now + ossProperties.getUpload().getSessionTtl().toMillis());
+        sessions.put(session.getUploadId(), session);
+        log.info("创建分片上传会话{}，文件：{}，分片数：{}", session.getUploadId(), session.getObjectName(), totalParts);
+        return session;
+    }
+
+    @Override
+    public UploadPart uploadPart(String uploadId, Integer partNumber, InputStream inputStream, String checksum) {
+        UploadSession session = getSession(uploadId);
+        if (partNumber == null || partNumber < 1 || partNumber > session.getTotalParts()) {
+            throw new RuntimeException("分片编号不正确");
+        }
+        UploadPart part = new UploadPart(partNumber, session.offsetOf(partNumber), session.sizeOf(partNumber), null, null);
+        MessageDigest digest = newMd5();
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(session.getStorageCode())) {
+            part.setEtag(lease.getMode().uploadPart(session.getObjectName(), session.getBackendUploadId(), part,
+                    new DigestInputStream(inputStream, digest)));
+        }
+        part.setChecksum(StringUtils.toHex(digest.digest()));
+        // 校验失败的分片不确认 客户端重新上传时会覆盖
+        if (!StringUtils.isBlank(checksum) && !checksum.equalsIgnoreCase(part.getChecksum())) {
+            log.warn("上传会话{}的分片{}校验失败", uploadId, partNumber);
+            throw new RuntimeException("分片校验失败");
+        }
+        session.getParts().put(partNumber, part);
+        session.setExpiresAt(System.currentTimeMillis() + ossProperties.getUpload().getSessionTtl().toMillis());
+        return part;
+    }
+
+    @Override
+    public UploadSession getSession(String uploadId) {
+        UploadSession session = StringUtils.isBlank(uploadId) ? null : sessions.get(uploadId);
+        if (session == null) {
+            throw new RuntimeException("上传会话不存在或已过期");
+        }
+        return session;
+    }
+
+    @Override
+    public UploadResult complete(String uploadId) {
+        UploadSession session = getSession(uploadId);
+        if (session.getParts().size() < session.getTotalParts()) {
+            String missing = IntStream.rangeClosed(1, session.getTotalParts())
+                    .filter(partNumber -> !session.getParts().containsKey(partNumber))
+                    .limit(10)
+                    .mapToObj(String::valueOf)
+                    .collect(Collectors.joining(","));
+            throw new RuntimeException("分片未全部上传，缺少分片：" + missing);
+        }
+        String url;
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(session.getStorageCode())) {
+            url = lease.getMode().completeMultipartUpload(session.getObjectName(), session.getBackendUploadId(),
+                    new ArrayList<>(session.getParts().values()));
+        }
+        sessions.remove(uploadId);
+        objectMetaService.record(session.getStorageCode(), session.getObjectName(), session.getFileSize(),
+                session.getContentType(), null);
+        long elapsedMillis = Math.max(1, System.currentTimeMillis() - session.getCreatedAt());
+        UploadResult result = new UploadResult();
+        result.setUrl(url);
+        result.setObjectName(session.getObjectName());
+        result.setSize(session.getFileSize());
+        result.setParts(session.getTotalParts());
+        result.setRetries(0);
+        result.setElapsedMillis(elapsedMillis);
+        result.setThroughput(session.getFileSize() * 1000 / elapsedMillis);
+        log.info("分片上传会话{}已完成，文件：{}", uploadId, session.getObjectName());
+        return result;
+    }
+
+    @Override
+    public Boolean abort(String uploadId) {
+        UploadSession session = StringUtils.isBlank(uploadId) ? null : sessions.remove(uploadId);
+        if (session == null) {
+            return false;
+        }
+        abortSession(session);
+        return true;
+    }
+
+    /**
+     * 清理过期的上传会话 删除已上传的分片
+     */
+    @Scheduled(fixedDelayString = "${oss.upload.session-clean-interval:600000}")
+    public void cleanExpiredSessions() {
+        long now = System.currentTimeMillis();
+        sessions.values().stream()
+                .filter(session -> session.getExpiresAt() < now)
+                .forEach(session -> {
+                    if (sessions.remove(session.getUploadId(), session)) {
+                        log.info("上传会话{}已过期，取消上传", session.getUploadId());
+                        abortSession(session);
+                    }
+                });
+    }
+
+    private void abortSession(UploadSession session) {
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(session.getStorageCode())) {
+            lease.getMode().abortMultipartUpload(session.getObjectName(), session.getBackendUploadId());
+        } catch (Exception e) {
+            log.error("取消上传会话{}失败：{}", session.getUploadId(), e.getMessage());
+        }
+    }
+
+    private MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("不支持MD5校验");
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package org.demo.oss.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.google.common.collect.Lists;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.oss.cache.StorageConfigCache;
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.mapper.ObjectMetaMapper;
+import org.demo.oss.model.ObjectInfo;
+import org.demo.oss.model.ObjectMeta;
+import org.demo.oss.model.ObjectMetaPage;
+import org.demo.oss.model.ObjectPage;
+import org.demo.oss.model.PrefixStats;
+import org.demo.oss.model.Storage;
+import org.demo.oss.service.ObjectMetaService;
+import org.demo.oss.storage.StorageModeRegistry;
+import org.demo.oss.utils.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对象元数据实现类
+ * 上传和删除时同步写入对象元数据表，写入失败只记录日志，由定时核对修复。
+ * 核对时按页列举存储服务中的对象批量写入，并删除本次核对开始前未再出现的记录。
+ * @author moxiaoli
+ */
+@Slf4j
+@Service
+public class ObjectMetaServiceImpl extends ServiceImpl<ObjectMetaMapper, ObjectMeta> implements ObjectMetaService {
+
+    /**
+     * 分页列举的默认和最大每页数量
+     */
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * 由原图派生的对象 缩略图和转换后的图片 核对时不作为独立对象记录
+     */
+    private static final String[] DERIVED_PREFIXES = {"thumb/", "variant/"};
+
+    @Autowired
+    private OssProperties ossProperties;
+    @Autowired
+    private StorageModeRegistry storageModeRegistry;
+    @Autowired
+    private StorageConfigCache storageConfigCache;
+
+    /**
+     * 同一时间只进行一次核对
+     */
+    private final AtomicBoolean reconciling = new AtomicBoolean();
+
+    @Override
+    public void record(String storageCode, String objectKey, long size, String contentType, String thumbKey) {
+        if (!ossProperties.getCatalog().isEnabled()) {
+            return;
+        }
+        Date now = new Date();
+        ObjectMeta meta = new ObjectMeta();
+        meta.setStorage(StorageModeRegistry.recordCode(storageCode));
+        meta.setObjectKey(objectKey);
+        meta.setSize(size);
+        meta.setContentType(contentType);
+        meta.setThumbKey(thumbKey);
+        meta.setLastModified(now);
+        meta.setCreateTime(now);
+        meta.setUpdateTime(now);
+        meta.setSyncTime(now);
+        try {
+            baseMapper.upsertBatch(Collections.singletonList(meta));
+        } catch (RuntimeException e) {
+            // 对象已经写入存储服务 不影响上传结果 下次核对时补上
+            log.error("对象{}的元数据记录失败：{}", objectKey, e.getMessage());
+        }
+    }
+
+    @Override
+    public void remove(String storageCode, String objectKey) {
+        if (!ossProperties.getCatalog().isEnabled()) {
+            return;
+        }
+        try {
+            remove(new LambdaQueryWrapper<ObjectMeta>()
+                    .eq(ObjectMeta::getStorage, StorageModeRegistry.recordCode(storageCode))
+                    .eq(ObjectMeta::getObjectKey, objectKey));
+        } catch (RuntimeException e) {
+            log.error("对象{}的元数据删除失败：{}", objectKey, e.getMessage());
+        }
+    }
+
+    @Override
+    public void remove(String storageCode, Collection<String> objectKeys) {
+        if (!ossProperties.getCatalog().isEnabled() || objectKeys.isEmpty()) {
+            return;
+        }
+        String code = StorageModeRegistry.recordCode(storageCode);
+        for (List<String> batch : Lists.partition(new ArrayList<>(objectKeys), MAX_PAGE_SIZE)) {
+            try {
+                remove(new LambdaQueryWrapper<ObjectMeta>()
+                        .eq(ObjectMeta::getStorage, code)
+                        .in(ObjectMeta::getObjectKey, batch));
+            } catch (RuntimeException e) {
+                log.error("{}个对象的元数据删除失败：{}", batch.size(), e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public boolean exists(String objectKey, String storageCode) {
+        if (StringUtils.isBlank(objectKey)) {
+            throw new RuntimeException("文件名不能为空");
+        }
+        return count(new LambdaQueryWrapper<ObjectMeta>()
+                .eq(ObjectMeta::getStorage, resolveCode(storageCode))
+                .eq(ObjectMeta::getObjectKey, objectKey)) > 0;
+    }
+
+    @Override
+    public ObjectMetaPage listPage(String prefix, Integer pageSize, String token, String storageCode) {
+        int size = pageSize == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        // 多取一条判断是否还有下一页
+        List<ObjectMeta> objects = baseMapper.listByPrefix(resolveCode(storageCode), escapeLike(prefix),
+                ObjectPage.decodeToken(token), size + 1);
+        ObjectMetaPage page = new ObjectMetaPage();
+        if (objects.size() > size) {
+            objects = objects.subList(0, size);
+            page.setNextToken(ObjectPage.encodeToken(objects.get(size - 1).getObjectKey()));
+        }
+        page.setObjects(new ArrayList<>(objects));
+        return page;
+    }
+
+    @Override
+    public List<PrefixStats> statsByPrefix(String prefix, String storageCode) {
+        String normalized = prefix == null ? "" : prefix;
+        return baseMapper.sumByPrefix(resolveCode(storageCode), normalized, escapeLike(normalized));
+    }
+
+    @Override
+    public long reconcile(String storageCode) {
+        if (!reconciling.compareAndSet(false, true)) {
+            throw new RuntimeException("对象元数据正在核对，请稍后再试");
+        }
+        try {
+            return doReconcile(storageCode);
+        } finally {
+            reconciling.set(false);
+        }
+    }
+
+    /**
+     * 定时与全部存储服务商核对 单个存储服务商失败不影响其他存储服务商
+     */
+    @Scheduled(initialDelayString = "${oss.catalog.reconcile-initial-delay:300000}",
+            fixedDelayString = "${oss.catalog.reconcile-interval:21600000}")
+    public void reconcileAll() {
+        if (!ossProperties.getCatalog().isEnabled() || !reconciling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            StorageConfigCache.Snapshot snapshot = storageConfigCache.get();
+            List<String> codes = new ArrayList<>();
+            for (Storage storage : snapshot.getStorages()) {
+                codes.add(storage.getStorage());
+            }
+            if (StringUtils.isBlank(snapshot.getStorageCode())) {
+                // 未配置存储服务商时使用默认的本地存储
+                codes.add(null);
+            }
+            for (String code : codes) {
+                try {
+                    doReconcile(code);
+                } catch (RuntimeException e) {
+                    log.error("存储服务商{}的对象元数据核对失败：{}", code, e.getMessage());
+                }
+            }
+        } finally {
+            reconciling.set(false);
+        }
+    }
+
+    private long doReconcile(String storageCode) {
+        int batchSize = Math.max(1, ossProperties.getCatalog().getBatchSize());
+        Date start = new Date();
+        AtomicLong count = new AtomicLong();
+        String code;
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(storageCode)) {
+            code = StorageModeRegistry.recordCode(lease.getStorageCode());
+            lease.getMode().forEachPage("", null, batchSize, page -> {
+                List<ObjectMeta> batch = new ArrayList<>(page.getObjects().size());
+                for (ObjectInfo objectInfo : page.getObjects()) {
+                    if (!isDerived(objectInfo.getName())) {
+                        batch.add(toObjectMeta(code, objectInfo, start));
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    baseMapper.upsertBatch(batch);
+                    count.addAndGet(batch.size());
+                }
+            });
+        }
+        // 列举完整结束后才删除 列举失败时保留原有记录
+        int removed = baseMapper.deleteStale(code, start);
+        log.info("存储服务商{}的对象元数据核对完成，对象数：{}，已清理不存在的记录：{}，耗时：{}ms", code, count.get(), removed,
+                System.currentTimeMillis() - start.getTime());
+        return count.get();
+    }
+
+    private ObjectMeta toObjectMeta(String code, ObjectInfo objectInfo, Date syncTime) {
+        ObjectMeta meta = new ObjectMeta();
+        meta.setStorage(code);
+        meta.setObjectKey(objectInfo.getName());
+        meta.setSize(objectInfo.getSize());
+        meta.setContentType(objectInfo.getContentType());
+        meta.setChecksum(objectInfo.getEtag());
+        meta.setLastModified(new Date(objectInfo.getLastModified()));
+        meta.setCreateTime(syncTime);
+        meta.setUpdateTime(syncTime);
+        meta.setSyncTime(syncTime);
+        return meta;
+    }
+
+    private boolean isDerived(String objectKey) {
+        // 按内容去重保存的文件通过上传时的对象名记录
+        if (objectKey.startsWith(ossProperties.getDedup().getPath() + "/")) {
+            return true;
+        }
+        for (String prefix : DERIVED_PREFIXES) {
+            if (objectKey.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 获取存储服务商在对象元数据表中的编码 为空时使用当前启用的存储服务商
+     */
+    private String resolveCode(String storageCode) {
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(storageCode)) {
+            return StorageModeRegistry.recordCode(lease.getStorageCode());
+        }
+    }
+
+    /**
+     * 转义LIKE的通配符 前缀中的%和_按普通字符匹配
+     */
+    private String escapeLike(String prefix) {
+        if (StringUtils.isBlank(prefix)) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder(prefix.length() + 8);
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            if (c == '\\' || c == '%' || c == '_') {
+                builder.append('\\');
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,203 @@
+package org.demo.oss.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.model.UploadPart;
+import org.demo.oss.model.UploadResult;
+import org.demo.oss.service.ObjectMetaService;
+import org.demo.oss.service.StreamUploadService;
+import org.demo.oss.storage.StorageMode;
+import org.demo.oss.storage.StorageModeRegistry;
+import org.demo.oss.storage.enums.UploadFileType;
+import org.demo.oss.utils.FileUtils;
+import org.demo.oss.utils.StreamUtils;
+import org.demo.oss.utils.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 大文件流式上传实现类
+ * 请求体按配置的分片大小读取，每读满一个分片就提交到分片上传线程池，单个文件同时在途的分片数受parallelism限制，
+ * 全部流式上传请求缓冲的分片总大小受streamMemoryBudget限制，因此无论文件多大、同时上传多少文件，缓冲内存都有上限。
+ * 分片的缓冲区直接交给存储方式上传，失败的分片使用保留的缓冲区重试，重试仍然失败时取消整个分片上传。
+ * @author moxiaoli
+ */
+@Slf4j
+@Service
+public class StreamUploadServiceImpl implements StreamUploadService {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    /**
+     * 分片重试的间隔基数 单位毫秒
+     */
+    private static final long RETRY_BACKOFF_MILLIS = 200;
+
+    /**
+     * 流式上传内存预算的计量单位 按KB计数避免超过int范围
+     */
+    private static final int BUDGET_UNIT = 1024;
+
+    @Autowired
+    private OssProperties ossProperties;
+    @Autowired
+    private StorageModeRegistry storageModeRegistry;
+    @Autowired
+    private ThreadPoolTaskExecutor uploadPartExecutor;
+    @Autowired
+    private ObjectMetaService objectMetaService;
+
+    /**
+     * 流式上传缓冲中的分片总大小 单位KB 全部流式上传请求共用
+     */
+    private Semaphore memoryBudget;
+
+    @PostConstruct
+    public void init() {
+        memoryBudget = new Semaphore(Math.max(1, budgetPermits(ossProperties.getUpload().getStreamMemoryBudget().toBytes())), true);
+    }
+
+    @Override
+    public UploadResult upload(InputStream inputStream, String pathName, String fileName, String contentType,
+                               long contentLength, String storageCode) {
+        if (StringUtils.isBlank(fileName)) {
+            throw new RuntimeException("文件名不能为空");
+        }
+        if (StringUtils.isBlank(pathName)) {
+            pathName = UploadFileType.of(contentType).getPath();
+        }
+        String objectName = pathName + "/" + LocalDate.now().format(DATE_FORMATTER) + "_" + fileName;
+        OssProperties.Upload properties = ossProperties.getUpload();
+        int partSize = Math.toIntExact(properties.getPartSize().toBytes());
+        // 单个分片超过总预算时只占用全部预算
+        int budget = Math.max(1, Math.min(budgetPermits(partSize),
+                budgetPermits(properties.getStreamMemoryBudget().toBytes())));
+        long start = System.currentTimeMillis();
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(storageCode)) {
+            StorageMode storageMode = lease.getMode();
+            String uploadId = storageMode.initiateMultipartUpload(objectName, contentType, contentLength);
+            // 限制单个文件同时在途的分片数 从而限制缓冲内存
+            Semaphore permits = new Semaphore(properties.getParallelism());
+            AtomicBoolean failed = new AtomicBoolean();
+            AtomicInteger retries = new AtomicInteger();
+            List<CompletableFuture<UploadPart>> futures = new ArrayList<>();
+            long offset = 0;
+            try {
+                for (int partNumber = 1; !failed.get(); partNumber++) {
+                    permits.acquire();
+                    if (!memoryBudget.tryAcquire(budget, properties.getStreamAcquireTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                        permits.release();
+                        throw new RuntimeException("服务繁忙，请稍后重试");
+                    }
+                    byte[] buffer = new byte[partSize];
+                    int length;
+                    try {
+                        length = StreamUtils.readFully(inputStream, buffer);
+                    } catch (Exception e) {
+                        memoryBudget.release(budget);
+                        permits.release();
+                        throw e;
+                    }
+                    if (length == 0) {
+                        memoryBudget.release(budget);
+                        permits.release();
+                        if (partNumber == 1) {
+                            throw new RuntimeException("文件不能为空");
+                        }
+                        break;
+                    }
+                    UploadPart part = new UploadPart(partNumber, offset, (long) length, null, null);
+                    futures.add(CompletableFuture
+                            .supplyAsync(() -> uploadPart(storageMode, objectName, uploadId, part, buffer, retries), uploadPartExecutor)
+                            .whenComplete((result, error) -> {
+                                if (error != null) {
+                                    failed.set(true);
+                                }
+                                memoryBudget.release(budget);
+                                permits.release();
+                            }));
+                    offset += length;
+                    if (length < partSize) {
+                        break;
+                    }
+                }
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+                List<UploadPart> parts = futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+                String url = storageMode.completeMultipartUpload(objectName, uploadId, parts);
+                objectMetaService.record(lease.getStorageCode(), objectName, offset, contentType, null);
+                return buildResult(url, objectName, offset, parts.size(), retries.get(), start);
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                // 等待在途的分片结束后再取消 避免取消之后又有分片写入
+                futures.forEach(future -> future.handle((result, error) -> result).join());
+                storageMode.abortMultipartUpload(objectName, uploadId);
+                log.error("文件{}流式上传失败：{}", objectName, e.getMessage());
+                throw new RuntimeException("文件上传失败");
+            }
+        }
+    }
+
+    /**
+     * 上传一个分片 失败时使用保留的缓冲区重试
+     */
+    private UploadPart uploadPart(StorageMode storageMode, String objectName, String uploadId, UploadPart part,
+                                  byte[] buffer, AtomicInteger retries) {
+        int maxRetries = ossProperties.getUpload().getMaxRetries();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                part.setEtag(storageMode.uploadPart(objectName, uploadId, part, buffer));
+                return part;
+            } catch (RuntimeException e) {
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+                retries.incrementAndGet();
+                log.warn("文件{}的分片{}上传失败，第{}次重试：{}", objectName, part.getPartNumber(), attempt + 1, e.getMessage());
+                try {
+                    TimeUnit.MILLISECONDS.sleep(RETRY_BACKOFF_MILLIS * (attempt + 1));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * 字节数换算为内存预算的许可数 向上取整
+     */
+    private static int budgetPermits(long bytes) {
+        return (int) Math.min((bytes + BUDGET_UNIT - 1) / BUDGET_UNIT, Integer.MAX_VALUE);
+    }
+
+    private UploadResult buildResult(String url, String objectName, long size, int parts, int retries, long start) {
+        long elapsedMillis = Math.max(1, System.currentTimeMillis() - start);
+        UploadResult result = new UploadResult();
+        result.setUrl(url);
+        result.setObjectName(objectName);
+        result.setSize(size);
+        result.setParts(parts);
+        result.setRetries(retries);
+        result.setElapsedMillis(elapsedMillis);
+        result.setThroughput(size * 1000 / elapsedMillis);
+        log.info("文件{}上传完成，大小：{}，分片数：{}，耗时：{}ms，速度：{}/s", objectName, size, parts, elapsedMillis,
+                FileUtils.convertFileSize(result.getThroughput()));
+        return result;
+    }
+}
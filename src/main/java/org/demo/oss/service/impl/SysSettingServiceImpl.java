@@ -1,6 +1,7 @@
 package org.demo.oss.service.impl;
 
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import org.demo.oss.cache.StorageConfigCache;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import org.demo.oss.model.SysSetting;
@@ -9,16 +10,12 @@ import org.demo.oss.service.SysSettingService;
 @Service
 public class SysSettingServiceImpl extends ServiceImpl<SysSettingMapper, SysSetting> implements SysSettingService{
 
+    @Autowired
+    private StorageConfigCache storageConfigCache;
+
     @Override
     public String getStorage() {
-        SysSetting storage = getOne(new QueryWrapper<SysSetting>().lambda()
-                .eq(SysSetting::getCode, "storage")
-                .eq(SysSetting::getStatus, 0)
-
-        );
-        if (storage != null) {
-            return storage.getValue();
-        }
-        return null;
+        // 从配置快照中读取 不访问数据库
+        return storageConfigCache.get().getStorageCode();
     }
 }
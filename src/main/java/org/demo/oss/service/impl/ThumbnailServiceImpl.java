@@ -0,0 +1,252 @@
+package org.demo.oss.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.model.ImageTransform;
+import org.demo.oss.model.ThumbnailTask;
+import org.demo.oss.service.ThumbnailService;
+import org.demo.oss.storage.StorageMetrics;
+import org.demo.oss.storage.StorageModeRegistry;
+import org.demo.oss.utils.ImageUtils;
+import org.demo.oss.utils.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缩略图服务实现类
+ * 图片在上传请求中复制为临时文件（请求结束后Spring会删除上传的临时文件），原图保存成功后提交到缩略图线程池，
+ * 线程池队列满时由上传请求的线程自己生成。缩略图上传失败时按间隔重试，解码失败的图片不重试。
+ * 客户端直传的图片没有经过应用服务器，由后台线程从存储服务下载原图。
+ * @author moxiaoli
+ */
+@Slf4j
+@Service
+public class ThumbnailServiceImpl implements ThumbnailService {
+
+    /**
+     * 缩略图的存放路径和文件名前缀
+     */
+    private static final String THUMB_PATH = "thumb";
+    private static final String THUMB_PREFIX = "thumb_";
+
+    /**
+     * 重试的间隔基数 单位毫秒
+     */
+    private static final long RETRY_BACKOFF_MILLIS = 500;
+
+    @Autowired
+    private OssProperties ossProperties;
+    @Autowired
+    private StorageModeRegistry storageModeRegistry;
+    @Autowired
+    private ThreadPoolTaskExecutor thumbnailExecutor;
+    @Autowired
+    private StorageMetrics storageMetrics;
+
+    /**
+     * 缩略图对象名 -> 缩略图任务
+     */
+    private final Map<String, ThumbnailTask> tasks = new ConcurrentHashMap<>();
+
+    @Override
+    public ThumbnailTask prepare(MultipartFile multipartFile, String objectName, String storageCode) {
+        ThumbnailTask task = new ThumbnailTask();
+        task.setFileName(objectName.substring(objectName.lastIndexOf('/') + 1));
+        task.setThumbName(thumbName(objectName));
+        task.setStorageCode(storageCode);
+        task.setCreatedAt(System.currentTimeMillis());
+        if (!ImageUtils.isImage(multipartFile.getOriginalFilename(), multipartFile.getContentType())) {
+            task.setStatus(ThumbnailTask.Status.SKIPPED);
+            return task;
+        }
+        try (InputStream inputStream = multipartFile.getInputStream()) {
+            Path sourceFile = Files.createTempFile("thumb", null);
+            task.setSourceFile(sourceFile);
+            Files.copy(inputStream, sourceFile, StandardCopyOption.REPLACE_EXISTING);
+            task.setStatus(ThumbnailTask.Status.PENDING);
+        } catch (IOException e) {
+            log.error("缩略图临时文件创建失败：{}", e.getMessage());
+            deleteSourceFile(task);
+            task.setStatus(ThumbnailTask.Status.FAILED);
+            task.setError("缩略图临时文件创建失败");
+        }
+        return task;
+    }
+
+    @Override
+    public void submit(ThumbnailTask task) {
+        tasks.put(task.getThumbName(), task);
+        if (task.getStatus() == ThumbnailTask.Status.PENDING) {
+            thumbnailExecutor.execute(() -> process(task));
+        } else {
+            task.setFinishedAt(System.currentTimeMillis());
+        }
+    }
+
+    @Override
+    public ThumbnailTask submit(String objectName, String storageCode) {
+        ThumbnailTask task = new ThumbnailTask();
+        task.setFileName(objectName.substring(objectName.lastIndexOf('/') + 1));
+        task.setThumbName(thumbName(objectName));
+        task.setStorageCode(storageCode);
+        task.setCreatedAt(System.currentTimeMillis());
+        if (getThumbName(objectName) == null) {
+            task.setStatus(ThumbnailTask.Status.SKIPPED);
+        } else {
+            task.setSourceKey(objectName);
+            task.setStatus(ThumbnailTask.Status.PENDING);
+        }
+        submit(task);
+        return task;
+    }
+
+    @Override
+    public void cancel(ThumbnailTask task) {
+        deleteSourceFile(task);
+    }
+
+    @Override
+    public ThumbnailTask getTask(String thumbName) {
+        return StringUtils.isBlank(thumbName) ? null : tasks.get(thumbName);
+    }
+
+    @Override
+    public String getThumbName(String objectName) {
+        if (StringUtils.isBlank(objectName) || objectName.startsWith(THUMB_PATH + "/") || !ImageUtils.hasImageSuffix(objectName)) {
+            return null;
+        }
+        return thumbName(objectName);
+    }
+
+    /**
+     * 缩略图保存在thumb下与原图相同的路径中 不同目录下的同名原图不会共用一个缩略图
+     * 例如：a/x.jpg的缩略图为thumb/a/thumb_x.jpg
+     */
+    private static String thumbName(String objectName) {
+        int index = objectName.lastIndexOf('/');
+        return THUMB_PATH + "/" + objectName.substring(0, index + 1) + THUMB_PREFIX + objectName.substring(index + 1);
+    }
+
+    /**
+     * 清理已结束的缩略图任务
+     */
+    @Scheduled(fixedDelayString = "${oss.thumbnail.clean-interval:600000}")
+    public void cleanFinishedTasks() {
+        long expiredBefore = System.currentTimeMillis() - ossProperties.getThumbnail().getRetention().toMillis();
+        tasks.values().removeIf(task -> task.getFinishedAt() != null && task.getFinishedAt() < expiredBefore);
+    }
+
+    private void process(ThumbnailTask task) {
+        task.setStatus(ThumbnailTask.Status.RUNNING);
+        try {
+            if (task.getSourceFile() == null && !downloadSource(task)) {
+                return;
+            }
+            OssProperties.Thumbnail properties = ossProperties.getThumbnail();
+            byte[] thumbnail;
+            long start = System.nanoTime();
+            try {
+                ImageTransform transform = new ImageTransform();
+                transform.setWidth(properties.getWidth());
+                transform.setHeight(properties.getHeight());
+                transform.setQuality(ossProperties.getImage().getDefaultQuality());
+                transform.setFormat(task.getFileName().substring(task.getFileName().lastIndexOf(".") + 1));
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                ImageUtils.transform(task.getSourceFile().toFile(), transform, outputStream);
+                thumbnail = outputStream.toByteArray();
+            } catch (IOException e) {
+                recordGenerate(task, start, e);
+                // 图片无法解码 重试也不会成功
+                fail(task, "图片压缩失败", e);
+                return;
+            }
+            recordGenerate(task, start, null);
+            for (int attempt = 0; ; attempt++) {
+                task.setAttempts(attempt + 1);
+                try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(task.getStorageCode())) {
+                    String thumbName = task.getThumbName();
+                    int index = thumbName.lastIndexOf('/');
+                    task.setThumbUrl(lease.getMode().upload(new ByteArrayInputStream(thumbnail),
+                            thumbName.substring(0, index), thumbName.substring(index + 1)));
+                    task.setStatus(ThumbnailTask.Status.DONE);
+                    return;
+                } catch (RuntimeException e) {
+                    if (attempt >= properties.getMaxRetries()) {
+                        fail(task, "缩略图上传失败", e);
+                        return;
+                    }
+                    log.warn("缩略图{}上传失败，第{}次重试：{}", task.getThumbName(), attempt + 1, e.getMessage());
+                    TimeUnit.MILLISECONDS.sleep(RETRY_BACKOFF_MILLIS * (attempt + 1));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(task, "缩略图任务被中断", e);
+        } finally {
+            deleteSourceFile(task);
+            task.setFinishedAt(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 记录缩略图的生成耗时 按缩略图保存到的存储类型统计
+     */
+    private void recordGenerate(ThumbnailTask task, long startNanos, Throwable error) {
+        long nanos = System.nanoTime() - startNanos;
+        try {
+            String backend = storageModeRegistry.getStorageType(task.getStorageCode()).getType();
+            storageMetrics.record(backend, "thumbnail", "generate", nanos, error);
+        } catch (RuntimeException e) {
+            log.warn("缩略图{}的生成耗时记录失败：{}", task.getThumbName(), e.getMessage());
+        }
+    }
+
+    /**
+     * 把存储服务中的原图下载为临时文件
+     * @return 是否下载成功
+     */
+    private boolean downloadSource(ThumbnailTask task) {
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(task.getStorageCode());
+             InputStream inputStream = lease.getMode().download(task.getSourceKey())) {
+            Path sourceFile = Files.createTempFile("thumb", null);
+            task.setSourceFile(sourceFile);
+            Files.copy(inputStream, sourceFile, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            fail(task, "原图下载失败", e);
+            return false;
+        }
+    }
+
+    private void fail(ThumbnailTask task, String error, Exception e) {
+        log.error("缩略图{}生成失败：{}", task.getThumbName(), e.getMessage());
+        task.setError(error);
+        task.setStatus(ThumbnailTask.Status.FAILED);
+    }
+
+    private void deleteSourceFile(ThumbnailTask task) {
+        Path sourceFile = task.getSourceFile();
+        if (sourceFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(sourceFile);
+        } catch (IOException e) {
+            log.error("缩略图临时文件删除失败：{}", e.getMessage());
+        }
+    }
+}
@@ -1,28 +1,54 @@
 package org.demo.oss.service.impl;
 
 import com.baomidou.mybatisplus.core.toolkit.StringUtils;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
-import org.demo.oss.service.StorageService;
-import org.demo.oss.service.SysSettingService;
+import org.demo.oss.cache.PresignedUrlCache;
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.model.BatchDeleteResult;
+import org.demo.oss.model.BatchUploadResult;
+import org.demo.oss.model.DeleteResult;
+import org.demo.oss.model.ObjectInfo;
+import org.demo.oss.model.ObjectPage;
+import org.demo.oss.model.ReadableObjectInfo;
+import org.demo.oss.model.ThumbnailTask;
+import org.demo.oss.model.UploadItemResult;
+import org.demo.oss.service.DedupService;
+import org.demo.oss.service.ImageService;
+import org.demo.oss.service.ObjectMetaService;
+import org.demo.oss.service.ThumbnailService;
 import org.demo.oss.service.UploadService;
 import org.demo.oss.storage.StorageMode;
-import org.demo.oss.storage.enums.StorageType;
+import org.demo.oss.storage.StorageModeRegistry;
 import org.demo.oss.storage.enums.UploadFileType;
-import org.demo.oss.utils.ImageUtils;
+import org.demo.oss.utils.FileUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
+import javax.annotation.PostConstruct;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.text.SimpleDateFormat;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * 文件处理接口实现类
@@ -32,162 +58,463 @@ import java.util.Objects;
 @Service
 public class UploadServiceImpl implements UploadService {
 
-    // SimpleDateFormat是处理日期格式的类
-    private static final  SimpleDateFormat SIMPLE_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
+    // DateTimeFormatter是线程安全的 批量上传时多个线程同时使用
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
+    /**
+     * 批量上传内存预算的计量单位 按KB计数避免超过int范围
+     */
+    private static final int BUDGET_UNIT = 1024;
+
+    /**
+     * 分页列举的默认和最大每页数量
+     */
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final String BLOB_DELETE_ERROR = "去重保存的文件不能直接删除";
+
+    @Autowired
+    private StorageModeRegistry storageModeRegistry;
     @Autowired
-    private SysSettingService settingService;
+    private ThumbnailService thumbnailService;
     @Autowired
-    private StorageService storageService;
+    private ImageService imageService;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private ObjectMetaService objectMetaService;
+    @Autowired
+    private OssProperties ossProperties;
+    @Autowired
+    private ThreadPoolTaskExecutor batchUploadExecutor;
+    @Autowired
+    private DedupService dedupService;
+    @Autowired
+    private PresignedUrlCache presignedUrlCache;
+    @Autowired
+    private ThreadPoolTaskExecutor storageIoExecutor;
 
     /**
-     * 存储模式
+     * 批量上传写入中的文件总大小 单位KB 全部批量上传请求共用
      */
-    private volatile StorageMode storageMode = null;
+    private Semaphore batchMemoryBudget;
 
     /**
-     * 获取存储类型。该方法首先从设置服务中获取存储编码，然后基于存储编码查询存储类型。
-     * 如果存储编码存在但对应的存储类型不存在，则记录错误日志并抛出运行时异常。
-     * 如果存储编码不存在，则默认返回"local"作为存储类型。
-     *
-     * @return 返回存储类型字符串。如果无法确定存储类型，则抛出运行时异常。
+     * 异步上传写入存储服务后登记元数据和提交缩略图 异步调用线程池已满时在完成写入的线程中执行
      */
-    private String getStorageType(){
-        // 从设置服务获取存储编码
-        String storageCode = settingService.getStorage();
-        if (StringUtils.isNotBlank(storageCode)) {
-            // 记录存储编码信息
-            log.info("当前存储服务编码为：{}",storageCode);
-            // 根据存储编码获取存储类型
-            String storageType = storageService.getStorageType(storageCode);
-            // 记录存储类型信息
-            log.info("当前存储服务类型为：{}",storageType);
-            // 如果存储类型为空，记录错误日志
-            if (StringUtils.isBlank(storageType)) {
-                log.error("当前存储服务商暂时不支持");
-                // 并抛出运行时异常
-                throw new RuntimeException("当前存储服务商暂时不支持");
+    private Executor completionExecutor;
+
+    @PostConstruct
+    public void init() {
+        long budget = ossProperties.getUpload().getBatchMemoryBudget().toBytes() / BUDGET_UNIT;
+        batchMemoryBudget = new Semaphore((int) Math.max(1, Math.min(budget, Integer.MAX_VALUE)), true);
+        completionExecutor = command -> {
+            try {
+                storageIoExecutor.execute(command);
+            } catch (RejectedExecutionException e) {
+                command.run();
+            }
+        };
+    }
+
+    @Override
+    public Map<String,String> upload(MultipartFile multipartFile) {
+        return upload(multipartFile, null, null);
+    }
+
+    @Override
+    public Map<String,String> upload(MultipartFile multipartFile, String pathName) {
+        return upload(multipartFile, pathName, null);
+    }
+
+    @Override
+    public Map<String,String> upload(MultipartFile multipartFile, String pathName, String storageCode) {
+        if (StringUtils.isBlank(pathName)) {
+            // 根据上传文件的类型选择路径
+            pathName = UploadFileType.of(multipartFile.getContentType()).getPath();
+        }
+        String dateString = LocalDate.now().format(DATE_FORMATTER);
+        String fileName = dateString + "_" + multipartFile.getOriginalFilename();
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(storageCode)) {
+            if (dedupService.isEnabled()) {
+                // 相同内容的文件只保存一份 上传时的对象名记录为对文件的引用
+                return dedupService.upload(multipartFile, pathName + "/" + fileName, lease);
+            }
+            // 缩略图写入与原图相同的存储服务商 原图保存成功后由后台线程生成
+            ThumbnailTask thumbnailTask = thumbnailService.prepare(multipartFile, pathName + "/" + fileName, lease.getStorageCode());
+            String url;
+            try {
+                url = lease.getMode().upload(multipartFile,pathName,fileName);
+            } catch (RuntimeException e) {
+                thumbnailService.cancel(thumbnailTask);
+                throw e;
             }
-            // 返回获取到的存储类型
-            return storageType;
+            thumbnailService.submit(thumbnailTask);
+            objectMetaService.record(lease.getStorageCode(), pathName + "/" + fileName, multipartFile.getSize(),
+                    multipartFile.getContentType(), hasThumbnail(thumbnailTask) ? thumbnailTask.getThumbName() : null);
+            Map<String,String> result = new HashMap<>();
+            result.put("url",url);
+            result.put("thumbName",thumbnailTask.getThumbName());
+            result.put("thumbStatus",thumbnailTask.getStatus().name());
+            return result;
         }
-        // 如果没有获取到存储编码，返回默认的存储类型"local"
-        return "local";
     }
 
-    /**
-     * 初始化存储模式。如果存储模式尚未被初始化，则调用此方法。
-     * 由于使用了volatile关键字，此方法确保了线程之间的可见性。
-     */
-    private void initStorageMode() {
-        if (storageMode == null) {
-            synchronized (this) {
-                // 再次检查以避免双重检查锁定(DCL)的问题
-                if (storageMode == null) {
-                    storageMode = StorageType.getStorageMode(getStorageType());
+    @Override
+    public CompletableFuture<Map<String,String>> uploadAsync(MultipartFile multipartFile, String pathName, String storageCode) {
+        if (dedupService.isEnabled()) {
+            // 按内容去重需要计算摘要和读写数据表 在异步调用线程池中执行同步上传
+            return supplyOnIoExecutor(() -> upload(multipartFile, pathName, storageCode));
+        }
+        String path = StringUtils.isBlank(pathName) ? UploadFileType.of(multipartFile.getContentType()).getPath() : pathName;
+        String fileName = LocalDate.now().format(DATE_FORMATTER) + "_" + multipartFile.getOriginalFilename();
+        return storageModeRegistry.callAsync(storageCode, lease -> {
+            ThumbnailTask thumbnailTask = thumbnailService.prepare(multipartFile, path + "/" + fileName, lease.getStorageCode());
+            return lease.getAsyncMode().upload(multipartFile, path, fileName).handleAsync((url, e) -> {
+                if (e != null) {
+                    thumbnailService.cancel(thumbnailTask);
+                    throw e instanceof RuntimeException ? (RuntimeException) e : new CompletionException(e);
+                }
+                thumbnailService.submit(thumbnailTask);
+                objectMetaService.record(lease.getStorageCode(), path + "/" + fileName, multipartFile.getSize(),
+                        multipartFile.getContentType(), hasThumbnail(thumbnailTask) ? thumbnailTask.getThumbName() : null);
+                Map<String,String> result = new HashMap<>();
+                result.put("url",url);
+                result.put("thumbName",thumbnailTask.getThumbName());
+                result.put("thumbStatus",thumbnailTask.getStatus().name());
+                return result;
+            }, completionExecutor);
+        });
+    }
+
+    @Override
+    public BatchUploadResult uploadBatch(List<MultipartFile> multipartFiles, String pathName, String storageCode) {
+        if (multipartFiles == null || multipartFiles.isEmpty()) {
+            throw new RuntimeException("文件不能为空");
+        }
+        int maxBatchFiles = ossProperties.getUpload().getMaxBatchFiles();
+        if (multipartFiles.size() > maxBatchFiles) {
+            throw new RuntimeException("单次最多上传" + maxBatchFiles + "个文件");
+        }
+        long start = System.currentTimeMillis();
+        // 持有租约直到全部文件上传结束 整批文件写入同一个存储服务商
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(storageCode)) {
+            List<CompletableFuture<UploadItemResult>> futures = new ArrayList<>(multipartFiles.size());
+            for (MultipartFile multipartFile : multipartFiles) {
+                futures.add(submitUpload(multipartFile, pathName, lease.getStorageCode()));
+            }
+            BatchUploadResult result = new BatchUploadResult();
+            futures.forEach(future -> result.getResults().add(future.join()));
+            long size = 0;
+            int succeeded = 0;
+            for (UploadItemResult item : result.getResults()) {
+                if (item.getSuccess()) {
+                    succeeded++;
+                    size += item.getSize();
                 }
             }
+            long elapsedMillis = Math.max(1, System.currentTimeMillis() - start);
+            result.setTotal(multipartFiles.size());
+            result.setSucceeded(succeeded);
+            result.setFailed(multipartFiles.size() - succeeded);
+            result.setSize(size);
+            result.setElapsedMillis(elapsedMillis);
+            result.setThroughput(size * 1000 / elapsedMillis);
+            log.info("批量上传完成，文件数：{}，成功：{}，大小：{}，耗时：{}ms，速度：{}/s", result.getTotal(), succeeded,
+                    FileUtils.convertFileSize(size), elapsedMillis, FileUtils.convertFileSize(result.getThroughput()));
+            return result;
         }
     }
 
     /**
-     * 更新存储模式。
-     * 该方法会检查当前的存储模式是否已经设置。如果已经设置，会根据获取的存储类型来更新存储模式；
-     * 如果未设置，则会调用initStorageMode方法来初始化存储模式。
-     *
-     * @return 总是返回true，表示存储模式已成功更新或初始化。
+     * 按文件大小获取内存预算后提交到批量上传线程池
+     * 预算不足时等待，线程池队列满时由请求线程自己上传，两者都会减慢处理后续文件的速度
      */
-    private Boolean updateStorageMode() {
-        if (storageMode != null){
-            // 存储模式已设置，根据当前的存储类型更新存储模式
-            storageMode = StorageType.getStorageMode(getStorageType());
-        }else {
-            // 存储模式未设置，进行初始化
-            initStorageMode();
+    private CompletableFuture<UploadItemResult> submitUpload(MultipartFile multipartFile, String pathName, String storageCode) {
+        if (multipartFile.isEmpty()) {
+            return CompletableFuture.completedFuture(failedItem(multipartFile, "文件不能为空"));
+        }
+        // 单个文件超过总预算时只占用全部预算
+        int permits = (int) Math.min((multipartFile.getSize() + BUDGET_UNIT - 1) / BUDGET_UNIT,
+                ossProperties.getUpload().getBatchMemoryBudget().toBytes() / BUDGET_UNIT);
+        permits = Math.max(1, permits);
+        try {
+            if (!batchMemoryBudget.tryAcquire(permits, ossProperties.getUpload().getBatchAcquireTimeout().toMillis(),
+                    TimeUnit.MILLISECONDS)) {
+                return CompletableFuture.completedFuture(failedItem(multipartFile, "服务繁忙，请稍后重试"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.completedFuture(failedItem(multipartFile, "文件上传已取消"));
         }
-        return true;
+        int acquired = permits;
+        return CompletableFuture
+                .supplyAsync(() -> uploadItem(multipartFile, pathName, storageCode), batchUploadExecutor)
+                .whenComplete((result, error) -> batchMemoryBudget.release(acquired));
+    }
+
+    private UploadItemResult uploadItem(MultipartFile multipartFile, String pathName, String storageCode) {
+        try {
+            Map<String, String> uploaded = upload(multipartFile, pathName, storageCode);
+            UploadItemResult item = new UploadItemResult();
+            item.setFileName(multipartFile.getOriginalFilename());
+            item.setSize(multipartFile.getSize());
+            item.setSuccess(true);
+            item.setUrl(uploaded.get("url"));
+            item.setThumbName(uploaded.get("thumbName"));
+            item.setThumbStatus(uploaded.get("thumbStatus"));
+            return item;
+        } catch (RuntimeException e) {
+            log.error("文件{}上传失败：{}", multipartFile.getOriginalFilename(), e.getMessage());
+            return failedItem(multipartFile, e.getMessage());
+        }
+    }
+
+    private UploadItemResult failedItem(MultipartFile multipartFile, String error) {
+        UploadItemResult item = new UploadItemResult();
+        item.setFileName(multipartFile.getOriginalFilename());
+        item.setSize(multipartFile.getSize());
+        item.setSuccess(false);
+        item.setError(error);
+        return item;
     }
 
     @Override
-    public Map<String,String> upload(MultipartFile multipartFile) {
-        // 将上传文件的类型转换成全大写
-        String type = Objects.requireNonNull(multipartFile.getContentType()).split("/")[0].toUpperCase();
-        return upload(multipartFile, UploadFileType.valueOf(type).getPath());
+    public String download(String fileName) {
+        return download(fileName, null);
     }
 
     @Override
-    public Map<String,String> upload(MultipartFile multipartFile, String pathName) {
-        // 初始化存储方式
-        initStorageMode();
-        String dateString = SIMPLE_DATE_FORMAT.format(System.currentTimeMillis());
-        String fileName = dateString + "_" + multipartFile.getOriginalFilename();
-//        return storageMode.upload(multipartFile,pathName,fileName);
-        InputStream inputStream = null;
-        try {
-            inputStream = multipartFile.getInputStream();
-            String url = storageMode.upload(multipartFile,pathName,fileName);
-            String thumbUrl = storageMode.upload(ImageUtils.compressImageToInputStream(multipartFile,200,200),"thumb","thumb_" + fileName);
-            return new HashMap<String,String>(){{
-                put("url",url);
-                put("thumbUrl",thumbUrl);
-            }};
-        }catch (IOException io){
-            log.error(io.getMessage());
-        }finally {
-            if (null != inputStream){
-                try {
-                    inputStream.close();
-                }catch (Exception e){
-                    log.error("文件流关闭失败：{}",e.getMessage());
-                }
+    public String download(String fileName, String storageCode) {
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(storageCode)) {
+            return presignedUrlCache.getObjectUrl(lease, fileName);
+        }
+    }
+
+    @Override
+    public Boolean delete(String fileName) {
+        return delete(fileName, null);
+    }
+
+    @Override
+    public Boolean delete(String fileName, String storageCode) {
+        if (dedupService.isBlobKey(fileName)) {
+            throw new RuntimeException(BLOB_DELETE_ERROR);
+        }
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(storageCode)) {
+            // 按内容去重保存的对象只释放引用 文件不再被引用后由定时任务删除
+            Boolean deleted = !dedupService.release(Collections.singletonList(fileName), lease).isEmpty()
+                    || lease.getMode().delete(fileName);
+            if (Boolean.TRUE.equals(deleted)) {
+                imageService.deleteVariants(Collections.singletonList(fileName), lease);
+                objectMetaService.remove(lease.getStorageCode(), fileName);
             }
+            return deleted;
         }
-        return null;
     }
 
     @Override
-    public String download(String fileName) {
-        initStorageMode();
-        return storageMode.getObjectUrl(fileName);
+    public CompletableFuture<Boolean> deleteAsync(String fileName, String storageCode) {
+        if (dedupService.isBlobKey(fileName)) {
+            throw new RuntimeException(BLOB_DELETE_ERROR);
+        }
+        if (dedupService.isEnabled()) {
+            // 释放去重引用需要读写数据表 在异步调用线程池中执行同步删除
+            return supplyOnIoExecutor(() -> delete(fileName, storageCode));
+        }
+        return storageModeRegistry.callAsync(storageCode, lease -> lease.getAsyncMode().delete(fileName)
+                .thenApplyAsync(deleted -> {
+                    if (Boolean.TRUE.equals(deleted)) {
+                        imageService.deleteVariants(Collections.singletonList(fileName), lease);
+                        objectMetaService.remove(lease.getStorageCode(), fileName);
+                    }
+                    return deleted;
+                }, completionExecutor));
     }
 
     @Override
-    public Boolean delete(String fileName) {
-        initStorageMode();
-        return storageMode.delete(fileName);
+    public BatchDeleteResult deleteBatch(List<String> fileNames, String storageCode) {
+        if (fileNames == null || fileNames.isEmpty()) {
+            throw new RuntimeException("文件名不能为空");
+        }
+        long start = System.currentTimeMillis();
+        BatchDeleteResult result = new BatchDeleteResult();
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(storageCode)) {
+            // 去掉重复的文件名 保持请求的顺序
+            deleteObjects(lease, new ArrayList<>(new LinkedHashSet<>(fileNames)), result, true);
+        }
+        return finishDelete(result, start);
     }
 
     @Override
-    public void downloadImage(String fileName, OutputStream outputStream) {
-        initStorageMode();
-        InputStream stream = null;
-        try {
-            stream = storageMode.download(fileName);
-        } catch (Exception e) {
-            log.error(e.getMessage());
+    public BatchDeleteResult deletePrefix(String prefix, String storageCode) {
+        if (StringUtils.isBlank(prefix)) {
+            throw new RuntimeException("前缀不能为空");
         }
-        try {
-            if (stream == null) {
-                throw new IOException("文件下载失败");
-            }
-            BufferedImage bufferedImage = ImageIO.read(stream);
-            String suffix = fileName.substring(fileName.lastIndexOf(".") + 1);
-//            ImageIO.write(bufferedImage, "jpg", outputStream);
-            ImageIO.write(bufferedImage, suffix, outputStream);
-        }catch (IOException e) {
-            log.error(e.getMessage());
+        long start = System.currentTimeMillis();
+        BatchDeleteResult result = new BatchDeleteResult();
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(storageCode)) {
+            // 每列举一页就删除一页 不在内存中保存全部文件名
+            lease.getMode().forEachPage(prefix, null, StorageMode.DELETE_BATCH_SIZE, page -> {
+                List<String> objectNames = page.getObjects().stream()
+                        .map(ObjectInfo::getName)
+                        .collect(Collectors.toList());
+                if (!objectNames.isEmpty()) {
+                    deleteObjects(lease, objectNames, result, false);
+                }
+            });
         }
+        return finishDelete(result, start);
     }
 
     @Override
-    public List<Map<String,String>> listObjects(String objectNamePrefix, Boolean isSubDir) {
-        initStorageMode();
-        return storageMode.listObjects(objectNamePrefix,isSubDir);
+    public List<ObjectInfo> listObjects(String objectNamePrefix, Boolean isSubDir) {
+        return listObjects(objectNamePrefix, isSubDir, null);
+    }
+
+    @Override
+    public List<ObjectInfo> listObjects(String objectNamePrefix, Boolean isSubDir, String storageCode) {
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(storageCode)) {
+            return lease.getMode().listObjects(objectNamePrefix,isSubDir);
+        }
+    }
+
+    @Override
+    public List<ReadableObjectInfo> listReadableObjects(String objectNamePrefix, Boolean isSubDir, String storageCode) {
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(storageCode)) {
+            // 外链前缀每次列举只获取一次
+            String urlPrefix = lease.getMode().getUrlPrefix();
+            return lease.getMode().listObjects(objectNamePrefix,isSubDir).stream()
+                    .map(object -> new ReadableObjectInfo(object, urlPrefix))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public List<ObjectInfo> list(String objectNamePrefix) {
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire()) {
+            return lease.getMode().listObjects(objectNamePrefix);
+        }
+    }
+
+    @Override
+    public ObjectPage listPage(String prefix, String delimiter, Integer pageSize, String token, String storageCode) {
+        int size = pageSize == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(storageCode)) {
+            return lease.getMode().listPage(prefix, delimiter, size, token);
+        }
     }
 
     @Override
-    public List<Map<String,String>> list(String objectNamePrefix) {
-        initStorageMode();
-        return storageMode.listObjects(objectNamePrefix);
+    public CompletableFuture<ObjectPage> listPageAsync(String prefix, String delimiter, Integer pageSize, String token,
+                                                       String storageCode) {
+        int size = pageSize == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        return storageModeRegistry.callAsync(storageCode,
+                lease -> lease.getAsyncMode().listPage(prefix, delimiter, size, token));
+    }
+
+    @Override
+    public void streamObjects(String prefix, String delimiter, String storageCode, OutputStream outputStream) throws IOException {
+        try (StorageModeRegistry.Lease lease = storageModeRegistry.acquire(storageCode);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            // 关闭生成器时不关闭响应流
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            lease.getMode().forEachPage(prefix, delimiter, MAX_PAGE_SIZE, page -> {
+                try {
+                    for (String commonPrefix : page.getCommonPrefixes()) {
+                        generator.writeStartObject();
+                        generator.writeStringField("prefix", commonPrefix);
+                        generator.writeEndObject();
+                        generator.writeRaw('\n');
+                    }
+                    for (ObjectInfo objectInfo : page.getObjects()) {
+                        generator.writeObject(objectInfo);
+                        generator.writeRaw('\n');
+                    }
+                    // 每页写完后发送给客户端
+                    generator.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 在异步调用线程池中执行同步的操作 线程池已满时直接失败
+     */
+    private <T> CompletableFuture<T> supplyOnIoExecutor(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, storageIoExecutor);
+        } catch (RejectedExecutionException e) {
+            throw new RuntimeException("服务繁忙，请稍后重试");
+        }
+    }
+
+    /**
+     * 不是图片或者缩略图生成失败时没有缩略图
+     */
+    private boolean hasThumbnail(ThumbnailTask task) {
+        return task.getStatus() != ThumbnailTask.Status.SKIPPED && task.getStatus() != ThumbnailTask.Status.FAILED;
+    }
+
+    /**
+     * 删除一批文件和对应的缩略图、衍生图片 并删除对象元数据表中的记录
+     * @param detailed 是否记录每个文件的结果 为false时只记录失败的文件
+     */
+    private void deleteObjects(StorageModeRegistry.Lease lease, List<String> objectNames, BatchDeleteResult result,
+                               boolean detailed) {
+        // 按内容去重保存的对象只释放引用 不删除存储服务中的文件
+        Set<String> released = dedupService.release(objectNames, lease);
+        Map<String, String> failures = new HashMap<>();
+        Set<String> thumbNames = new LinkedHashSet<>();
+        List<String> keys = new ArrayList<>(objectNames.size());
+        for (String objectName : objectNames) {
+            if (released.contains(objectName)) {
+                continue;
+            }
+            if (dedupService.isBlobKey(objectName)) {
+                failures.put(objectName, BLOB_DELETE_ERROR);
+                continue;
+            }
+            keys.add(objectName);
+            String thumbName = thumbnailService.getThumbName(objectName);
+            if (thumbName != null) {
+                thumbNames.add(thumbName);
+            }
+        }
+        keys.addAll(thumbNames);
+        if (!keys.isEmpty()) {
+            failures.putAll(lease.getMode().deleteObjects(keys));
+        }
+        List<String> deleted = new ArrayList<>(objectNames.size());
+        for (String objectName : objectNames) {
+            String error = failures.get(objectName);
+            if (error == null) {
+                deleted.add(objectName);
+            }
+            if (detailed || error != null) {
+                result.getResults().add(new DeleteResult(objectName, error == null, error));
+            }
+        }
+        long thumbnails = thumbNames.stream().filter(thumbName -> !failures.containsKey(thumbName)).count();
+        result.setTotal(result.getTotal() + objectNames.size());
+        result.setDeleted(result.getDeleted() + deleted.size());
+        result.setFailed(result.getFailed() + objectNames.size() - deleted.size());
+        result.setThumbnails(result.getThumbnails() + thumbnails);
+        result.setVariants(result.getVariants() + imageService.deleteVariants(deleted, lease));
+        objectMetaService.remove(lease.getStorageCode(), deleted);
+    }
+
+    private BatchDeleteResult finishDelete(BatchDeleteResult result, long start) {
+        long elapsedMillis = Math.max(1, System.currentTimeMillis() - start);
+        result.setElapsedMillis(elapsedMillis);
+        result.setThroughput((result.getDeleted() + result.getThumbnails()) * 1000 / elapsedMillis);
+        log.info("批量删除完成，文件数：{}，成功：{}，失败：{}，缩略图：{}，耗时：{}ms，速度：{}个/s", result.getTotal(),
+                result.getDeleted(), result.getFailed(), result.getThumbnails(), elapsedMillis, result.getThroughput());
+        return result;
     }
 }
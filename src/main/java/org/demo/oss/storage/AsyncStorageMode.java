@@ -0,0 +1,66 @@
+package org.demo.oss.storage;
+
+import org.demo.oss.model.ObjectInfo;
+import org.demo.oss.model.ObjectPage;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步存储模式接口类
+ * 与{@link StorageMode}中的同名方法语义相同，调用立即返回，存储服务的操作完成后结束返回的CompletableFuture，
+ * 操作失败时以{@link RuntimeException}异常结束。
+ * @author moxiaoli
+ */
+public interface AsyncStorageMode {
+
+    /**
+     * 文件上传
+     * @param multipartFile 文件
+     * @param pathName 文件路径
+     * @param objectName 文件名
+     * @return 文件资源链接
+     */
+    CompletableFuture<String> upload(MultipartFile multipartFile, String pathName, String objectName);
+
+    /**
+     * 文件下载
+     * @param objectName 文件名
+     * @return {@link InputStream} 文件的二进制流 使用完毕后需要关闭
+     */
+    CompletableFuture<InputStream> download(String objectName);
+
+    /**
+     * 获取对象元数据 不读取文件内容
+     * @param objectName 文件名
+     * @return 对象元数据
+     */
+    CompletableFuture<ObjectInfo> statObject(String objectName);
+
+    /**
+     * 文件删除
+     * @param objectName 文件名
+     * @return flag 删除成功的标志 网络异常和服务端错误时异常完成
+     */
+    CompletableFuture<Boolean> delete(String objectName);
+
+    /**
+     * 批量删除文件 每批最多{@link StorageMode#DELETE_BATCH_SIZE}个 对象本来就不存在时视为删除成功
+     * @param objectNames 文件名列表
+     * @return 删除失败的文件名 -> 失败原因 全部成功时为空
+     */
+    CompletableFuture<Map<String, String>> deleteObjects(List<String> objectNames);
+
+    /**
+     * 分页列举对象 对象名按字典序排列
+     * @param prefix 对象名前缀
+     * @param delimiter 分隔符 指定时前缀之后包含分隔符的对象合并为公共前缀 为空时列举全部子目录
+     * @param pageSize 每页的最大数量 对象和公共前缀合计
+     * @param continuationToken 上一页返回的继续标记 为空时从第一页开始
+     * @return 一页对象
+     */
+    CompletableFuture<ObjectPage> listPage(String prefix, String delimiter, int pageSize, String continuationToken);
+}
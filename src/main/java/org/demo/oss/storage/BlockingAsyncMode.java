@@ -0,0 +1,74 @@
+package org.demo.oss.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.demo.oss.model.ObjectInfo;
+import org.demo.oss.model.ObjectPage;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * 基于线程池的异步存储模式实现类
+ * 存储服务的SDK没有异步接口时（阿里OSS和本地存储），在有界线程池中执行同步存储方式的调用。
+ * 线程池已满时直接以失败结束，不退回到调用方线程执行。
+ * @author moxiaoli
+ */
+@Slf4j
+public class BlockingAsyncMode implements AsyncStorageMode {
+
+    private final StorageMode storageMode;
+
+    private final Executor executor;
+
+    public BlockingAsyncMode(StorageMode storageMode, Executor executor) {
+        this.storageMode = storageMode;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<String> upload(MultipartFile multipartFile, String pathName, String objectName) {
+        return supply(() -> storageMode.upload(multipartFile, pathName, objectName));
+    }
+
+    @Override
+    public CompletableFuture<InputStream> download(String objectName) {
+        return supply(() -> storageMode.download(objectName));
+    }
+
+    @Override
+    public CompletableFuture<ObjectInfo> statObject(String objectName) {
+        return supply(() -> storageMode.statObject(objectName));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> delete(String objectName) {
+        return supply(() -> storageMode.delete(objectName));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> deleteObjects(List<String> objectNames) {
+        return supply(() -> storageMode.deleteObjects(objectNames));
+    }
+
+    @Override
+    public CompletableFuture<ObjectPage> listPage(String prefix, String delimiter, int pageSize, String continuationToken) {
+        return supply(() -> storageMode.listPage(prefix, delimiter, pageSize, continuationToken));
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, executor);
+        } catch (RejectedExecutionException e) {
+            log.warn("异步存储调用线程池已满：{}", e.getMessage());
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(new RuntimeException("服务繁忙，请稍后重试"));
+            return future;
+        }
+    }
+}
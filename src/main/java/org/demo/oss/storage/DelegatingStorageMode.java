@@ -0,0 +1,272 @@
+package org.demo.oss.storage;
+
+import org.demo.oss.model.ObjectInfo;
+import org.demo.oss.model.ObjectPage;
+import org.demo.oss.model.PresignedUpload;
+import org.demo.oss.model.UploadPart;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 存储方式的装饰器基类
+ * 每个存储操作都以操作名经过{@link #invoke}转发给被装饰的存储方式，异步存储方式的操作经过{@link #invokeAsync}转发，
+ * 子类在这两个方法中统一加入容错、统计等处理。
+ * @author moxiaoli
+ */
+public abstract class DelegatingStorageMode implements StorageMode {
+
+    protected final StorageMode delegate;
+
+    protected DelegatingStorageMode(StorageMode delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * 获取被装饰的存储方式
+     * @return 被装饰的存储方式
+     */
+    public StorageMode getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * 去掉全部装饰器 获取实际的存储方式
+     * @param storageMode 存储方式
+     * @return 实际的存储方式
+     */
+    public static StorageMode unwrap(StorageMode storageMode) {
+        StorageMode mode = storageMode;
+        while (mode instanceof DelegatingStorageMode) {
+            mode = ((DelegatingStorageMode) mode).getDelegate();
+        }
+        return mode;
+    }
+
+    /**
+     * 执行一个同步存储操作
+     * @param operation 操作名 与存储方式接口的方法名一致
+     * @param idempotent 是否为幂等操作 幂等操作失败后可以安全地重复执行
+     * @param call 调用被装饰的存储方式
+     * @return 操作结果
+     */
+    protected abstract <T> T invoke(String operation, boolean idempotent, Supplier<T> call);
+
+    /**
+     * 执行一个异步存储操作
+     * @param operation 操作名 与异步存储方式接口的方法名一致
+     * @param call 调用被装饰的异步存储方式
+     * @return 操作结果
+     */
+    protected abstract <T> CompletableFuture<T> invokeAsync(String operation, Supplier<CompletableFuture<T>> call);
+
+    /**
+     * 上传的文件已写入存储服务 子类可以统计传输的字节数
+     * @param operation 操作名
+     * @param bytes 字节数
+     */
+    protected void transferred(String operation, long bytes) {
+    }
+
+    @Override
+    public String upload(MultipartFile multipartFile) {
+        String url = invoke("upload", false, () -> delegate.upload(multipartFile));
+        transferred("upload", multipartFile.getSize());
+        return url;
+    }
+
+    @Override
+    public String upload(MultipartFile multipartFile, String objectName) {
+        String url = invoke("upload", false, () -> delegate.upload(multipartFile, objectName));
+        transferred("upload", multipartFile.getSize());
+        return url;
+    }
+
+    @Override
+    public String upload(String pathName, MultipartFile multipartFile) {
+        String url = invoke("upload", false, () -> delegate.upload(pathName, multipartFile));
+        transferred("upload", multipartFile.getSize());
+        return url;
+    }
+
+    @Override
+    public String upload(MultipartFile multipartFile, String pathName, String objectName) {
+        String url = invoke("upload", false, () -> delegate.upload(multipartFile, pathName, objectName));
+        transferred("upload", multipartFile.getSize());
+        return url;
+    }
+
+    @Override
+    public String upload(InputStream inputStream, String pathName, String objectName) {
+        return invoke("upload", false, () -> delegate.upload(inputStream, pathName, objectName));
+    }
+
+    @Override
+    public InputStream download(String objectName) {
+        return invoke("download", true, () -> delegate.download(objectName));
+    }
+
+    @Override
+    public InputStream download(String objectName, long offset, long length) {
+        return invoke("download", true, () -> delegate.download(objectName, offset, length));
+    }
+
+    @Override
+    public ObjectInfo statObject(String objectName) {
+        return invoke("statObject", true, () -> delegate.statObject(objectName));
+    }
+
+    @Override
+    public Boolean delete(String objectName) {
+        return invoke("delete", true, () -> delegate.delete(objectName));
+    }
+
+    @Override
+    public Map<String, String> deleteObjects(List<String> objectNames) {
+        return invoke("deleteObjects", true, () -> delegate.deleteObjects(objectNames));
+    }
+
+    @Override
+    public String getObjectUrl(String objectName) {
+        return invoke("getObjectUrl", true, () -> delegate.getObjectUrl(objectName));
+    }
+
+    @Override
+    public String getObjectUrl(String objectName, Integer duration, TimeUnit unit) {
+        return invoke("getObjectUrl", true, () -> delegate.getObjectUrl(objectName, duration, unit));
+    }
+
+    @Override
+    public String getObjectUrlLong(String objectName) {
+        return invoke("getObjectUrl", true, () -> delegate.getObjectUrlLong(objectName));
+    }
+
+    @Override
+    public String getUrlPrefix() {
+        // 只拼接配置 不访问存储服务
+        return delegate.getUrlPrefix();
+    }
+
+    @Override
+    public PresignedUpload presignUpload(String objectName, String contentType, long maxSize, long expiresAt) {
+        return invoke("presignUpload", true, () -> delegate.presignUpload(objectName, contentType, maxSize, expiresAt));
+    }
+
+    @Override
+    public List<ObjectInfo> listObjects(String objectNamePrefix, Boolean isSubDir) {
+        return invoke("listObjects", true, () -> delegate.listObjects(objectNamePrefix, isSubDir));
+    }
+
+    @Override
+    public List<ObjectInfo> listObjects(String objectNamePrefix, Integer maxKeys, Boolean isSubDir) {
+        return invoke("listObjects", true, () -> delegate.listObjects(objectNamePrefix, maxKeys, isSubDir));
+    }
+
+    @Override
+    public List<ObjectInfo> listObjects(String objectNamePrefix) {
+        return invoke("listObjects", true, () -> delegate.listObjects(objectNamePrefix));
+    }
+
+    @Override
+    public ObjectPage listPage(String prefix, String delimiter, int pageSize, String continuationToken) {
+        return invoke("listPage", true, () -> delegate.listPage(prefix, delimiter, pageSize, continuationToken));
+    }
+
+    @Override
+    public void forEachPage(String prefix, String delimiter, int pageSize, Consumer<ObjectPage> consumer) {
+        // 转发给被装饰的存储方式 本地存储只遍历一次目录 已交给consumer的页不能重复处理 不重试
+        invoke("forEachPage", false, () -> {
+            delegate.forEachPage(prefix, delimiter, pageSize, consumer);
+            return null;
+        });
+    }
+
+    @Override
+    public String initiateMultipartUpload(String objectName, String contentType, long objectSize) {
+        return invoke("initiateMultipartUpload", false,
+                () -> delegate.initiateMultipartUpload(objectName, contentType, objectSize));
+    }
+
+    @Override
+    public String uploadPart(String objectName, String uploadId, UploadPart part, InputStream inputStream) {
+        // 分片数据流只能读取一次 由分片上传服务按分片重试
+        return invoke("uploadPart", false, () -> delegate.uploadPart(objectName, uploadId, part, inputStream));
+    }
+
+    @Override
+    public String uploadPart(String objectName, String uploadId, UploadPart part, byte[] data) {
+        // 转发给被装饰的存储方式 minio直接使用该缓冲区 与数据流的分片一样由分片上传服务重试
+        return invoke("uploadPart", false, () -> delegate.uploadPart(objectName, uploadId, part, data));
+    }
+
+    @Override
+    public String completeMultipartUpload(String objectName, String uploadId, List<UploadPart> parts) {
+        return invoke("completeMultipartUpload", false, () -> delegate.completeMultipartUpload(objectName, uploadId, parts));
+    }
+
+    @Override
+    public void abortMultipartUpload(String objectName, String uploadId) {
+        invoke("abortMultipartUpload", true, () -> {
+            delegate.abortMultipartUpload(objectName, uploadId);
+            return null;
+        });
+    }
+
+    @Override
+    public AsyncStorageMode async(Executor executor) {
+        return new DelegatingAsyncMode(delegate.async(executor));
+    }
+
+    /**
+     * 异步存储方式的装饰器 每个操作经过{@link #invokeAsync}转发
+     */
+    private final class DelegatingAsyncMode implements AsyncStorageMode {
+
+        private final AsyncStorageMode asyncDelegate;
+
+        private DelegatingAsyncMode(AsyncStorageMode asyncDelegate) {
+            this.asyncDelegate = asyncDelegate;
+        }
+
+        @Override
+        public CompletableFuture<String> upload(MultipartFile multipartFile, String pathName, String objectName) {
+            return invokeAsync("upload", () -> asyncDelegate.upload(multipartFile, pathName, objectName))
+                    .thenApply(url -> {
+                        transferred("upload", multipartFile.getSize());
+                        return url;
+                    });
+        }
+
+        @Override
+        public CompletableFuture<InputStream> download(String objectName) {
+            return invokeAsync("download", () -> asyncDelegate.download(objectName));
+        }
+
+        @Override
+        public CompletableFuture<ObjectInfo> statObject(String objectName) {
+            return invokeAsync("statObject", () -> asyncDelegate.statObject(objectName));
+        }
+
+        @Override
+        public CompletableFuture<Boolean> delete(String objectName) {
+            return invokeAsync("delete", () -> asyncDelegate.delete(objectName));
+        }
+
+        @Override
+        public CompletableFuture<Map<String, String>> deleteObjects(List<String> objectNames) {
+            return invokeAsync("deleteObjects", () -> asyncDelegate.deleteObjects(objectNames));
+        }
+
+        @Override
+        public CompletableFuture<ObjectPage> listPage(String prefix, String delimiter, int pageSize, String continuationToken) {
+            return invokeAsync("listPage", () -> asyncDelegate.listPage(prefix, delimiter, pageSize, continuationToken));
+        }
+    }
+}
@@ -1,20 +1,43 @@
 package org.demo.oss.storage;
 
+import com.google.common.io.ByteStreams;
 import lombok.extern.slf4j.Slf4j;
-import org.demo.oss.utils.FileUtils;
-import org.demo.oss.utils.ImageUtils;
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.model.ObjectInfo;
+import org.demo.oss.model.ObjectPage;
+import org.demo.oss.model.PresignedUpload;
+import org.demo.oss.model.UploadPart;
 import org.demo.oss.utils.SpringUtils;
 import org.demo.oss.utils.StringUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
-import java.text.SimpleDateFormat;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 /**
  * 本地存储模式实现类
@@ -23,12 +46,25 @@ import java.util.stream.Collectors;
 @Slf4j
 public class LocalMode implements StorageMode {
 
-    private static final SimpleDateFormat SIMPLE_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
-
     private final String host = SpringUtils.getHost();
 
     private final String uploadPath = SpringUtils.getProperty("web.resource-path");
 
+    /**
+     * 分片上传的临时文件目录 位于上传目录下
+     */
+    private static final String MULTIPART_DIR = ".multipart";
+
+    /**
+     * 未配置时每个列举子任务读取文件属性的目录项数
+     */
+    private static final int DEFAULT_LIST_BATCH_SIZE = 1024;
+
+    /**
+     * 写入分片时的缓冲区大小
+     */
+    private static final int PART_BUFFER_SIZE = 64 * 1024;
+
     @Override
     public String upload(MultipartFile multipartFile) {
         return upload(multipartFile,  multipartFile.getOriginalFilename());
@@ -73,9 +109,8 @@ public class LocalMode implements StorageMode {
                 file.mkdirs();
             }
             String fileName = filePath + "/" + objectName;
-            String suffix = ImageUtils.getImageSuffix(objectName);
-            BufferedImage bufferedImage = ImageIO.read(inputStream);
-            ImageIO.write(bufferedImage,suffix,new File(fileName));
+            // 原样写入 不重新编码
+            Files.copy(inputStream, Paths.get(fileName), StandardCopyOption.REPLACE_EXISTING);
             return host + "/" + pathName + "/" + objectName;
         } catch (Exception e) {
             log.error("文件上传失败", e);
@@ -98,13 +133,58 @@ public class LocalMode implements StorageMode {
         }
         try {
             // 本地文件路径
-            return new File(uploadPath + objectName).toURI().toURL().openStream();
+            return Files.newInputStream(getLocalFile(objectName));
+        } catch (RuntimeException e) {
+            throw e;
         } catch (Exception e) {
             log.error("文件下载失败", e);
             throw new RuntimeException("文件下载失败");
         }
     }
 
+    @Override
+    public InputStream download(String objectName, long offset, long length) {
+        try {
+            FileChannel channel = FileChannel.open(getLocalFile(objectName), StandardOpenOption.READ);
+            channel.position(offset);
+            return ByteStreams.limit(Channels.newInputStream(channel), length);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("文件下载失败", e);
+            throw new RuntimeException("文件下载失败");
+        }
+    }
+
+    @Override
+    public ObjectInfo statObject(String objectName) {
+        Path file = getLocalFile(objectName);
+        try {
+            return toObjectInfo(objectName, Files.readAttributes(file, BasicFileAttributes.class));
+        } catch (IOException e) {
+            log.error("获取文件信息失败", e);
+            throw new RuntimeException("文件不存在", e);
+        }
+    }
+
+    /**
+     * 获取对象对应的本地文件 供零拷贝下载使用
+     * @param objectName 对象名 包含文件路径
+     * @return 本地文件路径
+     */
+    public Path getLocalFile(String objectName) {
+        if (StringUtils.isBlank(objectName)) {
+            throw new RuntimeException("文件名不能为空");
+        }
+        Path root = Paths.get(uploadPath).toAbsolutePath().normalize();
+        Path file = root.resolve(objectName.startsWith("/") ? objectName.substring(1) : objectName).normalize();
+        // 不允许通过../访问上传目录以外的文件
+        if (!file.startsWith(root) || file.startsWith(root.resolve(MULTIPART_DIR)) || !Files.isRegularFile(file)) {
+            throw new RuntimeException("文件不存在");
+        }
+        return file;
+    }
+
     @Override
     public Boolean delete(String objectName) {
         if (StringUtils.isBlank(objectName)) {
@@ -122,6 +202,60 @@ public class LocalMode implements StorageMode {
         }
     }
 
+    @Override
+    public Map<String, String> deleteObjects(List<String> objectNames) {
+        Path root = Paths.get(uploadPath).toAbsolutePath().normalize();
+        Map<String, String> failures = new ConcurrentHashMap<>();
+        // 在列举目录的线程池中并行删除 每个文件一次unlink
+        getListPool().submit(() -> objectNames.parallelStream().forEach(objectName -> {
+            String error = unlink(root, objectName);
+            if (error != null) {
+                failures.put(objectName, error);
+            }
+        })).join();
+        return failures;
+    }
+
+    /**
+     * 删除上传目录中的一个文件
+     * @return 失败原因 成功或文件不存在时为null
+     */
+    private String unlink(Path root, String objectName) {
+        if (StringUtils.isBlank(objectName)) {
+            return "文件名不能为空";
+        }
+        Path file = resolveObject(root, objectName);
+        if (file == null) {
+            return "文件名不正确";
+        }
+        try {
+            if (!Files.isDirectory(file)) {
+                Files.deleteIfExists(file);
+            }
+            return null;
+        } catch (IOException e) {
+            log.error("文件{}删除失败：{}", objectName, e.getMessage());
+            return "文件删除失败";
+        }
+    }
+
+    /**
+     * 获取对象在上传目录中的路径
+     * @param root 上传目录
+     * @param objectName 对象名
+     * @return 文件路径 通过../指向上传目录以外、上传目录本身或分片上传临时目录时为null
+     */
+    private static Path resolveObject(Path root, String objectName) {
+        if (StringUtils.isBlank(objectName)) {
+            return null;
+        }
+        Path file = root.resolve(objectName.startsWith("/") ? objectName.substring(1) : objectName).normalize();
+        if (!file.startsWith(root) || file.equals(root) || file.startsWith(root.resolve(MULTIPART_DIR))) {
+            return null;
+        }
+        return file;
+    }
+
     @Override
     public String getObjectUrl(String objectName) {
         if (StringUtils.isBlank(objectName)) {
@@ -141,57 +275,544 @@ public class LocalMode implements StorageMode {
     }
 
     @Override
-    public List<Map<String, String>> listObjects(String objectNamePrefix, Boolean isSubDir) {
+    public String getUrlPrefix() {
+        return host + "/";
+    }
+
+    @Override
+    public PresignedUpload presignUpload(String objectName, String contentType, long maxSize, long expiresAt) {
+        // 文件保存在应用服务器上 只能通过上传接口写入
+        throw new RuntimeException("本地存储不支持直传");
+    }
+
+    @Override
+    public List<ObjectInfo> listObjects(String objectNamePrefix, Boolean isSubDir) {
+        return listObjects(objectNamePrefix, Integer.MAX_VALUE, isSubDir);
+    }
+
+    @Override
+    public List<ObjectInfo> listObjects(String objectNamePrefix, Integer maxKeys, Boolean isSubDir) {
         if (StringUtils.isBlank(objectNamePrefix)) {
             throw new RuntimeException("文件名不能为空");
         }
+        Path root = Paths.get(uploadPath).toAbsolutePath().normalize();
+        String keyPrefix = trimSlashes(objectNamePrefix);
+        Path dir = root.resolve(keyPrefix).normalize();
+        if (!dir.startsWith(root) || !Files.isDirectory(dir)) {
+            throw new RuntimeException("文件不存在");
+        }
+        String dirPrefix = keyPrefix.isEmpty() ? "" : keyPrefix + "/";
+        boolean recursive = Boolean.TRUE.equals(isSubDir);
         try {
-            // 本地文件路径
-            File file = new File(uploadPath + objectNamePrefix);
-            if (!file.exists()) {
-                throw new RuntimeException("文件不存在");
-            }
-            return Arrays.stream(Objects.requireNonNull(file.list())).map(fileName -> {
-                Map<String, String> map = new HashMap<>();
-                map.put("name", objectNamePrefix + "/" + fileName);
-                map.put("url", host + "/" + objectNamePrefix + "/" + fileName);
-                map.put("size", FileUtils.convertFileSize(new File(uploadPath + objectNamePrefix + "/" + fileName).length()));
-                map.put("lastModified",SIMPLE_DATE_FORMAT.format(new Date(new File(uploadPath + objectNamePrefix + fileName).lastModified())));
-                return map;
-            }).collect(Collectors.toList());
-        } catch (Exception e) {
+            if (maxKeys != null && maxKeys > 0 && maxKeys < Integer.MAX_VALUE) {
+                // 限制数量时按对象名顺序遍历 返回字典序最前的maxKeys个对象 多次调用结果一致
+                return listFirst(dirPrefix, maxKeys, recursive);
+            }
+            // 不限制数量时并行读取全部目录项后排序
+            List<ObjectInfo> list = getListPool().invoke(new DirectoryTask(new ListContext(root, recursive), dir, dirPrefix));
+            list.sort(Comparator.comparing(ObjectInfo::getName));
+            return list;
+        } catch (RuntimeException e) {
             log.error("文件列表获取失败", e);
             throw new RuntimeException("文件列表获取失败");
         }
     }
 
     @Override
-    public List<Map<String, String>> listObjects(String objectNamePrefix, Integer maxKeys, Boolean isSubDir) {
-        if (StringUtils.isBlank(objectNamePrefix)) {
+    public List<ObjectInfo> listObjects(String objectNamePrefix) {
+        return listObjects(objectNamePrefix, false);
+    }
+
+    /**
+     * 按对象名顺序列举目录下的前limit个文件 不递归时跳过子目录
+     */
+    private List<ObjectInfo> listFirst(String dirPrefix, int limit, boolean recursive) {
+        LocalObjectIterator iterator = new LocalObjectIterator(dirPrefix, recursive ? null : "/", null);
+        List<ObjectInfo> list = new ArrayList<>();
+        while (list.size() < limit && iterator.hasNext()) {
+            LocalEntry entry = iterator.next();
+            if (entry.object != null) {
+                list.add(entry.object);
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public ObjectPage listPage(String prefix, String delimiter, int pageSize, String continuationToken) {
+        LocalObjectIterator iterator = new LocalObjectIterator(prefix, delimiter, ObjectPage.decodeToken(continuationToken));
+        ObjectPage page = nextPage(iterator, pageSize);
+        return page == null ? new ObjectPage() : page;
+    }
+
+    @Override
+    public void forEachPage(String prefix, String delimiter, int pageSize, Consumer<ObjectPage> consumer) {
+        // 只遍历一次目录 不按继续标记重复读取
+        LocalObjectIterator iterator = new LocalObjectIterator(prefix, delimiter, null);
+        ObjectPage page = nextPage(iterator, pageSize);
+        if (page == null) {
+            consumer.accept(new ObjectPage());
+            return;
+        }
+        while (page != null) {
+            consumer.accept(page);
+            page = nextPage(iterator, pageSize);
+        }
+    }
+
+    /**
+     * 从遍历器中取出一页 没有剩余对象时返回null
+     */
+    private ObjectPage nextPage(LocalObjectIterator iterator, int pageSize) {
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        ObjectPage page = new ObjectPage();
+        String lastKey = null;
+        for (int count = 0; count < pageSize && iterator.hasNext(); count++) {
+            LocalEntry entry = iterator.next();
+            if (entry.object == null) {
+                page.getCommonPrefixes().add(entry.key);
+            } else {
+                page.getObjects().add(entry.object);
+            }
+            lastKey = entry.key;
+        }
+        if (iterator.hasNext()) {
+            page.setNextToken(ObjectPage.encodeToken(lastKey));
+        }
+        return page;
+    }
+
+    /**
+     * 去掉对象名前缀两端的/
+     */
+    private static String trimSlashes(String prefix) {
+        int from = 0;
+        int to = prefix.length();
+        while (from < to && prefix.charAt(from) == '/') {
+            from++;
+        }
+        while (to > from && prefix.charAt(to - 1) == '/') {
+            to--;
+        }
+        return prefix.substring(from, to);
+    }
+
+    /**
+     * 获取列举目录使用的线程池 不在Spring容器中运行时使用公共线程池
+     */
+    private static ForkJoinPool getListPool() {
+        try {
+            return SpringUtils.getBean(ForkJoinPool.class);
+        } catch (RuntimeException e) {
+            return ForkJoinPool.commonPool();
+        }
+    }
+
+    private ObjectInfo toObjectInfo(String objectName, BasicFileAttributes attributes) {
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        // 本地文件没有ETag 使用修改时间和大小生成
+        String etag = Long.toHexString(lastModified) + "-" + Long.toHexString(attributes.size());
+        String contentType = MediaTypeFactory.getMediaType(objectName)
+                .map(MediaType::toString)
+                .orElse(null);
+        return new ObjectInfo(objectName, attributes.size(), lastModified, etag, contentType);
+    }
+
+    @Override
+    public String initiateMultipartUpload(String objectName, String contentType, long objectSize) {
+        if (StringUtils.isBlank(objectName)) {
             throw new RuntimeException("文件名不能为空");
         }
+        if (resolveObject(Paths.get(uploadPath).toAbsolutePath().normalize(), objectName) == null) {
+            throw new RuntimeException("文件名不正确");
+        }
+        String uploadId = UUID.randomUUID().toString().replace("-", "");
         try {
-            // 本地文件路径
-            File file = new File(uploadPath + objectNamePrefix);
-            if (!file.exists()) {
-                throw new RuntimeException("文件不存在");
-            }
-            return Arrays.stream(Objects.requireNonNull(file.list())).map(fileName -> {
-                Map<String, String> map = new HashMap<>();
-                map.put("name", objectNamePrefix + "/" + fileName);
-                map.put("url", host + "/" + objectNamePrefix + "/" + fileName);
-                map.put("size", FileUtils.convertFileSize(new File(uploadPath + objectNamePrefix + "/" + fileName).length()));
-                map.put("lastModified",SIMPLE_DATE_FORMAT.format(new Date(new File(uploadPath + objectNamePrefix + fileName).lastModified())));
-                return map;
-            }).collect(Collectors.toList()).subList(0, maxKeys);
+            Path multipartFile = getMultipartFile(uploadId);
+            Files.createDirectories(multipartFile.getParent());
+            try (RandomAccessFile file = new RandomAccessFile(multipartFile.toFile(), "rw")) {
+                // 已知文件大小时预先分配空间 各分片直接写入各自的位置
+                if (objectSize > 0) {
+                    file.setLength(objectSize);
+                }
+            }
+            return uploadId;
         } catch (Exception e) {
-            log.error("文件列表获取失败", e);
-            throw new RuntimeException("文件列表获取失败");
+            log.error("创建分片上传失败", e);
+            throw new RuntimeException("创建分片上传失败");
         }
     }
 
     @Override
-    public List<Map<String, String>> listObjects(String objectNamePrefix) {
-        return listObjects(objectNamePrefix, false);
+    public String uploadPart(String objectName, String uploadId, UploadPart part, InputStream inputStream) {
+        Path multipartFile = getMultipartFile(uploadId);
+        if (!Files.exists(multipartFile)) {
+            throw new RuntimeException("分片上传不存在");
+        }
+        try (FileChannel channel = FileChannel.open(multipartFile, StandardOpenOption.WRITE)) {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            ReadableByteChannel source = Channels.newChannel(new DigestInputStream(inputStream, digest));
+            // 按位置写入 位置超过文件末尾时文件自动变长 文件大小未知时后面的分片可以先于前面的分片写入
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(PART_BUFFER_SIZE, Math.max(1, part.getSize())));
+            long position = part.getOffset();
+            long remaining = part.getSize();
+            while (remaining > 0) {
+                buffer.clear();
+                if (remaining < buffer.capacity()) {
+                    buffer.limit((int) remaining);
+                }
+                if (source.read(buffer) < 0) {
+                    break;
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    int written = channel.write(buffer, position);
+                    position += written;
+                    remaining -= written;
+                }
+            }
+            if (remaining > 0) {
+                throw new IOException("分片数据不完整");
+            }
+            return StringUtils.toHex(digest.digest());
+        } catch (Exception e) {
+            log.error("上传分片失败", e);
+            throw new RuntimeException("上传分片失败");
+        } finally {
+            try {
+                inputStream.close();
+            } catch (Exception e) {
+                log.error("文件流关闭失败：{}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String completeMultipartUpload(String objectName, String uploadId, List<UploadPart> parts) {
+        Path multipartFile = getMultipartFile(uploadId);
+        if (!Files.exists(multipartFile)) {
+            throw new RuntimeException("分片上传不存在");
+        }
+        Path target = resolveObject(Paths.get(uploadPath).toAbsolutePath().normalize(), objectName);
+        if (target == null) {
+            throw new RuntimeException("文件名不正确");
+        }
+        try {
+            long length = parts.stream().mapToLong(part -> part.getOffset() + part.getSize()).max().orElse(0);
+            try (FileChannel channel = FileChannel.open(multipartFile, StandardOpenOption.WRITE)) {
+                // 去掉预分配但未写入的部分
+                channel.truncate(length);
+            }
+            Files.createDirectories(target.getParent());
+            Files.move(multipartFile, target, StandardCopyOption.REPLACE_EXISTING);
+            return host + "/" + objectName;
+        } catch (Exception e) {
+            log.error("合并分片失败", e);
+            throw new RuntimeException("合并分片失败");
+        }
+    }
+
+    @Override
+    public void abortMultipartUpload(String objectName, String uploadId) {
+        try {
+            Files.deleteIfExists(getMultipartFile(uploadId));
+        } catch (Exception e) {
+            log.error("取消分片上传失败", e);
+        }
+    }
+
+    /**
+     * 获取分片上传的临时文件
+     * @param uploadId 分片上传编号
+     * @return 临时文件路径
+     */
+    private Path getMultipartFile(String uploadId) {
+        if (StringUtils.isBlank(uploadId) || !uploadId.matches("[0-9a-f]+")) {
+            throw new RuntimeException("分片上传编号不正确");
+        }
+        return Paths.get(uploadPath, MULTIPART_DIR, uploadId);
+    }
+
+    /**
+     * 列举时的一项 对象或公共前缀
+     */
+    private static final class LocalEntry {
+
+        private final String key;
+
+        private final ObjectInfo object;
+
+        private LocalEntry(String key, ObjectInfo object) {
+            this.key = key;
+            this.object = object;
+        }
+    }
+
+    /**
+     * 一次并行列举的共享配置 只用于不限制数量的列举
+     */
+    private static final class ListContext {
+
+        private final Path root;
+
+        private final boolean recursive;
+
+        private final int batchSize;
+
+        private ListContext(Path root, boolean recursive) {
+            this.root = root;
+            this.recursive = recursive;
+            this.batchSize = getListBatchSize();
+        }
+
+        private static int getListBatchSize() {
+            try {
+                return Math.max(1, SpringUtils.getBean(OssProperties.class).getLocal().getListBatchSize());
+            } catch (RuntimeException e) {
+                return DEFAULT_LIST_BATCH_SIZE;
+            }
+        }
+    }
+
+    /**
+     * 列举一个目录 目录项交给EntryTask读取文件属性
+     */
+    private final class DirectoryTask extends RecursiveTask<List<ObjectInfo>> {
+
+        private final ListContext context;
+
+        private final Path dir;
+
+        private final String keyPrefix;
+
+        private DirectoryTask(ListContext context, Path dir, String keyPrefix) {
+            this.context = context;
+            this.dir = dir;
+            this.keyPrefix = keyPrefix;
+        }
+
+        @Override
+        protected List<ObjectInfo> compute() {
+            boolean isRoot = context.root.equals(dir);
+            List<Path> paths = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path path : stream) {
+                    // 分片上传的临时文件不是对象
+                    if (!isRoot || !MULTIPART_DIR.equals(path.getFileName().toString())) {
+                        paths.add(path);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("读取目录" + dir + "失败", e);
+            }
+            return new EntryTask(context, paths, 0, paths.size(), keyPrefix).compute();
+        }
+    }
+
+    /**
+     * 读取一段目录项的文件属性 每项只读取一次
+     * 目录项超过批量大小时对半拆分并行读取，递归列举时每个子目录作为独立的任务执行
+     */
+    private final class EntryTask extends RecursiveTask<List<ObjectInfo>> {
+
+        private final ListContext context;
+
+        private final List<Path> paths;
+
+        private final int from;
+
+        private final int to;
+
+        private final String keyPrefix;
+
+        private EntryTask(ListContext context, List<Path> paths, int from, int to, String keyPrefix) {
+            this.context = context;
+            this.paths = paths;
+            this.from = from;
+            this.to = to;
+            this.keyPrefix = keyPrefix;
+        }
+
+        @Override
+        protected List<ObjectInfo> compute() {
+            if (to - from > context.batchSize) {
+                int middle = (from + to) >>> 1;
+                EntryTask left = new EntryTask(context, paths, from, middle, keyPrefix);
+                left.fork();
+                List<ObjectInfo> right = new EntryTask(context, paths, middle, to, keyPrefix).compute();
+                List<ObjectInfo> result = left.join();
+                result.addAll(right);
+                return result;
+            }
+            List<ObjectInfo> result = new ArrayList<>();
+            List<DirectoryTask> subTasks = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                Path path = paths.get(i);
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    // 列举过程中被删除的文件
+                    continue;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("读取文件" + path + "失败", e);
+                }
+                String objectName = keyPrefix + path.getFileName();
+                if (attributes.isDirectory()) {
+                    if (context.recursive) {
+                        DirectoryTask subTask = new DirectoryTask(context, path, objectName + "/");
+                        subTask.fork();
+                        subTasks.add(subTask);
+                    }
+                } else if (attributes.isRegularFile()) {
+                    result.add(toObjectInfo(objectName, attributes));
+                }
+            }
+            for (DirectoryTask subTask : subTasks) {
+                result.addAll(subTask.join());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 按对象名字典序深度优先遍历上传目录
+     * 每个目录的子项按名称排序后依次访问，目录名按加上/之后的名称参与排序，从而与对象名的字典序一致；
+     * 继续标记之前的整个子目录直接跳过。
+     */
+    private final class LocalObjectIterator implements Iterator<LocalEntry> {
+
+        private final boolean delimited;
+
+        private final String startAfter;
+
+        private final Deque<Frame> stack = new ArrayDeque<>();
+
+        private LocalEntry next;
+
+        private LocalObjectIterator(String prefix, String delimiter, String startAfter) {
+            if (!StringUtils.isBlank(delimiter) && !"/".equals(delimiter)) {
+                throw new RuntimeException("本地存储只支持以/作为分隔符");
+            }
+            this.delimited = !StringUtils.isBlank(delimiter);
+            this.startAfter = startAfter;
+            String normalized = prefix == null ? "" : (prefix.startsWith("/") ? prefix.substring(1) : prefix);
+            int index = normalized.lastIndexOf('/');
+            String keyPrefix = normalized.substring(0, index + 1);
+            String namePrefix = normalized.substring(index + 1);
+            Path root = Paths.get(uploadPath).toAbsolutePath().normalize();
+            Path dir = root.resolve(keyPrefix).normalize();
+            if (dir.startsWith(root) && Files.isDirectory(dir)) {
+                stack.push(new Frame(keyPrefix, readChildren(dir, namePrefix, keyPrefix.isEmpty())));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = advance();
+            }
+            return next != null;
+        }
+
+        @Override
+        public LocalEntry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            LocalEntry entry = next;
+            next = null;
+            return entry;
+        }
+
+        private LocalEntry advance() {
+            while (!stack.isEmpty()) {
+                Frame frame = stack.peek();
+                if (!frame.children.hasNext()) {
+                    stack.pop();
+                    continue;
+                }
+                Child child = frame.children.next();
+                String key = frame.keyPrefix + child.sortName;
+                if (child.path != null) {
+                    if (delimited) {
+                        if (isAfterStart(key)) {
+                            return new LocalEntry(key, null);
+                        }
+                    } else if (startAfter == null || isAfterStart(key) || startAfter.startsWith(key)) {
+                        stack.push(new Frame(key, readChildren(child.path, "", false)));
+                    }
+                } else if (isAfterStart(key)) {
+                    return new LocalEntry(key, toObjectInfo(key, child.attributes));
+                }
+            }
+            return null;
+        }
+
+        private boolean isAfterStart(String key) {
+            return startAfter == null || key.compareTo(startAfter) > 0;
+        }
+
+        /**
+         * 读取目录的子项 每个子项只读取一次文件属性
+         */
+        private Iterator<Child> readChildren(Path dir, String namePrefix, boolean isRoot) {
+            List<Child> children = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path path : stream) {
+                    String name = path.getFileName().toString();
+                    if (!name.startsWith(namePrefix) || (isRoot && MULTIPART_DIR.equals(name))) {
+                        continue;
+                    }
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    children.add(attributes.isDirectory()
+                            ? new Child(name + "/", path, null)
+                            : new Child(name, null, attributes));
+                }
+            } catch (IOException e) {
+                log.error("读取目录{}失败：{}", dir, e.getMessage());
+                throw new RuntimeException("获取存储对象列表失败");
+            }
+            children.sort(Comparator.comparing(child -> child.sortName));
+            return children.iterator();
+        }
+    }
+
+    private static final class Frame {
+
+        private final String keyPrefix;
+
+        private final Iterator<Child> children;
+
+        private Frame(String keyPrefix, Iterator<Child> children) {
+            this.keyPrefix = keyPrefix;
+            this.children = children;
+        }
+    }
+
+    private static final class Child {
+
+        /**
+         * 参与排序的名称 目录以/结尾
+         */
+        private final String sortName;
+
+        /**
+         * 目录的路径 文件为null
+         */
+        private final Path path;
+
+        /**
+         * 文件的属性 目录为null
+         */
+        private final BasicFileAttributes attributes;
+
+        private Child(String sortName, Path path, BasicFileAttributes attributes) {
+            this.sortName = sortName;
+            this.path = path;
+            this.attributes = attributes;
+        }
     }
 }
@@ -0,0 +1,139 @@
+package org.demo.oss.storage;
+
+import org.demo.oss.model.UploadPart;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * 记录监控指标的存储方式
+ * 每个操作按存储类型和操作分类记录耗时、结果和正在进行的操作数，上传和下载同时记录传输的字节数。
+ * 下载返回的数据流在关闭时记录实际读取的字节数，上传的数据流在被存储方式关闭时记录实际写入的字节数。
+ * @author moxiaoli
+ */
+public class MeteredStorageMode extends DelegatingStorageMode {
+
+    private final StorageMetrics metrics;
+
+    /**
+     * 存储类型 local、minio或oss
+     */
+    private final String backend;
+
+    public MeteredStorageMode(StorageMode delegate, StorageMetrics metrics, String backend) {
+        super(delegate);
+        this.metrics = metrics;
+        this.backend = backend;
+    }
+
+    @Override
+    protected <T> T invoke(String operation, boolean idempotent, Supplier<T> call) {
+        long start = metrics.start(backend, operation);
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            metrics.stop(backend, operation, start, e);
+            throw e;
+        }
+        metrics.stop(backend, operation, start, null);
+        return countDownload(result);
+    }
+
+    @Override
+    protected <T> CompletableFuture<T> invokeAsync(String operation, Supplier<CompletableFuture<T>> call) {
+        long start = metrics.start(backend, operation);
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            metrics.stop(backend, operation, start, e);
+            throw e;
+        }
+        return future.whenComplete((result, e) -> metrics.stop(backend, operation, start, e))
+                .thenApply(this::countDownload);
+    }
+
+    @Override
+    protected void transferred(String operation, long bytes) {
+        metrics.transferred(backend, operation, bytes);
+    }
+
+    @Override
+    public String upload(InputStream inputStream, String pathName, String objectName) {
+        return super.upload(new CountingInputStream(inputStream, "upload"), pathName, objectName);
+    }
+
+    @Override
+    public String uploadPart(String objectName, String uploadId, UploadPart part, InputStream inputStream) {
+        return super.uploadPart(objectName, uploadId, part, new CountingInputStream(inputStream, "upload"));
+    }
+
+    @Override
+    public String uploadPart(String objectName, String uploadId, UploadPart part, byte[] data) {
+        String etag = super.uploadPart(objectName, uploadId, part, data);
+        metrics.transferred(backend, "upload", part.getSize());
+        return etag;
+    }
+
+    /**
+     * 下载返回的数据流包装为计数的数据流
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T countDownload(T result) {
+        if (result instanceof InputStream) {
+            return (T) new CountingInputStream((InputStream) result, "download");
+        }
+        return result;
+    }
+
+    /**
+     * 统计读取字节数的数据流 关闭时记录一次
+     */
+    private final class CountingInputStream extends FilterInputStream {
+
+        private final String operation;
+
+        private long count;
+
+        private boolean closed;
+
+        private CountingInputStream(InputStream in, String operation) {
+            super(in);
+            this.operation = operation;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!closed) {
+                    closed = true;
+                    metrics.transferred(backend, operation, count);
+                }
+            }
+        }
+    }
+}
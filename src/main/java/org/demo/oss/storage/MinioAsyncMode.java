@@ -0,0 +1,177 @@
+package org.demo.oss.storage;
+
+import com.google.common.collect.Lists;
+import io.minio.GetObjectArgs;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import io.minio.StatObjectArgs;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.oss.model.ObjectInfo;
+import org.demo.oss.model.ObjectPage;
+import org.demo.oss.model.Storage;
+import org.demo.oss.utils.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Minio异步存储模式实现类
+ * 使用Minio的异步客户端，请求发出后调用线程立即返回，响应由OkHttp的回调线程处理，不额外占用线程。
+ * 失败时的日志和异常信息与{@link MinioMode}一致。
+ * @author moxiaoli
+ */
+@Slf4j
+public class MinioAsyncMode implements AsyncStorageMode {
+
+    private final MinioMode minioMode;
+
+    /**
+     * 该存储方式绑定的存储服务商配置
+     */
+    private final Storage storage;
+
+    public MinioAsyncMode(MinioMode minioMode, Storage storage) {
+        this.minioMode = minioMode;
+        this.storage = storage;
+    }
+
+    @Override
+    public CompletableFuture<String> upload(MultipartFile multipartFile, String pathName, String objectName) {
+        if (null == multipartFile || 0 == multipartFile.getSize()) {
+            return failed("文件不能为空", null);
+        }
+        InputStream inputStream;
+        try {
+            inputStream = multipartFile.getInputStream();
+        } catch (IOException e) {
+            log.error(e.getMessage());
+            return failed("上传文件失败", e);
+        }
+        CompletableFuture<String> future = call(() -> minioMode.getMultipartClient().putObject(PutObjectArgs.builder()
+                .bucket(storage.getBucketName())
+                .object(pathName + "/" + objectName)
+                .contentType(multipartFile.getContentType())
+                .stream(inputStream, multipartFile.getSize(), -1)
+                .build()), response -> {
+            if (StringUtils.isBlank(pathName)) {
+                return storage.getHost() + "/" + storage.getBucketName() + "/" + objectName;
+            }
+            return storage.getHost() + "/" + storage.getBucketName() + "/" + pathName + "/" + objectName;
+        }, "上传文件失败");
+        return future.whenComplete((url, e) -> {
+            try {
+                inputStream.close();
+            } catch (Exception ex) {
+                log.error("文件流关闭失败：{}", ex.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<InputStream> download(String objectName) {
+        return call(() -> minioMode.getMultipartClient().getObject(GetObjectArgs.builder()
+                .bucket(storage.getBucketName())
+                .object(objectName)
+                .build()), response -> response, "文件下载失败");
+    }
+
+    @Override
+    public CompletableFuture<ObjectInfo> statObject(String objectName) {
+        return call(() -> minioMode.getMultipartClient().statObject(StatObjectArgs.builder()
+                .bucket(storage.getBucketName())
+                .object(objectName)
+                .build()), response -> new ObjectInfo(objectName, response.size(),
+                response.lastModified().toInstant().toEpochMilli(), response.etag(), response.contentType()), "文件不存在");
+    }
+
+    @Override
+    public CompletableFuture<Boolean> delete(String objectName) {
+        // 与同步的删除一致 网络异常和服务端错误时失败 其他错误返回false
+        return call(() -> minioMode.getMultipartClient().removeObject(RemoveObjectArgs.builder()
+                .bucket(storage.getBucketName())
+                .object(objectName)
+                .build()), response -> true, "文件删除失败")
+                .exceptionally(e -> {
+                    if (StorageGuard.isBackendFailure(e)) {
+                        throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                    }
+                    return false;
+                });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> deleteObjects(List<String> objectNames) {
+        // 每批并发发送 一批失败时该批的对象都记为删除失败
+        List<CompletableFuture<Map<String, String>>> futures = new ArrayList<>();
+        for (List<String> batch : Lists.partition(objectNames, StorageMode.DELETE_BATCH_SIZE)) {
+            List<DeleteObject> objects = new ArrayList<>(batch.size());
+            batch.forEach(objectName -> objects.add(new DeleteObject(objectName)));
+            futures.add(call(() -> minioMode.getMultipartClient().deleteAsync(storage.getBucketName(), objects),
+                    errors -> {
+                        Map<String, String> failures = new LinkedHashMap<>();
+                        for (DeleteError error : errors) {
+                            failures.put(error.objectName(), error.message());
+                        }
+                        return failures;
+                    }, "文件删除失败")
+                    .exceptionally(e -> {
+                        Map<String, String> failures = new LinkedHashMap<>();
+                        batch.forEach(objectName -> failures.put(objectName, "文件删除失败"));
+                        return failures;
+                    }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            Map<String, String> failures = new LinkedHashMap<>();
+            futures.forEach(future -> failures.putAll(future.join()));
+            return failures;
+        });
+    }
+
+    @Override
+    public CompletableFuture<ObjectPage> listPage(String prefix, String delimiter, int pageSize, String continuationToken) {
+        return call(() -> minioMode.getMultipartClient().listPageAsync(storage.getBucketName(), prefix,
+                StringUtils.isBlank(delimiter) ? null : delimiter, pageSize, ObjectPage.decodeToken(continuationToken)),
+                MinioMode::toPage, "获取存储对象列表失败");
+    }
+
+    /**
+     * 发起异步请求并转换结果 发起请求时和请求结束后的异常都记录日志后以指定的信息失败
+     * @param request 发起请求
+     * @param mapper 转换请求结果
+     * @param error 失败时的异常信息
+     */
+    private <T, R> CompletableFuture<R> call(Callable<CompletableFuture<T>> request, Function<T, R> mapper, String error) {
+        CompletableFuture<T> future;
+        try {
+            future = request.call();
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            return failed(error, e);
+        }
+        return future.handle((result, e) -> {
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                log.error(cause.getMessage());
+                throw new RuntimeException(error, cause);
+            }
+            return mapper.apply(result);
+        });
+    }
+
+    private static <T> CompletableFuture<T> failed(String error, Throwable cause) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(new RuntimeException(error, cause));
+        return future;
+    }
+}
@@ -1,19 +1,31 @@
 package org.demo.oss.storage;
 
+import com.google.common.collect.Lists;
 import io.minio.*;
 import io.minio.http.Method;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
 import io.minio.messages.Item;
+import io.minio.messages.ListBucketResultV2;
+import io.minio.messages.Part;
 import lombok.extern.slf4j.Slf4j;
+import org.demo.oss.model.ObjectInfo;
+import org.demo.oss.model.ObjectPage;
+import org.demo.oss.model.PresignedUpload;
 import org.demo.oss.model.Storage;
-import org.demo.oss.service.StorageService;
-import org.demo.oss.utils.FileUtils;
+import org.demo.oss.model.UploadPart;
 import org.demo.oss.utils.SpringUtils;
+import org.demo.oss.utils.StreamUtils;
 import org.demo.oss.utils.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.time.format.DateTimeFormatter;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -23,25 +35,50 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class MinioMode implements StorageMode {
 
-    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    /**
+     * 该存储方式绑定的存储服务商配置
+     */
+    private final Storage storage;
+
+    /**
+     * 从客户端注册表获取的Minio客户端
+     */
+    private volatile MinioClient minioClient;
+
+    public MinioMode(Storage storage) {
+        this.storage = storage;
+    }
 
     /**
      * 获取配置的Minio客户端
      * @return Minio客户端
      */
     public MinioClient getMinioClient(){
-        Storage storage = getOssProp();
-        if (storage != null) {
-            return MinioClient.builder()
-                    .endpoint(storage.getEndpoint())
-                    .credentials(storage.getAccessKey(), storage.getSecretKey())
-                    .build();
+        MinioClient client = minioClient;
+        if (client == null) {
+            if (storage == null) {
+                throw new RuntimeException("未配置minio");
+            }
+            // 复用注册表中该存储服务商的客户端
+            client = SpringUtils.getBean(StorageClientRegistry.class).getMinioClient(storage);
+            minioClient = client;
+        }
+        return client;
+    }
+
+    /**
+     * 获取配置的Minio分片上传客户端
+     * @return Minio分片上传客户端
+     */
+    public MinioMultipartClient getMultipartClient(){
+        if (storage == null) {
+            throw new RuntimeException("未配置minio");
         }
-        throw new RuntimeException("未配置minio");
+        return SpringUtils.getBean(StorageClientRegistry.class).getMinioMultipartClient(storage);
     }
 
     private Storage getOssProp(){
-        return SpringUtils.getBean(StorageService.class).getStorage();
+        return storage;
     }
 
     @Override
@@ -100,7 +137,7 @@ public class MinioMode implements StorageMode {
             return getOssProp().getHost() + "/" + getOssProp().getBucketName() + "/" + pathName + "/" + objectName;
         } catch (Exception e) {
             log.error(e.getMessage());
-            throw new RuntimeException("上传文件失败");
+            throw new RuntimeException("上传文件失败", e);
         }finally {
             if (null != inputStream){
                 try {
@@ -127,7 +164,7 @@ public class MinioMode implements StorageMode {
             return getOssProp().getHost() + "/" + getOssProp().getBucketName() + "/" + pathName + "/" + objectName;
         } catch (Exception e) {
             log.error(e.getMessage());
-            throw new RuntimeException("文件上传失败");
+            throw new RuntimeException("文件上传失败", e);
         }finally {
             if (null != inputStream){
                 try {
@@ -151,7 +188,38 @@ public class MinioMode implements StorageMode {
             return getMinioClient().getObject(getObjectArgs);
         }catch (Exception e){
             log.error(e.getMessage());
-            throw new RuntimeException("文件下载失败");
+            throw new RuntimeException("文件下载失败", e);
+        }
+    }
+
+    @Override
+    public InputStream download(String objectName, long offset, long length) {
+        try {
+            GetObjectArgs getObjectArgs = GetObjectArgs.builder()
+                    .bucket(getOssProp().getBucketName())
+                    .object(objectName)
+                    .offset(offset)
+                    .length(length)
+                    .build();
+            return getMinioClient().getObject(getObjectArgs);
+        }catch (Exception e){
+            log.error(e.getMessage());
+            throw new RuntimeException("文件下载失败", e);
+        }
+    }
+
+    @Override
+    public ObjectInfo statObject(String objectName) {
+        try {
+            StatObjectResponse response = getMinioClient().statObject(StatObjectArgs.builder()
+                    .bucket(getOssProp().getBucketName())
+                    .object(objectName)
+                    .build());
+            return new ObjectInfo(objectName, response.size(), response.lastModified().toInstant().toEpochMilli(),
+                    response.etag(), response.contentType());
+        }catch (Exception e){
+            log.error(e.getMessage());
+            throw new RuntimeException("文件不存在", e);
         }
     }
 
@@ -166,10 +234,38 @@ public class MinioMode implements StorageMode {
             return true;
         }catch (Exception e){
             log.error(e.getMessage());
+            // 网络异常和服务端错误抛出 由容错层计入熔断器 对象名错误、没有权限等请求错误返回false
+            if (StorageGuard.isBackendFailure(e)) {
+                throw new RuntimeException("文件删除失败", e);
+            }
             return false;
         }
     }
 
+    @Override
+    public Map<String, String> deleteObjects(List<String> objectNames) {
+        Map<String, String> failures = new LinkedHashMap<>();
+        for (List<String> batch : Lists.partition(objectNames, DELETE_BATCH_SIZE)) {
+            List<DeleteObject> objects = new ArrayList<>(batch.size());
+            batch.forEach(objectName -> objects.add(new DeleteObject(objectName)));
+            try {
+                // removeObjects是惰性的 遍历结果时才发送删除请求 只返回删除失败的对象
+                Iterable<Result<DeleteError>> results = getMinioClient().removeObjects(RemoveObjectsArgs.builder()
+                        .bucket(getOssProp().getBucketName())
+                        .objects(objects)
+                        .build());
+                for (Result<DeleteError> result : results) {
+                    DeleteError error = result.get();
+                    failures.put(error.objectName(), error.message());
+                }
+            } catch (Exception e) {
+                log.error("批量删除文件失败：{}", e.getMessage());
+                batch.forEach(objectName -> failures.putIfAbsent(objectName, "文件删除失败"));
+            }
+        }
+        return failures;
+    }
+
     @Override
     public String getObjectUrl(String objectName) {
         return getObjectUrl(objectName,7,TimeUnit.DAYS);
@@ -191,7 +287,7 @@ public class MinioMode implements StorageMode {
             return getMinioClient().getPresignedObjectUrl(args);
         }catch (Exception e){
             log.error(e.getMessage());
-            throw new RuntimeException("获取文件链接失败");
+            throw new RuntimeException("获取文件链接失败", e);
         }
     }
 
@@ -201,12 +297,52 @@ public class MinioMode implements StorageMode {
     }
 
     @Override
-    public List<Map<String, String>> listObjects(String objectNamePrefix, Boolean isSubDir) {
+    public String getUrlPrefix() {
+        return getOssProp().getHost() + "/" + getOssProp().getBucketName() + "/";
+    }
+
+    @Override
+    public PresignedUpload presignUpload(String objectName, String contentType, long maxSize, long expiresAt) {
+        try {
+            int expiry = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(expiresAt - System.currentTimeMillis()));
+            PresignedUpload presignedUpload = new PresignedUpload();
+            presignedUpload.setObjectName(objectName);
+            presignedUpload.setContentType(contentType);
+            presignedUpload.setMaxSize(maxSize);
+            presignedUpload.setExpiresAt(expiresAt);
+            presignedUpload.setUrl(getOssProp().getHost() + "/" + getOssProp().getBucketName() + "/" + objectName);
+            // PUT上传链接只签名对象名
+            presignedUpload.setPutUrl(getMinioClient().getPresignedObjectUrl(GetPresignedObjectUrlArgs.builder()
+                    .bucket(getOssProp().getBucketName())
+                    .method(Method.PUT)
+                    .expiry(expiry, TimeUnit.SECONDS)
+                    .object(objectName)
+                    .build()));
+            presignedUpload.getPutHeaders().put("Content-Type", contentType);
+            // POST表单的策略限制对象名、文件类型和文件大小
+            PostPolicy policy = new PostPolicy(getOssProp().getBucketName(),
+                    ZonedDateTime.ofInstant(Instant.ofEpochMilli(expiresAt), ZoneOffset.UTC));
+            policy.addEqualsCondition("key", objectName);
+            policy.addEqualsCondition("Content-Type", contentType);
+            policy.addContentLengthRangeCondition(1, maxSize);
+            presignedUpload.setPostUrl(getOssProp().getHost() + "/" + getOssProp().getBucketName());
+            presignedUpload.getFormData().put("key", objectName);
+            presignedUpload.getFormData().put("Content-Type", contentType);
+            presignedUpload.getFormData().putAll(getMinioClient().getPresignedPostFormData(policy));
+            return presignedUpload;
+        } catch (Exception e) {
+            log.error("文件{}的直传签名失败：{}", objectName, e.getMessage());
+            throw new RuntimeException("获取上传签名失败", e);
+        }
+    }
+
+    @Override
+    public List<ObjectInfo> listObjects(String objectNamePrefix, Boolean isSubDir) {
         return listObjects(objectNamePrefix, 1000, isSubDir);
     }
 
     @Override
-    public List<Map<String, String>> listObjects(String objectNamePrefix, Integer maxKeys, Boolean isSubDir) {
+    public List<ObjectInfo> listObjects(String objectNamePrefix, Integer maxKeys, Boolean isSubDir) {
         try {
             ListObjectsArgs listObjectsArgs = ListObjectsArgs.builder()
                     .bucket(getOssProp().getBucketName())
@@ -216,7 +352,7 @@ public class MinioMode implements StorageMode {
                     .prefix(objectNamePrefix)
                     .build();
             Iterable<Result<Item>> listObjects = getMinioClient().listObjects(listObjectsArgs);
-            List<Map<String,String>> list = new ArrayList<>();
+            List<ObjectInfo> list = new ArrayList<>();
             listObjects.forEach(itemResult -> {
                 try {
                     Item item = itemResult.get();
@@ -227,12 +363,7 @@ public class MinioMode implements StorageMode {
                             list.addAll(Objects.requireNonNull(listObjects(item.objectName(), maxKeys, isSubDir)));
                         }
                     }else {
-                        Map<String,String> map = new HashMap<>();
-                        map.put("name",item.objectName());
-                        map.put("url",getOssProp().getHost() + "/" + getOssProp().getBucketName() + "/" + item.objectName());
-                        map.put("size", FileUtils.convertFileSize(item.size()));
-                        map.put("lastModified",item.lastModified().format(DATE_TIME_FORMATTER));
-                        list.add(map);
+                        list.add(toObjectInfo(item));
                     }
                     // 写法2
                     // 当这个对象不是文件夹时
@@ -250,12 +381,12 @@ public class MinioMode implements StorageMode {
             return list;
         } catch (Exception e) {
             log.error(e.getMessage());
-            throw new RuntimeException("获取存储对象列表失败");
+            throw new RuntimeException("获取存储对象列表失败", e);
         }
     }
 
     @Override
-    public List<Map<String, String>> listObjects(String objectNamePrefix) {
+    public List<ObjectInfo> listObjects(String objectNamePrefix) {
         try {
             ListObjectsArgs listObjectsArgs = ListObjectsArgs.builder()
                     .bucket(getOssProp().getBucketName())
@@ -263,7 +394,7 @@ public class MinioMode implements StorageMode {
                     .prefix(objectNamePrefix)
                     .build();
             Iterable<Result<Item>> listObjects = getMinioClient().listObjects(listObjectsArgs);
-            List<Map<String,String>> list = new ArrayList<>();
+            List<ObjectInfo> list = new ArrayList<>();
             listObjects.forEach(itemResult -> {
                 try {
                     Item item = itemResult.get();
@@ -271,12 +402,7 @@ public class MinioMode implements StorageMode {
                     if (item.isDir()){
                         list.addAll(Objects.requireNonNull(listObjects(item.objectName())));
                     }else {
-                        Map<String,String> map = new HashMap<>();
-                        map.put("name",item.objectName());
-                        map.put("url",getOssProp().getHost() + "/" + getOssProp().getBucketName() + "/" + item.objectName());
-                        map.put("size", FileUtils.convertFileSize(item.size()));
-                        map.put("lastModified",item.lastModified().format(DATE_TIME_FORMATTER));
-                        list.add(map);
+                        list.add(toObjectInfo(item));
                     }
                 }catch (Exception e){
                     log.error(e.getMessage());
@@ -285,7 +411,116 @@ public class MinioMode implements StorageMode {
             return list;
         } catch (Exception e) {
             log.error(e.getMessage());
-            throw new RuntimeException("获取存储对象列表失败");
+            throw new RuntimeException("获取存储对象列表失败", e);
+        }
+    }
+
+    @Override
+    public ObjectPage listPage(String prefix, String delimiter, int pageSize, String continuationToken) {
+        try {
+            ListBucketResultV2 result = getMultipartClient().listPage(getOssProp().getBucketName(), prefix,
+                    StringUtils.isBlank(delimiter) ? null : delimiter, pageSize, ObjectPage.decodeToken(continuationToken));
+            return toPage(result);
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            throw new RuntimeException("获取存储对象列表失败", e);
+        }
+    }
+
+    @Override
+    public AsyncStorageMode async(Executor executor) {
+        // minio的异步客户端直接使用OkHttp的回调 不占用线程池
+        return new MinioAsyncMode(this, storage);
+    }
+
+    /**
+     * 单页的列举结果转换为一页对象
+     */
+    static ObjectPage toPage(ListBucketResultV2 result) {
+        ObjectPage page = new ObjectPage();
+        for (Item item : result.contents()) {
+            page.getObjects().add(toObjectInfo(item));
+        }
+        result.commonPrefixes().forEach(commonPrefix -> page.getCommonPrefixes().add(commonPrefix.toItem().objectName()));
+        if (result.isTruncated()) {
+            page.setNextToken(ObjectPage.encodeToken(result.nextContinuationToken()));
+        }
+        return page;
+    }
+
+    /**
+     * 列举结果转换为对象元数据 列举结果不包含文件类型
+     */
+    private static ObjectInfo toObjectInfo(Item item) {
+        return new ObjectInfo(item.objectName(), item.size(), item.lastModified().toInstant().toEpochMilli(),
+                StringUtils.unquote(item.etag()), null);
+    }
+
+    @Override
+    public String initiateMultipartUpload(String objectName, String contentType, long objectSize) {
+        try {
+            return getMultipartClient().initiate(getOssProp().getBucketName(), objectName, contentType);
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            throw new RuntimeException("创建分片上传失败", e);
+        }
+    }
+
+    @Override
+    public String uploadPart(String objectName, String uploadId, UploadPart part, InputStream inputStream) {
+        try {
+            // minio的分片上传需要已知长度的数据
+            byte[] data = new byte[Math.toIntExact(part.getSize())];
+            int length = StreamUtils.readFully(inputStream, data);
+            if (length != data.length) {
+                throw new IOException("分片数据不完整");
+            }
+            return getMultipartClient().uploadPart(getOssProp().getBucketName(), objectName, uploadId,
+                    part.getPartNumber(), data, length);
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            throw new RuntimeException("上传分片失败", e);
+        } finally {
+            try {
+                inputStream.close();
+            } catch (Exception e) {
+                log.error("文件流关闭失败：{}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String uploadPart(String objectName, String uploadId, UploadPart part, byte[] data) {
+        try {
+            // 请求体直接使用调用方的缓冲区
+            return getMultipartClient().uploadPart(getOssProp().getBucketName(), objectName, uploadId,
+                    part.getPartNumber(), data, Math.toIntExact(part.getSize()));
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            throw new RuntimeException("上传分片失败", e);
+        }
+    }
+
+    @Override
+    public String completeMultipartUpload(String objectName, String uploadId, List<UploadPart> parts) {
+        try {
+            Part[] completedParts = parts.stream()
+                    .map(part -> new Part(part.getPartNumber(), part.getEtag()))
+                    .toArray(Part[]::new);
+            getMultipartClient().complete(getOssProp().getBucketName(), objectName, uploadId, completedParts);
+            return getOssProp().getHost() + "/" + getOssProp().getBucketName() + "/" + objectName;
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            throw new RuntimeException("合并分片失败", e);
+        }
+    }
+
+    @Override
+    public void abortMultipartUpload(String objectName, String uploadId) {
+        try {
+            getMultipartClient().abort(getOssProp().getBucketName(), objectName, uploadId);
+        } catch (Exception e) {
+            log.error("取消分片上传失败：{}", e.getMessage());
         }
     }
 }
@@ -0,0 +1,125 @@
+package org.demo.oss.storage;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import io.minio.ListObjectsV2Response;
+import io.minio.MinioAsyncClient;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.ListBucketResultV2;
+import io.minio.messages.Part;
+import org.demo.oss.utils.StringUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Minio分片上传客户端
+ * Minio SDK的分片上传接口是受保护的方法，这里通过继承公开创建、上传、合并和取消分片上传的操作，
+ * 以及按继续标记读取单页对象列表的操作（SDK公开的列举接口会自动翻页，无法返回继续标记）和异步的批量删除操作。
+ * 与同一存储服务商的{@link io.minio.MinioClient}共用连接池。同步的分片操作调用SDK的异步接口并等待结果，SDK的同步接口已过时。
+ * @author moxiaoli
+ */
+public class MinioMultipartClient extends MinioAsyncClient {
+
+    public MinioMultipartClient(MinioAsyncClient client) {
+        super(client);
+    }
+
+    /**
+     * 创建分片上传
+     * @param bucketName 存储桶
+     * @param objectName 对象名
+     * @param contentType 文件类型
+     * @return 分片上传编号
+     */
+    public String initiate(String bucketName, String objectName, String contentType) throws Exception {
+        Multimap<String, String> headers = HashMultimap.create();
+        if (!StringUtils.isBlank(contentType)) {
+            headers.put("Content-Type", contentType);
+        }
+        return createMultipartUploadAsync(bucketName, null, objectName, headers, HashMultimap.create())
+                .join()
+                .result()
+                .uploadId();
+    }
+
+    /**
+     * 上传分片
+     * @param bucketName 存储桶
+     * @param objectName 对象名
+     * @param uploadId 分片上传编号
+     * @param partNumber 分片编号
+     * @param data 分片数据
+     * @param length 分片数据长度
+     * @return 分片的ETag
+     */
+    public String uploadPart(String bucketName, String objectName, String uploadId, int partNumber, byte[] data, int length) throws Exception {
+        return uploadPartAsync(bucketName, null, objectName, data, length, uploadId, partNumber,
+                HashMultimap.create(), HashMultimap.create()).join().etag();
+    }
+
+    /**
+     * 合并分片
+     * @param bucketName 存储桶
+     * @param objectName 对象名
+     * @param uploadId 分片上传编号
+     * @param parts 按分片编号升序排列的分片
+     */
+    public void complete(String bucketName, String objectName, String uploadId, Part[] parts) throws Exception {
+        completeMultipartUploadAsync(bucketName, null, objectName, uploadId, parts,
+                HashMultimap.create(), HashMultimap.create()).join();
+    }
+
+    /**
+     * 取消分片上传 已上传的分片会被删除
+     * @param bucketName 存储桶
+     * @param objectName 对象名
+     * @param uploadId 分片上传编号
+     */
+    public void abort(String bucketName, String objectName, String uploadId) throws Exception {
+        abortMultipartUploadAsync(bucketName, null, objectName, uploadId, HashMultimap.create(), HashMultimap.create())
+                .join();
+    }
+
+    /**
+     * 列举一页对象
+     * @param bucketName 存储桶
+     * @param prefix 对象名前缀
+     * @param delimiter 分隔符 为空时列举全部子目录
+     * @param maxKeys 最大数量
+     * @param continuationToken 继续标记 为空时从第一页开始
+     * @return 一页对象
+     */
+    public ListBucketResultV2 listPage(String bucketName, String prefix, String delimiter, int maxKeys,
+                                       String continuationToken) throws Exception {
+        return listPageAsync(bucketName, prefix, delimiter, maxKeys, continuationToken).get();
+    }
+
+    /**
+     * 异步列举一页对象
+     * @param bucketName 存储桶
+     * @param prefix 对象名前缀
+     * @param delimiter 分隔符 为空时列举全部子目录
+     * @param maxKeys 最大数量
+     * @param continuationToken 继续标记 为空时从第一页开始
+     * @return 一页对象
+     */
+    public CompletableFuture<ListBucketResultV2> listPageAsync(String bucketName, String prefix, String delimiter,
+                                                              int maxKeys, String continuationToken) throws Exception {
+        return listObjectsV2Async(bucketName, null, delimiter, null, null, maxKeys, prefix, continuationToken,
+                false, false, HashMultimap.create(), HashMultimap.create())
+                .thenApply(ListObjectsV2Response::result);
+    }
+
+    /**
+     * 异步批量删除对象 使用quiet模式 只返回删除失败的对象
+     * @param bucketName 存储桶
+     * @param objects 对象列表 最多1000个
+     * @return 删除失败的对象
+     */
+    public CompletableFuture<List<DeleteError>> deleteAsync(String bucketName, List<DeleteObject> objects) throws Exception {
+        return deleteObjectsAsync(bucketName, null, objects, true, false, HashMultimap.create(), HashMultimap.create())
+                .thenApply(response -> response.result().errorList());
+    }
+}
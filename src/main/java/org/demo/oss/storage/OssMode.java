@@ -1,27 +1,48 @@
 package org.demo.oss.storage;
 
 import com.aliyun.oss.ClientException;
+import com.aliyun.oss.HttpMethod;
 import com.aliyun.oss.OSS;
-import com.aliyun.oss.OSSClientBuilder;
 import com.aliyun.oss.OSSException;
+import com.aliyun.oss.common.utils.BinaryUtil;
+import com.aliyun.oss.model.AbortMultipartUploadRequest;
+import com.aliyun.oss.model.CompleteMultipartUploadRequest;
+import com.aliyun.oss.model.DeleteObjectsRequest;
+import com.aliyun.oss.model.DeleteObjectsResult;
+import com.aliyun.oss.model.GeneratePresignedUrlRequest;
+import com.aliyun.oss.model.GetObjectRequest;
+import com.aliyun.oss.model.InitiateMultipartUploadRequest;
 import com.aliyun.oss.model.ListObjectsRequest;
+import com.aliyun.oss.model.ListObjectsV2Request;
+import com.aliyun.oss.model.ListObjectsV2Result;
+import com.aliyun.oss.model.MatchMode;
 import com.aliyun.oss.model.OSSObjectSummary;
 import com.aliyun.oss.model.ObjectListing;
+import com.aliyun.oss.model.ObjectMetadata;
+import com.aliyun.oss.model.PartETag;
+import com.aliyun.oss.model.PolicyConditions;
+import com.aliyun.oss.model.UploadPartRequest;
+import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
+import org.demo.oss.model.ObjectInfo;
+import org.demo.oss.model.ObjectPage;
+import org.demo.oss.model.PresignedUpload;
 import org.demo.oss.model.Storage;
-import org.demo.oss.service.StorageService;
-import org.demo.oss.utils.FileUtils;
+import org.demo.oss.model.UploadPart;
 import org.demo.oss.utils.SpringUtils;
 import org.demo.oss.utils.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.text.SimpleDateFormat;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -32,26 +53,39 @@ import java.util.stream.Collectors;
 @Slf4j
 public class OssMode implements StorageMode {
 
-    private static final SimpleDateFormat SIMPLE_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
+    /**
+     * 该存储方式绑定的存储服务商配置
+     */
+    private final Storage storage;
+
+    /**
+     * 从客户端注册表获取的阿里OSS客户端
+     */
+    private volatile OSS ossClient;
+
+    public OssMode(Storage storage) {
+        this.storage = storage;
+    }
 
     /**
      * 获取配置的阿里OSS客户端
      * @return 阿里OSS客户端
      */
     public OSS getOssClient(){
-        Storage storage = getOssProp();
-        if (storage != null) {
-            return new OSSClientBuilder().build(
-                    storage.getEndpoint(),
-                    storage.getAccessKey(),
-                    storage.getSecretKey()
-            );
+        OSS client = ossClient;
+        if (client == null) {
+            if (storage == null) {
+                throw new RuntimeException("未配置阿里OSS");
+            }
+            // 复用注册表中该存储服务商的客户端 客户端由注册表负责关闭
+            client = SpringUtils.getBean(StorageClientRegistry.class).getOssClient(storage);
+            ossClient = client;
         }
-        throw new RuntimeException("未配置minio");
+        return client;
     }
 
     private Storage getOssProp(){
-        return SpringUtils.getBean(StorageService.class).getStorage();
+        return storage;
     }
 
     @Override
@@ -140,19 +174,19 @@ public class OssMode implements StorageMode {
             log.error("Error Code:" + oe.getErrorCode());
             log.error("Request ID:" + oe.getRequestId());
             log.error("Host ID:" + oe.getHostId());
-            throw new RuntimeException("上传失败");
+            throw new RuntimeException("上传失败", oe);
         }catch (ClientException ce){
             log.error("捕获ClientException，这意味着客户端遇到"
                     + "在尝试与OSS通信时出现了严重的内部问题，"
                     + "例如不能接入网络。");
             log.error("Error Message:" + ce.getMessage());
-            throw new RuntimeException("上传失败");
+            throw new RuntimeException("上传失败", ce);
         }catch (IOException ioe){
             log.error("捕获IOException，这意味着客户端遇到"
                     + "在尝试与OSS通信时出现了严重的内部问题，"
                     + "例如不能接入网络。");
             log.error("Error Message:" + ioe.getMessage());
-            throw new RuntimeException("上传失败");
+            throw new RuntimeException("上传失败", ioe);
         }finally {
             if (null != inputStream){
                 try {
@@ -183,13 +217,13 @@ public class OssMode implements StorageMode {
             log.error("Error Code:" + oe.getErrorCode());
             log.error("Request ID:" + oe.getRequestId());
             log.error("Host ID:" + oe.getHostId());
-            throw new RuntimeException("上传失败");
+            throw new RuntimeException("上传失败", oe);
         }catch (ClientException ce){
             log.error("捕获ClientException，这意味着客户端遇到"
                     + "在尝试与OSS通信时出现了严重的内部问题，"
                     + "例如不能接入网络。");
             log.error("Error Message:" + ce.getMessage());
-            throw new RuntimeException("上传失败");
+            throw new RuntimeException("上传失败", ce);
         } finally {
             if (null != inputStream){
                 try {
@@ -213,13 +247,44 @@ public class OssMode implements StorageMode {
             log.error("Error Code:" + oe.getErrorCode());
             log.error("Request ID:" + oe.getRequestId());
             log.error("Host ID:" + oe.getHostId());
-            throw new RuntimeException("下载文件失败");
+            throw new RuntimeException("下载文件失败", oe);
         } catch (ClientException ce) {
             log.error("捕获ClientException，这意味着客户端遇到"
                     + "在尝试与OSS通信时出现了严重的内部问题，"
                     + "例如不能接入网络。");
             log.error("Error Message:" + ce.getMessage());
-            throw new RuntimeException("下载文件失败");
+            throw new RuntimeException("下载文件失败", ce);
+        }
+    }
+
+    @Override
+    public InputStream download(String objectName, long offset, long length) {
+        try {
+            GetObjectRequest request = new GetObjectRequest(getOssProp().getBucketName(), objectName);
+            request.setRange(offset, offset + length - 1);
+            return getOssClient().getObject(request).getObjectContent();
+        } catch (OSSException oe) {
+            logOssException(oe);
+            throw new RuntimeException("下载文件失败", oe);
+        } catch (ClientException ce) {
+            logClientException(ce);
+            throw new RuntimeException("下载文件失败", ce);
+        }
+    }
+
+    @Override
+    public ObjectInfo statObject(String objectName) {
+        try {
+            ObjectMetadata metadata = getOssClient().getObjectMetadata(getOssProp().getBucketName(), objectName);
+            String etag = StringUtils.unquote(metadata.getETag());
+            return new ObjectInfo(objectName, metadata.getContentLength(), metadata.getLastModified().getTime(),
+                    etag, metadata.getContentType());
+        } catch (OSSException oe) {
+            logOssException(oe);
+            throw new RuntimeException("文件不存在", oe);
+        } catch (ClientException ce) {
+            logClientException(ce);
+            throw new RuntimeException("文件不存在", ce);
         }
     }
 
@@ -236,15 +301,44 @@ public class OssMode implements StorageMode {
             log.error("Error Code:" + oe.getErrorCode());
             log.error("Request ID:" + oe.getRequestId());
             log.error("Host ID:" + oe.getHostId());
+            // 服务端错误抛出 由容错层计入熔断器 对象名错误、没有权限等请求错误返回false
+            if (StorageGuard.isBackendFailure(oe)) {
+                throw new RuntimeException("文件删除失败", oe);
+            }
         } catch (ClientException ce) {
             log.error("捕获ClientException，这意味着客户端遇到"
                     + "在尝试与OSS通信时出现了严重的内部问题，"
                     + "例如不能接入网络。");
             log.error("Error Message:" + ce.getMessage());
+            throw new RuntimeException("文件删除失败", ce);
         }
         return false;
     }
 
+    @Override
+    public Map<String, String> deleteObjects(List<String> objectNames) {
+        Map<String, String> failures = new LinkedHashMap<>();
+        for (List<String> batch : Lists.partition(objectNames, DELETE_BATCH_SIZE)) {
+            try {
+                // 非简单模式返回删除成功的对象 未返回的对象删除失败
+                DeleteObjectsResult result = getOssClient().deleteObjects(new DeleteObjectsRequest(getOssProp().getBucketName())
+                        .withKeys(new ArrayList<>(batch))
+                        .withQuiet(false));
+                Set<String> deleted = new HashSet<>(result.getDeletedObjects());
+                batch.stream()
+                        .filter(objectName -> !deleted.contains(objectName))
+                        .forEach(objectName -> failures.put(objectName, "文件删除失败"));
+            } catch (OSSException oe) {
+                logOssException(oe);
+                batch.forEach(objectName -> failures.put(objectName, oe.getErrorMessage()));
+            } catch (ClientException ce) {
+                logClientException(ce);
+                batch.forEach(objectName -> failures.put(objectName, "文件删除失败"));
+            }
+        }
+        return failures;
+    }
+
     @Override
     public String getObjectUrl(String objectName) {
         return getObjectUrl(objectName, 7, TimeUnit.DAYS);
@@ -265,13 +359,13 @@ public class OssMode implements StorageMode {
             log.error("Error Code:" + oe.getErrorCode());
             log.error("Request ID:" + oe.getRequestId());
             log.error("Host ID:" + oe.getHostId());
-            throw new RuntimeException("获取外链失败");
+            throw new RuntimeException("获取外链失败", oe);
         } catch (ClientException ce) {
             log.error("捕获ClientException，这意味着客户端遇到"
                     + "在尝试与OSS通信时出现了严重的内部问题，"
                     + "例如不能接入网络。");
             log.error("Error Message:" + ce.getMessage());
-            throw new RuntimeException("获取外链失败");
+            throw new RuntimeException("获取外链失败", ce);
         }
     }
 
@@ -292,23 +386,69 @@ public class OssMode implements StorageMode {
             log.error("Error Code:" + oe.getErrorCode());
             log.error("Request ID:" + oe.getRequestId());
             log.error("Host ID:" + oe.getHostId());
-            throw new RuntimeException("获取外链失败");
+            throw new RuntimeException("获取外链失败", oe);
         } catch (ClientException ce) {
             log.error("捕获ClientException，这意味着客户端遇到"
                     + "在尝试与OSS通信时出现了严重的内部问题，"
                     + "例如不能接入网络。");
             log.error("Error Message:" + ce.getMessage());
-            throw new RuntimeException("获取外链失败");
+            throw new RuntimeException("获取外链失败", ce);
         }
     }
 
     @Override
-    public List<Map<String, String>> listObjects(String objectNamePrefix, Boolean isSubDir) {
+    public String getUrlPrefix() {
+        return getOssProp().getHost() + "/";
+    }
+
+    @Override
+    public PresignedUpload presignUpload(String objectName, String contentType, long maxSize, long expiresAt) {
+        try {
+            Date expiration = new Date(expiresAt);
+            PresignedUpload presignedUpload = new PresignedUpload();
+            presignedUpload.setObjectName(objectName);
+            presignedUpload.setContentType(contentType);
+            presignedUpload.setMaxSize(maxSize);
+            presignedUpload.setExpiresAt(expiresAt);
+            presignedUpload.setUrl(getOssProp().getHost() + "/" + objectName);
+            // PUT上传链接签名对象名和文件类型 上传时的Content-Type必须一致
+            GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(getOssProp().getBucketName(),
+                    objectName, HttpMethod.PUT);
+            request.setExpiration(expiration);
+            request.setContentType(contentType);
+            presignedUpload.setPutUrl(getOssClient().generatePresignedUrl(request).toString());
+            presignedUpload.getPutHeaders().put("Content-Type", contentType);
+            // POST表单的策略限制对象名、文件类型和文件大小
+            PolicyConditions conditions = new PolicyConditions();
+            conditions.addConditionItem(MatchMode.Exact, PolicyConditions.COND_KEY, objectName);
+            conditions.addConditionItem(MatchMode.Exact, PolicyConditions.COND_CONTENT_TYPE, contentType);
+            conditions.addConditionItem(PolicyConditions.COND_CONTENT_LENGTH_RANGE, 1, maxSize);
+            String policy = getOssClient().generatePostPolicy(expiration, conditions);
+            presignedUpload.setPostUrl(getOssProp().getHost());
+            presignedUpload.getFormData().put("key", objectName);
+            presignedUpload.getFormData().put("Content-Type", contentType);
+            presignedUpload.getFormData().put("OSSAccessKeyId", getOssProp().getAccessKey());
+            presignedUpload.getFormData().put("policy",
+                    BinaryUtil.toBase64String(policy.getBytes(StandardCharsets.UTF_8)));
+            presignedUpload.getFormData().put("Signature", getOssClient().calculatePostSignature(policy));
+            presignedUpload.getFormData().put("success_action_status", "200");
+            return presignedUpload;
+        } catch (OSSException oe) {
+            logOssException(oe);
+            throw new RuntimeException("获取上传签名失败", oe);
+        } catch (ClientException ce) {
+            logClientException(ce);
+            throw new RuntimeException("获取上传签名失败", ce);
+        }
+    }
+
+    @Override
+    public List<ObjectInfo> listObjects(String objectNamePrefix, Boolean isSubDir) {
         return listObjects(objectNamePrefix, 100, isSubDir);
     }
 
     @Override
-    public List<Map<String, String>> listObjects(String objectNamePrefix, Integer maxKeys, Boolean isSubDir) {
+    public List<ObjectInfo> listObjects(String objectNamePrefix, Integer maxKeys, Boolean isSubDir) {
         try {
             ListObjectsRequest listObjectsRequest = new ListObjectsRequest(getOssProp().getBucketName())
                     // 列举文件。objectNamePrefix，则列举存储空间下的所有文件。objectNamePrefix，则列举包含指定前缀的文件。
@@ -322,14 +462,7 @@ public class OssMode implements StorageMode {
             // stream().map()方法是将list中的每一个元素映射成一个新的元素，然后将这些新的元素组成一个Stream流。
             // collect(Collectors.toList())方法是将流中的元素收集到List中。
 //            return sums.stream().map(OSSObjectSummary::getKey).collect(Collectors.toList());
-            return sums.stream().map(ossObject -> {
-                Map<String,String> map = new HashMap<>();
-                map.put("name",ossObject.getKey());
-                map.put("url",getOssProp().getHost() + "/" + ossObject.getKey());
-                map.put("size", FileUtils.convertFileSize(ossObject.getSize()));
-                map.put("lastModified",SIMPLE_DATE_FORMAT.format(ossObject.getLastModified()));
-                return map;
-            }).collect(Collectors.toList());
+            return sums.stream().map(this::toObjectInfo).collect(Collectors.toList());
         } catch (OSSException oe) {
             log.error("捕获到OSSException，这意味着您的请求已发送到OSS， "
                     + "但是由于某种原因以错误响应被拒绝。");
@@ -337,13 +470,13 @@ public class OssMode implements StorageMode {
             log.error("Error Code:" + oe.getErrorCode());
             log.error("Request ID:" + oe.getRequestId());
             log.error("Host ID:" + oe.getHostId());
-            throw new RuntimeException("获取对象存储列表失败");
+            throw new RuntimeException("获取对象存储列表失败", oe);
         } catch (ClientException ce) {
             log.error("捕获ClientException，这意味着客户端遇到"
                     + "在尝试与OSS通信时出现了严重的内部问题，"
                     + "例如不能接入网络。");
             log.error("Error Message:" + ce.getMessage());
-            throw new RuntimeException("获取对象存储列表失败");
+            throw new RuntimeException("获取对象存储列表失败", ce);
         }
 //        finally {
 //            // 关闭OSSClient。
@@ -354,7 +487,141 @@ public class OssMode implements StorageMode {
     }
 
     @Override
-    public List<Map<String, String>> listObjects(String objectNamePrefix) {
+    public List<ObjectInfo> listObjects(String objectNamePrefix) {
         return listObjects(objectNamePrefix, 100,false);
     }
+
+    @Override
+    public ObjectPage listPage(String prefix, String delimiter, int pageSize, String continuationToken) {
+        try {
+            ListObjectsV2Request request = new ListObjectsV2Request(getOssProp().getBucketName())
+                    .withPrefix(prefix)
+                    .withDelimiter(StringUtils.isBlank(delimiter) ? null : delimiter)
+                    .withMaxKeys(pageSize)
+                    .withContinuationToken(ObjectPage.decodeToken(continuationToken));
+            ListObjectsV2Result result = getOssClient().listObjectsV2(request);
+            ObjectPage page = new ObjectPage();
+            for (OSSObjectSummary summary : result.getObjectSummaries()) {
+                page.getObjects().add(toObjectInfo(summary));
+            }
+            page.getCommonPrefixes().addAll(result.getCommonPrefixes());
+            if (result.isTruncated()) {
+                page.setNextToken(ObjectPage.encodeToken(result.getNextContinuationToken()));
+            }
+            return page;
+        } catch (OSSException oe) {
+            logOssException(oe);
+            throw new RuntimeException("获取存储对象列表失败", oe);
+        } catch (ClientException ce) {
+            logClientException(ce);
+            throw new RuntimeException("获取存储对象列表失败", ce);
+        }
+    }
+
+    @Override
+    public String initiateMultipartUpload(String objectName, String contentType, long objectSize) {
+        try {
+            InitiateMultipartUploadRequest request = new InitiateMultipartUploadRequest(getOssProp().getBucketName(), objectName);
+            if (!StringUtils.isBlank(contentType)) {
+                ObjectMetadata metadata = new ObjectMetadata();
+                metadata.setContentType(contentType);
+                request.setObjectMetadata(metadata);
+            }
+            return getOssClient().initiateMultipartUpload(request).getUploadId();
+        } catch (OSSException oe) {
+            logOssException(oe);
+            throw new RuntimeException("创建分片上传失败", oe);
+        } catch (ClientException ce) {
+            logClientException(ce);
+            throw new RuntimeException("创建分片上传失败", ce);
+        }
+    }
+
+    @Override
+    public String uploadPart(String objectName, String uploadId, UploadPart part, InputStream inputStream) {
+        try {
+            UploadPartRequest request = new UploadPartRequest();
+            request.setBucketName(getOssProp().getBucketName());
+            request.setKey(objectName);
+            request.setUploadId(uploadId);
+            request.setPartNumber(part.getPartNumber());
+            request.setPartSize(part.getSize());
+            request.setInputStream(inputStream);
+            return getOssClient().uploadPart(request).getPartETag().getETag();
+        } catch (OSSException oe) {
+            logOssException(oe);
+            throw new RuntimeException("上传分片失败", oe);
+        } catch (ClientException ce) {
+            logClientException(ce);
+            throw new RuntimeException("上传分片失败", ce);
+        } finally {
+            try {
+                inputStream.close();
+            } catch (Exception e) {
+                log.error("文件流关闭失败：{}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String completeMultipartUpload(String objectName, String uploadId, List<UploadPart> parts) {
+        try {
+            List<PartETag> partETags = parts.stream()
+                    .map(part -> new PartETag(part.getPartNumber(), part.getEtag()))
+                    .collect(Collectors.toList());
+            getOssClient().completeMultipartUpload(
+                    new CompleteMultipartUploadRequest(getOssProp().getBucketName(), objectName, uploadId, partETags));
+            return getOssProp().getHost() + "/" + objectName;
+        } catch (OSSException oe) {
+            logOssException(oe);
+            throw new RuntimeException("合并分片失败", oe);
+        } catch (ClientException ce) {
+            logClientException(ce);
+            throw new RuntimeException("合并分片失败", ce);
+        }
+    }
+
+    @Override
+    public void abortMultipartUpload(String objectName, String uploadId) {
+        try {
+            getOssClient().abortMultipartUpload(
+                    new AbortMultipartUploadRequest(getOssProp().getBucketName(), objectName, uploadId));
+        } catch (OSSException oe) {
+            logOssException(oe);
+        } catch (ClientException ce) {
+            logClientException(ce);
+        }
+    }
+
+    /**
+     * 列举结果转换为对象元数据 列举结果不包含文件类型
+     */
+    private ObjectInfo toObjectInfo(OSSObjectSummary summary) {
+        return new ObjectInfo(summary.getKey(), summary.getSize(), summary.getLastModified().getTime(),
+                StringUtils.unquote(summary.getETag()), null);
+    }
+
+    /**
+     * 记录OSSException的详细信息
+     * @param oe 阿里OSS服务端返回的异常
+     */
+    private void logOssException(OSSException oe) {
+        log.error("捕获到OSSException，这意味着您的请求已发送到OSS， "
+                + "但是由于某种原因以错误响应被拒绝。");
+        log.error("Error Message:" + oe.getErrorMessage());
+        log.error("Error Code:" + oe.getErrorCode());
+        log.error("Request ID:" + oe.getRequestId());
+        log.error("Host ID:" + oe.getHostId());
+    }
+
+    /**
+     * 记录ClientException的详细信息
+     * @param ce 阿里OSS客户端异常
+     */
+    private void logClientException(ClientException ce) {
+        log.error("捕获ClientException，这意味着客户端遇到"
+                + "在尝试与OSS通信时出现了严重的内部问题，"
+                + "例如不能接入网络。");
+        log.error("Error Message:" + ce.getMessage());
+    }
 }
@@ -0,0 +1,119 @@
+package org.demo.oss.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.model.ObjectPage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 带容错处理的存储方式
+ * 每次调用先经过存储服务商的熔断器和并发限制，幂等操作因网络异常、超时或服务端错误失败时按指数退避加随机抖动重试。
+ * 只有网络异常、超时和服务端错误计为失败，删除时对象名错误、没有权限等请求错误由存储方式返回false，不影响熔断器。
+ * 异步调用不等待并发许可，也不重试，失败由调用方处理。
+ * @author moxiaoli
+ */
+@Slf4j
+public class ResilientStorageMode extends DelegatingStorageMode {
+
+    private final StorageGuard guard;
+
+    private final OssProperties.Resilience properties;
+
+    public ResilientStorageMode(StorageMode delegate, StorageGuard guard, OssProperties.Resilience properties) {
+        super(delegate);
+        this.guard = guard;
+        this.properties = properties;
+    }
+
+    public StorageGuard getGuard() {
+        return guard;
+    }
+
+    @Override
+    protected <T> T invoke(String operation, boolean idempotent, Supplier<T> call) {
+        guard.acquire(true);
+        try {
+            for (int attempt = 0; ; attempt++) {
+                boolean failed;
+                RuntimeException error = null;
+                T result = null;
+                try {
+                    result = call.get();
+                    failed = false;
+                    guard.record(false);
+                } catch (RuntimeException e) {
+                    error = e;
+                    failed = guard.record(e);
+                }
+                if (!failed || !idempotent || attempt >= properties.getMaxRetries() || !guard.isRetryAllowed()) {
+                    if (error != null) {
+                        throw error;
+                    }
+                    return result;
+                }
+                guard.retried();
+                long delay = backoff(attempt);
+                log.warn("存储操作{}失败，{}ms后第{}次重试", operation, delay, attempt + 1);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    if (error != null) {
+                        throw error;
+                    }
+                    return result;
+                }
+            }
+        } finally {
+            guard.release();
+        }
+    }
+
+    @Override
+    protected <T> CompletableFuture<T> invokeAsync(String operation, Supplier<CompletableFuture<T>> call) {
+        try {
+            guard.acquire(false);
+        } catch (RuntimeException e) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            guard.record(e);
+            guard.release();
+            throw e;
+        }
+        return future.whenComplete((result, e) -> {
+            guard.record(e);
+            guard.release();
+        });
+    }
+
+    @Override
+    public void forEachPage(String prefix, String delimiter, int pageSize, Consumer<ObjectPage> consumer) {
+        // 远程存储逐页调用listPage 每页单独经过熔断器、并发限制和重试 遍历期间不一直占用并发许可
+        String token = null;
+        do {
+            ObjectPage page = listPage(prefix, delimiter, pageSize, token);
+            consumer.accept(page);
+            token = page.getNextToken();
+        } while (token != null);
+    }
+
+    /**
+     * 第attempt次重试前的等待时间 在0到指数增长的退避时间之间随机 避免多个请求同时重试
+     */
+    private long backoff(int attempt) {
+        long base = Math.max(1, properties.getRetryBaseDelay().toMillis());
+        long cap = Math.max(base, properties.getRetryMaxDelay().toMillis());
+        long delay = attempt >= 30 ? cap : Math.min(cap, base << attempt);
+        return ThreadLocalRandom.current().nextLong(delay + 1);
+    }
+}
@@ -0,0 +1,287 @@
+package org.demo.oss.storage;
+
+import com.aliyun.oss.ClientBuilderConfiguration;
+import com.aliyun.oss.OSS;
+import com.aliyun.oss.OSSClientBuilder;
+import io.minio.MinioAsyncClient;
+import io.minio.MinioClient;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.model.Storage;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 存储服务客户端注册表
+ * 每一份存储服务商配置（地址和密钥）只保留一个长期复用的客户端，避免每次调用都新建连接池和重新握手。
+ * 客户端以获取时的配置快照{@link ClientKey}为键，存储服务商配置对象之后被修改也不会影响已注册的客户端。
+ * 只修改了存储桶等其他字段的存储服务商仍然使用同一个客户端，因此客户端按引用计数，
+ * 使用该客户端的存储方式全部释放后才关闭客户端并释放连接池，应用停止时关闭全部客户端。
+ * @author moxiaoli
+ */
+@Slf4j
+@Component
+public class StorageClientRegistry implements DisposableBean {
+
+    @Autowired
+    private OssProperties ossProperties;
+
+    /**
+     * 客户端配置快照 -> 客户端及其引用数
+     * 创建客户端用到的字段变化都会对应一个新的客户端，旧客户端由使用方释放
+     */
+    private final ConcurrentHashMap<ClientKey, ClientEntry> clients = new ConcurrentHashMap<>();
+
+    /**
+     * 获取存储服务商对应的Minio客户端
+     * @param storage 存储服务商配置
+     * @return Minio客户端
+     */
+    public MinioClient getMinioClient(Storage storage) {
+        return getClient(storage, this::buildMinioClient).get(MinioClient.class);
+    }
+
+    /**
+     * 获取存储服务商对应的Minio分片上传客户端 与Minio客户端共用连接池
+     * @param storage 存储服务商配置
+     * @return Minio分片上传客户端
+     */
+    public MinioMultipartClient getMinioMultipartClient(Storage storage) {
+        return getClient(storage, this::buildMinioClient).get(MinioMultipartClient.class);
+    }
+
+    /**
+     * 获取存储服务商对应的阿里OSS客户端
+     * @param storage 存储服务商配置
+     * @return 阿里OSS客户端
+     */
+    public OSS getOssClient(Storage storage) {
+        return getClient(storage, this::buildOssClient).get(OSS.class);
+    }
+
+    /**
+     * 增加该配置快照对应客户端的引用数 创建存储方式时调用 与{@link #release(ClientKey)}成对使用
+     * @param key 创建存储方式时的配置快照
+     */
+    public void retain(ClientKey key) {
+        if (key == null) {
+            return;
+        }
+        clients.compute(key, (k, entry) -> {
+            entry = entry == null ? new ClientEntry() : entry;
+            entry.references++;
+            return entry;
+        });
+    }
+
+    /**
+     * 减少该配置快照对应客户端的引用数 最后一个引用释放后关闭客户端 下次使用时会重新创建
+     * @param key 创建存储方式时的配置快照
+     */
+    public void release(ClientKey key) {
+        if (key == null) {
+            return;
+        }
+        ClientHolder[] closing = new ClientHolder[1];
+        clients.computeIfPresent(key, (k, entry) -> {
+            if (--entry.references > 0) {
+                return entry;
+            }
+            closing[0] = entry.holder;
+            return null;
+        });
+        // 在映射的锁外关闭 关闭连接池可能较慢
+        if (closing[0] != null) {
+            log.info("关闭存储服务商{}的客户端", key.storageCode);
+            closing[0].close();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        clients.values().stream()
+                .map(entry -> entry.holder)
+                .filter(Objects::nonNull)
+                .forEach(ClientHolder::close);
+        clients.clear();
+    }
+
+    private ClientHolder getClient(Storage storage, Function<ClientKey, ClientHolder> factory) {
+        if (storage == null || storage.getStorage() == null) {
+            throw new RuntimeException("未配置存储服务商");
+        }
+        // 配置相同的存储服务商共用一个客户端 配置变更后会创建新的客户端 客户端按快照中的配置创建
+        ClientKey key = ClientKey.of(storage);
+        ClientEntry entry = clients.get(key);
+        if (entry != null && entry.holder != null) {
+            return entry.holder;
+        }
+        return clients.compute(key, (k, existing) -> {
+            existing = existing == null ? new ClientEntry() : existing;
+            if (existing.holder == null) {
+                existing.holder = factory.apply(k);
+            }
+            return existing;
+        }).holder;
+    }
+
+    private ClientHolder buildMinioClient(ClientKey key) {
+        OssProperties.Client properties = ossProperties.getClient();
+        // minio客户端内部使用异步请求，由Dispatcher控制并发请求数
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(properties.getMaxConnections());
+        dispatcher.setMaxRequestsPerHost(properties.getMaxConnections());
+        OkHttpClient httpClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(properties.getMaxIdleConnections(),
+                        properties.getIdleTimeout().toMillis(), TimeUnit.MILLISECONDS))
+                .protocols(Collections.singletonList(Protocol.HTTP_1_1))
+                .connectTimeout(properties.getConnectTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .readTimeout(properties.getReadTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .writeTimeout(properties.getWriteTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+        MinioClient minioClient = MinioClient.builder()
+                .endpoint(key.endpoint)
+                .credentials(key.accessKey, key.secretKey)
+                .httpClient(httpClient)
+                .build();
+        MinioMultipartClient multipartClient = new MinioMultipartClient(MinioAsyncClient.builder()
+                .endpoint(key.endpoint)
+                .credentials(key.accessKey, key.secretKey)
+                .httpClient(httpClient)
+                .build());
+        log.info("创建存储服务商{}的minio客户端", key.storageCode);
+        return new ClientHolder(() -> {
+            httpClient.dispatcher().executorService().shutdown();
+            httpClient.connectionPool().evictAll();
+        }, minioClient, multipartClient);
+    }
+
+    private ClientHolder buildOssClient(ClientKey key) {
+        OssProperties.Client properties = ossProperties.getClient();
+        ClientBuilderConfiguration configuration = new ClientBuilderConfiguration();
+        configuration.setMaxConnections(properties.getMaxConnections());
+        configuration.setIdleConnectionTime(properties.getIdleTimeout().toMillis());
+        configuration.setConnectionTimeout((int) properties.getConnectTimeout().toMillis());
+        configuration.setSocketTimeout((int) properties.getReadTimeout().toMillis());
+        // 等待连接池中空闲连接的时间 超过后请求失败 不无限等待
+        configuration.setConnectionRequestTimeout((int) properties.getConnectTimeout().toMillis());
+        // 失败重试由存储方式的容错层统一处理 只重试幂等操作
+        configuration.setMaxErrorRetry(0);
+        OSS ossClient = new OSSClientBuilder().build(
+                key.endpoint,
+                key.accessKey,
+                key.secretKey,
+                configuration
+        );
+        log.info("创建存储服务商{}的阿里OSS客户端", key.storageCode);
+        return new ClientHolder(ossClient::shutdown, ossClient);
+    }
+
+    /**
+     * 配置快照对应的客户端及使用它的存储方式数 只在映射的compute中修改
+     */
+    private static final class ClientEntry {
+
+        private int references;
+
+        /**
+         * 首次使用时创建
+         */
+        private volatile ClientHolder holder;
+    }
+
+    /**
+     * 共用同一连接池的客户端及其关闭方法
+     */
+    private static final class ClientHolder {
+
+        private final Runnable closer;
+
+        private final Object[] clients;
+
+        private ClientHolder(Runnable closer, Object... clients) {
+            this.closer = closer;
+            this.clients = clients;
+        }
+
+        private <T> T get(Class<T> type) {
+            for (Object client : clients) {
+                if (type.isInstance(client)) {
+                    return type.cast(client);
+                }
+            }
+            throw new RuntimeException("不支持的存储客户端类型：" + type.getSimpleName());
+        }
+
+        private void close() {
+            try {
+                closer.run();
+            } catch (Exception e) {
+                log.error("关闭存储客户端失败：{}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 创建客户端用到的存储服务商配置快照 不可变 作为客户端注册表的键
+     */
+    public static final class ClientKey {
+
+        private final String storageCode;
+
+        private final String endpoint;
+
+        private final String accessKey;
+
+        private final String secretKey;
+
+        private ClientKey(String storageCode, String endpoint, String accessKey, String secretKey) {
+            this.storageCode = storageCode;
+            this.endpoint = endpoint;
+            this.accessKey = accessKey;
+            this.secretKey = secretKey;
+        }
+
+        /**
+         * 复制存储服务商配置中创建客户端用到的字段
+         * @param storage 存储服务商配置
+         * @return 配置快照 未配置存储服务商时为null
+         */
+        public static ClientKey of(Storage storage) {
+            if (storage == null) {
+                return null;
+            }
+            return new ClientKey(storage.getStorage(), storage.getEndpoint(), storage.getAccessKey(), storage.getSecretKey());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ClientKey)) {
+                return false;
+            }
+            ClientKey that = (ClientKey) o;
+            return Objects.equals(storageCode, that.storageCode) && Objects.equals(endpoint, that.endpoint)
+                    && Objects.equals(accessKey, that.accessKey) && Objects.equals(secretKey, that.secretKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(storageCode, endpoint, accessKey, secretKey);
+        }
+    }
+}
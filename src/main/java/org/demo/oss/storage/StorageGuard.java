@@ -0,0 +1,338 @@
+package org.demo.oss.storage;
+
+import com.aliyun.oss.ClientException;
+import com.aliyun.oss.OSSException;
+import io.minio.errors.ErrorResponseException;
+import io.minio.errors.ServerException;
+import lombok.extern.slf4j.Slf4j;
+import org.demo.oss.config.OssProperties;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 存储服务商的并发限制和熔断器
+ * 并发限制：每个存储服务商同时进行的调用数有上限，一个存储服务商变慢时只占满自己的许可，不会拖住全部请求线程。
+ * 熔断器：按最近若干次调用的结果计算失败率，超过阈值后打开，打开期间的调用直接失败；
+ * 打开一段时间后进入半开状态，放行少量探测调用，全部成功后关闭，任意一次失败重新打开。
+ * 只有网络异常、超时和存储服务的5xx错误计为失败，文件不存在、参数错误等说明存储服务正常。
+ * 熔断器打开或者没有并发许可时抛出{@link RejectedExecutionException}，调用方据此区分容量不足和其他错误。
+ * @author moxiaoli
+ */
+@Slf4j
+public class StorageGuard {
+
+    /**
+     * 熔断器状态
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * 阿里OSS表示服务端异常的错误码
+     */
+    private static final Set<String> OSS_SERVER_ERRORS = new HashSet<>(Arrays.asList(
+            "InternalError", "ServiceUnavailable", "RequestTimeout", "SlowDown"));
+
+    /**
+     * 阿里OSS表示对象不存在的错误码
+     */
+    private static final String OSS_NOT_FOUND = "NoSuchKey";
+
+    private static final int MAX_CAUSE_DEPTH = 16;
+
+    /**
+     * 客户端中断上传时Servlet容器抛出的异常
+     */
+    private static final String CLIENT_ABORT = "ClientAbortException";
+
+    /**
+     * 存储服务商编码 用于日志和统计
+     */
+    private final String name;
+
+    private final OssProperties.Resilience properties;
+
+    private final Semaphore bulkhead;
+
+    /**
+     * 最近调用的结果 true为失败 循环写入
+     */
+    private final boolean[] window;
+
+    private int windowIndex;
+
+    private int windowCount;
+
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+
+    private long openedAt;
+
+    /**
+     * 半开状态已放行和已成功的探测调用数
+     */
+    private int halfOpenPermitted;
+
+    private int halfOpenSucceeded;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder bulkheadRejected = new LongAdder();
+    private final LongAdder circuitRejected = new LongAdder();
+    private final LongAdder circuitOpened = new LongAdder();
+
+    public StorageGuard(String name, OssProperties.Resilience properties) {
+        this.name = name;
+        this.properties = properties;
+        this.bulkhead = new Semaphore(Math.max(1, properties.getMaxConcurrentCalls()));
+        this.window = new boolean[Math.max(1, properties.getSlidingWindowSize())];
+    }
+
+    /**
+     * 开始一次调用 熔断器打开或者没有并发许可时直接失败
+     * @param wait 是否等待并发许可 异步调用不等待
+     */
+    public void acquire(boolean wait) {
+        if (!tryPass()) {
+            circuitRejected.increment();
+            throw new RejectedExecutionException("存储服务暂时不可用，请稍后重试");
+        }
+        boolean acquired;
+        try {
+            acquired = wait
+                    ? bulkhead.tryAcquire(properties.getMaxWait().toMillis(), TimeUnit.MILLISECONDS)
+                    : bulkhead.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            returnProbe();
+            bulkheadRejected.increment();
+            throw new RejectedExecutionException("存储服务繁忙，请稍后重试");
+        }
+    }
+
+    /**
+     * 结束一次调用 释放并发许可
+     */
+    public void release() {
+        bulkhead.release();
+    }
+
+    /**
+     * 记录一次调用的结果
+     * @param error 调用抛出的异常 成功时为null
+     * @return 是否计为存储服务的失败
+     */
+    public boolean record(Throwable error) {
+        boolean failed = error != null && isBackendFailure(error);
+        if (failed && isTimeout(error)) {
+            timeouts.increment();
+        }
+        record(failed);
+        return failed;
+    }
+
+    /**
+     * 记录一次调用的结果
+     * @param failed 是否计为存储服务的失败
+     */
+    public synchronized void record(boolean failed) {
+        calls.increment();
+        if (failed) {
+            failures.increment();
+        }
+        switch (state) {
+            case HALF_OPEN:
+                if (failed) {
+                    open();
+                } else if (++halfOpenSucceeded >= properties.getHalfOpenCalls()) {
+                    close();
+                }
+                break;
+            case CLOSED:
+                if (window[windowIndex] && windowCount == window.length) {
+                    windowFailures--;
+                }
+                window[windowIndex] = failed;
+                windowIndex = (windowIndex + 1) % window.length;
+                windowCount = Math.min(windowCount + 1, window.length);
+                if (failed) {
+                    windowFailures++;
+                    if (windowCount >= properties.getMinimumCalls()
+                            && windowFailures * 100 >= properties.getFailureRateThreshold() * windowCount) {
+                        open();
+                    }
+                }
+                break;
+            default:
+                // 熔断器打开前开始的调用 结果不再影响状态
+                break;
+        }
+    }
+
+    /**
+     * 记录一次重试
+     */
+    public void retried() {
+        retries.increment();
+    }
+
+    /**
+     * 熔断器是否允许继续重试 打开后不再重试
+     */
+    public synchronized boolean isRetryAllowed() {
+        return state == State.CLOSED;
+    }
+
+    /**
+     * 获取容错统计
+     * @return 熔断器状态state（0关闭、1打开、2半开）、正在进行的调用数active、调用次数calls、失败次数failures、
+     * 超时次数timeouts、重试次数retries、并发限制拒绝的次数bulkheadRejected、熔断拒绝的次数circuitRejected、
+     * 熔断器打开的次数circuitOpened和最近调用的失败率百分比failureRate
+     */
+    public Map<String, Long> getMetrics() {
+        long failureRate;
+        State current;
+        synchronized (this) {
+            current = state;
+            failureRate = windowCount == 0 ? 0 : windowFailures * 100L / windowCount;
+        }
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("state", (long) current.ordinal());
+        metrics.put("active", (long) Math.max(0, properties.getMaxConcurrentCalls() - bulkhead.availablePermits()));
+        metrics.put("calls", calls.sum());
+        metrics.put("failures", failures.sum());
+        metrics.put("timeouts", timeouts.sum());
+        metrics.put("retries", retries.sum());
+        metrics.put("bulkheadRejected", bulkheadRejected.sum());
+        metrics.put("circuitRejected", circuitRejected.sum());
+        metrics.put("circuitOpened", circuitOpened.sum());
+        metrics.put("failureRate", failureRate);
+        return metrics;
+    }
+
+    /**
+     * 熔断器是否放行 打开的时长足够后进入半开状态
+     */
+    private synchronized boolean tryPass() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < properties.getOpenDuration().toMillis()) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            halfOpenPermitted = 0;
+            halfOpenSucceeded = 0;
+            log.info("存储服务商{}的熔断器进入半开状态，放行{}个探测调用", name, properties.getHalfOpenCalls());
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermitted >= properties.getHalfOpenCalls()) {
+                return false;
+            }
+            halfOpenPermitted++;
+        }
+        return true;
+    }
+
+    /**
+     * 放行后没有取得并发许可 归还半开状态的探测名额
+     */
+    private synchronized void returnProbe() {
+        if (state == State.HALF_OPEN && halfOpenPermitted > 0) {
+            halfOpenPermitted--;
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        circuitOpened.increment();
+        log.warn("存储服务商{}的失败率过高，熔断器打开{}ms", name, properties.getOpenDuration().toMillis());
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+        Arrays.fill(window, false);
+        log.info("存储服务商{}已恢复，熔断器关闭", name);
+    }
+
+    /**
+     * 判断异常是否说明存储服务不可用 包括网络异常、超时和服务端错误
+     * @param error 调用抛出的异常
+     * @return 是否计为存储服务的失败
+     */
+    public static boolean isBackendFailure(Throwable error) {
+        Throwable cause = error;
+        for (int depth = 0; cause != null && depth < MAX_CAUSE_DEPTH; depth++, cause = cause.getCause()) {
+            // 读取请求体失败是客户端断开或者数据不完整 与存储服务无关
+            if (cause instanceof EOFException || CLIENT_ABORT.equals(cause.getClass().getSimpleName())) {
+                return false;
+            }
+            if (cause instanceof IOException || cause instanceof TimeoutException
+                    || cause instanceof ServerException || cause instanceof ClientException) {
+                return true;
+            }
+            if (cause instanceof ErrorResponseException) {
+                ErrorResponseException e = (ErrorResponseException) cause;
+                return e.response() != null && e.response().code() >= 500;
+            }
+            if (cause instanceof OSSException) {
+                return OSS_SERVER_ERRORS.contains(((OSSException) cause).getErrorCode());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 判断异常是否说明对象不存在
+     * @param error 调用抛出的异常
+     * @return 是否为对象不存在
+     */
+    public static boolean isNotFound(Throwable error) {
+        Throwable cause = error;
+        for (int depth = 0; cause != null && depth < MAX_CAUSE_DEPTH; depth++, cause = cause.getCause()) {
+            if (cause instanceof NoSuchFileException) {
+                return true;
+            }
+            if (cause instanceof ErrorResponseException) {
+                ErrorResponseException e = (ErrorResponseException) cause;
+                return e.response() != null && e.response().code() == 404;
+            }
+            if (cause instanceof OSSException) {
+                return OSS_NOT_FOUND.equals(((OSSException) cause).getErrorCode());
+            }
+        }
+        return false;
+    }
+
+    private static boolean isTimeout(Throwable error) {
+        Throwable cause = error;
+        for (int depth = 0; cause != null && depth < MAX_CAUSE_DEPTH; depth++, cause = cause.getCause()) {
+            if (cause instanceof InterruptedIOException || cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
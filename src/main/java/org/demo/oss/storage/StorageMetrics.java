@@ -0,0 +1,155 @@
+package org.demo.oss.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 存储操作的监控指标
+ * 按存储类型（local、minio、oss）和操作分类（upload、thumbnail、download、delete、list、presign）记录耗时分布、
+ * 传输字节数分布、失败次数和正在进行的操作数。同一存储类型的多个存储服务商以及配置修改前后的存储方式共用同一组指标。
+ * @author moxiaoli
+ */
+@Component
+public class StorageMetrics {
+
+    private static final String REQUESTS = "oss.storage.requests";
+    private static final String TRANSFER = "oss.storage.transfer";
+    private static final String ERRORS = "oss.storage.errors";
+    private static final String IN_FLIGHT = "oss.storage.inflight";
+
+    private static final String SUCCESS = "success";
+    private static final String ERROR = "error";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 存储类型 + 操作分类 -> 正在进行的操作数
+     */
+    private final ConcurrentHashMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 获取存储方式接口的方法对应的操作分类
+     * @param method 存储方式接口的方法名
+     * @return 操作分类
+     */
+    public static String category(String method) {
+        switch (method) {
+            case "download":
+            case "statObject":
+                return "download";
+            case "delete":
+            case "deleteObjects":
+                return "delete";
+            case "listObjects":
+            case "listPage":
+            case "forEachPage":
+                return "list";
+            case "getObjectUrl":
+            case "presignUpload":
+                return "presign";
+            default:
+                return "upload";
+        }
+    }
+
+    /**
+     * 开始一次操作
+     * @param backend 存储类型
+     * @param method 存储方式接口的方法名
+     * @return 开始时间 纳秒
+     */
+    public long start(String backend, String method) {
+        inFlight(backend, category(method)).incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * 结束一次操作 记录耗时和结果
+     * @param backend 存储类型
+     * @param method 存储方式接口的方法名
+     * @param startNanos 开始时间
+     * @param error 操作抛出的异常 成功时为null
+     */
+    public void stop(String backend, String method, long startNanos, Throwable error) {
+        String operation = category(method);
+        inFlight(backend, operation).decrementAndGet();
+        record(backend, operation, method, System.nanoTime() - startNanos, error);
+    }
+
+    /**
+     * 记录一次已结束的操作
+     * @param backend 存储类型
+     * @param operation 操作分类
+     * @param method 具体的方法
+     * @param nanos 耗时 纳秒
+     * @param error 操作抛出的异常 成功时为null
+     */
+    public void record(String backend, String operation, String method, long nanos, Throwable error) {
+        Timer.builder(REQUESTS)
+                .description("存储操作的耗时")
+                .tag("backend", backend)
+                .tag("operation", operation)
+                .tag("method", method)
+                .tag("outcome", error == null ? SUCCESS : ERROR)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        if (error != null) {
+            Counter.builder(ERRORS)
+                    .description("存储操作的失败次数")
+                    .tag("backend", backend)
+                    .tag("operation", operation)
+                    .tag("method", method)
+                    .tag("exception", rootCause(error).getClass().getSimpleName())
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+    /**
+     * 记录一次传输的字节数
+     * @param backend 存储类型
+     * @param operation 操作分类 upload或download
+     * @param bytes 字节数
+     */
+    public void transferred(String backend, String operation, long bytes) {
+        DistributionSummary.builder(TRANSFER)
+                .description("存储操作传输的字节数")
+                .baseUnit("bytes")
+                .tag("backend", backend)
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(bytes);
+    }
+
+    private AtomicInteger inFlight(String backend, String operation) {
+        return inFlight.computeIfAbsent(backend + "\n" + operation, key -> {
+            AtomicInteger count = new AtomicInteger();
+            Gauge.builder(IN_FLIGHT, count, AtomicInteger::get)
+                    .description("正在进行的存储操作数")
+                    .tag("backend", backend)
+                    .tag("operation", operation)
+                    .register(meterRegistry);
+            return count;
+        });
+    }
+
+    private static Throwable rootCause(Throwable error) {
+        Throwable cause = error;
+        for (int depth = 0; cause.getCause() != null && cause.getCause() != cause && depth < 16; depth++) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
@@ -1,11 +1,18 @@
 package org.demo.oss.storage;
 
+import org.demo.oss.model.ObjectInfo;
+import org.demo.oss.model.ObjectPage;
+import org.demo.oss.model.PresignedUpload;
+import org.demo.oss.model.UploadPart;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * 存储模式接口类
@@ -13,6 +20,12 @@ import java.util.concurrent.TimeUnit;
  */
 public interface StorageMode {
 
+    /**
+     * S3协议单次批量删除的最大对象数
+     */
+    int DELETE_BATCH_SIZE = 1000;
+
+
     /**
      * 文件上传
      * @param multipartFile 文件
@@ -61,13 +74,37 @@ public interface StorageMode {
      */
     InputStream download(String objectName);
 
+    /**
+     * 文件区间下载
+     * @param objectName 文件名
+     * @param offset 起始位置
+     * @param length 读取长度
+     * @return {@link InputStream} 区间内的二进制流
+     */
+    InputStream download(String objectName, long offset, long length);
+
+    /**
+     * 获取对象元数据 不读取文件内容
+     * @param objectName 文件名
+     * @return 对象元数据
+     */
+    ObjectInfo statObject(String objectName);
+
     /**
      * 文件删除 外链
      * @param objectName 文件名
-     * @return flag 删除成功的标志
+     * @return flag 删除成功的标志 对象名错误、没有权限等请求错误返回false 网络异常和服务端错误时抛出异常
      */
     Boolean delete(String objectName);
 
+    /**
+     * 批量删除文件 使用存储服务的批量删除接口 每批最多{@link #DELETE_BATCH_SIZE}个
+     * 对象本来就不存在时视为删除成功
+     * @param objectNames 文件名列表
+     * @return 删除失败的文件名 -> 失败原因 全部成功时为空
+     */
+    Map<String, String> deleteObjects(List<String> objectNames);
+
     /**
      * 获取文件的外链
      * @param objectName 文件名
@@ -91,13 +128,29 @@ public interface StorageMode {
      */
     String getObjectUrlLong(String objectName);
 
+    /**
+     * 获取对象外链的公共前缀 前缀加上对象名即为对象的外链 不访问存储服务
+     * @return 以/结尾的外链前缀
+     */
+    String getUrlPrefix();
+
+    /**
+     * 生成客户端直接上传到存储服务的签名 包括PUT上传链接和限制文件类型、大小的POST表单
+     * @param objectName 对象名 包含文件路径
+     * @param contentType 文件类型
+     * @param maxSize 允许上传的最大文件大小 单位字节 PUT上传链接无法限制 由完成直传时校验
+     * @param expiresAt 签名的过期时间 毫秒时间戳
+     * @return 直传签名 不包括上传凭证
+     */
+    PresignedUpload presignUpload(String objectName, String contentType, long maxSize, long expiresAt);
+
     /**
      * 获取该前缀的对象列表信息 包括子目录下的对象
      * @param objectNamePrefix 对象名前缀
      * @param isSubDir 是否包含子目录
      * @return 对象列表信息
      */
-    List<Map<String,String>> listObjects(String objectNamePrefix, Boolean isSubDir);
+    List<ObjectInfo> listObjects(String objectNamePrefix, Boolean isSubDir);
 
     /**
      * minio对象存储 列出桶的对象列表信息
@@ -106,12 +159,94 @@ public interface StorageMode {
      * @param isSubDir 是否包含子目录
      * @return 对象列表信息
      */
-    List<Map<String,String>> listObjects(String objectNamePrefix, Integer maxKeys, Boolean isSubDir);
+    List<ObjectInfo> listObjects(String objectNamePrefix, Integer maxKeys, Boolean isSubDir);
 
     /**
      * 获取该前缀的对象列表信息
      * @param objectNamePrefix 对象名前缀
      * @return 对象列表信息
      */
-    List<Map<String,String>> listObjects(String objectNamePrefix);
+    List<ObjectInfo> listObjects(String objectNamePrefix);
+
+    /**
+     * 分页列举对象 对象名按字典序排列
+     * @param prefix 对象名前缀
+     * @param delimiter 分隔符 通常为/，指定时前缀之后包含分隔符的对象合并为公共前缀 为空时列举全部子目录
+     * @param pageSize 每页的最大数量 对象和公共前缀合计
+     * @param continuationToken 上一页返回的继续标记 为空时从第一页开始
+     * @return 一页对象
+     */
+    ObjectPage listPage(String prefix, String delimiter, int pageSize, String continuationToken);
+
+    /**
+     * 逐页遍历该前缀下的全部对象 每次只持有一页
+     * @param prefix 对象名前缀
+     * @param delimiter 分隔符 为空时列举全部子目录
+     * @param pageSize 每页的最大数量
+     * @param consumer 处理每一页
+     */
+    default void forEachPage(String prefix, String delimiter, int pageSize, Consumer<ObjectPage> consumer) {
+        String token = null;
+        do {
+            ObjectPage page = listPage(prefix, delimiter, pageSize, token);
+            consumer.accept(page);
+            token = page.getNextToken();
+        } while (token != null);
+    }
+
+    /**
+     * 获取该存储方式的异步调用 默认在线程池中执行同步的存储操作
+     * @param executor 执行阻塞存储操作的线程池
+     * @return 异步存储方式
+     */
+    default AsyncStorageMode async(Executor executor) {
+        return new BlockingAsyncMode(this, executor);
+    }
+
+    /**
+     * 创建分片上传
+     * @param objectName 对象名 包含文件路径
+     * @param contentType 文件类型
+     * @param objectSize 文件总大小 未知时为-1
+     * @return 分片上传编号
+     */
+    String initiateMultipartUpload(String objectName, String contentType, long objectSize);
+
+    /**
+     * 上传分片 同一分片上传的不同分片可以并发上传，重复上传同一分片会覆盖之前的内容
+     * @param objectName 对象名 包含文件路径
+     * @param uploadId 分片上传编号
+     * @param part 分片信息 包括分片编号、在文件中的起始位置和大小
+     * @param inputStream 分片数据 实现时注意关闭流
+     * @return 分片的ETag
+     */
+    String uploadPart(String objectName, String uploadId, UploadPart part, InputStream inputStream);
+
+    /**
+     * 上传内存中的分片 需要整个分片数据的存储方式直接使用该缓冲区 不再复制
+     * @param objectName 对象名 包含文件路径
+     * @param uploadId 分片上传编号
+     * @param part 分片信息 包括分片编号、在文件中的起始位置和大小
+     * @param data 分片数据 只使用前part.getSize()个字节 上传期间不能修改
+     * @return 分片的ETag
+     */
+    default String uploadPart(String objectName, String uploadId, UploadPart part, byte[] data) {
+        return uploadPart(objectName, uploadId, part, new ByteArrayInputStream(data, 0, part.getSize().intValue()));
+    }
+
+    /**
+     * 合并分片 完成分片上传
+     * @param objectName 对象名 包含文件路径
+     * @param uploadId 分片上传编号
+     * @param parts 按分片编号升序排列的全部分片
+     * @return 文件资源链接
+     */
+    String completeMultipartUpload(String objectName, String uploadId, List<UploadPart> parts);
+
+    /**
+     * 取消分片上传 删除已上传的分片
+     * @param objectName 对象名 包含文件路径
+     * @param uploadId 分片上传编号
+     */
+    void abortMultipartUpload(String objectName, String uploadId);
 }
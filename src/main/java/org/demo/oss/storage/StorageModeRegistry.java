@@ -0,0 +1,346 @@
+package org.demo.oss.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.demo.oss.cache.StorageConfigCache;
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.model.Storage;
+import org.demo.oss.storage.enums.StorageType;
+import org.demo.oss.utils.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 存储方式注册表
+ * 为每个已配置的存储服务商预先创建一个存储方式实例，配置快照的版本变化时原子地切换到新的实例集合。
+ * 被替换下来的存储方式不再接收新的调用，等到正在进行的调用全部结束后再释放其客户端。
+ * 调用方通过{@link #acquire()}获取当前启用的存储方式，或者通过{@link #acquire(String)}指定存储服务商，
+ * 使用完毕后关闭返回的{@link Lease}。异步调用通过{@link #callAsync(String, Function)}发起，调用结束后自动关闭租约。
+ * @author moxiaoli
+ */
+@Slf4j
+@Component
+public class StorageModeRegistry {
+
+    /**
+     * 未配置存储服务商时使用的存储方式
+     */
+    private static final StorageType DEFAULT_STORAGE_TYPE = StorageType.local;
+
+    @Autowired
+    private StorageConfigCache storageConfigCache;
+    @Autowired
+    private StorageClientRegistry storageClientRegistry;
+    @Autowired
+    private ThreadPoolTaskExecutor storageIoExecutor;
+    @Autowired
+    private OssProperties ossProperties;
+    @Autowired
+    private StorageMetrics storageMetrics;
+
+    private final Object switchLock = new Object();
+
+    private volatile Registration registration;
+
+    /**
+     * 获取当前启用的存储方式
+     * @return 存储方式的租约 使用完毕后需要关闭
+     */
+    public Lease acquire() {
+        return acquire(null);
+    }
+
+    /**
+     * 获取指定存储服务商的存储方式
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 存储方式的租约 使用完毕后需要关闭
+     */
+    public Lease acquire(String storageCode) {
+        while (true) {
+            ModeHandle handle = current().find(storageCode);
+            if (handle.tryAcquire()) {
+                return new Lease(handle);
+            }
+            // 获取期间该存储方式已被替换 使用新的注册信息重试
+        }
+    }
+
+    /**
+     * 使用指定存储服务商的异步存储方式发起调用 租约持有到调用结束
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @param call 使用租约发起的异步调用
+     * @return 调用结果
+     */
+    public <T> CompletableFuture<T> callAsync(String storageCode, Function<Lease, CompletableFuture<T>> call) {
+        Lease lease = acquire(storageCode);
+        CompletableFuture<T> future;
+        try {
+            future = call.apply(lease);
+        } catch (RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+        return future.whenComplete((result, e) -> lease.close());
+    }
+
+    /**
+     * 获取指定存储服务商的存储类型
+     * @param storageCode 存储服务商编码 为空时使用当前启用的存储服务商
+     * @return 存储类型
+     */
+    public StorageType getStorageType(String storageCode) {
+        return current().find(storageCode).storageType;
+    }
+
+    /**
+     * 获取存储服务商记录在数据表中的编码 默认的存储方式没有存储服务商编码 记为本地存储
+     * @param storageCode 存储服务商编码 默认的存储方式为null
+     * @return 数据表中的存储服务商编码
+     */
+    public static String recordCode(String storageCode) {
+        return StringUtils.isBlank(storageCode) ? DEFAULT_STORAGE_TYPE.getType() : storageCode;
+    }
+
+    /**
+     * 获取当前各存储服务商的容错统计 本地存储没有容错处理
+     * @return 存储服务商编码 -> 容错统计
+     */
+    public Map<String, Map<String, Long>> getResilienceMetrics() {
+        Map<String, Map<String, Long>> metrics = new LinkedHashMap<>();
+        for (ModeHandle handle : current().handles.values()) {
+            if (handle.guard != null) {
+                metrics.put(handle.storageCode, handle.guard.getMetrics());
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * 按最新的配置快照切换存储方式 存储服务商配置修改后调用
+     */
+    public void refresh() {
+        current();
+    }
+
+    /**
+     * 获取与当前配置快照一致的注册信息 配置快照变化时重建
+     */
+    private Registration current() {
+        StorageConfigCache.Snapshot snapshot = storageConfigCache.get();
+        Registration current = registration;
+        if (current != null && current.version >= snapshot.getVersion()) {
+            return current;
+        }
+        synchronized (switchLock) {
+            current = registration;
+            if (current == null || current.version < snapshot.getVersion()) {
+                current = rebuild(current, snapshot);
+                registration = current;
+            }
+            return current;
+        }
+    }
+
+    private Registration rebuild(Registration previous, StorageConfigCache.Snapshot snapshot) {
+        Map<String, ModeHandle> handles = new LinkedHashMap<>();
+        for (Storage storage : snapshot.getStorages()) {
+            ModeHandle handle = previous == null ? null : previous.handles.get(storage.getStorage());
+            // 配置未变化的存储服务商沿用原来的实例
+            if (handle == null || !handle.storage.equals(storage)) {
+                StorageType storageType = StorageType.ofCode(storage.getStorageType());
+                if (storageType == null) {
+                    log.warn("存储服务商{}的类型暂时不支持", storage.getStorage());
+                    continue;
+                }
+                handle = new ModeHandle(storage.getStorage(), storage, storageType);
+            }
+            handles.put(storage.getStorage(), handle);
+        }
+        ModeHandle defaultHandle = previous == null
+                ? new ModeHandle(null, null, DEFAULT_STORAGE_TYPE)
+                : previous.defaultHandle;
+        Registration next = new Registration(snapshot.getVersion(), snapshot.getStorageCode(), handles, defaultHandle);
+        if (previous != null) {
+            // 替换下来的存储方式等待正在进行的调用结束后释放
+            previous.handles.values().stream()
+                    .filter(handle -> handles.get(handle.storageCode) != handle)
+                    .forEach(ModeHandle::retire);
+        }
+        log.info("存储方式已切换，配置版本：{}，当前存储服务商：{}", next.version,
+                StringUtils.isBlank(next.activeCode) ? DEFAULT_STORAGE_TYPE.getType() : next.activeCode);
+        return next;
+    }
+
+    /**
+     * 某一版本配置下的全部存储方式
+     */
+    private static final class Registration {
+
+        private final long version;
+
+        private final String activeCode;
+
+        private final Map<String, ModeHandle> handles;
+
+        private final ModeHandle defaultHandle;
+
+        private Registration(long version, String activeCode, Map<String, ModeHandle> handles, ModeHandle defaultHandle) {
+            this.version = version;
+            this.activeCode = activeCode;
+            this.handles = Collections.unmodifiableMap(handles);
+            this.defaultHandle = defaultHandle;
+        }
+
+        private ModeHandle find(String storageCode) {
+            if (StringUtils.isBlank(storageCode)) {
+                // 没有获取到存储编码时使用默认的存储方式
+                if (StringUtils.isBlank(activeCode)) {
+                    return defaultHandle;
+                }
+                storageCode = activeCode;
+            }
+            ModeHandle handle = handles.get(storageCode);
+            if (handle == null) {
+                log.error("存储服务商{}不存在或暂时不支持", storageCode);
+                throw new RuntimeException("当前存储服务商暂时不支持");
+            }
+            return handle;
+        }
+    }
+
+    /**
+     * 存储方式实例及其正在进行的调用数
+     */
+    private final class ModeHandle {
+
+        private final String storageCode;
+
+        private final Storage storage;
+
+        /**
+         * 创建时的客户端配置快照 创建时增加客户端的引用数 释放时按快照减少 本地存储为null
+         */
+        private final StorageClientRegistry.ClientKey clientKey;
+
+        private final StorageType storageType;
+
+        private final StorageMode storageMode;
+
+        private final AsyncStorageMode asyncMode;
+
+        /**
+         * 并发限制和熔断器 本地存储为null
+         */
+        private final StorageGuard guard;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private volatile boolean retired;
+
+        private ModeHandle(String storageCode, Storage storage, StorageType storageType) {
+            this.storageCode = storageCode;
+            this.storage = storage;
+            this.clientKey = StorageClientRegistry.ClientKey.of(storage);
+            this.storageType = storageType;
+            StorageMode mode = storageType.getFactory().apply(storage);
+            if (storageType != StorageType.local) {
+                // 远程存储服务商的调用经过独立的并发限制和熔断器 配置修改后重新统计
+                OssProperties.Resilience resilience = ossProperties.getResilience();
+                this.guard = new StorageGuard(storageCode, resilience);
+                mode = new ResilientStorageMode(mode, guard, resilience);
+            } else {
+                this.guard = null;
+            }
+            // 监控指标在最外层 耗时包含等待并发许可和重试的时间 拒绝的调用计为失败
+            this.storageMode = new MeteredStorageMode(mode, storageMetrics, storageType.getType());
+            this.asyncMode = storageMode.async(storageIoExecutor);
+            // 只修改存储桶等字段的新实例与旧实例共用客户端 旧实例释放时不能关闭新实例仍在使用的客户端
+            storageClientRegistry.retain(clientKey);
+        }
+
+        private boolean tryAcquire() {
+            inFlight.incrementAndGet();
+            if (retired) {
+                release();
+                return false;
+            }
+            return true;
+        }
+
+        private void release() {
+            if (inFlight.decrementAndGet() == 0 && retired) {
+                close();
+            }
+        }
+
+        private void retire() {
+            retired = true;
+            if (inFlight.get() == 0) {
+                close();
+            } else {
+                log.info("存储服务商{}还有{}个调用正在进行，结束后释放", storageCode, inFlight.get());
+            }
+        }
+
+        private void close() {
+            if (closed.compareAndSet(false, true)) {
+                storageClientRegistry.release(clientKey);
+            }
+        }
+    }
+
+    /**
+     * 存储方式的租约 持有期间对应的存储方式不会被释放
+     */
+    public static final class Lease implements AutoCloseable {
+
+        private final ModeHandle handle;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(ModeHandle handle) {
+            this.handle = handle;
+        }
+
+        public StorageMode getMode() {
+            return handle.storageMode;
+        }
+
+        /**
+         * 获取异步存储方式 异步调用结束前不能关闭租约
+         * @return 异步存储方式
+         */
+        public AsyncStorageMode getAsyncMode() {
+            return handle.asyncMode;
+        }
+
+        /**
+         * 获取存储服务商编码 默认的存储方式返回null
+         * @return 存储服务商编码
+         */
+        public String getStorageCode() {
+            return handle.storageCode;
+        }
+
+        public StorageType getStorageType() {
+            return handle.storageType;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                handle.release();
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.demo.oss.storage.enums;
 
+import org.demo.oss.model.Storage;
 import org.demo.oss.storage.StorageMode;
 import org.demo.oss.storage.LocalMode;
 import org.demo.oss.storage.MinioMode;
@@ -9,6 +10,8 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.function.Function;
+
 /**
  * 存储类型枚举类
  */
@@ -17,34 +20,63 @@ import lombok.extern.slf4j.Slf4j;
 @AllArgsConstructor
 public enum StorageType {
 
-    local("local", LocalMode.class),
-    minio("minio", MinioMode.class),
-    aliyun("oss", OssMode.class);
+    local(3, "local", storage -> new LocalMode()),
+    minio(1, "minio", MinioMode::new),
+    aliyun(2, "oss", OssMode::new);
+
+    /**
+     * 存储服务的类型编码 对应存储桶表的storage_type字段
+     */
+    private final Integer code;
 
     private final String type;
 
-    private final Class<? extends StorageMode> storageMode;
+    /**
+     * 根据存储服务商配置创建存储方式
+     */
+    private final Function<Storage, StorageMode> factory;
 
     /**
      * 获取存储方式
      * @param type 存储方式
+     * @param storage 存储服务商配置
      * @return {@link StorageMode} 存储方式
      */
-    public static StorageMode getStorageMode(String type){
+    public static StorageMode getStorageMode(String type, Storage storage){
+        return of(type).getFactory().apply(storage);
+    }
+
+    /**
+     * 根据存储方式名称获取存储类型
+     * @param type 存储方式
+     * @return 存储类型
+     */
+    public static StorageType of(String type){
         if(StringUtils.isBlank(type)){
             throw new RuntimeException("存储方式不能为空");
         }
-        try {
-            // 遍历枚举类
-            for (StorageType storageType : StorageType.values()) {
-                if (storageType.getType().equals(type)){
-                    return storageType.getStorageMode().newInstance();
-                }
+        // 遍历枚举类
+        for (StorageType storageType : StorageType.values()) {
+            if (storageType.getType().equals(type)){
+                return storageType;
             }
-        } catch (InstantiationException | IllegalAccessException e) {
-            log.error("获取存储方式失败：{}",e.getMessage());
         }
+        log.error("获取存储方式失败：{}",type);
         throw new RuntimeException("获取存储方式失败");
     }
 
+    /**
+     * 根据存储服务的类型编码获取存储类型
+     * @param code 存储服务的类型编码
+     * @return 存储类型 不支持时返回null
+     */
+    public static StorageType ofCode(Integer code){
+        for (StorageType storageType : StorageType.values()) {
+            if (storageType.getCode().equals(code)){
+                return storageType;
+            }
+        }
+        return null;
+    }
+
 }
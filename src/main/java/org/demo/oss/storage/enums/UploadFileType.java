@@ -20,4 +20,22 @@ public enum UploadFileType {
     FILE("file");
 
     private final String path;
+
+    /**
+     * 根据文件的类型获取上传的文件类型 不属于图片、视频和音频的归为文件
+     * @param contentType 文件的类型 例如image/png
+     * @return 上传的文件类型
+     */
+    public static UploadFileType of(String contentType) {
+        if (contentType == null) {
+            return FILE;
+        }
+        String type = contentType.split("/")[0];
+        for (UploadFileType uploadFileType : values()) {
+            if (uploadFileType.name().equalsIgnoreCase(type)) {
+                return uploadFileType;
+            }
+        }
+        return FILE;
+    }
 }
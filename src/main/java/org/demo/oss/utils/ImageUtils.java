@@ -2,15 +2,28 @@ package org.demo.oss.utils;
 
 import lombok.extern.slf4j.Slf4j;
 import net.coobird.thumbnailator.Thumbnails;
+import net.coobird.thumbnailator.geometry.Positions;
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.model.ImageTransform;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 图片处理工具类
@@ -23,6 +36,21 @@ public class ImageUtils {
 
     private static List<String> imageSuffixList = new ArrayList<>();
 
+    /**
+     * 未配置时的像素预算 按每像素4字节约256MB
+     */
+    private static final long DEFAULT_PIXEL_BUDGET = 64L * 1024 * 1024;
+
+    /**
+     * 像素统计
+     */
+    private static final AtomicLong OPERATIONS = new AtomicLong();
+    private static final AtomicLong SOURCE_PIXELS = new AtomicLong();
+    private static final AtomicLong DECODED_PIXELS = new AtomicLong();
+    private static final AtomicLong IN_USE_PIXELS = new AtomicLong();
+    private static final AtomicLong PEAK_IN_USE_PIXELS = new AtomicLong();
+    private static final AtomicLong PEAK_OPERATION_PIXELS = new AtomicLong();
+
     static {
         imageSuffixList.add(".jpg");
         imageSuffixList.add(".jpeg");
@@ -58,10 +86,31 @@ public class ImageUtils {
         if (StringUtils.isBlank(fileName)) {
             throw new RuntimeException("文件名不能为空");
         }
+        return isImage(fileName, multipartFile.getContentType());
+    }
+
+    /**
+     * 根据文件名和文件类型判断是否为图片 没有后缀名时不是图片
+     * @param fileName 文件名
+     * @param contentType 文件类型
+     * @return 是否为图片
+     */
+    public static boolean isImage(String fileName, String contentType) {
+        return hasImageSuffix(fileName) && !StringUtils.isBlank(contentType) && contentType.startsWith("image");
+    }
+
+    /**
+     * 根据文件名的后缀判断是否可能为图片 不知道文件类型时使用
+     * @param fileName 文件名
+     * @return 后缀名是否为图片格式
+     */
+    public static boolean hasImageSuffix(String fileName) {
+        if (StringUtils.isBlank(fileName) || fileName.lastIndexOf(".") < 0) {
+            return false;
+        }
         // 获取文件的后缀名
         String suffix = fileName.substring(fileName.lastIndexOf("."));
-        String contentType = multipartFile.getContentType();
-        return imageSuffixList.contains(suffix.toLowerCase()) && !StringUtils.isBlank(contentType) && contentType.startsWith("image");
+        return imageSuffixList.contains(suffix.toLowerCase());
     }
 
     /**
@@ -179,11 +228,14 @@ public class ImageUtils {
             }
             outputStream = new ByteArrayOutputStream();
             inputStream = multipartFile.getInputStream();
-            Thumbnails.of(inputStream)
-                    // 指定缩略图的大小
-                    .size(width, height)
-                    // 指定缩略图的存储路径
-                    .toOutputStream(outputStream);
+            // 按缩略图尺寸采样解码 不解码整张原图
+            ImageTransform transform = new ImageTransform();
+            transform.setWidth(width);
+            transform.setHeight(height);
+            transform.setQuality(100);
+            String fileName = multipartFile.getOriginalFilename();
+            transform.setFormat(fileName.substring(fileName.lastIndexOf(".") + 1).toLowerCase());
+            transform(inputStream, transform, outputStream);
             return new ByteArrayInputStream(outputStream.toByteArray());
         } catch (IOException e) {
             log.error("图片压缩失败：{}",e.getMessage());
@@ -205,4 +257,210 @@ public class ImageUtils {
             }
         }
     }
+
+    /**
+     * 按转换参数缩放图片并转换格式
+     * @param inputStream 原图 不关闭流
+     * @param transform 转换参数 缩放方式、输出质量和格式不能为空
+     * @param outputStream 输出流
+     * @throws IOException 图片无法解码或输出失败
+     */
+    public static void transform(InputStream inputStream, ImageTransform transform, OutputStream outputStream) throws IOException {
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+            transform(imageInputStream, transform, outputStream);
+        }
+    }
+
+    /**
+     * 按转换参数缩放图片并转换格式 文件可以随机读取，不需要缓存原图
+     * @param file 原图
+     * @param transform 转换参数 缩放方式、输出质量和格式不能为空
+     * @param outputStream 输出流
+     * @throws IOException 图片无法解码或输出失败
+     */
+    public static void transform(File file, ImageTransform transform, OutputStream outputStream) throws IOException {
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(file)) {
+            transform(imageInputStream, transform, outputStream);
+        }
+    }
+
+    /**
+     * 获取图片处理的像素统计
+     * @return 像素预算budget、当前占用inUse、同时占用的峰值peakInUse、单次操作的峰值peakPerOperation、
+     * 累计操作数operations、累计原图像素sourcePixels和累计解码像素decodedPixels
+     */
+    public static Map<String, Long> getPixelMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("budget", PixelBudget.BUDGET);
+        metrics.put("inUse", IN_USE_PIXELS.get());
+        metrics.put("peakInUse", PEAK_IN_USE_PIXELS.get());
+        metrics.put("peakPerOperation", PEAK_OPERATION_PIXELS.get());
+        metrics.put("operations", OPERATIONS.get());
+        metrics.put("sourcePixels", SOURCE_PIXELS.get());
+        metrics.put("decodedPixels", DECODED_PIXELS.get());
+        return metrics;
+    }
+
+    /**
+     * 按目标尺寸只解码需要的像素：cover方式只读取居中的区域，再按缩放比例隔行隔列采样，
+     * 采样后保留目标尺寸两倍以上的像素，由Thumbnailator完成高质量缩放。
+     * 解码和缩放占用的像素从全局预算中扣除，预算不足时等待其他图片处理完成。
+     */
+    private static void transform(ImageInputStream imageInputStream, ImageTransform transform, OutputStream outputStream) throws IOException {
+        if (imageInputStream == null) {
+            throw new IOException("图片无法读取");
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+        if (!readers.hasNext()) {
+            throw new IOException("不支持的图片格式");
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(imageInputStream, true, true);
+            int sourceWidth = reader.getWidth(0);
+            int sourceHeight = reader.getHeight(0);
+            Rectangle region = sourceRegion(sourceWidth, sourceHeight, transform);
+            int subsampling = subsampling(region, transform);
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(region);
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            long decodedPixels = (long) ((region.width + subsampling - 1) / subsampling)
+                    * ((region.height + subsampling - 1) / subsampling);
+            long pixels = decodedPixels + targetPixels(region, transform);
+            int permits = acquirePixels(pixels);
+            try {
+                BufferedImage image = reader.read(0, param);
+                resize(image, transform, outputStream);
+            } finally {
+                releasePixels(permits, pixels);
+            }
+            OPERATIONS.incrementAndGet();
+            SOURCE_PIXELS.addAndGet((long) sourceWidth * sourceHeight);
+            DECODED_PIXELS.addAndGet(decodedPixels);
+            log.debug("图片{}x{}按{}倍采样解码，占用{}像素", sourceWidth, sourceHeight, subsampling, pixels);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * cover方式只读取与目标宽高比相同的居中区域 其他方式读取整张图片
+     */
+    private static Rectangle sourceRegion(int sourceWidth, int sourceHeight, ImageTransform transform) {
+        if (transform.getFit() != ImageTransform.Fit.COVER || transform.getWidth() == null || transform.getHeight() == null) {
+            return new Rectangle(0, 0, sourceWidth, sourceHeight);
+        }
+        double targetRatio = (double) transform.getWidth() / transform.getHeight();
+        if ((double) sourceWidth / sourceHeight > targetRatio) {
+            int width = Math.max(1, (int) Math.round(sourceHeight * targetRatio));
+            return new Rectangle((sourceWidth - width) / 2, 0, width, sourceHeight);
+        }
+        int height = Math.max(1, (int) Math.round(sourceWidth / targetRatio));
+        return new Rectangle(0, (sourceHeight - height) / 2, sourceWidth, height);
+    }
+
+    /**
+     * 计算缩放结果的像素数 只指定宽度或高度时按原图的宽高比推算另一边 都未指定时保持原尺寸
+     */
+    private static long targetPixels(Rectangle region, ImageTransform transform) {
+        Integer width = transform.getWidth();
+        Integer height = transform.getHeight();
+        if (width != null && height != null) {
+            return (long) width * height;
+        }
+        if (width != null) {
+            return (long) width * Math.max(1, (long) Math.ceil((double) width * region.height / region.width));
+        }
+        if (height != null) {
+            return (long) height * Math.max(1, (long) Math.ceil((double) height * region.width / region.height));
+        }
+        return (long) region.width * region.height;
+    }
+
+    /**
+     * 计算采样间隔 采样后的尺寸不小于最终尺寸的两倍
+     */
+    private static int subsampling(Rectangle region, ImageTransform transform) {
+        double widthRatio = transform.getWidth() == null ? 0 : (double) region.width / transform.getWidth();
+        double heightRatio = transform.getHeight() == null ? 0 : (double) region.height / transform.getHeight();
+        double ratio;
+        if (transform.getWidth() != null && transform.getHeight() != null) {
+            // contain方式由缩放比例较大的一边决定最终尺寸 其他方式两边都要填满
+            ratio = transform.getFit() == ImageTransform.Fit.CONTAIN
+                    ? Math.max(widthRatio, heightRatio)
+                    : Math.min(widthRatio, heightRatio);
+        } else {
+            ratio = Math.max(widthRatio, heightRatio);
+        }
+        return Math.max(1, (int) (ratio / 2));
+    }
+
+    private static void resize(BufferedImage image, ImageTransform transform, OutputStream outputStream) throws IOException {
+        Thumbnails.Builder<BufferedImage> builder = Thumbnails.of(image);
+        Integer width = transform.getWidth();
+        Integer height = transform.getHeight();
+        if (width != null && height != null) {
+            switch (transform.getFit()) {
+                case COVER:
+                    builder.size(width, height).crop(Positions.CENTER);
+                    break;
+                case FILL:
+                    builder.forceSize(width, height);
+                    break;
+                default:
+                    builder.size(width, height);
+            }
+        } else if (width != null) {
+            builder.width(width);
+        } else if (height != null) {
+            builder.height(height);
+        } else {
+            builder.scale(1.0);
+        }
+        builder.outputQuality(transform.getQuality() / 100f)
+                .outputFormat(transform.getFormat())
+                .toOutputStream(outputStream);
+    }
+
+    /**
+     * 从像素预算中扣除 超过整个预算的图片独占全部预算
+     */
+    private static int acquirePixels(long pixels) throws IOException {
+        int permits = (int) Math.min(pixels, PixelBudget.BUDGET);
+        try {
+            PixelBudget.PERMITS.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待图片处理资源时被中断");
+        }
+        PEAK_IN_USE_PIXELS.accumulateAndGet(IN_USE_PIXELS.addAndGet(pixels), Math::max);
+        PEAK_OPERATION_PIXELS.accumulateAndGet(pixels, Math::max);
+        return permits;
+    }
+
+    private static void releasePixels(int permits, long pixels) {
+        IN_USE_PIXELS.addAndGet(-pixels);
+        PixelBudget.PERMITS.release(permits);
+    }
+
+    /**
+     * 全局像素预算 首次处理图片时按配置创建
+     */
+    private static final class PixelBudget {
+
+        private static final long BUDGET = resolveBudget();
+
+        private static final Semaphore PERMITS = new Semaphore((int) BUDGET, true);
+
+        private static long resolveBudget() {
+            long budget = DEFAULT_PIXEL_BUDGET;
+            try {
+                budget = SpringUtils.getBean(OssProperties.class).getImage().getPixelBudget();
+            } catch (RuntimeException e) {
+                // 不在Spring容器中运行时使用默认预算
+                log.debug("使用默认的图片像素预算：{}", budget);
+            }
+            return Math.max(1, Math.min(budget, Integer.MAX_VALUE));
+        }
+    }
 }
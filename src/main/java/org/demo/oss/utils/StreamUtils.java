@@ -0,0 +1,128 @@
+package org.demo.oss.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 流处理工具类
+ */
+public class StreamUtils {
+
+    private StreamUtils(){}
+
+    /**
+     * 复制流使用的缓冲区大小
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 复用的缓冲区 最多保留64个 超出时临时分配
+     */
+    private static final BlockingQueue<byte[]> BUFFER_POOL = new ArrayBlockingQueue<>(64);
+
+    /**
+     * 使用复用的缓冲区把输入流的内容复制到输出流 不关闭流
+     * @param inputStream 输入流
+     * @param outputStream 输出流
+     * @return 复制的字节数
+     * @throws IOException 读取或写入失败
+     */
+    public static long copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] buffer = BUFFER_POOL.poll();
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+        }
+        try {
+            long total = 0;
+            int read;
+            while ((read = inputStream.read(buffer)) >= 0) {
+                outputStream.write(buffer, 0, read);
+                total += read;
+            }
+            return total;
+        } finally {
+            BUFFER_POOL.offer(buffer);
+        }
+    }
+
+    /**
+     * 使用复用的缓冲区把文件通道指定区间的内容复制到输出流 不改变通道的位置 不关闭通道和流
+     * @param channel 文件通道
+     * @param position 起始位置
+     * @param count 复制的字节数
+     * @param outputStream 输出流
+     * @return 复制的字节数 文件不足时小于count
+     * @throws IOException 读取或写入失败
+     */
+    public static long copy(FileChannel channel, long position, long count, OutputStream outputStream) throws IOException {
+        byte[] buffer = BUFFER_POOL.poll();
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+        }
+        try {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+            long total = 0;
+            while (total < count) {
+                byteBuffer.clear();
+                byteBuffer.limit((int) Math.min(buffer.length, count - total));
+                int read = channel.read(byteBuffer, position + total);
+                if (read < 0) {
+                    break;
+                }
+                outputStream.write(buffer, 0, read);
+                total += read;
+            }
+            return total;
+        } finally {
+            BUFFER_POOL.offer(buffer);
+        }
+    }
+
+    /**
+     * 从流中读取数据直到填满缓冲区或者流结束
+     * @param inputStream 输入流
+     * @param buffer 缓冲区
+     * @return 实际读取的字节数 小于缓冲区长度时表示流已结束
+     * @throws IOException 读取失败
+     */
+    public static int readFully(InputStream inputStream, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int read = inputStream.read(buffer, total, buffer.length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * 使用复用的缓冲区读取输入流的全部内容计算摘要 不关闭流
+     * @param inputStream 输入流
+     * @param digest 摘要算法
+     * @return 摘要
+     * @throws IOException 读取失败
+     */
+    public static byte[] digest(InputStream inputStream, MessageDigest digest) throws IOException {
+        byte[] buffer = BUFFER_POOL.poll();
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+        }
+        try {
+            int read;
+            while ((read = inputStream.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+            return digest.digest();
+        } finally {
+            BUFFER_POOL.offer(buffer);
+        }
+    }
+}
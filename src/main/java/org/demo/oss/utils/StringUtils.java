@@ -7,6 +7,8 @@ import java.util.List;
  */
 public class StringUtils {
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     private StringUtils(){}
 
     /**
@@ -17,4 +19,30 @@ public class StringUtils {
     public static boolean isBlank(String str) {
         return str == null || str.trim().isEmpty();
     }
+
+    /**
+     * 将字节数组转换为小写十六进制字符串
+     * @param bytes 字节数组
+     * @return 十六进制字符串
+     */
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 去掉ETag两端的引号 不含引号时原样返回
+     * @param etag ETag
+     * @return 不含引号的ETag
+     */
+    public static String unquote(String etag) {
+        if (etag != null && etag.length() >= 2 && etag.charAt(0) == '"' && etag.charAt(etag.length() - 1) == '"') {
+            return etag.substring(1, etag.length() - 1);
+        }
+        return etag;
+    }
 }
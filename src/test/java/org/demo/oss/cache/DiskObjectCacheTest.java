@@ -0,0 +1,237 @@
+package org.demo.oss.cache;
+
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.model.ObjectInfo;
+import org.demo.oss.storage.StorageMode;
+import org.demo.oss.storage.StorageModeRegistry;
+import org.demo.oss.storage.enums.StorageType;
+import org.demo.oss.utils.StreamUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 磁盘缓存合并并发未命中的测试
+ * @author moxiaoli
+ */
+class DiskObjectCacheTest {
+
+    private static final int CONCURRENCY = 8;
+
+    @TempDir
+    Path cacheDir;
+
+    private DiskObjectCache cache;
+
+    private StorageMode storageMode;
+
+    private StorageModeRegistry.Lease lease;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        OssProperties ossProperties = new OssProperties();
+        ossProperties.getDiskCache().setEnabled(true);
+        ossProperties.getDiskCache().setPath(cacheDir.toString());
+        cache = new DiskObjectCache();
+        ReflectionTestUtils.setField(cache, "ossProperties", ossProperties);
+        cache.init();
+        storageMode = mock(StorageMode.class);
+        lease = mock(StorageModeRegistry.Lease.class);
+        when(lease.getMode()).thenReturn(storageMode);
+        when(lease.getStorageCode()).thenReturn("minio-test");
+        when(lease.getStorageType()).thenReturn(StorageType.minio);
+        executor = Executors.newFixedThreadPool(CONCURRENCY);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentMissesDownloadOnce() throws Exception {
+        byte[] data = randomBytes(64 * 1024);
+        ObjectInfo object = new ObjectInfo("a/b.bin", data.length, 0L, "etag1", null);
+        CountDownLatch waiting = new CountDownLatch(1);
+        when(storageMode.download("a/b.bin")).thenAnswer(invocation -> {
+            // 其他请求都在等待本次下载后再返回
+            waiting.await(10, TimeUnit.SECONDS);
+            return new ByteArrayInputStream(data);
+        });
+
+        List<Future<byte[]>> results = new ArrayList<>();
+        for (int i = 0; i < CONCURRENCY; i++) {
+            results.add(executor.submit(() -> {
+                try (InputStream inputStream = cache.download(lease, object)) {
+                    return readAll(inputStream);
+                }
+            }));
+        }
+        awaitCoalesced(CONCURRENCY - 1);
+        waiting.countDown();
+
+        for (Future<byte[]> result : results) {
+            assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo(data);
+        }
+        verify(storageMode, times(1)).download("a/b.bin");
+        assertThat(cache.getMetrics().get("misses")).isEqualTo(1);
+        assertThat(cache.getMetrics().get("coalesced")).isEqualTo(CONCURRENCY - 1);
+        assertThat(cache.getMetrics().get("hits")).isEqualTo(0);
+        assertThat(cache.getMetrics().get("bytesFetched")).isEqualTo(data.length);
+
+        // 下载完成后的请求直接命中
+        try (InputStream inputStream = cache.download(lease, object)) {
+            assertThat(readAll(inputStream)).isEqualTo(data);
+        }
+        assertThat(cache.getMetrics().get("hits")).isEqualTo(1);
+        verify(storageMode, times(1)).download("a/b.bin");
+    }
+
+    @Test
+    void failedDownloadIsSharedAndNotCached() throws Exception {
+        byte[] data = randomBytes(1024);
+        ObjectInfo object = new ObjectInfo("a/c.bin", data.length, 0L, "etag1", null);
+        CountDownLatch waiting = new CountDownLatch(1);
+        when(storageMode.download("a/c.bin")).thenAnswer(invocation -> {
+            waiting.await(10, TimeUnit.SECONDS);
+            throw new RuntimeException("文件下载失败");
+        }).thenReturn(new ByteArrayInputStream(data));
+
+        List<Future<byte[]>> results = new ArrayList<>();
+        for (int i = 0; i < CONCURRENCY; i++) {
+            results.add(executor.submit(() -> {
+                try (InputStream inputStream = cache.download(lease, object)) {
+                    return readAll(inputStream);
+                }
+            }));
+        }
+        awaitCoalesced(CONCURRENCY - 1);
+        waiting.countDown();
+
+        // 等待的请求得到同一个失败 不会各自再下载
+        for (Future<byte[]> result : results) {
+            assertThatThrownBy(() -> result.get(10, TimeUnit.SECONDS)).hasRootCauseMessage("文件下载失败");
+        }
+        verify(storageMode, times(1)).download("a/c.bin");
+
+        // 失败的结果不保留 下一次请求重新下载
+        try (InputStream inputStream = cache.download(lease, object)) {
+            assertThat(readAll(inputStream)).isEqualTo(data);
+        }
+        verify(storageMode, times(2)).download("a/c.bin");
+        assertThat(cache.getMetrics().get("entries")).isEqualTo(1);
+    }
+
+    @Test
+    void changedEtagIsDownloadedAgain() throws Exception {
+        byte[] first = randomBytes(100);
+        byte[] second = randomBytes(200);
+        when(storageMode.download("a/d.bin"))
+                .thenReturn(new ByteArrayInputStream(first), new ByteArrayInputStream(second));
+
+        try (InputStream inputStream = cache.download(lease, new ObjectInfo("a/d.bin", first.length, 0L, "etag1", null))) {
+            assertThat(readAll(inputStream)).isEqualTo(first);
+        }
+        try (InputStream inputStream = cache.download(lease, new ObjectInfo("a/d.bin", second.length, 0L, "etag2", null))) {
+            assertThat(readAll(inputStream)).isEqualTo(second);
+        }
+
+        verify(storageMode, times(2)).download("a/d.bin");
+        assertThat(cache.getMetrics().get("entries")).isEqualTo(1);
+        assertThat(cache.getMetrics().get("size")).isEqualTo(second.length);
+    }
+
+    @Test
+    void replacedFileIsDeletedAfterLastReaderCloses() throws Exception {
+        byte[] first = randomBytes(100);
+        byte[] second = randomBytes(200);
+        when(storageMode.download("a/e.bin"))
+                .thenReturn(new ByteArrayInputStream(first), new ByteArrayInputStream(second));
+
+        InputStream reading = cache.download(lease, new ObjectInfo("a/e.bin", first.length, 0L, "etag1", null));
+        List<Path> firstFiles = cachedFiles();
+        try (InputStream inputStream = cache.download(lease, new ObjectInfo("a/e.bin", second.length, 0L, "etag2", null))) {
+            assertThat(readAll(inputStream)).isEqualTo(second);
+        }
+
+        // 新版本写入新的文件 正在读取的旧文件不覆盖也不删除
+        assertThat(cachedFiles()).hasSize(2).containsAll(firstFiles);
+        assertThat(readAll(reading)).isEqualTo(first);
+        reading.close();
+        assertThat(cachedFiles()).hasSize(1).doesNotContainAnyElementsOf(firstFiles);
+        assertThat(cache.getMetrics().get("size")).isEqualTo(second.length);
+    }
+
+    @Test
+    void openIfCachedDoesNotDownloadOnMiss() throws Exception {
+        byte[] data = randomBytes(100);
+        ObjectInfo object = new ObjectInfo("a/f.bin", data.length, 0L, "etag1", null);
+        when(storageMode.download("a/f.bin")).thenReturn(new ByteArrayInputStream(data));
+
+        assertThat(cache.openIfCached(lease, object)).isNull();
+        verify(storageMode, never()).download(any());
+
+        cache.download(lease, object).close();
+        try (DiskObjectCache.CachedFile file = cache.openIfCached(lease, object)) {
+            assertThat(file.getChannel().size()).isEqualTo(data.length);
+        }
+        assertThat(cache.getMetrics().get("hits")).isEqualTo(1);
+    }
+
+    private List<Path> cachedFiles() throws Exception {
+        try (Stream<Path> files = Files.walk(cacheDir)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> !file.getParent().getFileName().toString().equals("tmp"))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private void awaitCoalesced(long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (cache.getMetrics().get("coalesced") < expected && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+        assertThat(cache.getMetrics().get("coalesced")).isEqualTo(expected);
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        StreamUtils.copy(inputStream, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,85 @@
+package org.demo.oss.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.model.ObjectPage;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 存储方式装饰器逐页遍历的测试
+ * @author moxiaoli
+ */
+class DelegatingStorageModeTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void meteredModeForwardsForEachPageToDelegate() {
+        StorageMode delegate = mock(StorageMode.class);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        StorageMetrics metrics = new StorageMetrics();
+        ReflectionTestUtils.setField(metrics, "meterRegistry", registry);
+        StorageMode mode = new MeteredStorageMode(delegate, metrics, "local");
+
+        Consumer<ObjectPage> consumer = page -> {
+        };
+        mode.forEachPage("a/", null, 100, consumer);
+
+        // 本地存储的forEachPage只遍历一次目录 不能退化为按继续标记逐页调用listPage
+        verify(delegate).forEachPage(eq("a/"), isNull(), eq(100), any(Consumer.class));
+        verify(delegate, never()).listPage(any(), any(), anyInt(), any());
+        assertThat(registry.get("oss.storage.requests").tag("method", "forEachPage").tag("operation", "list")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void resilientModeGuardsEachPage() {
+        StorageMode delegate = mock(StorageMode.class);
+        ObjectPage first = new ObjectPage();
+        first.setNextToken("t1");
+        ObjectPage second = new ObjectPage();
+        when(delegate.listPage("a/", null, 100, null)).thenReturn(first);
+        when(delegate.listPage("a/", null, 100, "t1")).thenReturn(second);
+        OssProperties.Resilience resilience = new OssProperties.Resilience();
+        StorageGuard guard = new StorageGuard("test", resilience);
+        StorageMode mode = new ResilientStorageMode(delegate, guard, resilience);
+
+        List<ObjectPage> pages = new ArrayList<>();
+        mode.forEachPage("a/", null, 100, pages::add);
+
+        assertThat(pages).containsExactly(first, second);
+        verify(delegate, times(2)).listPage(eq("a/"), isNull(), eq(100), any());
+        verify(delegate, never()).forEachPage(any(), any(), anyInt(), any(Consumer.class));
+        assertThat(guard.getMetrics().get("calls")).isEqualTo(2);
+    }
+
+    @Test
+    void resilientModeDoesNotCountNotDeletedAsFailure() {
+        StorageMode delegate = mock(StorageMode.class);
+        when(delegate.delete("a/b.txt")).thenReturn(false);
+        OssProperties.Resilience resilience = new OssProperties.Resilience();
+        StorageGuard guard = new StorageGuard("test", resilience);
+        StorageMode mode = new ResilientStorageMode(delegate, guard, resilience);
+
+        // 对象名错误、没有权限等请求错误返回false 不重试也不计入熔断器
+        assertThat(mode.delete("a/b.txt")).isFalse();
+        verify(delegate, times(1)).delete("a/b.txt");
+        assertThat(guard.getMetrics().get("failures")).isEqualTo(0);
+    }
+}
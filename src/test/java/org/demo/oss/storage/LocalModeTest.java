@@ -0,0 +1,166 @@
+package org.demo.oss.storage;
+
+import org.demo.oss.model.ObjectInfo;
+import org.demo.oss.model.UploadPart;
+import org.demo.oss.utils.SpringUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 本地存储分片上传和列举的测试
+ * @author moxiaoli
+ */
+class LocalModeTest {
+
+    @TempDir
+    static Path uploadDir;
+
+    private static AnnotationConfigApplicationContext context;
+
+    private static LocalMode localMode;
+
+    @BeforeAll
+    static void start() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("web.resource-path", uploadDir.toAbsolutePath() + "/");
+        properties.put("server.port", "8000");
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", properties));
+        context.register(SpringUtils.class);
+        context.refresh();
+        localMode = new LocalMode();
+    }
+
+    @AfterAll
+    static void stop() {
+        context.close();
+    }
+
+    @Test
+    void boundedListReturnsFirstKeysInOrder() throws Exception {
+        for (int i = 0; i < 40; i++) {
+            Path file = uploadDir.resolve(String.format("list/d%d/f%02d.txt", i % 3, i));
+            Files.createDirectories(file.getParent());
+            Files.write(file, new byte[]{1});
+            Files.write(uploadDir.resolve(String.format("list/f%02d.txt", i)), new byte[]{1});
+        }
+
+        List<String> all = names(localMode.listObjects("list", true));
+        assertThat(all).hasSize(80).isSorted();
+        // 限制数量时返回字典序最前的对象 多次调用结果一致
+        for (int round = 0; round < 5; round++) {
+            assertThat(names(localMode.listObjects("list", 10, true))).isEqualTo(all.subList(0, 10));
+        }
+        List<String> direct = names(localMode.listObjects("list", false));
+        assertThat(direct).hasSize(40);
+        assertThat(names(localMode.listObjects("/list/", 7, false))).isEqualTo(direct.subList(0, 7));
+    }
+
+    @Test
+    void uploadPartsOutOfOrderWithUnknownSize() throws Exception {
+        byte[] data = randomBytes(10 * 1000 + 123);
+        List<UploadPart> parts = split(data.length, 1000);
+        String uploadId = localMode.initiateMultipartUpload("parts/reversed.bin", "application/octet-stream", -1);
+
+        List<UploadPart> reversed = new ArrayList<>(parts);
+        Collections.reverse(reversed);
+        for (UploadPart part : reversed) {
+            part.setChecksum(localMode.uploadPart("parts/reversed.bin", uploadId, part, slice(data, part)));
+        }
+        localMode.completeMultipartUpload("parts/reversed.bin", uploadId, parts);
+
+        assertThat(Files.readAllBytes(uploadDir.resolve("parts/reversed.bin"))).isEqualTo(data);
+    }
+
+    @Test
+    void uploadPartsConcurrentlyWithUnknownSize() throws Exception {
+        byte[] data = randomBytes(16 * 4096 + 7);
+        List<UploadPart> parts = split(data.length, 4096);
+        String uploadId = localMode.initiateMultipartUpload("parts/parallel.bin", "application/octet-stream", -1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(parts.size());
+        try {
+            // 所有分片同时开始写入 完成顺序不确定
+            CountDownLatch ready = new CountDownLatch(1);
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (UploadPart part : parts) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        ready.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return localMode.uploadPart("parts/parallel.bin", uploadId, part, slice(data, part));
+                }, executor));
+            }
+            ready.countDown();
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        localMode.completeMultipartUpload("parts/parallel.bin", uploadId, parts);
+
+        assertThat(Files.readAllBytes(uploadDir.resolve("parts/parallel.bin"))).isEqualTo(data);
+    }
+
+    @Test
+    void completeRejectsObjectNameOutsideUploadDir() throws Exception {
+        byte[] data = randomBytes(100);
+        List<UploadPart> parts = split(data.length, 100);
+        String uploadId = localMode.initiateMultipartUpload("parts/escape.bin", "application/octet-stream", data.length);
+        localMode.uploadPart("parts/escape.bin", uploadId, parts.get(0), slice(data, parts.get(0)));
+
+        assertThatThrownBy(() -> localMode.completeMultipartUpload("../escape.bin", uploadId, parts))
+                .hasMessage("文件名不正确");
+        assertThatThrownBy(() -> localMode.completeMultipartUpload(".multipart/escape.bin", uploadId, parts))
+                .hasMessage("文件名不正确");
+        assertThat(uploadDir.resolveSibling("escape.bin")).doesNotExist();
+        assertThatThrownBy(() -> localMode.initiateMultipartUpload("a/../../escape.bin", "application/octet-stream", 1))
+                .hasMessage("文件名不正确");
+    }
+
+    private static List<UploadPart> split(long size, long partSize) {
+        List<UploadPart> parts = new ArrayList<>();
+        for (long offset = 0; offset < size; offset += partSize) {
+            parts.add(new UploadPart(parts.size() + 1, offset, Math.min(partSize, size - offset), null, null));
+        }
+        return parts;
+    }
+
+    private static ByteArrayInputStream slice(byte[] data, UploadPart part) {
+        return new ByteArrayInputStream(data, (int) (long) part.getOffset(), (int) (long) part.getSize());
+    }
+
+    private static List<String> names(List<ObjectInfo> objects) {
+        return objects.stream().map(ObjectInfo::getName).collect(Collectors.toList());
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
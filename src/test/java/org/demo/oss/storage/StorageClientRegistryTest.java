@@ -0,0 +1,64 @@
+package org.demo.oss.storage;
+
+import io.minio.MinioClient;
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.model.Storage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 存储服务客户端注册表的测试
+ * @author moxiaoli
+ */
+class StorageClientRegistryTest {
+
+    private StorageClientRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new StorageClientRegistry();
+        ReflectionTestUtils.setField(registry, "ossProperties", new OssProperties());
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.destroy();
+    }
+
+    @Test
+    void mutatingStorageAfterRegistrationKeepsClientReleasable() {
+        Storage storage = storage("http://127.0.0.1:9000");
+        StorageClientRegistry.ClientKey key = StorageClientRegistry.ClientKey.of(storage);
+        MinioClient client = registry.getMinioClient(storage);
+        assertThat(registry.getMinioClient(storage("http://127.0.0.1:9000"))).isSameAs(client);
+
+        // 修改配置对象不影响已注册的客户端 按创建时的快照仍然可以释放
+        storage.setEndpoint("http://127.0.0.1:9001");
+        assertThat(registry.getMinioClient(storage)).isNotSameAs(client);
+        assertThat(clients()).hasSize(2);
+        registry.release(key);
+        assertThat(clients()).hasSize(1);
+        assertThat(registry.getMinioClient(storage("http://127.0.0.1:9000"))).isNotSameAs(client);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<StorageClientRegistry.ClientKey, ?> clients() {
+        return (Map<StorageClientRegistry.ClientKey, ?>) ReflectionTestUtils.getField(registry, "clients");
+    }
+
+    private static Storage storage(String endpoint) {
+        Storage storage = new Storage();
+        storage.setStorage("minio-test");
+        storage.setEndpoint(endpoint);
+        storage.setAccessKey("access");
+        storage.setSecretKey("secret");
+        storage.setBucketName("bucket");
+        return storage;
+    }
+}
@@ -0,0 +1,133 @@
+package org.demo.oss.storage;
+
+import org.demo.oss.config.OssProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 存储服务商并发限制和熔断器的测试
+ * @author moxiaoli
+ */
+class StorageGuardTest {
+
+    private static final long CLOSED = StorageGuard.State.CLOSED.ordinal();
+
+    private static final long OPEN = StorageGuard.State.OPEN.ordinal();
+
+    private static final long HALF_OPEN = StorageGuard.State.HALF_OPEN.ordinal();
+
+    @Test
+    void opensOnlyAfterMinimumCallsAndForgetsResultsOutsideWindow() {
+        OssProperties.Resilience resilience = resilience(4, 4, 75);
+        StorageGuard guard = new StorageGuard("test", resilience);
+
+        // 调用数不足时失败率再高也不打开
+        guard.record(true);
+        guard.record(true);
+        assertThat(guard.getMetrics().get("state")).isEqualTo(CLOSED);
+        guard.record(false);
+        guard.record(false);
+        assertThat(guard.getMetrics().get("failureRate")).isEqualTo(50);
+
+        // 最早的两次失败移出窗口
+        guard.record(false);
+        guard.record(false);
+        assertThat(guard.getMetrics().get("failureRate")).isEqualTo(0);
+        guard.record(true);
+        guard.record(true);
+        assertThat(guard.getMetrics().get("state")).isEqualTo(CLOSED);
+        guard.record(true);
+
+        assertThat(guard.getMetrics().get("failureRate")).isEqualTo(75);
+        assertThat(guard.getMetrics().get("state")).isEqualTo(OPEN);
+        assertThat(guard.getMetrics().get("circuitOpened")).isEqualTo(1);
+        assertThat(guard.isRetryAllowed()).isFalse();
+    }
+
+    @Test
+    void rejectsWhileOpenThenClosesAfterHalfOpenProbesSucceed() {
+        OssProperties.Resilience resilience = resilience(1, 1, 50);
+        resilience.setHalfOpenCalls(2);
+        resilience.setOpenDuration(Duration.ofHours(1));
+        StorageGuard guard = new StorageGuard("test", resilience);
+        guard.record(true);
+
+        assertThatThrownBy(() -> guard.acquire(false)).hasMessage("存储服务暂时不可用，请稍后重试");
+        assertThat(guard.getMetrics().get("circuitRejected")).isEqualTo(1);
+
+        // 打开时长已到 只放行配置数量的探测调用
+        resilience.setOpenDuration(Duration.ZERO);
+        guard.acquire(false);
+        guard.acquire(false);
+        assertThat(guard.getMetrics().get("state")).isEqualTo(HALF_OPEN);
+        assertThatThrownBy(() -> guard.acquire(false)).hasMessage("存储服务暂时不可用，请稍后重试");
+
+        guard.record(false);
+        guard.release();
+        assertThat(guard.getMetrics().get("state")).isEqualTo(HALF_OPEN);
+        guard.record(false);
+        guard.release();
+
+        assertThat(guard.getMetrics().get("state")).isEqualTo(CLOSED);
+        assertThat(guard.getMetrics().get("failureRate")).isEqualTo(0);
+        assertThat(guard.getMetrics().get("active")).isEqualTo(0);
+        assertThat(guard.isRetryAllowed()).isTrue();
+    }
+
+    @Test
+    void reopensWhenHalfOpenProbeFails() {
+        OssProperties.Resilience resilience = resilience(1, 1, 50);
+        resilience.setHalfOpenCalls(2);
+        resilience.setOpenDuration(Duration.ZERO);
+        StorageGuard guard = new StorageGuard("test", resilience);
+        guard.record(true);
+
+        guard.acquire(false);
+        guard.record(false);
+        guard.release();
+        guard.acquire(false);
+        guard.record(true);
+        guard.release();
+
+        assertThat(guard.getMetrics().get("state")).isEqualTo(OPEN);
+        assertThat(guard.getMetrics().get("circuitOpened")).isEqualTo(2);
+    }
+
+    @Test
+    void returnsProbeWhenBulkheadIsFull() {
+        OssProperties.Resilience resilience = resilience(1, 1, 50);
+        resilience.setMaxConcurrentCalls(1);
+        resilience.setHalfOpenCalls(1);
+        resilience.setOpenDuration(Duration.ZERO);
+        StorageGuard guard = new StorageGuard("test", resilience);
+        // 占用唯一的并发许可后熔断器打开
+        guard.acquire(false);
+        guard.record(true);
+
+        assertThatThrownBy(() -> guard.acquire(false)).isInstanceOf(RejectedExecutionException.class)
+                .hasMessage("存储服务繁忙，请稍后重试");
+        assertThat(guard.getMetrics().get("bulkheadRejected")).isEqualTo(1);
+
+        // 没有取得许可的探测名额已归还 许可释放后仍然可以探测
+        guard.release();
+        guard.acquire(false);
+        guard.record(false);
+        guard.release();
+
+        assertThat(guard.getMetrics().get("state")).isEqualTo(CLOSED);
+        assertThat(guard.getMetrics().get("circuitRejected")).isEqualTo(0);
+    }
+
+    private static OssProperties.Resilience resilience(int windowSize, int minimumCalls, int failureRateThreshold) {
+        OssProperties.Resilience resilience = new OssProperties.Resilience();
+        resilience.setSlidingWindowSize(windowSize);
+        resilience.setMinimumCalls(minimumCalls);
+        resilience.setFailureRateThreshold(failureRateThreshold);
+        return resilience;
+    }
+}
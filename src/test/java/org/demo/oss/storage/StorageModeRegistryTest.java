@@ -0,0 +1,189 @@
+package org.demo.oss.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.MinioClient;
+import okhttp3.OkHttpClient;
+import org.demo.oss.cache.StorageConfigCache;
+import org.demo.oss.config.OssProperties;
+import org.demo.oss.model.Storage;
+import org.demo.oss.storage.enums.StorageType;
+import org.demo.oss.utils.SpringUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 存储方式注册表租约的测试
+ * @author moxiaoli
+ */
+class StorageModeRegistryTest {
+
+    @TempDir
+    static Path uploadDir;
+
+    private static AnnotationConfigApplicationContext context;
+
+    private StorageConfigCache storageConfigCache;
+
+    private StorageClientRegistry storageClientRegistry;
+
+    private StorageModeRegistry registry;
+
+    @BeforeAll
+    static void start() {
+        // 未配置存储服务商时使用的本地存储从Spring环境读取上传目录
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("web.resource-path", uploadDir.toAbsolutePath() + "/");
+        properties.put("server.port", "8000");
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", properties));
+        context.register(SpringUtils.class, OssProperties.class, StorageClientRegistry.class);
+        context.refresh();
+    }
+
+    @AfterAll
+    static void stop() {
+        context.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        storageConfigCache = mock(StorageConfigCache.class);
+        storageClientRegistry = mock(StorageClientRegistry.class);
+        StorageMetrics metrics = new StorageMetrics();
+        ReflectionTestUtils.setField(metrics, "meterRegistry", new SimpleMeterRegistry());
+        registry = new StorageModeRegistry();
+        ReflectionTestUtils.setField(registry, "storageConfigCache", storageConfigCache);
+        ReflectionTestUtils.setField(registry, "storageClientRegistry", storageClientRegistry);
+        ReflectionTestUtils.setField(registry, "storageIoExecutor", new ThreadPoolTaskExecutor());
+        ReflectionTestUtils.setField(registry, "ossProperties", new OssProperties());
+        ReflectionTestUtils.setField(registry, "storageMetrics", metrics);
+    }
+
+    @Test
+    void replacedModeIsReleasedAfterLastLeaseCloses() {
+        Storage original = storage("s1", "http://127.0.0.1:9000");
+        switchTo(1, "s1", original);
+        StorageModeRegistry.Lease lease = registry.acquire();
+        assertThat(lease.getStorageCode()).isEqualTo("s1");
+        assertThat(lease.getStorageType()).isEqualTo(StorageType.minio);
+
+        switchTo(2, "s1", storage("s1", "http://127.0.0.1:9001"));
+        try (StorageModeRegistry.Lease next = registry.acquire("s1")) {
+            assertThat(next.getMode()).isNotSameAs(lease.getMode());
+        }
+        // 正在使用的旧存储方式不释放客户端
+        verify(storageClientRegistry, never()).release(any());
+
+        lease.close();
+        lease.close();
+        verify(storageClientRegistry).release(StorageClientRegistry.ClientKey.of(original));
+    }
+
+    @Test
+    void unchangedStorageKeepsItsModeAcrossVersions() {
+        switchTo(1, "s1", storage("s1", "http://127.0.0.1:9000"), storage("s2", "http://127.0.0.1:9000"));
+        StorageMode s1;
+        try (StorageModeRegistry.Lease lease = registry.acquire("s1")) {
+            s1 = lease.getMode();
+        }
+
+        Storage removed = storage("s2", "http://127.0.0.1:9000");
+        switchTo(2, "s2", storage("s1", "http://127.0.0.1:9000"));
+        try (StorageModeRegistry.Lease lease = registry.acquire("s1")) {
+            assertThat(lease.getMode()).isSameAs(s1);
+        }
+        // 没有租约的旧存储方式立即释放 新快照中不存在的存储服务商不能再获取
+        verify(storageClientRegistry).release(StorageClientRegistry.ClientKey.of(removed));
+        assertThatThrownBy(() -> registry.acquire("s2")).hasMessage("当前存储服务商暂时不支持");
+    }
+
+    @Test
+    void asyncCallHoldsLeaseUntilFutureCompletes() {
+        Storage original = storage("s1", "http://127.0.0.1:9000");
+        switchTo(1, "s1", original);
+        CompletableFuture<String> call = new CompletableFuture<>();
+        CompletableFuture<String> result = registry.callAsync("s1", lease -> call);
+
+        switchTo(2, "s1", storage("s1", "http://127.0.0.1:9001"));
+        registry.refresh();
+        verify(storageClientRegistry, never()).release(any());
+
+        call.complete("done");
+        assertThat(result.join()).isEqualTo("done");
+        verify(storageClientRegistry).release(StorageClientRegistry.ClientKey.of(original));
+    }
+
+    @Test
+    void bucketOnlyChangeKeepsSharedClientOpen() {
+        StorageClientRegistry clients = context.getBean(StorageClientRegistry.class);
+        ReflectionTestUtils.setField(registry, "storageClientRegistry", clients);
+        switchTo(1, "s1", storage("s1", "http://127.0.0.1:9000"));
+        StorageModeRegistry.Lease lease = registry.acquire();
+
+        // 只修改存储桶 新旧存储方式的客户端配置相同 共用一个客户端
+        Storage moved = storage("s1", "http://127.0.0.1:9000");
+        moved.setBucketName("other");
+        switchTo(2, "s1", moved);
+        MinioClient client;
+        try (StorageModeRegistry.Lease next = registry.acquire()) {
+            assertThat(next.getMode()).isNotSameAs(lease.getMode());
+            client = clients.getMinioClient(moved);
+        }
+        lease.close();
+
+        // 旧存储方式释放后新存储方式的客户端仍然可用
+        assertThat(clients.getMinioClient(moved)).isSameAs(client);
+        assertThat(isShutdown(client)).isFalse();
+
+        // 最后一个使用该客户端的存储方式释放后关闭客户端
+        switchTo(3, null);
+        registry.refresh();
+        assertThat(isShutdown(client)).isTrue();
+    }
+
+    private static boolean isShutdown(MinioClient client) {
+        Object asyncClient = ReflectionTestUtils.getField(client, "asyncClient");
+        OkHttpClient httpClient = (OkHttpClient) ReflectionTestUtils.getField(asyncClient, "httpClient");
+        return httpClient.dispatcher().executorService().isShutdown();
+    }
+
+    private void switchTo(long version, String activeCode, Storage... storages) {
+        StorageConfigCache.Snapshot snapshot = mock(StorageConfigCache.Snapshot.class);
+        when(snapshot.getVersion()).thenReturn(version);
+        when(snapshot.getStorageCode()).thenReturn(activeCode);
+        when(snapshot.getStorages()).thenReturn(Arrays.asList(storages));
+        when(storageConfigCache.get()).thenReturn(snapshot);
+    }
+
+    private static Storage storage(String code, String endpoint) {
+        Storage storage = new Storage();
+        storage.setStorage(code);
+        storage.setStorageType(StorageType.minio.getCode());
+        storage.setEndpoint(endpoint);
+        storage.setAccessKey("access");
+        storage.setSecretKey("secret");
+        storage.setBucketName("bucket");
+        return storage;
+    }
+}